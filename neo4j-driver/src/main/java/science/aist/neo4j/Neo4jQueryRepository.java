@@ -1,5 +1,6 @@
 package science.aist.neo4j;
 
+import org.neo4j.driver.AccessMode;
 import org.neo4j.driver.Value;
 
 import java.util.stream.Stream;
@@ -13,7 +14,8 @@ import java.util.stream.Stream;
  */
 public interface Neo4jQueryRepository {
     /**
-     * Method for executing a query with a single result in a own transaction
+     * Method for executing a query with a single result in a own transaction.
+     * The access mode of the transaction is detected from the query, see {@link science.aist.neo4j.util.CypherClassifier}
      *
      * @param query      The query text
      * @param parameters The query parameters
@@ -24,7 +26,8 @@ public interface Neo4jQueryRepository {
     <T> T query(String query, Value parameters, Class<T> clazz);
 
     /**
-     * Method for executing a query with multiple results in a own transaction
+     * Method for executing a query with multiple results in a own transaction.
+     * The access mode of the transaction is detected from the query, see {@link science.aist.neo4j.util.CypherClassifier}
      *
      * @param query      The query text
      * @param parameters The query parameters
@@ -33,4 +36,28 @@ public interface Neo4jQueryRepository {
      * @return Stream of results
      */
     <T> Stream<T> queryAll(String query, Value parameters, Class<T> clazz);
+
+    /**
+     * Method for executing a query with a single result in a own transaction with the given access mode
+     *
+     * @param query      The query text
+     * @param parameters The query parameters
+     * @param clazz      The result clazz type
+     * @param accessMode The access mode of the transaction
+     * @param <T>        Result type
+     * @return Single query result
+     */
+    <T> T query(String query, Value parameters, Class<T> clazz, AccessMode accessMode);
+
+    /**
+     * Method for executing a query with multiple results in a own transaction with the given access mode
+     *
+     * @param query      The query text
+     * @param parameters The query parameters
+     * @param clazz      The result clazz type
+     * @param accessMode The access mode of the transaction
+     * @param <T>        Result type
+     * @return Stream of results
+     */
+    <T> Stream<T> queryAll(String query, Value parameters, Class<T> clazz, AccessMode accessMode);
 }
@@ -14,20 +14,46 @@ import java.util.stream.StreamSupport;
  */
 public interface Neo4jRepository<S, ID> {
 
-    // TODO #4 long count()
+    /**
+     * Returns the number of nodes in neo4j that are of type S, counted by the database
+     *
+     * @return number of S
+     */
+    long count();
 
-    // TODO #4  void delete (S)
+    /**
+     * Deletes the given node, nodes without id are ignored
+     *
+     * @param node node to be deleted
+     */
+    void delete(S node);
 
     /**
      * Deletes all science.neo4j.nodes in neo4j that are of type S
      */
     void deleteAll();
 
-    // TODO #4 void deleteAll(Iterable<? extends T) entities)
+    /**
+     * Deletes the given nodes with one statement, nodes without id are ignored
+     *
+     * @param nodes nodes to be deleted
+     */
+    void deleteAll(Iterable<? extends S> nodes);
 
-    // TODO #4 void deleteById(ID id)
+    /**
+     * Deletes the node with the given id, if it exists
+     *
+     * @param id id of node
+     */
+    void deleteById(ID id);
 
-    // TODO #4 boolean existsById(ID id)
+    /**
+     * Checks if a node of type S with the given id exists, without loading it
+     *
+     * @param id id of node
+     * @return true if the node exists
+     */
+    boolean existsById(ID id);
 
     /**
      * Returns all node in neo4j that are of type S
@@ -45,7 +71,13 @@ public interface Neo4jRepository<S, ID> {
         return StreamSupport.stream(findAll().spliterator(), false);
     }
 
-    // TODO #4 Iterable<T> findAllById(Iterable<ID> ids)
+    /**
+     * Returns the nodes with the given ids with one query, ids without node are skipped
+     *
+     * @param ids ids of the nodes
+     * @return the found nodes
+     */
+    Iterable<S> findAllById(Iterable<ID> ids);
 
     /**
      * Returns the node with the given id, or null if no such node exists
@@ -13,6 +13,7 @@ import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -45,7 +46,7 @@ public class ClassInformation {
     /**
      * Class info that was already loaded will not be rebuilt
      */
-    private static Map<String, ClassInformation> classInfo = new HashMap<>();
+    private static Map<String, ClassInformation> classInfo = new ConcurrentHashMap<>();
 
     /**
      * Repository currently asking for Class Information. Used to auto-inject auto generated repositories.
@@ -495,10 +496,30 @@ public class ClassInformation {
      * @return cast result
      */
     protected Object cast(Long id, Map<String, Object> value, List<org.neo4j.driver.types.Relationship> relationships, List<Node> children, Map<Long, Object> nodes) {
+        Object result;
         try {
             // create node
-            Object result = clazz.newInstance();
+            result = clazz.newInstance();
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            throw new IllegalStateException(e);
+        }
+        return fill(result, id, value, relationships, children, nodes);
+    }
 
+    /**
+     * Sets the fields and relationships of a java object from a database node or relationship
+     *
+     * @param result        the java object, e.g. one that was cast before without its relationships
+     * @param id            java object will be asigned to
+     * @param value         map of values contained in the node
+     * @param relationships relationships in the subtree
+     * @param children      nodes not yet cast in the subtree
+     * @param nodes         nodes already cast in the subtree
+     * @return the java object
+     */
+    protected Object fill(Object result, Long id, Map<String, Object> value, List<org.neo4j.driver.types.Relationship> relationships, List<Node> children, Map<Long, Object> nodes) {
+        try {
             // move node to cast-nodes -> Do NOT remove from children, as we may need this for namespace casting
             nodes.put(id, result);
 
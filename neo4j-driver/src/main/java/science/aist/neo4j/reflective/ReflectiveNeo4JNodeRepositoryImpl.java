@@ -2,7 +2,12 @@ package science.aist.neo4j.reflective;
 
 import science.aist.neo4j.repository.AbstractNeo4JNodeRepositoyImpl;
 import science.aist.neo4j.repository.AbstractNeo4JRepository;
+import science.aist.neo4j.repository.GraphWrite;
+import science.aist.neo4j.transaction.IdentityMap;
 import science.aist.neo4j.transaction.TransactionManager;
+import science.aist.neo4j.util.Pair;
+import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Transaction;
 import org.neo4j.driver.Value;
 import org.neo4j.driver.Values;
 import org.neo4j.driver.types.Node;
@@ -11,6 +16,7 @@ import org.neo4j.driver.types.Relationship;
 import java.lang.reflect.ParameterizedType;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
 /**
@@ -73,6 +79,15 @@ public class ReflectiveNeo4JNodeRepositoryImpl<S> extends AbstractNeo4JNodeRepos
         }
     }
 
+    @Override
+    protected void init(String className, String labels) {
+        super.init(className, labels);
+        // build the statements of all known relationship types up front
+        info.relationships.values().stream()
+            .filter(x -> x.getType() != null)
+            .forEach(x -> relationshipStatements(x.getType()));
+    }
+
     @Override
     protected S cast(Value value, Value rels, Value nodes) {
         List<Relationship> relationships = new ArrayList<>();
@@ -90,7 +105,52 @@ public class ReflectiveNeo4JNodeRepositoryImpl<S> extends AbstractNeo4JNodeRepos
             nodes.values().forEach(x -> children.add(x.asNode()));
         }
 
-        return (S) info.cast(value.asNode(), relationships, children, new HashMap<>());
+        Node root = value.asNode();
+        IdentityMap identityMap = getTransactionManager() == null ? null : getTransactionManager().getIdentityMap();
+        // known nodes are not completed with deeper relationships, so subtrees are cast without the identity map
+        if (identityMap != null && relationships.stream().allMatch(x -> x.startNodeId() == root.id())) {
+            return castShared(identityMap, root, relationships, children, rels != null && !rels.isNull());
+        }
+        return (S) info.cast(root, relationships, children, new HashMap<>());
+    }
+
+    /**
+     * Casts a node with the objects of the identity map, so it is the same object as every other load of the node
+     * in the transaction
+     *
+     * @param identityMap       the identity map of the transaction
+     * @param root              the node
+     * @param relationships     the outgoing relationships of the node
+     * @param children          the node and the related nodes
+     * @param withRelationships true if the relationships of the node were loaded
+     * @return the object of the node
+     */
+    @SuppressWarnings("unchecked")
+    private S castShared(IdentityMap identityMap, Node root, List<Relationship> relationships, List<Node> children, boolean withRelationships) {
+        Object existing = identityMap.get(root.id());
+        S node;
+        if (existing == null) {
+            node = (S) info.cast(root, relationships, children, identityMap.getObjects());
+        } else if (!clazz.isInstance(existing)) {
+            // loaded as an object of another class before, e.g. by the repository of a super class
+            return (S) info.cast(root, relationships, children, new HashMap<>());
+        } else if (withRelationships && !identityMap.isComplete(root.id())) {
+            // loaded as a related node before, so its relationships are missing
+            node = (S) info.fill(existing, root.id(), root.asMap(), relationships, children, identityMap.getObjects());
+        } else {
+            node = (S) existing;
+        }
+        if (withRelationships) {
+            identityMap.markComplete(root.id());
+        }
+        return node;
+    }
+
+    @Override
+    protected S findCached(Long id) {
+        IdentityMap identityMap = id == null || getTransactionManager() == null ? null : getTransactionManager().getIdentityMap();
+        Object node = identityMap == null ? null : identityMap.getComplete(id);
+        return clazz.isInstance(node) ? clazz.cast(node) : null;
     }
 
     protected AbstractNeo4JRepository findRepository(RelationshipInformation information) {
@@ -112,6 +172,103 @@ public class ReflectiveNeo4JNodeRepositoryImpl<S> extends AbstractNeo4JNodeRepos
         return (Long) info.id.get(node);
     }
 
+    @Override
+    protected boolean hasRelationships(S node) {
+        ClassInformation info = node.getClass().equals(this.clazz) ? this.info : ClassInformation.constructClassInformation(node.getClass(), this.info.isNamespaceaware());
+        return !info.relationships.isEmpty();
+    }
+
+    @Override
+    protected <T extends S> void saveRecorded(List<T> nodes) {
+        if (!nodes.isEmpty() && !nodes.get(0).getClass().equals(this.clazz)) {
+            // the relationships of sub classes are only handled when the nodes are saved one by one
+            nodes.forEach(this::save);
+            return;
+        }
+        super.saveRecorded(nodes);
+    }
+
+    @Override
+    protected Collection<Object> relatedNodes(Object node) {
+        ClassInformation info = node.getClass().equals(this.clazz) ? this.info : ClassInformation.constructClassInformation(node.getClass(), this.info.isNamespaceaware());
+        List<Object> related = new ArrayList<>();
+        for (RelationshipInformation information : info.relationships.values()) {
+            Object value = information.get(node);
+            // relationship entities, maps and arrays of relationships are not followed
+            if (value == null || information.getClass() != RelationshipInformation.class || information.getTargetClassInformation() == null
+                || information.getTargetClassInformation().getType() != ClassInformation.Neo4JType.NODE) {
+                continue;
+            }
+            (information.isBulk() ? (Collection<?>) value : Collections.singletonList(value)).stream().filter(Objects::nonNull).forEach(related::add);
+        }
+        return related;
+    }
+
+    @Override
+    protected Map<String, long[]> relationshipTargets(S node) {
+        ClassInformation info = node.getClass().equals(this.clazz) ? this.info : ClassInformation.constructClassInformation(node.getClass(), this.info.isNamespaceaware());
+        Map<String, long[]> targets = new LinkedHashMap<>();
+        for (RelationshipInformation information : info.relationships.values()) {
+            Object value = information.get(node);
+            if (value == null) {
+                continue;
+            }
+            // relationship entities, maps and arrays and targets that must be saved first are handled one by one
+            if (information.getClass() != RelationshipInformation.class || information.getType() == null
+                || information.getTargetClassInformation() == null
+                || information.getTargetClassInformation().getType().equals(ClassInformation.Neo4JType.RELATIONSHIP)) {
+                return null;
+            }
+            Collection<?> values = information.isBulk() ? (Collection<?>) value : Collections.singletonList(value);
+            long[] ids = new long[values.size()];
+            int i = 0;
+            for (Object target : values) {
+                Long id = target == null ? null : (Long) information.getTargetClassInformation().getId().get(target);
+                if (id == null) {
+                    return null;
+                }
+                ids[i++] = id;
+            }
+            targets.merge(information.getType(), ids, (a, b) -> LongStream.concat(Arrays.stream(a), Arrays.stream(b)).toArray());
+        }
+        return targets;
+    }
+
+    @Override
+    protected <T extends S> GraphWrite planGraph(Collection<T> nodes) {
+        if (repositories == null) {
+            return null;
+        }
+        // the targets are objectified here instead of by their repositories, so those must use the reflective mapping
+        SavePlanner planner = new SavePlanner(info, information -> findRepository(information) instanceof ReflectiveNeo4JNodeRepositoryImpl);
+        if (!planner.plan(nodes)) {
+            return null;
+        }
+
+        // all nodes are created in one wave with one statement per label set, as relationships are only written afterwards
+        List<Object> create = planner.getCreates();
+        List<Map<String, Object>> createRows = create.stream().map(planner::objectify).collect(Collectors.toList());
+        List<GraphWrite.Statement> creates = new ArrayList<>();
+        groupByLabels(CREATE_BULK_STATEMENT, createRows).forEach((statement, indices) ->
+            creates.add(new GraphWrite.Statement(statement, rows(statement, createRows, indices), indices.stream().map(create::get).collect(Collectors.toList()))));
+
+        Map<Long, Object> latest = new TreeMap<>();
+        planner.getUpdates().forEach(x -> latest.put(planner.getId(x), x));
+        List<Map<String, Object>> updateRows = latest.values().stream().map(planner::objectify).collect(Collectors.toList());
+        List<GraphWrite.Statement> updates = new ArrayList<>();
+        groupByLabels(UPDATE_BULK_STATEMENT, updateRows).forEach((statement, indices) ->
+            updates.add(new GraphWrite.Statement(statement, rows(statement, updateRows, indices), List.of())));
+
+        Map<String, List<Pair<Object, Object>>> relationships = new LinkedHashMap<>();
+        planner.getRelationships().forEach((type, edges) -> relationships.put(relationshipStatements(type).bulkRelationship,
+            edges.stream().map(x -> new Pair<>(x.getSource(), x.getTarget())).collect(Collectors.toList())));
+        return new GraphWrite(creates, updates, new ArrayList<>(latest.keySet()), relationships, planner::getId, planner::setId);
+    }
+
+    private static Value rows(String statement, List<Map<String, Object>> rows, List<Integer> indices) {
+        return Values.parameters("nodes", indices.stream().map(i -> row(statement, rows.get(i))).toArray());
+    }
+
     @Override
     protected <T extends S> T handleRelationships(T node) {
         if (node == null) {
@@ -305,6 +462,16 @@ public class ReflectiveNeo4JNodeRepositoryImpl<S> extends AbstractNeo4JNodeRepos
         return queryAllNormalOrTyped(query, parameters, clazz, repositories);
     }
 
+    @Override
+    public <T> T query(String query, Value parameters, Class<T> clazz, AccessMode accessMode) {
+        return queryNormalOrTyped(query, parameters, clazz, accessMode, repositories);
+    }
+
+    @Override
+    public <T> Stream<T> queryAll(String query, Value parameters, Class<T> clazz, AccessMode accessMode) {
+        return queryAllNormalOrTyped(query, parameters, clazz, accessMode, repositories);
+    }
+
     /**
      * Not required as not all Nodes have relationships to other science.neo4j.nodes.
      *
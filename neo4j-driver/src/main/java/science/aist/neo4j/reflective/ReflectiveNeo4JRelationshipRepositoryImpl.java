@@ -2,6 +2,7 @@ package science.aist.neo4j.reflective;
 
 import science.aist.neo4j.repository.AbstractNeo4JRelationshipRepositoyImpl;
 import science.aist.neo4j.repository.AbstractNeo4JRepository;
+import science.aist.neo4j.transaction.IdentityMap;
 import science.aist.neo4j.transaction.TransactionManager;
 import org.neo4j.driver.Value;
 import org.springframework.beans.factory.annotation.Required;
@@ -79,7 +80,9 @@ public class ReflectiveNeo4JRelationshipRepositoryImpl<S> extends AbstractNeo4JR
 
     @Override
     protected S cast(Value value, Value source, Value target) {
-        return (S) info.cast(value.asRelationship(), source == null ? null : source.asNode(), target == null ? null : target.asNode(), new HashMap<>());
+        IdentityMap identityMap = getTransactionManager() == null ? null : getTransactionManager().getIdentityMap();
+        Map<Long, Object> castNodes = identityMap == null ? new HashMap<>() : identityMap.getObjects();
+        return (S) info.cast(value.asRelationship(), source == null ? null : source.asNode(), target == null ? null : target.asNode(), castNodes);
     }
 
     @Override
@@ -0,0 +1,199 @@
+package science.aist.neo4j.reflective;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * <p>Plans the save of an object graph. Starting with the saved nodes, the planner walks all nodes that are reachable
+ * over relationships and not saved yet, once. The result are the nodes to be created and updated, which can be written
+ * with one statement per label set, and the relationships between them grouped by type, which can be written with
+ * one statement per type once all nodes have an id. Already saved targets are only referenced, as when saving node by
+ * node.</p>
+ * <p>Only plain node relationships can be planned. Relationship entities, maps and arrays of relationships, and
+ * relationships whose target is not known in advance are still saved node by node.</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class SavePlanner {
+
+    /**
+     * Whether the labels of the nodes are namespace aware
+     */
+    private final boolean namespaceaware;
+
+    /**
+     * Relationships that may be planned, e.g. those whose targets are saved by a reflective repository
+     */
+    private final Predicate<RelationshipInformation> supported;
+
+    /**
+     * Class information per class of the visited nodes
+     */
+    private final Map<Class<?>, ClassInformation> classes = new LinkedHashMap<>();
+
+    /**
+     * All visited nodes with their class information
+     */
+    private final Map<Object, ClassInformation> visited = new IdentityHashMap<>();
+
+    /**
+     * Nodes to be created, in the order they were reached
+     */
+    private final List<Object> creates = new ArrayList<>();
+
+    /**
+     * Nodes to be updated, in the order they were reached
+     */
+    private final List<Object> updates = new ArrayList<>();
+
+    /**
+     * Relationships per type
+     */
+    private final Map<String, List<Edge>> relationships = new LinkedHashMap<>();
+
+    /**
+     * @param info      information of the class of the repository, so its relationship overrides are used
+     * @param supported relationships that may be planned
+     */
+    public SavePlanner(ClassInformation info, Predicate<RelationshipInformation> supported) {
+        this.namespaceaware = info.isNamespaceaware();
+        this.supported = supported;
+        classes.put(info.getClazz(), info);
+    }
+
+    /**
+     * Walks the graph of the given nodes
+     *
+     * @param nodes the nodes to be saved
+     * @return false if the graph contains relationships that can't be planned
+     */
+    public boolean plan(Collection<?> nodes) {
+        List<Object> pending = new ArrayList<>();
+        for (Object node : nodes) {
+            if (node != null && visit(node)) {
+                pending.add(node);
+            }
+        }
+        // breadth first, so deep graphs don't overflow the stack
+        for (int i = 0; i < pending.size(); i++) {
+            Object node = pending.get(i);
+            for (RelationshipInformation information : visited.get(node).getRelationships().values()) {
+                Object value = information.get(node);
+                if (value == null) {
+                    continue;
+                }
+                if (information.getClass() != RelationshipInformation.class || information.getType() == null
+                    || information.getTargetClassInformation() == null
+                    || information.getTargetClassInformation().getType() != ClassInformation.Neo4JType.NODE
+                    || !supported.test(information)) {
+                    return false;
+                }
+                Collection<?> targets = information.isBulk() ? (Collection<?>) value : Collections.singletonList(value);
+                for (Object target : targets) {
+                    if (target == null) {
+                        continue;
+                    }
+                    if (!visited.containsKey(target) && classOf(target).getId().get(target) == null && visit(target)) {
+                        pending.add(target);
+                    }
+                    relationships.computeIfAbsent(information.getType(), x -> new ArrayList<>()).add(new Edge(node, target));
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean visit(Object node) {
+        if (visited.containsKey(node)) {
+            return false;
+        }
+        ClassInformation info = classOf(node);
+        visited.put(node, info);
+        (info.getId().get(node) == null ? creates : updates).add(node);
+        return true;
+    }
+
+    private ClassInformation classOf(Object node) {
+        return classes.computeIfAbsent(node.getClass(), x -> ClassInformation.constructClassInformation(x, namespaceaware));
+    }
+
+    /**
+     * Objectifies a node the same way {@link ReflectiveNeo4JNodeRepositoryImpl} does
+     *
+     * @param node a planned node
+     * @return the objectified node
+     */
+    public Map<String, Object> objectify(Object node) {
+        ClassInformation info = classOf(node);
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("classNames", info.namespaceaware ? info.nsLabels : info.labels);
+        map.put("properties", info.objectifyProperties(node));
+        map.put("id", info.id.get(node));
+        return map;
+    }
+
+    /**
+     * @param node a planned node or a saved target
+     * @return id of the node
+     */
+    public Long getId(Object node) {
+        return (Long) classOf(node).getId().get(node);
+    }
+
+    /**
+     * @param node a planned node
+     * @param id   id of the node
+     */
+    public void setId(Object node, Long id) {
+        classOf(node).getId().set(node, id);
+    }
+
+    /**
+     * @return nodes to be created
+     */
+    public List<Object> getCreates() {
+        return creates;
+    }
+
+    /**
+     * @return nodes to be updated
+     */
+    public List<Object> getUpdates() {
+        return updates;
+    }
+
+    /**
+     * @return relationships per type
+     */
+    public Map<String, List<Edge>> getRelationships() {
+        return relationships;
+    }
+
+    /**
+     * A relationship from a source to a target node
+     */
+    public static class Edge {
+        private final Object source;
+        private final Object target;
+
+        private Edge(Object source, Object target) {
+            this.source = source;
+            this.target = target;
+        }
+
+        public Object getSource() {
+            return source;
+        }
+
+        public Object getTarget() {
+            return target;
+        }
+    }
+}
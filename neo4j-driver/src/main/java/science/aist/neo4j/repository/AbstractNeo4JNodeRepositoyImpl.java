@@ -1,21 +1,48 @@
 package science.aist.neo4j.repository;
 
 import science.aist.neo4j.Neo4jQueryRepository;
-import science.aist.neo4j.transaction.ResultClone;
+import science.aist.neo4j.transaction.IdentityMap;
 import science.aist.neo4j.transaction.TransactionManager;
+import science.aist.neo4j.transaction.UnitOfWork;
+import science.aist.neo4j.util.BatchLoader;
+import science.aist.neo4j.util.ChunkSizer;
+import science.aist.neo4j.util.CypherClassifier;
+import science.aist.neo4j.util.EntityCache;
+import science.aist.neo4j.util.StripedLocks;
 import science.aist.neo4j.util.ValueCast;
+import science.aist.neo4j.util.ValueCodec;
 import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Bookmark;
 import org.neo4j.driver.Result;
+import org.neo4j.driver.Transaction;
 import org.neo4j.driver.Value;
 import org.neo4j.driver.Values;
+import org.neo4j.driver.internal.types.InternalTypeSystem;
+import org.neo4j.driver.types.Node;
+import org.neo4j.driver.types.Relationship;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -36,32 +63,57 @@ public abstract class AbstractNeo4JNodeRepositoyImpl<S> extends AbstractNeo4JRep
 
     protected final static String CLASSNAME = "CLASSNAME";
 
+    /**
+     * Placeholder for the labels of the written nodes, replaced per label set (see {@link AbstractNeo4JNodeRepositoyImpl#withLabels(String, Map)})
+     */
+    protected final static String LABELS = "LABELS";
+
+    /**
+     * End of {@link AbstractNeo4JNodeRepositoyImpl#CREATE_STATEMENT}
+     */
+    private static final String RETURN_ID = " RETURN id(n)";
+
     //region CYPHER Statements
     /**
      * Create an object with all properties set
      */
-    protected String CREATE_STATEMENT = "CREATE (n $properties) WITH n, $classNames as labels CALL apoc.create.addLabels(n, labels) YIELD node RETURN id(n)";
+    protected String CREATE_STATEMENT = "CREATE (n:LABELS $properties) RETURN id(n)";
 
     /**
      * Create a list of objects with all properties set
      */
-    protected String CREATE_BULK_STATEMENT = "UNWIND $nodes as node CREATE (n) SET n = node.properties WITH n, node.classNames as labels CALL apoc.create.addLabels(n, labels) YIELD node RETURN id(n)";
+    protected String CREATE_BULK_STATEMENT = "UNWIND $nodes as node CREATE (n:LABELS) SET n = node.properties RETURN id(n)";
 
     /**
      * Update an existing object
      */
-    protected String UPDATE_STATEMENT = "MATCH (n) WHERE ID(n) = $id WITH n, $classNames as labels CALL apoc.create.addLabels(n, labels) YIELD node SET n = $properties";
+    protected String UPDATE_STATEMENT = "MATCH (n) WHERE ID(n) = $id SET n:LABELS, n = $properties";
 
     /**
      * Updates all given nodes
      */
-    protected String UPDATE_BULK_STATEMENT = "UNWIND $nodes as node MATCH (n) WHERE id(n) = node.id WITH n, $classNames as labels CALL apoc.create.addLabels(n, labels) YIELD node SET n = node.properties";
+    protected String UPDATE_BULK_STATEMENT = "UNWIND $nodes as node MATCH (n) WHERE id(n) = node.id SET n:LABELS, n = node.properties";
+
+    /**
+     * Updates the changed properties of an existing object, properties that are null are removed
+     */
+    protected String UPDATE_DELTA_STATEMENT = "MATCH (n) WHERE ID(n) = $id SET n += $properties";
+
+    /**
+     * Updates the changed properties of all given nodes
+     */
+    protected String UPDATE_DELTA_BULK_STATEMENT = "UNWIND $nodes as node MATCH (n) WHERE id(n) = node.id SET n += node.properties";
 
     /**
      * Searches object by id
      */
     protected String FIND_BY_ID_STATEMENT = "MATCH (n:CLASSNAME) WHERE ID(n) = $id OPTIONAL MATCH (n)-[r]->(c) RETURN {root: n, relationships: collect(distinct r), nodes: collect(distinct c)}";
 
+    /**
+     * Searches objects by a list of ids, derived from {@link AbstractNeo4JNodeRepositoyImpl#FIND_BY_ID_STATEMENT} on init
+     */
+    protected String FIND_BY_IDS_STATEMENT;
+
     /**
      * Searches for a given _WHERE_.
      * The _WHERE_ should be replaced with the specific statement, such as "WHERE n.fieldThatIsString CONTAINS $substring
@@ -77,7 +129,20 @@ public abstract class AbstractNeo4JNodeRepositoyImpl<S> extends AbstractNeo4JRep
      */
     protected String DELETE_ALL_STATEMENT = "MATCH (n:CLASSNAME) DETACH DELETE n";
 
-    // TODO #6 We might actually be able to update all relationships in a single statment. For that we may just have to source the relationship and targetclass into a variable. -> faster? yes no maybe so?
+    /**
+     * deletes the objects of this class with the given ids
+     */
+    protected String DELETE_BY_IDS_STATEMENT = "UNWIND $ids as id MATCH (n:CLASSNAME) WHERE ID(n) = id DETACH DELETE n";
+
+    /**
+     * Counts all objects of this class
+     */
+    protected String COUNT_STATEMENT = "MATCH (n:CLASSNAME) RETURN count(n)";
+
+    /**
+     * Checks if an object of this class with the given id exists
+     */
+    protected String EXISTS_BY_ID_STATEMENT = "MATCH (n:CLASSNAME) WHERE ID(n) = $id RETURN count(n) > 0";
 
     /**
      * Finds or creates the relationship between two existing nodes
@@ -108,6 +173,57 @@ public abstract class AbstractNeo4JNodeRepositoyImpl<S> extends AbstractNeo4JRep
 
     protected static Logger logger = LoggerFactory.getLogger(AbstractNeo4JNodeRepositoyImpl.class);
 
+    /**
+     * Collects findById calls of concurrent threads into one query, only used if its window is greater than 0.
+     * It loads the rows, so every caller casts its own object.
+     */
+    private final BatchLoader<BatchedId, Value> findByIdLoader = new BatchLoader<>(this::findRowsByIds);
+
+    /**
+     * Locks of the nodes that are updated, null if saves are not locked in process
+     */
+    private StripedLocks nodeLocks;
+
+    /**
+     * Adapts the chunks of {@link AbstractNeo4JNodeRepositoyImpl#saveAllChunked(Stream)}
+     */
+    private ChunkSizer chunkSizer = new ChunkSizer();
+
+    /**
+     * Notified after every chunk of {@link AbstractNeo4JNodeRepositoyImpl#saveAllChunked(Stream)}, may be null
+     */
+    private SaveProgressListener saveProgressListener;
+
+    /**
+     * Persisted state of the recently loaded and saved nodes, null if dirty tracking is disabled
+     */
+    private NodeSnapshots snapshots;
+
+    /**
+     * Loaded rows of {@link AbstractNeo4JNodeRepositoyImpl#findById(Long)} shared across transactions, null if not cached
+     */
+    private EntityCache<Value> entityCache;
+
+    /**
+     * Loaded rows of {@link AbstractNeo4JNodeRepositoyImpl#findSubtree(Long)} shared across transactions, null if not cached
+     */
+    private EntityCache<Value> subtreeCache;
+
+    /**
+     * Relationship statements per relationship type
+     */
+    private final Map<String, RelationshipStatements> relationshipStatements = new ConcurrentHashMap<>();
+
+    /**
+     * Statements that write a node together with its relationships, per create or update and relationship types
+     */
+    private final Map<String, Map<List<String>, String>> nodeWithRelationshipsStatements = new ConcurrentHashMap<>();
+
+    /**
+     * Statements with the placeholder {@link AbstractNeo4JNodeRepositoyImpl#LABELS} replaced, per statement and label set
+     */
+    private final Map<String, Map<List<String>, String>> labeledStatements = new ConcurrentHashMap<>();
+
     //endregion
 
 
@@ -120,6 +236,7 @@ public abstract class AbstractNeo4JNodeRepositoyImpl<S> extends AbstractNeo4JRep
      */
     protected AbstractNeo4JNodeRepositoyImpl(TransactionManager manager) {
         super(manager);
+        findByIdLoader.setWindowMillis(0);
     }
 
     protected AbstractNeo4JNodeRepositoyImpl(TransactionManager manager, String className) {
@@ -131,37 +248,145 @@ public abstract class AbstractNeo4JNodeRepositoyImpl<S> extends AbstractNeo4JRep
     protected void init(String className, String labels) {
         this.className = className;
         FIND_BY_ID_STATEMENT = FIND_BY_ID_STATEMENT.replace(CLASSNAME, className);
+        FIND_BY_IDS_STATEMENT = "UNWIND $ids as id " + FIND_BY_ID_STATEMENT.replace("$id", "id");
         FIND_ALL_STATEMENT = FIND_ALL_STATEMENT.replace(CLASSNAME, className);
         DELETE_ALL_STATEMENT = DELETE_ALL_STATEMENT.replace(CLASSNAME, className);
+        DELETE_BY_IDS_STATEMENT = DELETE_BY_IDS_STATEMENT.replace(CLASSNAME, className);
+        COUNT_STATEMENT = COUNT_STATEMENT.replace(CLASSNAME, className);
+        EXISTS_BY_ID_STATEMENT = EXISTS_BY_ID_STATEMENT.replace(CLASSNAME, className);
         FIND_BY_WHERE_STATEMENT = FIND_BY_WHERE_STATEMENT.replace(CLASSNAME, className);
         FIND_SUBTREE_STATEMENT = FIND_SUBTREE_STATEMENT.replace(CLASSNAME, className);
     }
 
+    /**
+     * gets value of field {@link AbstractNeo4JNodeRepositoyImpl#className}
+     *
+     * @return value of field className
+     * @see AbstractNeo4JNodeRepositoyImpl#className
+     */
+    protected String getClassName() {
+        return className;
+    }
+
+    /**
+     * Collects the findById calls outside of a transaction that arrive within the window into one query.
+     * 0 (the default) runs every call on its own.
+     *
+     * @param findByIdBatchWindowMillis milliseconds a call waits for further calls
+     */
+    public void setFindByIdBatchWindowMillis(long findByIdBatchWindowMillis) {
+        findByIdLoader.setWindowMillis(findByIdBatchWindowMillis);
+    }
+
+    /**
+     * Maximum number of findById calls that are collected into one query
+     *
+     * @param findByIdBatchSize maximum number of ids per query
+     */
+    public void setFindByIdBatchSize(int findByIdBatchSize) {
+        findByIdLoader.setMaxBatchSize(findByIdBatchSize);
+    }
+
+    /**
+     * sets value of field {@link AbstractNeo4JNodeRepositoyImpl#nodeLocks}
+     *
+     * @param nodeLocks value of field nodeLocks
+     * @see AbstractNeo4JNodeRepositoyImpl#nodeLocks
+     */
+    public void setNodeLocks(StripedLocks nodeLocks) {
+        this.nodeLocks = nodeLocks;
+    }
+
+    /**
+     * sets value of field {@link AbstractNeo4JNodeRepositoyImpl#chunkSizer}
+     *
+     * @param chunkSizer value of field chunkSizer
+     * @see AbstractNeo4JNodeRepositoyImpl#chunkSizer
+     */
+    public void setChunkSizer(ChunkSizer chunkSizer) {
+        this.chunkSizer = chunkSizer;
+    }
+
+    /**
+     * sets value of field {@link AbstractNeo4JNodeRepositoyImpl#saveProgressListener}
+     *
+     * @param saveProgressListener value of field saveProgressListener
+     * @see AbstractNeo4JNodeRepositoyImpl#saveProgressListener
+     */
+    public void setSaveProgressListener(SaveProgressListener saveProgressListener) {
+        this.saveProgressListener = saveProgressListener;
+    }
+
+    /**
+     * Enables dirty tracking: the persisted state of up to maxSnapshots recently loaded or saved nodes is kept, and
+     * saves of these nodes only write the changed properties and the new relationships, or nothing if nothing changed.
+     * Only enable it if the nodes are not changed in the database by anyone else.
+     *
+     * @param maxSnapshots maximum number of nodes whose state is kept, 0 disables dirty tracking
+     */
+    public void setMaxSnapshots(int maxSnapshots) {
+        this.snapshots = maxSnapshots > 0 ? new NodeSnapshots(maxSnapshots) : null;
+    }
+
+    /**
+     * Caches the nodes loaded by {@link AbstractNeo4JNodeRepositoyImpl#findById(Long)} across transactions, e.g. for
+     * configuration or type nodes that are read often. Every call returns new objects, so changing them does not
+     * change the cache. Nodes are only cached when they are loaded outside of a transaction, and are removed when they
+     * are saved or deleted by this repository. The related nodes of a cached node are not updated when they are
+     * saved by another repository, so only cache nodes that are changed by this repository alone.
+     *
+     * @param entityCache cache of this repository, e.g. {@link EntityCache#ofValues(int, long)}, null disables it
+     */
+    public void setEntityCache(EntityCache<Value> entityCache) {
+        this.entityCache = entityCache;
+    }
+
+    /**
+     * Caches the subtrees loaded by {@link AbstractNeo4JNodeRepositoyImpl#findSubtree(Long)} across transactions, like
+     * {@link AbstractNeo4JNodeRepositoyImpl#setEntityCache(EntityCache)}. As a subtree contains any number of nodes,
+     * the cache is cleared whenever this repository saves or deletes a node.
+     *
+     * @param subtreeCache cache of this repository, e.g. {@link EntityCache#ofValues(int, long)}, null disables it
+     */
+    public void setSubtreeCache(EntityCache<Value> subtreeCache) {
+        this.subtreeCache = subtreeCache;
+    }
+
     //endregion
 
     @SuppressWarnings({"unchecked"})
     protected <X> X queryNormalOrTyped(String query, Value parameters, Class<X> clazz, Map<Class, AbstractNeo4JRepository> repositories) {
+        return queryNormalOrTyped(query, parameters, clazz, CypherClassifier.classify(query), repositories);
+    }
+
+    @SuppressWarnings({"unchecked"})
+    protected <X> X queryNormalOrTyped(String query, Value parameters, Class<X> clazz, AccessMode accessMode, Map<Class, AbstractNeo4JRepository> repositories) {
         if (repositories.containsKey(clazz)) {
             AbstractNeo4JRepository abstractNeo4JRepository = repositories.get(clazz);
             if (abstractNeo4JRepository instanceof AbstractNeo4JNodeRepositoyImpl) {
-                return (X) ((AbstractNeo4JNodeRepositoyImpl) abstractNeo4JRepository).queryTyped(query, parameters);
+                return (X) ((AbstractNeo4JNodeRepositoyImpl) abstractNeo4JRepository).queryTyped(query, parameters, accessMode);
             }
         }
 
-        return queryHelp(query, parameters, clazz);
+        return queryHelp(query, parameters, clazz, accessMode);
     }
 
     @SuppressWarnings({"unchecked"})
     protected <X> Stream<X> queryAllNormalOrTyped(String query, Value parameters, Class<X> clazz, Map<Class, AbstractNeo4JRepository> repositories) {
+        return queryAllNormalOrTyped(query, parameters, clazz, CypherClassifier.classify(query), repositories);
+    }
+
+    @SuppressWarnings({"unchecked"})
+    protected <X> Stream<X> queryAllNormalOrTyped(String query, Value parameters, Class<X> clazz, AccessMode accessMode, Map<Class, AbstractNeo4JRepository> repositories) {
         if (repositories.containsKey(clazz)) {
             AbstractNeo4JRepository abstractNeo4JRepository = repositories.get(clazz);
             if (abstractNeo4JRepository instanceof AbstractNeo4JNodeRepositoyImpl) {
-                Iterable iterable = ((AbstractNeo4JNodeRepositoyImpl) abstractNeo4JRepository).queryAllTyped(query, parameters);
+                Iterable iterable = ((AbstractNeo4JNodeRepositoyImpl) abstractNeo4JRepository).queryAllTyped(query, parameters, accessMode);
                 return StreamSupport.stream(iterable.spliterator(), false);
             }
         }
 
-        return queryAllHelp(query, parameters, clazz);
+        return queryAllHelp(query, parameters, clazz, accessMode);
     }
 
     @Override
@@ -169,11 +394,20 @@ public abstract class AbstractNeo4JNodeRepositoyImpl<S> extends AbstractNeo4JRep
         return queryHelp(query, parameters, clazz);
     }
 
+    @Override
+    public <T> T query(String query, Value parameters, Class<T> clazz, AccessMode accessMode) {
+        return queryHelp(query, parameters, clazz, accessMode);
+    }
+
     protected <T> T queryHelp(String query, Value parameters, Class<T> clazz) {
+        return queryHelp(query, parameters, clazz, CypherClassifier.classify(query));
+    }
+
+    protected <T> T queryHelp(String query, Value parameters, Class<T> clazz, AccessMode accessMode) {
         if (clazz.getSimpleName().equals(className)) {
-            return clazz.cast(queryTyped(query, parameters));
+            return clazz.cast(queryTyped(query, parameters, accessMode));
         } else {
-            Result statementResult = getTransactionManager().executeWrite(transaction -> transaction.run(query, parameters));
+            Result statementResult = getTransactionManager().execute(transaction -> transaction.run(query, parameters), accessMode);
             if (!statementResult.hasNext())
                 return null;
             return ValueCast.castToJavaLang(statementResult.next().get(0), clazz);
@@ -185,12 +419,21 @@ public abstract class AbstractNeo4JNodeRepositoyImpl<S> extends AbstractNeo4JRep
         return queryAllHelp(query, parameters, clazz);
     }
 
+    @Override
+    public <T> Stream<T> queryAll(String query, Value parameters, Class<T> clazz, AccessMode accessMode) {
+        return queryAllHelp(query, parameters, clazz, accessMode);
+    }
+
     protected <T> Stream<T> queryAllHelp(String query, Value parameters, Class<T> clazz) {
+        return queryAllHelp(query, parameters, clazz, CypherClassifier.classify(query));
+    }
+
+    protected <T> Stream<T> queryAllHelp(String query, Value parameters, Class<T> clazz, AccessMode accessMode) {
         if (clazz.getSimpleName().equals(className)) {
-            return ValueCast.cast(StreamSupport.stream(queryAllTyped(query, parameters).spliterator(), false));
+            return ValueCast.cast(StreamSupport.stream(queryAllTyped(query, parameters, accessMode).spliterator(), false));
         } else {
-            return getTransactionManager().executeWrite(transaction -> {
-                Result result = new ResultClone(transaction.run(query, parameters));
+            return getTransactionManager().execute(transaction -> {
+                Result result = getTransactionManager().cloneResult(transaction.run(query, parameters));
                 Iterable<T> it = () -> new Iterator<T>() {
                     public boolean hasNext() {
                         return result.hasNext();
@@ -201,7 +444,7 @@ public abstract class AbstractNeo4JNodeRepositoyImpl<S> extends AbstractNeo4JRep
                     }
                 };
                 return StreamSupport.stream(it.spliterator(), false);
-            });
+            }, accessMode);
         }
     }
 
@@ -218,6 +461,31 @@ public abstract class AbstractNeo4JNodeRepositoyImpl<S> extends AbstractNeo4JRep
      */
     protected abstract S cast(Value value, Value relationships, Value nodes);
 
+    /**
+     * Casts a loaded node and remembers its persisted state, if dirty tracking is enabled
+     *
+     * @param value         the node
+     * @param relationships outgoing relationships of the node, null if they were not loaded
+     * @param nodes         the related nodes
+     * @return the object
+     */
+    private S loaded(Value value, Value relationships, Value nodes) {
+        S node = cast(value, relationships, nodes);
+        NodeSnapshots snapshots = this.snapshots;
+        if (snapshots != null && node != null && value != null && value.hasType(InternalTypeSystem.TYPE_SYSTEM.NODE())) {
+            Node persisted = value.asNode();
+            Map<String, long[]> targets = null;
+            if (relationships != null && !relationships.isNull()) {
+                targets = relationships.asList(Value::asRelationship).stream()
+                    .filter(x -> x.startNodeId() == persisted.id())
+                    .collect(Collectors.groupingBy(Relationship::type, Collectors.collectingAndThen(Collectors.toList(),
+                        x -> x.stream().mapToLong(Relationship::endNodeId).toArray())));
+            }
+            snapshots.put(persisted.id(), persisted.asMap(x -> x), targets);
+        }
+        return node;
+    }
+
     /**
      * Helper method for setting the id when a node was stored to the database
      *
@@ -255,6 +523,39 @@ public abstract class AbstractNeo4JNodeRepositoyImpl<S> extends AbstractNeo4JRep
      */
     protected abstract <T extends S> Collection<T> handleRelationships(Collection<T> nodes);
 
+    /**
+     * Checks if saving the node must also save relationships (see {@link AbstractNeo4JNodeRepositoyImpl#handleRelationships(Object)}).
+     * Implementations that can't tell should return true.
+     *
+     * @param node to be saved
+     * @return true if the node has relationships to be saved
+     */
+    protected boolean hasRelationships(S node) {
+        return true;
+    }
+
+    /**
+     * Collects the targets of the outgoing relationships of a node, if they can be merged by the same statement that
+     * writes the node. This is only possible if all targets are saved already.
+     *
+     * @param node to be saved
+     * @return ids of the targets per relationship type, null if the relationships must be saved with
+     * {@link AbstractNeo4JNodeRepositoyImpl#handleRelationships(Object)}
+     */
+    protected Map<String, long[]> relationshipTargets(S node) {
+        return null;
+    }
+
+    /**
+     * Collects the nodes a node has outgoing relationships to, e.g. to track all objects of a loaded graph
+     *
+     * @param node a node of this repository or one reachable from it
+     * @return the related nodes, empty if the mapping of the node does not tell
+     */
+    protected Collection<Object> relatedNodes(Object node) {
+        return Collections.emptyList();
+    }
+
     /**
      * Turns all properties of a Node into something to be used by the queries
      *
@@ -281,7 +582,7 @@ public abstract class AbstractNeo4JNodeRepositoyImpl<S> extends AbstractNeo4JRep
             Result result = transaction.run(query, parameters);
             if (result.hasNext()) {
                 Value r = result.next().get(0);
-                return cast(r.get("root"), r.get("relationships"), r.get("nodes"));
+                return loaded(r.get("root"), r.get("relationships"), r.get("nodes"));
             }
             return null;
         }, accessMode);
@@ -297,7 +598,7 @@ public abstract class AbstractNeo4JNodeRepositoyImpl<S> extends AbstractNeo4JRep
      */
     protected Iterable<S> executeAll(String query, Value parameters, AccessMode accessMode) {
         return getTransactionManager().execute(transaction -> {
-            Result result = new ResultClone(transaction.run(query, parameters));
+            Result result = getTransactionManager().cloneResult(transaction.run(query, parameters));
             return () -> new Iterator<S>() {
                 @Override
                 public boolean hasNext() {
@@ -307,12 +608,89 @@ public abstract class AbstractNeo4JNodeRepositoyImpl<S> extends AbstractNeo4JRep
                 @Override
                 public S next() {
                     Value r = result.next().get(0);
-                    return cast(r.get("root"), r.get("relationships"), r.get("nodes"));
+                    return loaded(r.get("root"), r.get("relationships"), r.get("nodes"));
                 }
             };
         }, accessMode);
     }
 
+    /**
+     * Loads a node through a cache of the loaded rows. A row is cast into new objects on every call, and only stored
+     * if it was loaded outside of a transaction, so it holds committed state.
+     *
+     * @param cache the cache
+     * @param query to be run with the parameter id, if the row is not cached
+     * @param id    id of the node
+     * @return the node, null if it does not exist
+     */
+    private S executeCached(EntityCache<Value> cache, String query, Long id) {
+        Value row = cache.get(id);
+        if (row == null) {
+            boolean committed = !getTransactionManager().isTransactionActive();
+            // taken before loading, so a node that is invalidated while it is loaded is not cached in its old state
+            long generation = cache.generation(id);
+            row = getTransactionManager().execute(transaction -> {
+                Result result = transaction.run(query, Values.parameters("id", id));
+                return result.hasNext() ? result.next().get(0) : null;
+            }, AccessMode.READ);
+            if (row == null) {
+                return null;
+            }
+            if (committed) {
+                cache.put(id, row, generation);
+            }
+        }
+        return loaded(row.get("root"), row.get("relationships"), row.get("nodes"));
+    }
+
+    /**
+     * Removes saved or deleted nodes from the caches of this repository now and again once the active transaction is
+     * committed, as until then other transactions still read and may cache the previous state
+     *
+     * @param ids ids of the nodes
+     */
+    private void invalidateWritten(Collection<Long> ids) {
+        invalidateCached(ids);
+        getTransactionManager().onCommit(() -> invalidateCached(ids));
+    }
+
+    /**
+     * Removes saved or deleted nodes from the caches and the dirty tracking snapshots of this repository. Every path
+     * that writes nodes must call it, otherwise a later save computes its changes against an outdated snapshot.
+     *
+     * @param ids ids of the nodes
+     */
+    protected void invalidateCached(Collection<Long> ids) {
+        EntityCache<Value> entityCache = this.entityCache;
+        if (entityCache != null) {
+            ids.forEach(entityCache::invalidate);
+        }
+        NodeSnapshots snapshots = this.snapshots;
+        if (snapshots != null) {
+            ids.forEach(snapshots::remove);
+        }
+        EntityCache<Value> subtreeCache = this.subtreeCache;
+        if (subtreeCache != null && !ids.isEmpty()) {
+            subtreeCache.clear();
+        }
+    }
+
+    /**
+     * Helper function that executes a given queryTyped and casts the records lazily while the stream is read.
+     * The transaction stays open until the stream is read completely or closed.
+     *
+     * @param query      to be run
+     * @param parameters to be added to the queryTyped
+     * @param accessMode mode to execute the query
+     * @return stream that must be closed if not read until the end
+     */
+    protected Stream<S> executeStream(String query, Value parameters, AccessMode accessMode) {
+        return getTransactionManager().stream(transaction -> transaction.run(query, parameters), accessMode).stream(record -> {
+            Value r = record.get(0);
+            return loaded(r.get("root"), r.get("relationships"), r.get("nodes"));
+        });
+    }
+
     //endregion
 
     //region Relationships
@@ -329,7 +707,7 @@ public abstract class AbstractNeo4JNodeRepositoyImpl<S> extends AbstractNeo4JRep
         if (targetClass == null || relationshipName == null || sourceId == null) {
             throw new InvalidParameterException("targetClass, relationShipName and sourceId MUST be set");
         }
-        getTransactionManager().runWrite(transaction -> transaction.run(RELATIONSHIP_STATEMENT.replace("RELATIONSHIP", relationshipName),
+        getTransactionManager().runWrite(transaction -> transaction.run(relationshipStatements(relationshipName).relationship,
             Values.parameters("id1", sourceId, "id2", targetId)).consume());
     }
 
@@ -345,8 +723,10 @@ public abstract class AbstractNeo4JNodeRepositoyImpl<S> extends AbstractNeo4JRep
         if (targetClass == null || relationshipName == null || sourceId == null) {
             throw new InvalidParameterException("targetClass, relationShipName and sourceId MUST be set");
         }
-        getTransactionManager().runWrite(transaction -> transaction.run(RELATIONSHIP_BULK_STATEMENT.replace("RELATIONSHIP", relationshipName),
-            Values.parameters("id", sourceId, "targets", targetIds)).consume());
+        long[] sortedTargetIds = targetIds.clone();
+        Arrays.sort(sortedTargetIds);
+        getTransactionManager().runWrite(transaction -> transaction.run(relationshipStatements(relationshipName).relationshipBulk,
+            Values.parameters("id", sourceId, "targets", sortedTargetIds)).consume());
         // TODO #2 Delete all Relationships that are in the DB but NOT in the relationship. -> low priority as we do not delete while logging
     }
 
@@ -362,8 +742,9 @@ public abstract class AbstractNeo4JNodeRepositoyImpl<S> extends AbstractNeo4JRep
             throw new InvalidParameterException("targetClass, relationShipName and tuples MUST be set");
         }
 
-        getTransactionManager().runWrite(transaction -> transaction.run(BULK_RELATIONSHIP_STATEMENT.replace("RELATIONSHIP", relationshipName),
-            Values.parameters("tuples", tuples)).consume());
+        List<Value> sortedTuples = sortById(tuples.asList(x -> x), x -> x.get("source"), x -> x.get("target"));
+        getTransactionManager().runWrite(transaction -> transaction.run(relationshipStatements(relationshipName).bulkRelationship,
+            Values.parameters("tuples", sortedTuples)).consume());
         // TODO #2 Handle Deletes
     }
 
@@ -378,61 +759,659 @@ public abstract class AbstractNeo4JNodeRepositoyImpl<S> extends AbstractNeo4JRep
         if (targetClass == null || relationshipName == null || sources == null) {
             throw new InvalidParameterException("targetClass, relationShipName and sources MUST be set");
         }
-        getTransactionManager().runWrite(transaction -> transaction.run(BULK_RELATIONSHIP_BULK_STATEMENT.replace("RELATIONSHIP", relationshipName),
-            Values.parameters("sources", sources)).consume());
+        List<Value> sortedSources = sortById(sources.asList(source -> {
+            Map<String, Value> map = new HashMap<>(source.asMap(x -> x));
+            map.put("targets", Values.value(sortById(source.get("targets").asList(x -> x), x -> x)));
+            return Values.value(map);
+        }), x -> x.get("id"));
+        getTransactionManager().runWrite(transaction -> transaction.run(relationshipStatements(relationshipName).bulkRelationshipBulk,
+            Values.parameters("sources", sortedSources)).consume());
         // TODO #2 Delete all Relationships that are in the DB but NOT in the relationship. -> low priority as we do not delete while logging
     }
 
+    /**
+     * Returns the statements of a relationship type, they are only built on the first use of the type
+     *
+     * @param relationshipName type of the relationship
+     * @return the statements of the relationship type
+     */
+    protected RelationshipStatements relationshipStatements(String relationshipName) {
+        return relationshipStatements.computeIfAbsent(relationshipName, RelationshipStatements::new);
+    }
+
+    /**
+     * The relationship statements with the relationship type filled in
+     */
+    protected class RelationshipStatements {
+        /**
+         * {@link AbstractNeo4JNodeRepositoyImpl#RELATIONSHIP_STATEMENT} of the type
+         */
+        public final String relationship;
+
+        /**
+         * {@link AbstractNeo4JNodeRepositoyImpl#RELATIONSHIP_BULK_STATEMENT} of the type
+         */
+        public final String relationshipBulk;
+
+        /**
+         * {@link AbstractNeo4JNodeRepositoyImpl#BULK_RELATIONSHIP_STATEMENT} of the type
+         */
+        public final String bulkRelationship;
+
+        /**
+         * {@link AbstractNeo4JNodeRepositoyImpl#BULK_RELATIONSHIP_BULK_STATEMENT} of the type
+         */
+        public final String bulkRelationshipBulk;
+
+        private RelationshipStatements(String relationshipName) {
+            relationship = RELATIONSHIP_STATEMENT.replace("RELATIONSHIP", relationshipName);
+            relationshipBulk = RELATIONSHIP_BULK_STATEMENT.replace("RELATIONSHIP", relationshipName);
+            bulkRelationship = BULK_RELATIONSHIP_STATEMENT.replace("RELATIONSHIP", relationshipName);
+            bulkRelationshipBulk = BULK_RELATIONSHIP_BULK_STATEMENT.replace("RELATIONSHIP", relationshipName);
+        }
+    }
+
+    /**
+     * Sorts the elements of an UNWIND parameter by the ids they lock, so concurrent transactions lock the nodes in
+     * the same order instead of deadlocking each other
+     *
+     * @param values the elements
+     * @param ids    extract the ids of an element, by priority
+     * @return the sorted elements
+     */
+    @SafeVarargs
+    protected static List<Value> sortById(List<Value> values, Function<Value, Value>... ids) {
+        Comparator<Value> comparator = null;
+        for (Function<Value, Value> id : ids) {
+            Comparator<Value> next = Comparator.comparingLong(x -> id.apply(x).isNull() ? -1 : id.apply(x).asLong());
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        List<Value> sorted = new ArrayList<>(values);
+        sorted.sort(comparator);
+        return sorted;
+    }
+
     // endregion
 
+    /**
+     * Assigns the id of a newly created node. The id is removed again if the transaction is rolled back,
+     * so a retried save creates the node again instead of updating one that does not exist.
+     *
+     * @param node the created node
+     * @param id   the id assigned by the database
+     * @param <T>  extension of S
+     */
+    protected <T extends S> void setCreatedId(T node, Long id) {
+        setId(node, id);
+        getTransactionManager().onRollback(() -> setId(node, null));
+    }
+
     // region Neo4JRepository
 
+    /**
+     * Records the node in the unit of work of the active transaction, if there is one
+     *
+     * @param node the node to be saved
+     * @param <T>  extension of S
+     * @return true if the node was recorded and must not be written now
+     */
+    protected <T extends S> boolean recordSave(T node) {
+        UnitOfWork unitOfWork = getTransactionManager().getUnitOfWork();
+        if (unitOfWork == null) {
+            return false;
+        }
+        // nodes of the same class share their labels, so they are written with the same bulk statements
+        unitOfWork.register(List.of(this, node.getClass()), node, this::saveRecorded);
+        return true;
+    }
+
+    /**
+     * Writes nodes of the same class that were recorded in a unit of work
+     *
+     * @param nodes the recorded nodes
+     * @param <T>   extension of S
+     */
+    protected <T extends S> void saveRecorded(List<T> nodes) {
+        saveAll(nodes);
+    }
+
     @Override
     public <T extends S> T save(final T node) {
-        return getTransactionManager().executeWrite(transaction -> {
+        if (recordSave(node)) {
+            return node;
+        }
+        Long id = getId(node);
+        T saved = lockedWrite(id == null ? new long[0] : new long[]{id}, () -> getTransactionManager().executeWrite(transaction -> {
+            Map<String, long[]> targets = relationshipTargets(node);
+            // taken before the invalidation, which drops the snapshot
+            NodeSnapshots.Snapshot snapshot = snapshots == null || id == null || targets == null ? null : snapshots.get(id);
+            if (id != null) {
+                invalidateWritten(List.of(id));
+            }
+            if (snapshot != null) {
+                return saveChanges(transaction, node, snapshot, targets);
+            }
+            if (targets == null && saveGraph(transaction, Collections.singletonList(node))) {
+                return node;
+            }
             Map<String, Object> properties = objectify(node);
+            if (targets != null && CREATE_STATEMENT.endsWith(RETURN_ID)) {
+                saveWithRelationships(transaction, node, properties, targets);
+                remember(getId(node), properties, targets);
+                return node;
+            }
             if (properties.get("id") == null) {
-                setId(node, transaction.run(CREATE_STATEMENT, properties).single().get(0).asLong());
+                setCreatedId(node, transaction.run(withLabels(CREATE_STATEMENT, properties), row(CREATE_STATEMENT, properties)).single().get(0).asLong());
             } else {
-                transaction.run(UPDATE_STATEMENT, properties).consume();
+                transaction.run(withLabels(UPDATE_STATEMENT, properties), row(UPDATE_STATEMENT, properties)).consume();
             }
             T res = handleRelationships(node);
+            remember(getId(node), properties, null);
 
             return res;
+        }));
+        return saved;
+    }
+
+    /**
+     * Saves the given nodes, all unsaved nodes reachable from them and the relationships between them with a number of
+     * statements that does not depend on the size or depth of the graph, if the mapping of the nodes allows it.
+     * Otherwise the nodes are saved one repository and relationship after the other.
+     *
+     * @param transaction the transaction
+     * @param nodes       the nodes to be saved
+     * @param <T>         extension of S
+     * @return true if the nodes were saved, false if they must be saved with {@link AbstractNeo4JNodeRepositoyImpl#handleRelationships(Object)}
+     */
+    protected <T extends S> boolean saveGraph(Transaction transaction, Collection<T> nodes) {
+        GraphWrite write = planGraph(nodes);
+        if (write == null || !write.hasRelationships()) {
+            return false;
+        }
+        for (GraphWrite.Statement create : write.getCreates()) {
+            Result result = transaction.run(create.getText(), create.getParameters());
+            create.getNodes().forEach(x -> write.created(x, result.next().get(0).asLong()));
+        }
+        // the ids are needed by the caller within the transaction, so they are assigned right away
+        write.assignIds();
+        getTransactionManager().onRollback(write::resetIds);
+        write.getUpdates().forEach(x -> transaction.run(x.getText(), x.getParameters()).consume());
+        write.getRelationships().forEach(x -> transaction.run(x.getText(), x.getParameters()).consume());
+        return true;
+    }
+
+    /**
+     * Plans the statements that save the given nodes, all unsaved nodes reachable from them and the relationships
+     * between them (see {@link AbstractNeo4JNodeRepositoyImpl#saveGraph(Transaction, Collection)}), without running
+     * them, so they can be run on any transaction.
+     *
+     * @param nodes the nodes to be saved
+     * @param <T>   extension of S
+     * @return the planned write, null if the mapping of the nodes does not allow it
+     */
+    protected <T extends S> GraphWrite planGraph(Collection<T> nodes) {
+        return null;
+    }
+
+    /**
+     * Writes the properties and relationships of a tracked node that changed since its snapshot, with one statement
+     *
+     * @param transaction the transaction
+     * @param node        the node
+     * @param snapshot    the persisted state of the node
+     * @param targets     ids of the targets per relationship type
+     * @param <T>         extension of S
+     * @return the node
+     */
+    private <T extends S> T saveChanges(Transaction transaction, T node, NodeSnapshots.Snapshot snapshot, Map<String, long[]> targets) {
+        Long id = getId(node);
+        Map<String, Value> properties = NodeSnapshots.values(propertiesOf(objectify(node)));
+        Map<String, Object> delta = snapshot.delta(properties);
+        Map<String, long[]> added = snapshot.addedTargets(targets);
+        if (!delta.isEmpty() || !added.isEmpty()) {
+            List<String> types = new ArrayList<>(added.keySet());
+            Map<String, Object> parameters = new HashMap<>();
+            parameters.put("id", id);
+            parameters.put("properties", delta);
+            putTargets(parameters, types, added);
+            transaction.run(nodeWithRelationshipsStatement(UPDATE_DELTA_STATEMENT, types), parameters).consume();
+        }
+        rememberValues(id, properties, targets);
+        return node;
+    }
+
+    /**
+     * Writes the changed properties and new relationships of the tracked nodes with one statement for all properties
+     * and one per relationship type, and removes them from the pending nodes
+     *
+     * @param transaction the transaction
+     * @param pending     the nodes to be updated by id, tracked nodes are removed
+     * @param known       the snapshots of the nodes by id
+     * @param <T>         extension of S
+     * @return the tracked nodes
+     */
+    private <T extends S> Set<T> saveChanges(Transaction transaction, Map<Long, T> pending, Map<Long, NodeSnapshots.Snapshot> known) {
+        Set<T> tracked = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (known.isEmpty()) {
+            return tracked;
+        }
+        List<Map<String, Object>> rows = new ArrayList<>();
+        Map<String, List<Value>> sources = new LinkedHashMap<>();
+        Iterator<Map.Entry<Long, T>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, T> entry = iterator.next();
+            NodeSnapshots.Snapshot snapshot = known.get(entry.getKey());
+            Map<String, long[]> targets = snapshot == null ? null : relationshipTargets(entry.getValue());
+            if (targets == null) {
+                continue;
+            }
+            Map<String, Value> properties = NodeSnapshots.values(propertiesOf(objectify(entry.getValue())));
+            Map<String, Object> delta = snapshot.delta(properties);
+            if (!delta.isEmpty()) {
+                Map<String, Object> row = new HashMap<>();
+                row.put("id", entry.getKey());
+                row.put("properties", delta);
+                rows.add(row);
+            }
+            snapshot.addedTargets(targets).forEach((type, ids) -> {
+                long[] sorted = ids.clone();
+                Arrays.sort(sorted);
+                sources.computeIfAbsent(type, x -> new ArrayList<>()).add(Values.parameters("id", entry.getKey(), "targets", sorted));
+            });
+            rememberValues(entry.getKey(), properties, targets);
+            tracked.add(entry.getValue());
+            iterator.remove();
+        }
+        // the pending nodes are sorted by id, so the rows and sources are as well
+        if (!rows.isEmpty()) {
+            transaction.run(UPDATE_DELTA_BULK_STATEMENT, Values.parameters("nodes", rows.toArray())).consume();
+        }
+        sources.forEach((type, list) -> transaction.run(relationshipStatements(type).bulkRelationshipBulk, Values.parameters("sources", list)).consume());
+        return tracked;
+    }
+
+    /**
+     * Remembers the persisted state of a saved node, if dirty tracking is enabled
+     *
+     * @param id         id of the node
+     * @param properties the objectified node
+     * @param targets    ids of the relationship targets per type, null if unknown
+     */
+    private void remember(Long id, Map<String, Object> properties, Map<String, long[]> targets) {
+        if (snapshots != null && id != null) {
+            rememberValues(id, NodeSnapshots.values(propertiesOf(properties)), targets);
+        }
+    }
+
+    /**
+     * Remembers the state of a saved node once the active transaction is committed, as until then it is not the
+     * persisted state for other transactions. The snapshot was dropped when the node was invalidated, so a later save
+     * in the same transaction writes the node completely.
+     *
+     * @param id         id of the node
+     * @param properties the saved properties
+     * @param targets    ids of the relationship targets per type, null if unknown
+     */
+    private void rememberValues(Long id, Map<String, Value> properties, Map<String, long[]> targets) {
+        NodeSnapshots snapshots = this.snapshots;
+        getTransactionManager().onCommit(() -> snapshots.put(id, properties, targets));
+        // a snapshot of the node that was loaded after the save within the transaction holds uncommitted state
+        getTransactionManager().onRollback(() -> snapshots.remove(id));
+    }
+
+    /**
+     * @param ids ids of nodes
+     * @return the snapshots of the nodes by id, nodes without snapshot are missing
+     */
+    private Map<Long, NodeSnapshots.Snapshot> snapshotsOf(Collection<Long> ids) {
+        Map<Long, NodeSnapshots.Snapshot> known = new HashMap<>();
+        NodeSnapshots snapshots = this.snapshots;
+        if (snapshots != null) {
+            for (Long id : ids) {
+                NodeSnapshots.Snapshot snapshot = snapshots.get(id);
+                if (snapshot != null) {
+                    known.put(id, snapshot);
+                }
+            }
+        }
+        return known;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> propertiesOf(Map<String, Object> node) {
+        return (Map<String, Object>) node.get("properties");
+    }
+
+    /**
+     * Writes a node and merges its outgoing relationships with one statement
+     *
+     * @param transaction the transaction
+     * @param node        the node
+     * @param properties  the objectified node
+     * @param targets     ids of the targets per relationship type
+     * @param <T>         extension of S
+     * @return the node
+     */
+    private <T extends S> T saveWithRelationships(Transaction transaction, T node, Map<String, Object> properties, Map<String, long[]> targets) {
+        boolean create = properties.get("id") == null;
+        List<String> types = new ArrayList<>(targets.keySet());
+        String statement = create ? CREATE_STATEMENT.substring(0, CREATE_STATEMENT.length() - RETURN_ID.length()) : UPDATE_STATEMENT;
+        Map<String, Object> parameters = row(statement, properties);
+        putTargets(parameters, types, targets);
+        Result result = transaction.run(withLabels(nodeWithRelationshipsStatement(statement, types), properties), parameters);
+        if (create) {
+            setCreatedId(node, result.single().get(0).asLong());
+        } else {
+            result.consume();
+        }
+        return node;
+    }
+
+    /**
+     * Puts the sorted targets of every type into the parameters targets0, targets1, ...
+     *
+     * @param parameters the parameters
+     * @param types      the relationship types
+     * @param targets    ids of the targets per relationship type
+     */
+    private static void putTargets(Map<String, Object> parameters, List<String> types, Map<String, long[]> targets) {
+        for (int i = 0; i < types.size(); i++) {
+            long[] ids = targets.get(types.get(i)).clone();
+            Arrays.sort(ids);
+            parameters.put("targets" + i, ids);
+        }
+    }
+
+    /**
+     * Builds the statement that writes a node, followed by a merge of the relationships of every type to the
+     * targets in the parameters targets0, targets1, ... The rows of a type are reduced to the node again before the
+     * next type, so a type without targets does not end the statement.
+     *
+     * @param node  the statement that creates or updates the node n, without return
+     * @param types the relationship types
+     * @return the statement
+     */
+    private String nodeWithRelationshipsStatement(String node, List<String> types) {
+        return nodeWithRelationshipsStatements.computeIfAbsent(node, x -> new ConcurrentHashMap<>()).computeIfAbsent(types, key -> {
+            StringBuilder statement = new StringBuilder(node);
+            for (int i = 0; i < types.size(); i++) {
+                String targets = "$targets" + i;
+                statement.append(" WITH n UNWIND CASE WHEN size(").append(targets).append(") = 0 THEN [null] ELSE ").append(targets).append(" END as target").append(i)
+                    .append(" OPTIONAL MATCH (b").append(i).append(") WHERE id(b").append(i).append(") = target").append(i)
+                    .append(" FOREACH (x IN CASE WHEN b").append(i).append(" IS NULL THEN [] ELSE [1] END | MERGE (n)-[:").append(types.get(i)).append("]->(b").append(i).append("))")
+                    .append(" WITH DISTINCT n");
+            }
+            return statement.append(RETURN_ID).toString();
         });
     }
 
     @Override
     public <T extends S> Iterable<T> saveAll(Iterable<T> nodes) {
-        return getTransactionManager().executeWrite(transaction -> {
-            List<T> create = StreamSupport
-                .stream(nodes.spliterator(), false)
+        if (getTransactionManager().getUnitOfWork() != null) {
+            nodes.forEach(this::recordSave);
+            return nodes;
+        }
+        // several objects of the same node are written once, with the state of the last one
+        Map<Long, T> latest = new TreeMap<>();
+        StreamSupport.stream(nodes.spliterator(), false)
+            .filter(x -> getId(x) != null)
+            .forEach(x -> latest.put(getId(x), x));
+        long[] ids = latest.keySet().stream().mapToLong(Long::longValue).toArray();
+        Iterable<T> saved = lockedWrite(ids, () -> getTransactionManager().executeWrite(transaction -> {
+            // taken before the invalidation, which drops the snapshots
+            Map<Long, NodeSnapshots.Snapshot> known = snapshotsOf(latest.keySet());
+            invalidateWritten(latest.keySet());
+            Map<Long, T> pending = new TreeMap<>(latest);
+            Set<T> tracked = saveChanges(transaction, pending, known);
+            List<T> all = StreamSupport.stream(nodes.spliterator(), false)
+                .filter(x -> !tracked.contains(x))
+                .collect(Collectors.toList());
+            if (saveGraph(transaction, all)) {
+                all.addAll(tracked);
+                return all;
+            }
+            List<T> create = all.stream()
                 .filter(x -> getId(x) == null)
                 .collect(Collectors.toList());
 
-            List<T> update = StreamSupport
-                .stream(nodes.spliterator(), false)
+            List<T> update = all.stream()
                 .filter(x -> getId(x) != null)
                 .collect(Collectors.toList());
 
-            if (!update.isEmpty()) {
-                transaction.run(UPDATE_BULK_STATEMENT, Values.parameters("nodes", update.stream().map(this::objectify).toArray())).consume();
+            if (!pending.isEmpty()) {
+                // sorted by id, so concurrent transactions lock the nodes in the same order
+                List<Map<String, Object>> rows = pending.values().stream().map(this::objectify).collect(Collectors.toList());
+                groupByLabels(UPDATE_BULK_STATEMENT, rows).forEach((statement, indices) ->
+                    transaction.run(statement, Values.parameters("nodes", indices.stream().map(i -> row(statement, rows.get(i))).toArray())).consume());
             }
             if (!create.isEmpty()) {
-                Result result = transaction.run(CREATE_BULK_STATEMENT, Values.parameters("nodes", create.stream().map(this::objectify).toArray()));
-                create.forEach(x -> setId(x, result.next().get(0).asLong()));
+                List<Map<String, Object>> rows = create.stream().map(this::objectify).collect(Collectors.toList());
+                groupByLabels(CREATE_BULK_STATEMENT, rows).forEach((statement, indices) -> {
+                    Result result = transaction.run(statement, Values.parameters("nodes", indices.stream().map(i -> row(statement, rows.get(i))).toArray()));
+                    indices.forEach(i -> setCreatedId(create.get(i), result.next().get(0).asLong()));
+                });
             }
             update.addAll(create);
             handleRelationships(update);
-
+            if (snapshots != null) {
+                update.forEach(x -> remember(getId(x), objectify(x), relationshipTargets(x)));
+            }
+            update.addAll(tracked);
 
             return update;
-        });
+        }));
+        return saved;
+    }
+
+    /**
+     * Saves a large number of nodes in chunks, each chunk with {@link AbstractNeo4JNodeRepositoyImpl#saveAll(Iterable)}
+     * in its own transaction, so neither the parameters nor the transaction grow with the number of nodes. The chunk
+     * size is adapted by the {@link AbstractNeo4JNodeRepositoyImpl#chunkSizer} and the progress is reported to the
+     * {@link AbstractNeo4JNodeRepositoyImpl#saveProgressListener}.
+     * <p>A failing chunk does not roll back the chunks before it. Within a transaction of the caller all chunks are
+     * part of that transaction.</p>
+     *
+     * @param nodes to be saved, consumed once
+     * @param <T>   subtype of S
+     * @return number of saved nodes
+     */
+    public <T extends S> long saveAllChunked(Stream<T> nodes) {
+        return saveAllChunked(nodes::iterator);
+    }
+
+    /**
+     * Same as {@link AbstractNeo4JNodeRepositoyImpl#saveAllChunked(Stream)}
+     *
+     * @param nodes to be saved, iterated once
+     * @param <T>   subtype of S
+     * @return number of saved nodes
+     */
+    public <T extends S> long saveAllChunked(Iterable<T> nodes) {
+        long start = System.nanoTime();
+        long saved = 0;
+        Iterator<T> iterator = nodes.iterator();
+        while (iterator.hasNext()) {
+            int size = chunkSizer.next();
+            List<T> chunk = new ArrayList<>(size);
+            while (chunk.size() < size && iterator.hasNext()) {
+                chunk.add(iterator.next());
+            }
+            // the payload is estimated from the first node, objectifying the whole chunk twice would be too expensive
+            long bytes = ValueCodec.estimateSize(Values.value(objectify(chunk.get(0)))) * chunk.size();
+            long chunkStart = System.nanoTime();
+            saveAll(chunk);
+            long now = System.nanoTime();
+            chunkSizer.record(chunk.size(), bytes, now - chunkStart);
+            saved += chunk.size();
+            if (saveProgressListener != null) {
+                long elapsed = now - start;
+                saveProgressListener.chunkSaved(saved, chunk.size(), saved * 1e9 / Math.max(elapsed, 1), elapsed / 1_000_000);
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * Replaces {@link AbstractNeo4JNodeRepositoyImpl#LABELS} in a statement with the labels of an objectified node, so
+     * they are written natively instead of by a procedure call per row. Statements without the placeholder, e.g.
+     * overridden statements that still add the labels from the parameter classNames, are returned unchanged.
+     *
+     * @param statement the statement
+     * @param node      the objectified node, its labels are in "classNames"
+     * @return the statement for the labels of the node
+     */
+    protected String withLabels(String statement, Map<String, ?> node) {
+        if (!statement.contains(LABELS)) {
+            return statement;
+        }
+        List<String> labels = labelsOf(node);
+        return labeledStatements.computeIfAbsent(statement, x -> new ConcurrentHashMap<>()).computeIfAbsent(labels, x ->
+            statement.replace(LABELS, labels.stream().map(label -> "`" + label.replace("`", "``") + "`").collect(Collectors.joining(":"))));
+    }
+
+    /**
+     * Groups objectified nodes by their labels, as the labels of a statement can't be parameters
+     *
+     * @param statement the statement containing {@link AbstractNeo4JNodeRepositoyImpl#LABELS}
+     * @param nodes     the objectified nodes
+     * @return indices of the nodes per statement for their labels, in the order of the nodes
+     */
+    protected Map<String, List<Integer>> groupByLabels(String statement, List<? extends Map<String, ?>> nodes) {
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            groups.computeIfAbsent(withLabels(statement, nodes.get(i)), x -> new ArrayList<>()).add(i);
+        }
+        return groups;
+    }
+
+    /**
+     * @param node the objectified node
+     * @return labels of the node
+     */
+    private static List<String> labelsOf(Map<String, ?> node) {
+        Object labels = node.get("classNames");
+        if (!(labels instanceof Collection)) {
+            throw new IllegalStateException("Node has no labels in classNames: " + node.get("id"));
+        }
+        return ((Collection<?>) labels).stream().map(String::valueOf).collect(Collectors.toList());
+    }
+
+    /**
+     * @param statement the statement the node is written with
+     * @param node      the objectified node
+     * @return the parameters of the node, without its labels if they are part of the statement
+     */
+    protected static Map<String, Object> row(String statement, Map<String, ?> node) {
+        Map<String, Object> row = new HashMap<>(node);
+        if (!statement.contains("classNames")) {
+            row.remove("classNames");
+        }
+        return row;
+    }
+
+    /**
+     * Runs a write while the given nodes are locked in process, if {@link AbstractNeo4JNodeRepositoyImpl#nodeLocks}
+     * are set. Writes within a transaction of the caller are not locked, as the locks would have to be held until its
+     * commit.
+     *
+     * @param ids   ids of the nodes that are written
+     * @param write the write
+     * @param <R>   type of the result
+     * @return the result of the write
+     */
+    private <R> R lockedWrite(long[] ids, Supplier<R> write) {
+        if (nodeLocks == null || ids.length == 0 || getTransactionManager().isTransactionActive()) {
+            return write.get();
+        }
+        StripedLocks.Locked locked = nodeLocks.lock(ids);
+        try {
+            return write.get();
+        } finally {
+            locked.unlock();
+        }
     }
 
     @Override
     public void deleteAll() {
         getTransactionManager().runWrite(transaction -> transaction.run(DELETE_ALL_STATEMENT).consume());
+        IdentityMap identityMap = getTransactionManager().getIdentityMap();
+        if (identityMap != null) {
+            identityMap.clear();
+        }
+        if (snapshots != null) {
+            snapshots.clear();
+        }
+        if (entityCache != null) {
+            entityCache.clear();
+        }
+        if (subtreeCache != null) {
+            subtreeCache.clear();
+        }
+    }
+
+    @Override
+    public void delete(S node) {
+        deleteById(getId(node));
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends S> nodes) {
+        deleteByIds(StreamSupport.stream(nodes.spliterator(), false).map(this::getId).collect(Collectors.toList()));
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        deleteByIds(Collections.singletonList(id));
+    }
+
+    /**
+     * Deletes the nodes with the given ids with one statement and forgets everything known about them
+     *
+     * @param ids ids of the nodes, null is ignored
+     */
+    protected void deleteByIds(Collection<Long> ids) {
+        // sorted, so concurrent transactions lock the nodes in the same order
+        long[] sorted = ids.stream().filter(Objects::nonNull).mapToLong(Long::longValue).sorted().distinct().toArray();
+        if (sorted.length == 0) {
+            return;
+        }
+        List<Long> deleted = Arrays.stream(sorted).boxed().collect(Collectors.toList());
+        lockedWrite(sorted, () -> {
+            getTransactionManager().runWrite(transaction -> {
+                invalidateWritten(deleted);
+                transaction.run(DELETE_BY_IDS_STATEMENT, Values.parameters("ids", sorted)).consume();
+            });
+            return null;
+        });
+        IdentityMap identityMap = getTransactionManager().getIdentityMap();
+        for (long id : sorted) {
+            if (identityMap != null) {
+                identityMap.remove(id);
+            }
+            if (snapshots != null) {
+                snapshots.remove(id);
+            }
+        }
+    }
+
+    @Override
+    public long count() {
+        return getTransactionManager().executeRead(transaction -> transaction.run(COUNT_STATEMENT).single().get(0).asLong());
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return id != null && getTransactionManager().executeRead(transaction ->
+            transaction.run(EXISTS_BY_ID_STATEMENT, Values.parameters("id", id)).single().get(0).asBoolean());
+    }
+
+    @Override
+    public Iterable<S> findAllById(Iterable<Long> ids) {
+        List<Long> distinct = StreamSupport.stream(ids.spliterator(), false).filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        if (distinct.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return executeAll(FIND_BY_IDS_STATEMENT, Values.parameters("ids", distinct), AccessMode.READ);
     }
 
     @Override
@@ -440,11 +1419,69 @@ public abstract class AbstractNeo4JNodeRepositoyImpl<S> extends AbstractNeo4JRep
         return executeAll(FIND_ALL_STATEMENT, null, AccessMode.READ);
     }
 
+    /**
+     * Same as {@link AbstractNeo4JNodeRepositoyImpl#findAll()} but loads the nodes lazily while the stream is read.
+     * The stream must be closed if it is not read until the end (e.g. with try-with-resources).
+     *
+     * @return stream of all S
+     */
+    public Stream<S> streamAll() {
+        return executeStream(FIND_ALL_STATEMENT, null, AccessMode.READ);
+    }
+
     @Override
     public S findById(Long id) {
+        S cached = findCached(id);
+        if (cached != null) {
+            return cached;
+        }
+        if (entityCache != null) {
+            return executeCached(entityCache, FIND_BY_ID_STATEMENT, id);
+        }
+        if (findByIdLoader.getWindowMillis() > 0 && !getTransactionManager().isTransactionActive()) {
+            Value row = findByIdLoader.get(new BatchedId(id, getTransactionManager().getLastBookmark()));
+            return row == null ? null : loaded(row.get("root"), row.get("relationships"), row.get("nodes"));
+        }
         return execute(FIND_BY_ID_STATEMENT, Values.parameters("id", id), AccessMode.READ);
     }
 
+    /**
+     * Looks up a node that was already loaded with its relationships in the identity map of the active transaction
+     *
+     * @param id id of the node
+     * @return the node, null if it must be loaded
+     */
+    protected S findCached(Long id) {
+        return null;
+    }
+
+    /**
+     * Loads the rows of several nodes with one query. The query waits for the bookmarks of all callers, so every caller
+     * sees the transactions it committed before.
+     *
+     * @param keys ids of the nodes with the bookmarks of their callers
+     * @return the found rows by their key, keys without node are missing
+     */
+    private Map<BatchedId, Value> findRowsByIds(List<BatchedId> keys) {
+        Set<String> bookmarks = new HashSet<>();
+        keys.stream().map(x -> x.bookmark).filter(Objects::nonNull).forEach(x -> bookmarks.addAll(x.values()));
+        // runs on a thread of the batch loader, whose bookmark is replaced by the one of the callers for every batch
+        getTransactionManager().useBookmark(bookmarks.isEmpty() ? null : Bookmark.from(bookmarks));
+        Set<Long> ids = keys.stream().map(x -> x.id).collect(Collectors.toCollection(LinkedHashSet::new));
+        Map<Long, Value> rows = getTransactionManager().execute(transaction -> {
+            Result result = transaction.run(FIND_BY_IDS_STATEMENT, Values.parameters("ids", ids));
+            Map<Long, Value> found = new HashMap<>();
+            while (result.hasNext()) {
+                Value row = result.next().get(0);
+                found.put(row.get("root").asNode().id(), row);
+            }
+            return found;
+        }, AccessMode.READ);
+        Map<BatchedId, Value> values = new HashMap<>();
+        keys.stream().filter(x -> rows.containsKey(x.id)).forEach(x -> values.put(x, rows.get(x.id)));
+        return values;
+    }
+
     @Override
     public S findSubtree(Long id) {
         return findSubtree(id, -1);
@@ -463,6 +1500,9 @@ public abstract class AbstractNeo4JNodeRepositoyImpl<S> extends AbstractNeo4JRep
         if (depth == 0) {
             query = query.substring(0, query.indexOf("OPTIONAL")) + "RETURN {root:n}";
         }
+        if (subtreeCache != null && depth < 0 && relationshipString.isEmpty()) {
+            return executeCached(subtreeCache, query, id);
+        }
         return execute(query, Values.parameters("id", id), AccessMode.READ);
     }
 
@@ -480,6 +1520,18 @@ public abstract class AbstractNeo4JNodeRepositoyImpl<S> extends AbstractNeo4JRep
         return executeAll(FIND_BY_WHERE_STATEMENT.replace("_WHERE_", condition), parameters, AccessMode.READ);
     }
 
+    /**
+     * Same as {@link AbstractNeo4JNodeRepositoyImpl#findAllBy(String, Value)} but loads the nodes lazily while the stream is read.
+     * The stream must be closed if it is not read until the end (e.g. with try-with-resources).
+     *
+     * @param condition  any condition that would be after the "WHERE" in a cypher queryTyped
+     * @param parameters all parameters defined in the condition (parameters optional)
+     * @return stream of all nodes that satisfy the condition
+     */
+    public Stream<S> streamAllBy(String condition, Value parameters) {
+        return executeStream(FIND_BY_WHERE_STATEMENT.replace("_WHERE_", condition), parameters, AccessMode.READ);
+    }
+
     // endregion
 
     // region Custom queryTyped
@@ -489,18 +1541,32 @@ public abstract class AbstractNeo4JNodeRepositoyImpl<S> extends AbstractNeo4JRep
      * Parameters should be defined as "$parametername"
      * The value-list should be defined as Map of parametername (without the $) to value
      *
+     * The query runs in a read or write transaction depending on its clauses (see {@link CypherClassifier}).
+     *
      * @param query      to be run
      * @param parameters to be set
      * @return node that matches the query
      */
     public S queryTyped(String query, Value parameters) {
-        return getTransactionManager().executeRead(transaction -> {
+        return queryTyped(query, parameters, CypherClassifier.classify(query));
+    }
+
+    /**
+     * Same as {@link AbstractNeo4JNodeRepositoyImpl#queryTyped(String, Value)} with an explicit access mode
+     *
+     * @param query      to be run
+     * @param parameters to be set
+     * @param accessMode mode to execute the query
+     * @return node that matches the query
+     */
+    public S queryTyped(String query, Value parameters, AccessMode accessMode) {
+        return getTransactionManager().execute(transaction -> {
             Result result = transaction.run(query, parameters);
             if (result.hasNext()) {
-                return cast(result.next().get(0), null, null);
+                return loaded(result.next().get(0), null, null);
             }
             return null;
-        });
+        }, accessMode);
     }
 
     /**
@@ -508,13 +1574,27 @@ public abstract class AbstractNeo4JNodeRepositoyImpl<S> extends AbstractNeo4JRep
      * Parameters should be defined as "$parametername"
      * The value-list should be defined as Map of parametername (without the $) to value
      *
+     * The query runs in a read or write transaction depending on its clauses (see {@link CypherClassifier}).
+     *
      * @param query      to be run
      * @param parameters to be set
      * @return node that matches the query
      */
     public Iterable<S> queryAllTyped(String query, Value parameters) {
-        return getTransactionManager().executeRead(transaction -> {
-            Result result = new ResultClone(transaction.run(query, parameters));
+        return queryAllTyped(query, parameters, CypherClassifier.classify(query));
+    }
+
+    /**
+     * Same as {@link AbstractNeo4JNodeRepositoyImpl#queryAllTyped(String, Value)} with an explicit access mode
+     *
+     * @param query      to be run
+     * @param parameters to be set
+     * @param accessMode mode to execute the query
+     * @return nodes that match the query
+     */
+    public Iterable<S> queryAllTyped(String query, Value parameters, AccessMode accessMode) {
+        return getTransactionManager().execute(transaction -> {
+            Result result = getTransactionManager().cloneResult(transaction.run(query, parameters));
 
             return () -> new Iterator<S>() {
 
@@ -526,11 +1606,96 @@ public abstract class AbstractNeo4JNodeRepositoyImpl<S> extends AbstractNeo4JRep
                 @Override
                 public S next() {
                     Value r = result.next().get(0);
-                    return cast(r, null, null);
+                    return loaded(r, null, null);
                 }
             };
-        });
+        }, accessMode);
+    }
+
+    /**
+     * Same as {@link AbstractNeo4JNodeRepositoyImpl#queryAllTyped(String, Value)} but loads the nodes lazily while the stream is read.
+     * The stream must be closed if it is not read until the end (e.g. with try-with-resources).
+     *
+     * @param query      to be run
+     * @param parameters to be set
+     * @return stream of nodes that match the query
+     */
+    public Stream<S> streamAllTyped(String query, Value parameters) {
+        return streamAllTyped(query, parameters, CypherClassifier.classify(query));
+    }
+
+    /**
+     * Same as {@link AbstractNeo4JNodeRepositoyImpl#streamAllTyped(String, Value)} with an explicit access mode
+     *
+     * @param query      to be run
+     * @param parameters to be set
+     * @param accessMode mode to execute the query
+     * @return stream of nodes that match the query
+     */
+    public Stream<S> streamAllTyped(String query, Value parameters, AccessMode accessMode) {
+        return getTransactionManager().stream(transaction -> transaction.run(query, parameters), accessMode).stream(record -> loaded(record.get(0), null, null));
+    }
+
+    /**
+     * Same as {@link AbstractNeo4JNodeRepositoyImpl#queryAll(String, Value, Class)} but loads the results lazily while the stream is read.
+     * The stream must be closed if it is not read until the end (e.g. with try-with-resources).
+     *
+     * @param query      to be run
+     * @param parameters to be set
+     * @param clazz      the result clazz type
+     * @param <T>        result type
+     * @return stream of results
+     */
+    public <T> Stream<T> streamAll(String query, Value parameters, Class<T> clazz) {
+        return streamAll(query, parameters, clazz, CypherClassifier.classify(query));
+    }
+
+    /**
+     * Same as {@link AbstractNeo4JNodeRepositoyImpl#streamAll(String, Value, Class)} with an explicit access mode
+     *
+     * @param query      to be run
+     * @param parameters to be set
+     * @param clazz      the result clazz type
+     * @param accessMode mode to execute the query
+     * @param <T>        result type
+     * @return stream of results
+     */
+    public <T> Stream<T> streamAll(String query, Value parameters, Class<T> clazz, AccessMode accessMode) {
+        if (clazz.getSimpleName().equals(className)) {
+            return ValueCast.cast(streamAllTyped(query, parameters, accessMode));
+        }
+        return getTransactionManager().stream(transaction -> transaction.run(query, parameters), accessMode).stream(record -> ValueCast.castToJavaLang(record.get(0), clazz));
     }
 
     // endregion
+
+    /**
+     * Id that is loaded by the batch loader of findById, with the bookmark of the calling thread
+     */
+    private static final class BatchedId {
+        private final Long id;
+        private final Bookmark bookmark;
+
+        private BatchedId(Long id, Bookmark bookmark) {
+            this.id = id;
+            this.bookmark = bookmark;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof BatchedId)) {
+                return false;
+            }
+            BatchedId other = (BatchedId) o;
+            return id.equals(other.id) && Objects.equals(bookmark, other.bookmark);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, bookmark);
+        }
+    }
 }
@@ -1,9 +1,13 @@
 package science.aist.neo4j.repository;
 
+import science.aist.neo4j.transaction.IdentityMap;
 import science.aist.neo4j.transaction.TransactionManager;
 import org.neo4j.driver.*;
 
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Quick notes about usage:
@@ -46,6 +50,21 @@ public abstract class AbstractNeo4JRelationshipRepositoyImpl<S> extends Abstract
      */
     private String DELETE_ALL_STATEMENT = "MATCH ()-[r:TYPE]->() DELETE r";
 
+    /**
+     * deletes the objects of this class with the given ids
+     */
+    private String DELETE_BY_IDS_STATEMENT = "UNWIND $ids as id MATCH ()-[r:TYPE]->() WHERE id(r) = id DELETE r";
+
+    /**
+     * Counts all objects of this class
+     */
+    private String COUNT_STATEMENT = "MATCH ()-[r:TYPE]->() RETURN count(r)";
+
+    /**
+     * Checks if an object of this class with the given id exists
+     */
+    private String EXISTS_BY_ID_STATEMENT = "MATCH ()-[r:TYPE]->() WHERE id(r) = $id RETURN count(r) > 0";
+
     /**
      * Searches for all objects of this class
      */
@@ -56,6 +75,11 @@ public abstract class AbstractNeo4JRelationshipRepositoyImpl<S> extends Abstract
      */
     private String FIND_BY_ID_STATEMENT = "MATCH (s)-[r:TYPE]->(t) WHERE id(r) = $id RETURN r, s, t";
 
+    /**
+     * Searches objects by a list of ids
+     */
+    private String FIND_BY_IDS_STATEMENT = "UNWIND $ids as id MATCH (s)-[r:TYPE]->(t) WHERE id(r) = id RETURN r, s, t";
+
     /**
      * Searches for a given _WHERE_.
      * The _WHERE_ should be replaced with the specific statement, such as "WHERE n.fieldThatIsString CONTAINS $substring
@@ -88,6 +112,10 @@ public abstract class AbstractNeo4JRelationshipRepositoyImpl<S> extends Abstract
         FIND_BY_ID_STATEMENT = FIND_BY_ID_STATEMENT.replace("TYPE", className);
         FIND_ALL_STATEMENT = FIND_ALL_STATEMENT.replace("TYPE", className);
         DELETE_ALL_STATEMENT = DELETE_ALL_STATEMENT.replace("TYPE", className);
+        DELETE_BY_IDS_STATEMENT = DELETE_BY_IDS_STATEMENT.replace("TYPE", className);
+        COUNT_STATEMENT = COUNT_STATEMENT.replace("TYPE", className);
+        EXISTS_BY_ID_STATEMENT = EXISTS_BY_ID_STATEMENT.replace("TYPE", className);
+        FIND_BY_IDS_STATEMENT = FIND_BY_IDS_STATEMENT.replace("TYPE", className);
         FIND_BY_WHERE_STATEMENT = FIND_BY_WHERE_STATEMENT.replace("TYPE", className);
     }
 
@@ -188,12 +216,38 @@ public abstract class AbstractNeo4JRelationshipRepositoyImpl<S> extends Abstract
             }
         };
     }
+    /**
+     * Helper function that executes a given queryTyped and casts the records lazily while the stream is read.
+     * The transaction stays open until the stream is read completely or closed.
+     *
+     * @param query      to be run
+     * @param parameters to be added to the queryTyped
+     * @param accessMode of the query that should be executed
+     * @return stream that must be closed if not read until the end
+     */
+    protected Stream<S> executeStream(String query, Value parameters, AccessMode accessMode) {
+        return getTransactionManager().stream(transaction -> transaction.run(query, parameters), accessMode)
+            .stream(r -> cast(r.get("r"), r.get("s"), r.get("t")));
+    }
     //endregion
 
     // region Nodes
 
     // endregion
 
+    /**
+     * Assigns the id of a newly created relationship. The id is removed again if the transaction is rolled back,
+     * so a retried save creates the relationship again instead of updating one that does not exist.
+     *
+     * @param relationship the created relationship
+     * @param id           the id assigned by the database
+     * @param <T>          extension of S
+     */
+    protected <T extends S> void setCreatedId(T relationship, Long id) {
+        setId(relationship, id);
+        getTransactionManager().onRollback(() -> setId(relationship, null));
+    }
+
     // region Neo4JRepository
 
     @Override
@@ -201,11 +255,74 @@ public abstract class AbstractNeo4JRelationshipRepositoyImpl<S> extends Abstract
         getTransactionManager().runWrite(transaction -> transaction.run(DELETE_ALL_STATEMENT).consume());
     }
 
+    @Override
+    public void delete(S relationship) {
+        deleteById(getId(relationship));
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends S> relationships) {
+        deleteByIds(StreamSupport.stream(relationships.spliterator(), false).map(this::getId).collect(Collectors.toList()));
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        deleteByIds(Collections.singletonList(id));
+    }
+
+    /**
+     * Deletes the relationships with the given ids with one statement
+     *
+     * @param ids ids of the relationships, null is ignored
+     */
+    protected void deleteByIds(Collection<Long> ids) {
+        long[] sorted = ids.stream().filter(Objects::nonNull).mapToLong(Long::longValue).sorted().distinct().toArray();
+        if (sorted.length == 0) {
+            return;
+        }
+        getTransactionManager().runWrite(transaction -> transaction.run(DELETE_BY_IDS_STATEMENT, Values.parameters("ids", sorted)).consume());
+        IdentityMap identityMap = getTransactionManager().getIdentityMap();
+        if (identityMap != null) {
+            // relationship entities are mapped with negative ids
+            Arrays.stream(sorted).forEach(id -> identityMap.remove(-id - 1));
+        }
+    }
+
+    @Override
+    public long count() {
+        return getTransactionManager().executeRead(transaction -> transaction.run(COUNT_STATEMENT).single().get(0).asLong());
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return id != null && getTransactionManager().executeRead(transaction ->
+            transaction.run(EXISTS_BY_ID_STATEMENT, Values.parameters("id", id)).single().get(0).asBoolean());
+    }
+
+    @Override
+    public Iterable<S> findAllById(Iterable<Long> ids) {
+        List<Long> distinct = StreamSupport.stream(ids.spliterator(), false).filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        if (distinct.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return executeAll(FIND_BY_IDS_STATEMENT, Values.parameters("ids", distinct), AccessMode.READ);
+    }
+
     @Override
     public Iterable<S> findAll() {
         return executeAll(FIND_ALL_STATEMENT, null, AccessMode.READ);
     }
 
+    /**
+     * Same as {@link AbstractNeo4JRelationshipRepositoyImpl#findAll()} but loads the relationships lazily while the stream is read.
+     * The stream must be closed if it is not read until the end (e.g. with try-with-resources).
+     *
+     * @return stream of all S
+     */
+    public Stream<S> streamAll() {
+        return executeStream(FIND_ALL_STATEMENT, null, AccessMode.READ);
+    }
+
     @Override
     public S findById(Long id) {
         return execute(FIND_BY_ID_STATEMENT, Values.parameters("id", id), AccessMode.READ);
@@ -231,7 +348,7 @@ public abstract class AbstractNeo4JRelationshipRepositoyImpl<S> extends Abstract
         if (getId(relationship) == null) {
             relationship = handleSourceAndTarget(relationship);
             Map<String, Object> properties = objectify(relationship);
-            setId(relationship, getTransactionManager().executeWrite(transaction -> transaction.run(CREATE_STATEMENT, properties).single().get(0).asLong()));
+            setCreatedId(relationship, getTransactionManager().executeWrite(transaction -> transaction.run(CREATE_STATEMENT, properties).single().get(0).asLong()));
         } else {
             Map<String, Object> properties = objectify(relationship);
             getTransactionManager().runWrite(transaction -> transaction.run(UPDATE_STATEMENT, properties).consume());
@@ -260,7 +377,7 @@ public abstract class AbstractNeo4JRelationshipRepositoyImpl<S> extends Abstract
             handleSourceAndTarget(create);
 
             Result result = getTransactionManager().executeWrite(transaction -> transaction.run(CREATE_BULK_STATEMENT, Values.parameters("relationships", create.stream().map(this::objectify).toArray())));
-            create.forEach(x -> setId(x, result.next().get(0).asLong()));
+            create.forEach(x -> setCreatedId(x, result.next().get(0).asLong()));
         }
         update.addAll(create);
 
@@ -281,6 +398,18 @@ public abstract class AbstractNeo4JRelationshipRepositoyImpl<S> extends Abstract
         return executeAll(FIND_BY_WHERE_STATEMENT.replace("_WHERE_", condition), parameters, AccessMode.READ);
     }
 
+    /**
+     * Same as {@link AbstractNeo4JRelationshipRepositoyImpl#findAllBy(String, Value)} but loads the relationships lazily while the stream is read.
+     * The stream must be closed if it is not read until the end (e.g. with try-with-resources).
+     *
+     * @param condition  any condition that would be after the "WHERE" in a cypher queryTyped
+     * @param parameters all parameters defined in the condition (parameters optional)
+     * @return stream of all relationships that satisfy the condition
+     */
+    public Stream<S> streamAllBy(String condition, Value parameters) {
+        return executeStream(FIND_BY_WHERE_STATEMENT.replace("_WHERE_", condition), parameters, AccessMode.READ);
+    }
+
     // endregion
 
     // region Custom queryTyped
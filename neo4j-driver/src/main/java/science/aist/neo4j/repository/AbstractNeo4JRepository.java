@@ -25,11 +25,11 @@ public abstract class AbstractNeo4JRepository<S, ID> implements Neo4jRepository<
      */
     private static Map<TransactionManager, Map<String, AbstractNeo4JRepository>> providedRepositories = new HashMap<>();
 
-    public static AbstractNeo4JRepository getProvidedRepository(TransactionManager manager, String signature) {
+    public static synchronized AbstractNeo4JRepository getProvidedRepository(TransactionManager manager, String signature) {
         return providedRepositories.getOrDefault(manager, new HashMap<>()).getOrDefault(signature, new FutureRepository(manager, signature));
     }
 
-    public static void provideRepository(TransactionManager manager, String signature, AbstractNeo4JRepository repository) {
+    public static synchronized void provideRepository(TransactionManager manager, String signature, AbstractNeo4JRepository repository) {
         if (!providedRepositories.containsKey(manager)) {
             providedRepositories.put(manager, new HashMap<>());
         }
@@ -0,0 +1,444 @@
+package science.aist.neo4j.repository;
+
+import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Bookmark;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
+import org.neo4j.driver.async.AsyncTransaction;
+import org.neo4j.driver.async.ResultCursor;
+import science.aist.neo4j.transaction.AsyncTransactionManager;
+import science.aist.neo4j.transaction.TransactionManager;
+import science.aist.neo4j.util.CypherClassifier;
+import science.aist.neo4j.util.DaemonExecutors;
+import science.aist.neo4j.util.ValueCast;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * <p>Non blocking variant of a node repository. Uses the statements and the object mapping of the given repository,
+ * but runs the queries on an {@link AsyncTransactionManager}, so no thread waits for the database.</p>
+ * <p>Nodes with relationships are saved with the statements planned by the given repository (see
+ * {@link AbstractNeo4JNodeRepositoyImpl#planGraph(java.util.Collection)}) on the async session as well. Only graphs
+ * whose mapping can't be planned are saved by the given repository on the executor, as saving them may need to save
+ * other nodes in other repositories first. Its transaction manager waits for the bookmark of the async manager and
+ * vice versa, so the blocking save reads earlier async writes and later async work reads the blocking save.</p>
+ *
+ * @param <S> Type of class
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class AsyncNeo4JNodeRepositoryImpl<S> {
+
+    /**
+     * Manager the queries are executed with
+     */
+    private final AsyncTransactionManager manager;
+
+    /**
+     * Repository that provides statements and object mapping
+     */
+    private final AbstractNeo4JNodeRepositoyImpl<S> repository;
+
+    /**
+     * Executor for blocking saves of graphs that can't be planned
+     */
+    private Executor executor = DaemonExecutors.newCachedPool("neo4j-async-save");
+
+    /**
+     * @param manager    manager the queries are executed with
+     * @param repository repository that provides statements and object mapping
+     */
+    public AsyncNeo4JNodeRepositoryImpl(AsyncTransactionManager manager, AbstractNeo4JNodeRepositoyImpl<S> repository) {
+        this.manager = manager;
+        this.repository = repository;
+    }
+
+    /**
+     * Same as {@link AbstractNeo4JNodeRepositoyImpl#save(Object)}
+     *
+     * @param node node to be stored
+     * @param <T>  subtype of S
+     * @return stage that completes with the node with ID
+     */
+    public <T extends S> CompletionStage<T> save(T node) {
+        if (repository.hasRelationships(node)) {
+            return saveGraph(List.of(node)).thenApply(saved -> node);
+        }
+        Map<String, Object> properties = repository.objectify(node);
+        if (properties.get("id") != null) {
+            return manager.executeWriteAsync(transaction -> transaction.runAsync(repository.withLabels(repository.UPDATE_STATEMENT, properties), AbstractNeo4JNodeRepositoyImpl.row(repository.UPDATE_STATEMENT, properties))
+                .thenCompose(ResultCursor::consumeAsync)
+                .thenApply(summary -> node))
+                .thenApply(saved -> {
+                    repository.invalidateCached(List.of(repository.getId(saved)));
+                    return saved;
+                });
+        }
+        return manager.executeWriteAsync(transaction -> transaction.runAsync(repository.withLabels(repository.CREATE_STATEMENT, properties), AbstractNeo4JNodeRepositoyImpl.row(repository.CREATE_STATEMENT, properties))
+            .thenCompose(ResultCursor::singleAsync))
+            .thenApply(record -> {
+                // the id is only assigned once the transaction is committed
+                repository.setId(node, record.get(0).asLong());
+                return node;
+            });
+    }
+
+    /**
+     * Same as {@link AbstractNeo4JNodeRepositoyImpl#saveAll(Iterable)}
+     *
+     * @param nodes to be saved
+     * @param <T>   subtype of S
+     * @return stage that completes with the nodes with id
+     */
+    public <T extends S> CompletionStage<List<T>> saveAll(Iterable<T> nodes) {
+        List<T> all = StreamSupport.stream(nodes.spliterator(), false).collect(Collectors.toList());
+        if (all.stream().anyMatch(repository::hasRelationships)) {
+            return saveGraph(all);
+        }
+        List<T> create = all.stream().filter(x -> repository.getId(x) == null).collect(Collectors.toList());
+        List<T> update = all.stream().filter(x -> repository.getId(x) != null).collect(Collectors.toList());
+        return manager.executeWriteAsync(transaction -> runUpdates(transaction, update)
+            .thenCompose(ignored -> runCreates(transaction, create)))
+            .thenApply(ids -> {
+                // the ids are only assigned once the transaction is committed
+                for (int i = 0; i < create.size(); i++) {
+                    repository.setId(create.get(i), ids.get(i));
+                }
+                repository.invalidateCached(update.stream().map(repository::getId).collect(Collectors.toList()));
+                update.addAll(create);
+                return update;
+            });
+    }
+
+    /**
+     * Saves nodes with relationships and the graph reachable from them
+     *
+     * @param nodes the nodes
+     * @param <T>   subtype of S
+     * @return stage that completes with the nodes with id
+     */
+    private <T extends S> CompletionStage<List<T>> saveGraph(List<T> nodes) {
+        GraphWrite write = repository.planGraph(nodes);
+        if (write == null) {
+            return saveBlocking(nodes);
+        }
+        return manager.executeWriteAsync(transaction -> runGraph(transaction, write))
+            .thenApply(ignored -> {
+                // the ids are only assigned once the transaction is committed
+                write.assignIds();
+                repository.invalidateCached(write.getUpdatedIds());
+                return nodes;
+            });
+    }
+
+    private static CompletionStage<?> runGraph(AsyncTransaction transaction, GraphWrite write) {
+        CompletionStage<?> stage = CompletableFuture.completedFuture(null);
+        for (GraphWrite.Statement create : write.getCreates()) {
+            stage = stage.thenCompose(ignored -> transaction.runAsync(create.getText(), create.getParameters())
+                .thenCompose(cursor -> cursor.listAsync(record -> record.get(0).asLong()))
+                .thenAccept(created -> {
+                    for (int i = 0; i < created.size(); i++) {
+                        write.created(create.getNodes().get(i), created.get(i));
+                    }
+                }));
+        }
+        for (GraphWrite.Statement update : write.getUpdates()) {
+            stage = stage.thenCompose(ignored -> run(transaction, update));
+        }
+        // the relationship statements need the ids of the created nodes
+        return stage.thenCompose(ignored -> {
+            CompletionStage<?> relationships = CompletableFuture.completedFuture(null);
+            for (GraphWrite.Statement relationship : write.getRelationships()) {
+                relationships = relationships.thenCompose(x -> run(transaction, relationship));
+            }
+            return relationships;
+        });
+    }
+
+    private static CompletionStage<?> run(AsyncTransaction transaction, GraphWrite.Statement statement) {
+        return transaction.runAsync(statement.getText(), statement.getParameters()).thenCompose(ResultCursor::consumeAsync);
+    }
+
+    /**
+     * Saves nodes with the given repository on the executor, chained with the bookmarks of the async manager
+     *
+     * @param nodes the nodes
+     * @param <T>   subtype of S
+     * @return stage that completes with the nodes with id
+     */
+    private <T extends S> CompletionStage<List<T>> saveBlocking(List<T> nodes) {
+        Bookmark before = manager.getLastBookmark();
+        return CompletableFuture.supplyAsync(() -> {
+            TransactionManager blocking = repository.getTransactionManager();
+            if (before != null) {
+                blocking.useBookmark(before);
+            }
+            List<T> saved = new ArrayList<>();
+            repository.saveAll(nodes).forEach(saved::add);
+            Bookmark after = blocking.getLastBookmark();
+            if (after != null) {
+                manager.useBookmark(after);
+            }
+            return saved;
+        }, executor);
+    }
+
+    private <T extends S> CompletionStage<?> runUpdates(AsyncTransaction transaction, List<T> update) {
+        List<Map<String, Object>> rows = update.stream().map(repository::objectify).collect(Collectors.toList());
+        CompletionStage<?> stage = CompletableFuture.completedFuture(null);
+        // one statement per label set, run one after the other as a transaction takes one query at a time
+        for (Map.Entry<String, List<Integer>> group : repository.groupByLabels(repository.UPDATE_BULK_STATEMENT, rows).entrySet()) {
+            stage = stage.thenCompose(ignored -> transaction.runAsync(group.getKey(), parameters(group.getKey(), rows, group.getValue()))
+                .thenCompose(ResultCursor::consumeAsync));
+        }
+        return stage;
+    }
+
+    private <T extends S> CompletionStage<List<Long>> runCreates(AsyncTransaction transaction, List<T> create) {
+        List<Map<String, Object>> rows = create.stream().map(repository::objectify).collect(Collectors.toList());
+        Long[] ids = new Long[rows.size()];
+        CompletionStage<?> stage = CompletableFuture.completedFuture(null);
+        for (Map.Entry<String, List<Integer>> group : repository.groupByLabels(repository.CREATE_BULK_STATEMENT, rows).entrySet()) {
+            List<Integer> indices = group.getValue();
+            stage = stage.thenCompose(ignored -> transaction.runAsync(group.getKey(), parameters(group.getKey(), rows, indices))
+                .thenCompose(cursor -> cursor.listAsync(record -> record.get(0).asLong()))
+                .thenAccept(created -> {
+                    for (int i = 0; i < indices.size(); i++) {
+                        ids[indices.get(i)] = created.get(i);
+                    }
+                }));
+        }
+        return stage.thenApply(ignored -> new ArrayList<>(Arrays.asList(ids)));
+    }
+
+    private static Value parameters(String statement, List<Map<String, Object>> rows, List<Integer> indices) {
+        return Values.parameters("nodes", indices.stream().map(i -> AbstractNeo4JNodeRepositoyImpl.row(statement, rows.get(i))).toArray());
+    }
+
+    /**
+     * Same as {@link AbstractNeo4JNodeRepositoyImpl#findById(Long)}
+     *
+     * @param id id of node
+     * @return stage that completes with the node or null
+     */
+    public CompletionStage<S> findById(Long id) {
+        return findOne(repository.FIND_BY_ID_STATEMENT, Values.parameters("id", id));
+    }
+
+    /**
+     * Same as {@link AbstractNeo4JNodeRepositoyImpl#findAll()}
+     *
+     * @return stage that completes with all nodes of type S
+     */
+    public CompletionStage<List<S>> findAll() {
+        return findList(repository.FIND_ALL_STATEMENT, null);
+    }
+
+    /**
+     * Same as {@link AbstractNeo4JNodeRepositoyImpl#findBy(String, Value)}
+     *
+     * @param condition  any condition that would be after the "WHERE" in a cypher queryTyped
+     * @param parameters all parameters defined in the condition (parameters optional)
+     * @return stage that completes with the first node that satisfies the condition or null
+     */
+    public CompletionStage<S> findBy(String condition, Value parameters) {
+        return findOne(repository.FIND_BY_WHERE_STATEMENT.replace("_WHERE_", condition), parameters);
+    }
+
+    /**
+     * Same as {@link AbstractNeo4JNodeRepositoyImpl#findAllBy(String, Value)}
+     *
+     * @param condition  any condition that would be after the "WHERE" in a cypher queryTyped
+     * @param parameters all parameters defined in the condition (parameters optional)
+     * @return stage that completes with all nodes that satisfy the condition
+     */
+    public CompletionStage<List<S>> findAllBy(String condition, Value parameters) {
+        return findList(repository.FIND_BY_WHERE_STATEMENT.replace("_WHERE_", condition), parameters);
+    }
+
+    /**
+     * Same as {@link AbstractNeo4JNodeRepositoyImpl#query(String, Value, Class)}
+     *
+     * @param query      The query text
+     * @param parameters The query parameters
+     * @param clazz      The result clazz type
+     * @param <T>        Result type
+     * @return stage that completes with the first result or null
+     */
+    public <T> CompletionStage<T> query(String query, Value parameters, Class<T> clazz) {
+        return query(query, parameters, clazz, CypherClassifier.classify(query));
+    }
+
+    /**
+     * Same as {@link AbstractNeo4JNodeRepositoyImpl#query(String, Value, Class, AccessMode)}
+     *
+     * @param query      The query text
+     * @param parameters The query parameters
+     * @param clazz      The result clazz type
+     * @param accessMode The access mode of the transaction
+     * @param <T>        Result type
+     * @return stage that completes with the first result or null
+     */
+    public <T> CompletionStage<T> query(String query, Value parameters, Class<T> clazz, AccessMode accessMode) {
+        Function<Record, T> mapper = mapper(clazz);
+        return manager.executeAsync(transaction -> transaction.runAsync(query, parameters)
+            .thenCompose(ResultCursor::nextAsync), accessMode)
+            .thenApply(record -> record == null ? null : mapper.apply(record));
+    }
+
+    /**
+     * Same as {@link AbstractNeo4JNodeRepositoyImpl#queryAll(String, Value, Class)}
+     *
+     * @param query      The query text
+     * @param parameters The query parameters
+     * @param clazz      The result clazz type
+     * @param <T>        Result type
+     * @return stage that completes with all results
+     */
+    public <T> CompletionStage<List<T>> queryAll(String query, Value parameters, Class<T> clazz) {
+        return queryAll(query, parameters, clazz, CypherClassifier.classify(query));
+    }
+
+    /**
+     * Same as {@link AbstractNeo4JNodeRepositoyImpl#queryAll(String, Value, Class, AccessMode)}
+     *
+     * @param query      The query text
+     * @param parameters The query parameters
+     * @param clazz      The result clazz type
+     * @param accessMode The access mode of the transaction
+     * @param <T>        Result type
+     * @return stage that completes with all results
+     */
+    public <T> CompletionStage<List<T>> queryAll(String query, Value parameters, Class<T> clazz, AccessMode accessMode) {
+        Function<Record, T> mapper = mapper(clazz);
+        return manager.executeAsync(transaction -> transaction.runAsync(query, parameters)
+            .thenCompose(cursor -> cursor.listAsync(mapper)), accessMode);
+    }
+
+    /**
+     * Publishes all nodes of type S. Nodes are only loaded as the subscriber requests them, so arbitrary large label
+     * scans can be passed to slow consumers with bounded memory.
+     *
+     * @return publisher of all nodes of type S
+     */
+    public Flow.Publisher<S> publishAll() {
+        return manager.publishRead(repository.FIND_ALL_STATEMENT, null, this::cast);
+    }
+
+    /**
+     * Publishes all nodes that satisfy the condition, see {@link AsyncNeo4JNodeRepositoryImpl#publishAll()}
+     *
+     * @param condition  any condition that would be after the "WHERE" in a cypher queryTyped
+     * @param parameters all parameters defined in the condition (parameters optional)
+     * @return publisher of all nodes that satisfy the condition
+     */
+    public Flow.Publisher<S> publishAllBy(String condition, Value parameters) {
+        return manager.publishRead(repository.FIND_BY_WHERE_STATEMENT.replace("_WHERE_", condition), parameters, this::cast);
+    }
+
+    /**
+     * Publishes all results of the query, see {@link AsyncNeo4JNodeRepositoryImpl#publishAll()}
+     *
+     * @param query      The query text
+     * @param parameters The query parameters
+     * @param clazz      The result clazz type
+     * @param <T>        Result type
+     * @return publisher of all results
+     */
+    public <T> Flow.Publisher<T> publishAll(String query, Value parameters, Class<T> clazz) {
+        return publishAll(query, parameters, clazz, CypherClassifier.classify(query));
+    }
+
+    /**
+     * Same as {@link AsyncNeo4JNodeRepositoryImpl#publishAll(String, Value, Class)} with an explicit access mode
+     *
+     * @param query      The query text
+     * @param parameters The query parameters
+     * @param clazz      The result clazz type
+     * @param accessMode The access mode of the transaction
+     * @param <T>        Result type
+     * @return publisher of all results
+     */
+    public <T> Flow.Publisher<T> publishAll(String query, Value parameters, Class<T> clazz, AccessMode accessMode) {
+        return manager.publish(query, parameters, accessMode, mapper(clazz));
+    }
+
+    private boolean isTyped(Class<?> clazz) {
+        return clazz.getSimpleName().equals(repository.getClassName());
+    }
+
+    /**
+     * @param clazz the result clazz type
+     * @param <T>   result type
+     * @return maps the first column of a record to a node of this repository or a java type
+     */
+    private <T> Function<Record, T> mapper(Class<T> clazz) {
+        if (isTyped(clazz)) {
+            return record -> clazz.cast(repository.cast(record.get(0), null, null));
+        }
+        return record -> ValueCast.castToJavaLang(record.get(0), clazz);
+    }
+
+    private CompletionStage<S> findOne(String query, Value parameters) {
+        return manager.executeReadAsync(transaction -> transaction.runAsync(query, parameters)
+            .thenCompose(ResultCursor::nextAsync))
+            .thenApply(record -> record == null ? null : cast(record));
+    }
+
+    private CompletionStage<List<S>> findList(String query, Value parameters) {
+        return manager.executeReadAsync(transaction -> transaction.runAsync(query, parameters)
+            .thenCompose(cursor -> cursor.listAsync(this::cast)));
+    }
+
+    /**
+     * Casts a record of the find statements
+     *
+     * @param record with root, relationships and nodes
+     * @return the casted node
+     */
+    protected S cast(Record record) {
+        Value r = record.get(0);
+        return repository.cast(r.get("root"), r.get("relationships"), r.get("nodes"));
+    }
+
+    /**
+     * gets value of field {@link AsyncNeo4JNodeRepositoryImpl#manager}
+     *
+     * @return value of field manager
+     * @see AsyncNeo4JNodeRepositoryImpl#manager
+     */
+    protected AsyncTransactionManager getManager() {
+        return manager;
+    }
+
+    /**
+     * gets value of field {@link AsyncNeo4JNodeRepositoryImpl#repository}
+     *
+     * @return value of field repository
+     * @see AsyncNeo4JNodeRepositoryImpl#repository
+     */
+    protected AbstractNeo4JNodeRepositoyImpl<S> getRepository() {
+        return repository;
+    }
+
+    /**
+     * sets value of field {@link AsyncNeo4JNodeRepositoryImpl#executor}
+     *
+     * @param executor value of field executor
+     * @see AsyncNeo4JNodeRepositoryImpl#executor
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+}
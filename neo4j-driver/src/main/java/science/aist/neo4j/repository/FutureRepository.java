@@ -42,6 +42,36 @@ public class FutureRepository extends AbstractNeo4JRepository {
         getRepository().deleteAll();
     }
 
+    @Override
+    public long count() {
+        return getRepository().count();
+    }
+
+    @Override
+    public void delete(Object node) {
+        getRepository().delete(node);
+    }
+
+    @Override
+    public void deleteAll(Iterable nodes) {
+        getRepository().deleteAll(nodes);
+    }
+
+    @Override
+    public void deleteById(Object o) {
+        getRepository().deleteById(o);
+    }
+
+    @Override
+    public boolean existsById(Object o) {
+        return getRepository().existsById(o);
+    }
+
+    @Override
+    public Iterable findAllById(Iterable ids) {
+        return getRepository().findAllById(ids);
+    }
+
     @Override
     public Iterable findAll() {
         return getRepository().findAll();
@@ -0,0 +1,196 @@
+package science.aist.neo4j.repository;
+
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
+import science.aist.neo4j.util.Pair;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * <p>The statements that save a planned object graph: the creates and updates with one statement per label set and the
+ * relationships with one statement per type. The ids of created nodes are collected while the creates run and only
+ * assigned to the objects with {@link GraphWrite#assignIds()}, so the same write can run in a blocking transaction,
+ * which assigns them right away, and in an async transaction, which assigns them after the commit.</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class GraphWrite {
+
+    /**
+     * Statements that create nodes, each returns the ids of its nodes in order
+     */
+    private final List<Statement> creates;
+
+    /**
+     * Statements that update nodes
+     */
+    private final List<Statement> updates;
+
+    /**
+     * Ids of the updated nodes
+     */
+    private final Collection<Long> updatedIds;
+
+    /**
+     * Source and target nodes per relationship statement
+     */
+    private final Map<String, List<Pair<Object, Object>>> relationships;
+
+    /**
+     * Id of a node that was saved before
+     */
+    private final Function<Object, Long> idGetter;
+
+    /**
+     * Assigns the id of a node
+     */
+    private final BiConsumer<Object, Long> idSetter;
+
+    /**
+     * Ids of the created nodes, not assigned yet
+     */
+    private final Map<Object, Long> createdIds = new IdentityHashMap<>();
+
+    /**
+     * @param creates       statements that create nodes, each returns the ids of its nodes in order
+     * @param updates       statements that update nodes
+     * @param updatedIds    ids of the updated nodes
+     * @param relationships source and target nodes per relationship statement
+     * @param idGetter      id of a node that was saved before
+     * @param idSetter      assigns the id of a node
+     */
+    public GraphWrite(List<Statement> creates, List<Statement> updates, Collection<Long> updatedIds,
+                      Map<String, List<Pair<Object, Object>>> relationships, Function<Object, Long> idGetter, BiConsumer<Object, Long> idSetter) {
+        this.creates = creates;
+        this.updates = updates;
+        this.updatedIds = updatedIds;
+        this.relationships = relationships;
+        this.idGetter = idGetter;
+        this.idSetter = idSetter;
+    }
+
+    /**
+     * Records the id of a created node
+     *
+     * @param node the node
+     * @param id   the id the database assigned
+     */
+    public synchronized void created(Object node, long id) {
+        createdIds.put(node, id);
+    }
+
+    /**
+     * @param node a node of the graph
+     * @return the id of the node, also if it was created by this write and the id is not assigned yet
+     */
+    public synchronized Long getId(Object node) {
+        Long id = createdIds.get(node);
+        return id != null ? id : idGetter.apply(node);
+    }
+
+    /**
+     * Assigns the ids of the created nodes to the objects
+     */
+    public synchronized void assignIds() {
+        createdIds.forEach(idSetter);
+    }
+
+    /**
+     * Takes the assigned ids of the created nodes back, e.g. if the transaction is rolled back
+     */
+    public synchronized void resetIds() {
+        createdIds.keySet().forEach(x -> idSetter.accept(x, null));
+    }
+
+    /**
+     * gets value of field {@link GraphWrite#creates}
+     *
+     * @return value of field creates
+     * @see GraphWrite#creates
+     */
+    public List<Statement> getCreates() {
+        return creates;
+    }
+
+    /**
+     * gets value of field {@link GraphWrite#updates}
+     *
+     * @return value of field updates
+     * @see GraphWrite#updates
+     */
+    public List<Statement> getUpdates() {
+        return updates;
+    }
+
+    /**
+     * gets value of field {@link GraphWrite#updatedIds}
+     *
+     * @return value of field updatedIds
+     * @see GraphWrite#updatedIds
+     */
+    public Collection<Long> getUpdatedIds() {
+        return updatedIds;
+    }
+
+    /**
+     * @return the relationship statements, must only be called once all creates ran
+     */
+    public List<Statement> getRelationships() {
+        List<Statement> statements = new ArrayList<>();
+        relationships.forEach((text, edges) -> {
+            List<Value> tuples = edges.stream()
+                .map(x -> Values.parameters("source", getId(x.getKey()), "target", getId(x.getValue())))
+                .collect(Collectors.toList());
+            statements.add(new Statement(text, Values.parameters("tuples",
+                AbstractNeo4JNodeRepositoyImpl.sortById(tuples, x -> x.get("source"), x -> x.get("target"))), List.of()));
+        });
+        return statements;
+    }
+
+    /**
+     * @return true if the graph has relationships between its nodes
+     */
+    public boolean hasRelationships() {
+        return !relationships.isEmpty();
+    }
+
+    /**
+     * A statement with its parameters and, for creates, the nodes it returns the ids of
+     */
+    public static class Statement {
+        private final String text;
+        private final Value parameters;
+        private final List<?> nodes;
+
+        /**
+         * @param text       the statement text
+         * @param parameters the parameters
+         * @param nodes      the created nodes in the order of the returned ids, empty for other statements
+         */
+        public Statement(String text, Value parameters, List<?> nodes) {
+            this.text = text;
+            this.parameters = parameters;
+            this.nodes = nodes;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public Value getParameters() {
+            return parameters;
+        }
+
+        public List<?> getNodes() {
+            return nodes;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package science.aist.neo4j.repository;
+
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * <p>The persisted state of the most recently loaded or saved nodes of a repository, by node id. Used to write only
+ * the properties and relationships of a node that changed since. The least recently used snapshots are dropped once
+ * there are more than the configured maximum.</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+class NodeSnapshots {
+
+    /**
+     * Snapshots by node id, in access order
+     */
+    private final LinkedHashMap<Long, Snapshot> snapshots = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Maximum number of snapshots
+     */
+    private final int maxSnapshots;
+
+    /**
+     * @param maxSnapshots maximum number of snapshots
+     */
+    NodeSnapshots(int maxSnapshots) {
+        this.maxSnapshots = maxSnapshots;
+    }
+
+    /**
+     * @param id id of a node
+     * @return the snapshot of the node, null if there is none
+     */
+    synchronized Snapshot get(long id) {
+        return snapshots.get(id);
+    }
+
+    /**
+     * Remembers the persisted state of a node
+     *
+     * @param id         id of the node
+     * @param properties persisted properties, converted to values so properties of different java types compare equal
+     * @param targets    ids of the relationship targets per type, null if unknown
+     */
+    void put(long id, Map<String, Value> properties, Map<String, long[]> targets) {
+        Map<String, long[]> sorted = null;
+        if (targets != null) {
+            sorted = new HashMap<>();
+            for (Map.Entry<String, long[]> entry : targets.entrySet()) {
+                long[] ids = entry.getValue().clone();
+                Arrays.sort(ids);
+                sorted.put(entry.getKey(), ids);
+            }
+        }
+        Snapshot snapshot = new Snapshot(properties, sorted);
+        synchronized (this) {
+            snapshots.put(id, snapshot);
+            if (snapshots.size() > maxSnapshots) {
+                snapshots.remove(snapshots.keySet().iterator().next());
+            }
+        }
+    }
+
+    /**
+     * @param id id of a node whose persisted state is unknown
+     */
+    synchronized void remove(long id) {
+        snapshots.remove(id);
+    }
+
+    /**
+     * Forgets all nodes
+     */
+    synchronized void clear() {
+        snapshots.clear();
+    }
+
+    /**
+     * @return number of snapshots
+     */
+    synchronized int size() {
+        return snapshots.size();
+    }
+
+    /**
+     * @param properties properties of a node
+     * @return the properties as values, without null properties as the database does not store them
+     */
+    static Map<String, Value> values(Map<String, Object> properties) {
+        Map<String, Value> values = new HashMap<>(properties.size() * 2);
+        properties.forEach((key, value) -> {
+            if (value != null) {
+                values.put(key, Values.value(value));
+            }
+        });
+        return values;
+    }
+
+    /**
+     * The persisted state of a node
+     */
+    static class Snapshot {
+        private final Map<String, Value> properties;
+        private final Map<String, long[]> targets;
+
+        private Snapshot(Map<String, Value> properties, Map<String, long[]> targets) {
+            this.properties = properties;
+            this.targets = targets;
+        }
+
+        /**
+         * @param current the current properties
+         * @return the properties that changed, with null for removed properties
+         */
+        Map<String, Object> delta(Map<String, Value> current) {
+            Map<String, Object> delta = new HashMap<>();
+            current.forEach((key, value) -> {
+                if (!Objects.equals(properties.get(key), value)) {
+                    delta.put(key, value);
+                }
+            });
+            properties.keySet().stream().filter(x -> !current.containsKey(x)).forEach(x -> delta.put(x, null));
+            return delta;
+        }
+
+        /**
+         * @param current the current relationship targets per type
+         * @return the targets that are not persisted yet per type, without types that have none
+         */
+        Map<String, long[]> addedTargets(Map<String, long[]> current) {
+            if (targets == null) {
+                return current;
+            }
+            Map<String, long[]> added = new LinkedHashMap<>();
+            current.forEach((type, ids) -> {
+                long[] persisted = targets.getOrDefault(type, new long[0]);
+                long[] missing = Arrays.stream(ids).filter(x -> Arrays.binarySearch(persisted, x) < 0).toArray();
+                if (missing.length > 0) {
+                    added.put(type, missing);
+                }
+            });
+            return added;
+        }
+    }
+}
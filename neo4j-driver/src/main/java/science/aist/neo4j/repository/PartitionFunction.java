@@ -0,0 +1,34 @@
+package science.aist.neo4j.repository;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * <p>Decides in which shard of a {@link ShardedNodeRepositoryImpl} a new node is stored.</p>
+ *
+ * @param <S> Type of class
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+@FunctionalInterface
+public interface PartitionFunction<S> {
+
+    /**
+     * @param node   the node to be stored
+     * @param shards number of shards
+     * @return index of the shard the node is stored in, between 0 and shards - 1
+     */
+    int shard(S node, int shards);
+
+    /**
+     * Distributes the nodes by the hash of a key, e.g. the tenant id or a time bucket. Nodes with the same key are
+     * stored in the same shard.
+     *
+     * @param key extracts the partition key of a node
+     * @param <S> Type of class
+     * @return the partition function
+     */
+    static <S> PartitionFunction<S> byKey(Function<? super S, ?> key) {
+        return (node, shards) -> Math.floorMod(Objects.hashCode(key.apply(node)), shards);
+    }
+}
@@ -0,0 +1,22 @@
+package science.aist.neo4j.repository;
+
+/**
+ * <p>Gets notified after every committed chunk of {@link AbstractNeo4JNodeRepositoyImpl#saveAllChunked(java.util.stream.Stream)}.</p>
+ * <p>Listeners are called on the thread that saves the nodes and should return quickly.</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+@FunctionalInterface
+public interface SaveProgressListener {
+
+    /**
+     * Called once a chunk was written
+     *
+     * @param savedNodes     nodes saved so far, including the chunk
+     * @param chunkSize      nodes in the chunk
+     * @param nodesPerSecond nodes saved per second since the save started
+     * @param elapsedMillis  milliseconds since the save started
+     */
+    void chunkSaved(long savedNodes, int chunkSize, double nodesPerSecond, long elapsedMillis);
+}
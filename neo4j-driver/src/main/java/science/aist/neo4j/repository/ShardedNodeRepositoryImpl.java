@@ -0,0 +1,401 @@
+package science.aist.neo4j.repository;
+
+import org.neo4j.driver.Bookmark;
+import org.neo4j.driver.Value;
+import science.aist.neo4j.Neo4jRepository;
+import science.aist.neo4j.transaction.TransactionManager;
+import science.aist.neo4j.util.DaemonExecutors;
+import science.aist.neo4j.util.WeakIdentityMap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * <p>Distributes the nodes of a class over several databases. Every shard is a node repository with its own
+ * {@link science.aist.neo4j.transaction.TransactionManager}, i.e. its own driver or database. New nodes are stored in
+ * the shard chosen by the {@link PartitionFunction}, existing nodes stay in the shard they were created in.</p>
+ * <p>The ids of the nodes are unique per database only, so the index of the shard is stored in the lowest
+ * {@link ShardedNodeRepositoryImpl#SHARD_BITS} bits of the ids of this repository. The objects keep the ids of their
+ * shard, so a loaded object can be used as relationship target or saved by the shard repository directly. This
+ * repository remembers the shard of every object it loaded or saved, including the related objects reachable from
+ * them, and {@link ShardedNodeRepositoryImpl#getGlobalId(Object)} returns the id of an object in this repository.
+ * Relationships can only connect nodes within the same shard: a new node with relationships to known objects is
+ * stored in their shard instead of the one of the {@link PartitionFunction}.</p>
+ * <p>{@link ShardedNodeRepositoryImpl#findAll()} and the find by condition methods query all shards in parallel on
+ * the executor and return the results in the order of the shards. A shard with a transaction active on the calling
+ * thread is queried on the calling thread within that transaction, the others get the bookmark of the calling
+ * thread.</p>
+ *
+ * @param <S> Type of class
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class ShardedNodeRepositoryImpl<S> implements Neo4jRepository<S, Long> {
+
+    /**
+     * Number of bits of an id that store the index of the shard
+     */
+    public static final int SHARD_BITS = 8;
+
+    /**
+     * Maximum number of shards
+     */
+    public static final int MAX_SHARDS = 1 << SHARD_BITS;
+
+    /**
+     * The shards, the index in this list is stored in the ids
+     */
+    private final List<AbstractNeo4JNodeRepositoyImpl<S>> shards;
+
+    /**
+     * Chooses the shard of new nodes
+     */
+    private final PartitionFunction<? super S> partitionFunction;
+
+    /**
+     * Executor the shards are queried on
+     */
+    private Executor executor = DaemonExecutors.newCachedPool("neo4j-shards");
+
+    /**
+     * Index of the shard of every object loaded or saved by this repository
+     */
+    private final WeakIdentityMap<Object, Integer> shardOfObject = new WeakIdentityMap<>();
+
+    /**
+     * @param shards            the repositories of the shards, their order must never change
+     * @param partitionFunction chooses the shard of new nodes
+     */
+    public ShardedNodeRepositoryImpl(List<AbstractNeo4JNodeRepositoyImpl<S>> shards, PartitionFunction<? super S> partitionFunction) {
+        if (shards.isEmpty() || shards.size() > MAX_SHARDS) {
+            throw new IllegalArgumentException("Between 1 and " + MAX_SHARDS + " shards are supported");
+        }
+        this.shards = List.copyOf(shards);
+        this.partitionFunction = partitionFunction;
+    }
+
+    /**
+     * @param localId id of a node within its shard
+     * @param shard   index of the shard
+     * @return the id of the node in this repository
+     */
+    public static long globalId(long localId, int shard) {
+        return (localId << SHARD_BITS) | shard;
+    }
+
+    /**
+     * @param globalId id of a node in this repository
+     * @return index of the shard the node is stored in
+     */
+    public static int shardOf(long globalId) {
+        return (int) (globalId & (MAX_SHARDS - 1));
+    }
+
+    /**
+     * @param globalId id of a node in this repository
+     * @return id of the node within its shard
+     */
+    public static long localId(long globalId) {
+        return globalId >>> SHARD_BITS;
+    }
+
+    /**
+     * @param index index of the shard
+     * @return the repository of the shard, e.g. to run queries on a single shard
+     */
+    public AbstractNeo4JNodeRepositoyImpl<S> getShard(int index) {
+        return shards.get(index);
+    }
+
+    /**
+     * @return number of shards
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * @param node a node loaded or saved by this repository
+     * @return the id of the node in this repository, null if it has no id
+     * @throws IllegalStateException if the node has an id, but was not loaded or saved by this repository
+     */
+    public Long getGlobalId(S node) {
+        Long id = shards.get(0).getId(node);
+        return id == null ? null : globalId(id, knownShard(node));
+    }
+
+    private int knownShard(S node) {
+        Integer shard = shardOfObject.get(node);
+        if (shard == null) {
+            throw new IllegalStateException("The shard of node " + shards.get(0).getId(node) + " is unknown, it was not loaded or saved by this repository");
+        }
+        return shard;
+    }
+
+    private int shardFor(S node) {
+        if (shards.get(0).getId(node) != null) {
+            return knownShard(node);
+        }
+        Set<Integer> related = shards.get(0).relatedNodes(node).stream().map(shardOfObject::get).filter(Objects::nonNull).collect(Collectors.toSet());
+        if (related.size() > 1) {
+            throw new IllegalStateException("Node has relationships to nodes of the shards " + related);
+        }
+        if (!related.isEmpty()) {
+            return related.iterator().next();
+        }
+        int shard = partitionFunction.shard(node, shards.size());
+        if (shard < 0 || shard >= shards.size()) {
+            throw new IllegalStateException("Partition function returned shard " + shard + " of " + shards.size());
+        }
+        return shard;
+    }
+
+    @Override
+    public <T extends S> T save(T node) {
+        saveAll(List.of(node));
+        return node;
+    }
+
+    @Override
+    public <T extends S> Iterable<T> saveAll(Iterable<T> nodes) {
+        Map<Integer, List<T>> byShard = new LinkedHashMap<>();
+        for (T node : nodes) {
+            byShard.computeIfAbsent(shardFor(node), x -> new ArrayList<>()).add(node);
+        }
+        byShard.forEach((index, shardNodes) -> {
+            AbstractNeo4JNodeRepositoyImpl<S> shard = shards.get(index);
+            if (shard.getTransactionManager().getUnitOfWork() != null) {
+                // the shard of the recorded nodes would only be known once they are flushed
+                throw new IllegalStateException("Sharded repositories can't be used in a unit of work");
+            }
+            shard.saveAll(shardNodes);
+            remember(shard, shardNodes, index);
+        });
+        return nodes;
+    }
+
+    @Override
+    public void deleteAll() {
+        fanOut(shard -> {
+            shard.deleteAll();
+            return List.of();
+        });
+    }
+
+    @Override
+    public void delete(S node) {
+        deleteById(getGlobalId(node));
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends S> nodes) {
+        List<Long> ids = new ArrayList<>();
+        nodes.forEach(x -> ids.add(getGlobalId(x)));
+        byShard(ids).forEach((index, localIds) -> shards.get(index).deleteByIds(localIds));
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        if (id != null && shardOf(id) < shards.size()) {
+            shards.get(shardOf(id)).deleteById(localId(id));
+        }
+    }
+
+    @Override
+    public long count() {
+        return shards.stream().mapToLong(AbstractNeo4JNodeRepositoyImpl::count).sum();
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return id != null && shardOf(id) < shards.size() && shards.get(shardOf(id)).existsById(localId(id));
+    }
+
+    @Override
+    public Iterable<S> findAll() {
+        return fanOut(AbstractNeo4JNodeRepositoyImpl::findAll);
+    }
+
+    /**
+     * Loads the nodes with one query per shard that holds any of them, the nodes are returned in the order of the shards
+     *
+     * @param ids ids of the nodes
+     * @return the found nodes
+     */
+    @Override
+    public Iterable<S> findAllById(Iterable<Long> ids) {
+        List<Long> all = new ArrayList<>();
+        ids.forEach(all::add);
+        List<S> nodes = new ArrayList<>();
+        byShard(all).forEach((index, localIds) -> {
+            AbstractNeo4JNodeRepositoyImpl<S> shard = shards.get(index);
+            List<S> found = new ArrayList<>();
+            shard.findAllById(localIds).forEach(found::add);
+            remember(shard, found, index);
+            nodes.addAll(found);
+        });
+        return nodes;
+    }
+
+    /**
+     * @param ids ids of this repository, null and ids of unknown shards are skipped
+     * @return the ids within their shard by index of the shard, in the order of the shards
+     */
+    private Map<Integer, List<Long>> byShard(List<Long> ids) {
+        Map<Integer, List<Long>> byShard = new TreeMap<>();
+        ids.stream().filter(x -> x != null && shardOf(x) < shards.size())
+            .forEach(x -> byShard.computeIfAbsent(shardOf(x), i -> new ArrayList<>()).add(localId(x)));
+        return byShard;
+    }
+
+    /**
+     * Same as {@link AbstractNeo4JNodeRepositoyImpl#findBy(String, Value)}, on all shards
+     *
+     * @param condition  where condition
+     * @param parameters parameters of the condition
+     * @return a node of the first shard that has a matching node, null if there is none
+     */
+    public S findBy(String condition, Value parameters) {
+        return fanOut(shard -> {
+            S node = shard.findBy(condition, parameters);
+            return node == null ? List.of() : List.of(node);
+        }).stream().findFirst().orElse(null);
+    }
+
+    /**
+     * Same as {@link AbstractNeo4JNodeRepositoyImpl#findAllBy(String, Value)}, on all shards
+     *
+     * @param condition  where condition
+     * @param parameters parameters of the condition
+     * @return the matching nodes of all shards
+     */
+    public Iterable<S> findAllBy(String condition, Value parameters) {
+        return fanOut(shard -> shard.findAllBy(condition, parameters));
+    }
+
+    @Override
+    public S findById(Long id) {
+        return onShard(id, shard -> shard.findById(localId(id)));
+    }
+
+    @Override
+    public S findSubtree(Long id) {
+        return onShard(id, shard -> shard.findSubtree(localId(id)));
+    }
+
+    @Override
+    public S findSubtree(Long id, int depth) {
+        return onShard(id, shard -> shard.findSubtree(localId(id), depth));
+    }
+
+    @Override
+    public S findSubtree(Long id, int depth, List<String> relationships) {
+        return onShard(id, shard -> shard.findSubtree(localId(id), depth, relationships));
+    }
+
+    private S onShard(Long id, Function<AbstractNeo4JNodeRepositoyImpl<S>, S> find) {
+        int index = shardOf(id);
+        if (index >= shards.size()) {
+            return null;
+        }
+        AbstractNeo4JNodeRepositoyImpl<S> shard = shards.get(index);
+        S node = find.apply(shard);
+        if (node != null) {
+            remember(shard, List.of(node), index);
+        }
+        return node;
+    }
+
+    /**
+     * Runs a query on all shards in parallel and merges the results in the order of the shards. Shards with a
+     * transaction active on the calling thread are queried on the calling thread, so the query sees the changes of the
+     * transaction. The other shards are queried on the executor, with the bookmark of the calling thread, so they see
+     * the changes the calling thread committed.
+     */
+    private List<S> fanOut(Function<AbstractNeo4JNodeRepositoyImpl<S>, Iterable<S>> query) {
+        List<CompletableFuture<List<S>>> futures = new ArrayList<>();
+        Map<Integer, CompletableFuture<List<S>>> inTransaction = new TreeMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            int index = i;
+            TransactionManager manager = shards.get(index).getTransactionManager();
+            if (manager.isTransactionActive()) {
+                CompletableFuture<List<S>> future = new CompletableFuture<>();
+                inTransaction.put(index, future);
+                futures.add(future);
+                continue;
+            }
+            Bookmark bookmark = manager.getLastBookmark();
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                manager.useBookmark(bookmark);
+                return queryShard(query, index);
+            }, executor));
+        }
+        inTransaction.forEach((index, future) -> {
+            try {
+                future.complete(queryShard(query, index));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        try {
+            return futures.stream().map(CompletableFuture::join).flatMap(List::stream).collect(Collectors.toList());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private List<S> queryShard(Function<AbstractNeo4JNodeRepositoyImpl<S>, Iterable<S>> query, int index) {
+        AbstractNeo4JNodeRepositoyImpl<S> shard = shards.get(index);
+        List<S> nodes = new ArrayList<>();
+        query.apply(shard).forEach(nodes::add);
+        remember(shard, nodes, index);
+        return nodes;
+    }
+
+    /**
+     * Remembers the shard of the given nodes and of all nodes reachable from them
+     *
+     * @param shard the repository of the shard
+     * @param nodes the nodes
+     * @param index index of the shard
+     */
+    private void remember(AbstractNeo4JNodeRepositoyImpl<S> shard, List<? extends S> nodes, int index) {
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Object> pending = new ArrayDeque<>();
+        nodes.stream().filter(Objects::nonNull).forEach(pending::add);
+        while (!pending.isEmpty()) {
+            Object node = pending.poll();
+            if (visited.add(node)) {
+                shardOfObject.put(node, index);
+                pending.addAll(shard.relatedNodes(node));
+            }
+        }
+    }
+
+    /**
+     * sets value of field {@link ShardedNodeRepositoryImpl#executor}
+     *
+     * @param executor value of field executor
+     * @see ShardedNodeRepositoryImpl#executor
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+}
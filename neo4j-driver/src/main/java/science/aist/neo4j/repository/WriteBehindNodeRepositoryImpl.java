@@ -0,0 +1,544 @@
+package science.aist.neo4j.repository;
+
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Required;
+import science.aist.neo4j.transaction.RetryPolicy;
+import science.aist.neo4j.util.Journal;
+import science.aist.neo4j.util.ValueCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * <p>Write behind variant of a node repository. Saved nodes are appended to a memory mapped journal and the save
+ * returns at once. A background thread writes the journal in batches with the bulk statements of the given
+ * repository. Entries that were not written before a restart are written after it, so an acknowledged save is not
+ * lost. A batch may be written again if the process stops right after it was committed: updates are idempotent, and
+ * every new node gets the id of its journal entry in the property {@link WriteBehindNodeRepositoryImpl#JOURNAL_ID},
+ * that it is merged on, so it is created only once. Create an index on this property for the labels of the nodes.</p>
+ * <p>New nodes do not get an id, as it is only assigned once the node is written. Nodes with relationships are saved
+ * directly by the given repository, as their related nodes need ids. If the journal is full, saves block up to
+ * {@link WriteBehindNodeRepositoryImpl#maxBlockMillis} until the background thread caught up.</p>
+ * <p>Batches that fail with a transient error or because the database is not available are retried until they
+ * succeed. A batch that fails with another error {@link WriteBehindNodeRepositoryImpl#maxAttempts} times is split in
+ * halves, until the entry that can't be written is found. That entry is appended to the
+ * {@link WriteBehindNodeRepositoryImpl#deadLetterFile} and skipped, so it does not block the following entries.</p>
+ *
+ * @param <S> Type of class
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class WriteBehindNodeRepositoryImpl<S> implements AutoCloseable {
+
+    /**
+     * Logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindNodeRepositoryImpl.class);
+
+    /**
+     * Tells errors that go away when retried from errors caused by the written entries
+     */
+    private static final RetryPolicy TRANSIENT_ERRORS = new RetryPolicy();
+
+    /**
+     * Update of a node that has an id
+     */
+    private static final byte UPDATE = 2;
+
+    /**
+     * Create followed by the id of the journal entry
+     */
+    private static final byte CREATE_ONCE = 3;
+
+    /**
+     * Property that holds the id of the journal entry a node was created from
+     */
+    public static final String JOURNAL_ID = "journalId";
+
+    /**
+     * Creates the nodes of a batch, unless a node with the same journal entry id exists from an earlier attempt
+     */
+    private static final String MERGE_BULK_STATEMENT = "UNWIND $nodes as node MERGE (n:LABELS {" + JOURNAL_ID + ": node.journalId}) " +
+        "ON CREATE SET n = node.properties, n." + JOURNAL_ID + " = node.journalId";
+
+    /**
+     * Repository that provides statements and object mapping
+     */
+    private final AbstractNeo4JNodeRepositoyImpl<S> repository;
+
+    /**
+     * The journal file
+     */
+    private Path journalFile;
+
+    /**
+     * Size of the journal file in bytes
+     */
+    private int journalBytes = 64 * 1024 * 1024;
+
+    /**
+     * True if every save is written to disk before it returns, otherwise it is only written to the page cache
+     */
+    private boolean force;
+
+    /**
+     * Maximum number of nodes written in one transaction
+     */
+    private int batchSize = 1000;
+
+    /**
+     * Maximum time in milliseconds a save waits for space in a full journal
+     */
+    private long maxBlockMillis = 30_000;
+
+    /**
+     * Time in milliseconds to wait before a failed batch is written again
+     */
+    private long retryDelayMillis = 1000;
+
+    /**
+     * Number of times a batch is written before it is split, if it fails with an error that is not transient
+     */
+    private int maxAttempts = 3;
+
+    /**
+     * File the entries that can't be written are appended to, each prefixed with its length. Defaults to the journal
+     * file with the suffix ".dead".
+     */
+    private Path deadLetterFile;
+
+    /**
+     * The journal, null until started
+     */
+    private volatile Journal journal;
+
+    /**
+     * Thread that writes the journal to the database
+     */
+    private Thread flusher;
+
+    /**
+     * False once the repository is closed
+     */
+    private volatile boolean running;
+
+    /**
+     * Number of nodes written to the database
+     */
+    private final LongAdder flushedNodes = new LongAdder();
+
+    /**
+     * Number of batches that failed
+     */
+    private final LongAdder failedBatches = new LongAdder();
+
+    /**
+     * Number of entries that were appended to the dead letter file
+     */
+    private final LongAdder deadLetters = new LongAdder();
+
+    /**
+     * Milliseconds saves waited for space in the journal
+     */
+    private final LongAdder blockedMillis = new LongAdder();
+
+    /**
+     * @param repository repository that provides statements and object mapping
+     */
+    public WriteBehindNodeRepositoryImpl(AbstractNeo4JNodeRepositoyImpl<S> repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Opens the journal and starts writing the entries left from the last run
+     *
+     * @throws IOException if the journal can't be opened
+     */
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        if (deadLetterFile == null) {
+            deadLetterFile = Paths.get(journalFile + ".dead");
+        }
+        journal = new Journal(journalFile, journalBytes, force);
+        if (journal.getPendingEntries() > 0) {
+            logger.info("Replaying {} journal entries of {}", journal.getPendingEntries(), journalFile);
+        }
+        running = true;
+        flusher = new Thread(this::flushLoop, "write-behind-" + journalFile.getFileName());
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Same as {@link AbstractNeo4JNodeRepositoyImpl#save(Object)}, but returns once the node is in the journal.
+     *
+     * @param node node to be stored
+     * @param <T>  subtype of S
+     * @return the node, without id if it is new
+     */
+    public <T extends S> T save(T node) {
+        if (repository.hasRelationships(node)) {
+            return repository.save(node);
+        }
+        append(node);
+        return node;
+    }
+
+    /**
+     * Same as {@link AbstractNeo4JNodeRepositoyImpl#saveAll(Iterable)}, but returns once the nodes are in the journal.
+     *
+     * @param nodes to be saved
+     * @param <T>   subtype of S
+     * @return the nodes, without id if they are new
+     */
+    public <T extends S> Iterable<T> saveAll(Iterable<T> nodes) {
+        List<T> related = new ArrayList<>();
+        for (T node : nodes) {
+            if (repository.hasRelationships(node)) {
+                related.add(node);
+            } else {
+                append(node);
+            }
+        }
+        if (!related.isEmpty()) {
+            repository.saveAll(related);
+        }
+        return nodes;
+    }
+
+    private void append(S node) {
+        if (!running) {
+            throw new IllegalStateException("Write behind repository is not started");
+        }
+        Value properties = Values.value(repository.objectify(node));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            if (properties.get("id").isNull()) {
+                UUID journalId = UUID.randomUUID();
+                out.writeByte(CREATE_ONCE);
+                out.writeLong(journalId.getMostSignificantBits());
+                out.writeLong(journalId.getLeastSignificantBits());
+            } else {
+                out.writeByte(UPDATE);
+            }
+            ValueCodec.write(properties, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        long start = System.nanoTime();
+        try {
+            if (!journal.append(bytes.toByteArray(), maxBlockMillis)) {
+                throw new IllegalStateException("Journal " + journalFile + " is full");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for space in the journal", e);
+        } finally {
+            blockedMillis.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    private void flushLoop() {
+        int takeSize = batchSize;
+        int attempts = 0;
+        while (running || journal.getPendingEntries() > 0) {
+            List<byte[]> entries;
+            try {
+                entries = journal.take(takeSize, 100);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    return;
+                }
+                continue;
+            }
+            if (entries.isEmpty()) {
+                continue;
+            }
+            try {
+                write(entries);
+                journal.acknowledge();
+                flushedNodes.add(entries.size());
+                takeSize = Math.min(batchSize, 2 * takeSize);
+                attempts = 0;
+            } catch (RuntimeException e) {
+                failedBatches.increment();
+                if (!TRANSIENT_ERRORS.isRetryable(e) && ++attempts >= maxAttempts) {
+                    attempts = 0;
+                    if (entries.size() > 1) {
+                        // written in halves, until the entry that fails is found
+                        takeSize = (entries.size() + 1) / 2;
+                        journal.retry();
+                        logger.warn("Could not write {} journal entries, splitting the batch", entries.size(), e);
+                    } else {
+                        deadLetter(entries.get(0), e);
+                        journal.acknowledge();
+                        takeSize = batchSize;
+                    }
+                    continue;
+                }
+                journal.retry();
+                logger.warn("Could not write {} journal entries, retrying in {} ms", entries.size(), retryDelayMillis, e);
+                try {
+                    Thread.sleep(retryDelayMillis);
+                } catch (InterruptedException interrupted) {
+                    if (!running) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends an entry that can't be written to the dead letter file, so it can be inspected and written manually
+     *
+     * @param entry the journal entry
+     * @param error the error writing the entry failed with
+     */
+    private void deadLetter(byte[] entry, RuntimeException error) {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + entry.length).putInt(entry.length).put(entry);
+        try {
+            Files.write(deadLetterFile, buffer.array(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            deadLetters.increment();
+            logger.error("Could not write journal entry, moved it to {}", deadLetterFile, error);
+        } catch (IOException e) {
+            // the entry is lost, but it must not block the journal
+            logger.error("Could not write journal entry and could not move it to {}, dropped it", deadLetterFile, error);
+        }
+    }
+
+    private void write(List<byte[]> entries) {
+        List<Map<String, Object>> create = new ArrayList<>();
+        List<Map<String, Object>> update = new ArrayList<>();
+        List<String> journalIds = new ArrayList<>();
+        for (byte[] entry : entries) {
+            ByteBuffer buffer = ByteBuffer.wrap(entry);
+            byte kind = buffer.get();
+            if (kind == UPDATE) {
+                update.add(ValueCodec.read(buffer).asMap());
+            } else {
+                journalIds.add(new UUID(buffer.getLong(), buffer.getLong()).toString());
+                create.add(ValueCodec.read(buffer).asMap());
+            }
+        }
+        repository.getTransactionManager().runWrite(transaction -> {
+            repository.groupByLabels(repository.UPDATE_BULK_STATEMENT, update).forEach((statement, indices) ->
+                transaction.run(statement, Values.parameters("nodes", indices.stream().map(i -> AbstractNeo4JNodeRepositoyImpl.row(statement, update.get(i))).toArray())).consume());
+            repository.groupByLabels(MERGE_BULK_STATEMENT, create).forEach((statement, indices) ->
+                transaction.run(statement, Values.parameters("nodes", indices.stream().map(i -> {
+                    Map<String, Object> row = AbstractNeo4JNodeRepositoyImpl.row(statement, create.get(i));
+                    row.put(JOURNAL_ID, journalIds.get(i));
+                    return row;
+                }).toArray())).consume());
+        });
+        repository.invalidateCached(update.stream().map(x -> (Long) x.get("id")).collect(Collectors.toList()));
+    }
+
+    /**
+     * Waits until all saves up to now are written to the database
+     *
+     * @param timeoutMillis maximum time to wait
+     * @return true if everything was written
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitFlushed(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (getPendingNodes() > 0) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /**
+     * Stops accepting saves, writes the remaining entries for up to {@link WriteBehindNodeRepositoryImpl#maxBlockMillis}
+     * and closes the journal. Entries that were not written remain in the journal for the next start. If the calling
+     * thread is interrupted, the flusher is stopped at once and the interrupt flag is restored.
+     *
+     * @throws IOException if the journal can't be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        boolean interrupted = false;
+        try {
+            flusher.join(maxBlockMillis);
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        if (flusher.isAlive()) {
+            flusher.interrupt();
+        }
+        // the journal must not be closed while the flusher acknowledges entries
+        while (flusher.isAlive()) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        journal.close();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return number of saves that are not written to the database yet, 0 if the repository was not started
+     */
+    public int getPendingNodes() {
+        Journal journal = this.journal;
+        return journal == null ? 0 : journal.getPendingEntries();
+    }
+
+    /**
+     * @return milliseconds since the oldest save that is not written to the database yet, 0 if there is none
+     */
+    public long getFlushLagMillis() {
+        Journal journal = this.journal;
+        long oldest = journal == null ? -1 : journal.getOldestPendingTimestamp();
+        return oldest < 0 ? 0 : Math.max(0, System.currentTimeMillis() - oldest);
+    }
+
+    /**
+     * @return percentage of the journal used by saves that are not written to the database yet, 0 if the repository
+     * was not started
+     */
+    public double getJournalUsage() {
+        Journal journal = this.journal;
+        return journal == null ? 0 : 100.0 * journal.getPendingBytes() / journal.getEntryCapacity();
+    }
+
+    /**
+     * @return number of nodes written to the database
+     */
+    public long getFlushedNodes() {
+        return flushedNodes.sum();
+    }
+
+    /**
+     * @return number of batches that failed and were retried
+     */
+    public long getFailedBatches() {
+        return failedBatches.sum();
+    }
+
+    /**
+     * @return number of entries that could not be written and were moved to the dead letter file
+     */
+    public long getDeadLetters() {
+        return deadLetters.sum();
+    }
+
+    /**
+     * @return milliseconds saves waited for space in the journal
+     */
+    public long getBlockedMillis() {
+        return blockedMillis.sum();
+    }
+
+    /**
+     * sets value of field {@link WriteBehindNodeRepositoryImpl#journalFile}
+     *
+     * @param journalFile value of field journalFile
+     * @see WriteBehindNodeRepositoryImpl#journalFile
+     */
+    @Required
+    public void setJournalFile(Path journalFile) {
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * sets value of field {@link WriteBehindNodeRepositoryImpl#journalBytes}
+     *
+     * @param journalBytes value of field journalBytes
+     * @see WriteBehindNodeRepositoryImpl#journalBytes
+     */
+    public void setJournalBytes(int journalBytes) {
+        this.journalBytes = journalBytes;
+    }
+
+    /**
+     * sets value of field {@link WriteBehindNodeRepositoryImpl#force}
+     *
+     * @param force value of field force
+     * @see WriteBehindNodeRepositoryImpl#force
+     */
+    public void setForce(boolean force) {
+        this.force = force;
+    }
+
+    /**
+     * sets value of field {@link WriteBehindNodeRepositoryImpl#batchSize}
+     *
+     * @param batchSize value of field batchSize
+     * @see WriteBehindNodeRepositoryImpl#batchSize
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * sets value of field {@link WriteBehindNodeRepositoryImpl#maxBlockMillis}
+     *
+     * @param maxBlockMillis value of field maxBlockMillis
+     * @see WriteBehindNodeRepositoryImpl#maxBlockMillis
+     */
+    public void setMaxBlockMillis(long maxBlockMillis) {
+        this.maxBlockMillis = maxBlockMillis;
+    }
+
+    /**
+     * sets value of field {@link WriteBehindNodeRepositoryImpl#retryDelayMillis}
+     *
+     * @param retryDelayMillis value of field retryDelayMillis
+     * @see WriteBehindNodeRepositoryImpl#retryDelayMillis
+     */
+    public void setRetryDelayMillis(long retryDelayMillis) {
+        this.retryDelayMillis = retryDelayMillis;
+    }
+
+    /**
+     * sets value of field {@link WriteBehindNodeRepositoryImpl#maxAttempts}
+     *
+     * @param maxAttempts value of field maxAttempts
+     * @see WriteBehindNodeRepositoryImpl#maxAttempts
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * sets value of field {@link WriteBehindNodeRepositoryImpl#deadLetterFile}
+     *
+     * @param deadLetterFile value of field deadLetterFile
+     * @see WriteBehindNodeRepositoryImpl#deadLetterFile
+     */
+    public void setDeadLetterFile(Path deadLetterFile) {
+        this.deadLetterFile = deadLetterFile;
+    }
+}
@@ -1,10 +1,17 @@
 package science.aist.neo4j.transaction;
 
 import org.neo4j.driver.*;
+import org.neo4j.driver.summary.ResultSummary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>Transaction class, which decorates a element of {@link org.neo4j.driver.Transaction} and delegates
@@ -18,7 +25,7 @@ public abstract class AbstractTransaction implements Transaction {
     /**
      * Next unique transaction id for logging
      */
-    private static int nextTransactionId = 0;
+    private static final AtomicInteger nextTransactionId = new AtomicInteger();
 
     /**
      * Logger
@@ -35,12 +42,31 @@ public abstract class AbstractTransaction implements Transaction {
      */
     private Transaction decoratedElement;
 
+    /**
+     * Listeners that are notified about the statements run in this transaction
+     */
+    private final List<StatementListener> statementListeners;
+
+    /**
+     * Results of this transaction that were not reported to the listeners yet
+     */
+    private final Set<MeasuredResult> pendingResults = ConcurrentHashMap.newKeySet();
+
     /**
      * @param decoratedElement the decorated neo4j transaction
      */
     public AbstractTransaction(Transaction decoratedElement) {
-        transactionId = nextTransactionId++;
+        this(decoratedElement, Collections.emptyList());
+    }
+
+    /**
+     * @param decoratedElement   the decorated neo4j transaction
+     * @param statementListeners listeners that are notified about the statements run in this transaction
+     */
+    public AbstractTransaction(Transaction decoratedElement, List<StatementListener> statementListeners) {
+        transactionId = nextTransactionId.getAndIncrement();
         this.decoratedElement = decoratedElement;
+        this.statementListeners = statementListeners;
     }
 
     /**
@@ -65,42 +91,84 @@ public abstract class AbstractTransaction implements Transaction {
 
     @Override
     public void commit() {
+        finishResults(true);
         decoratedElement.commit();
     }
 
     @Override
     public void rollback() {
+        finishResults(false);
         decoratedElement.rollback();
     }
 
     @Override
     public void close() {
+        finishResults(false);
         decoratedElement.close();
     }
 
     @Override
     public Result run(String statementTemplate, Value parameters) {
-        return decoratedElement.run(statementTemplate, parameters);
+        return measure(decoratedElement.run(statementTemplate, parameters), statementTemplate, parameters);
     }
 
     @Override
     public Result run(String statementTemplate, Map<String, Object> statementParameters) {
-        return decoratedElement.run(statementTemplate, statementParameters);
+        Result result = decoratedElement.run(statementTemplate, statementParameters);
+        return statementListeners.isEmpty() ? result : measure(result, statementTemplate, Values.value(statementParameters));
     }
 
     @Override
     public Result run(String statementTemplate, Record statementParameters) {
-        return decoratedElement.run(statementTemplate, statementParameters);
+        Result result = decoratedElement.run(statementTemplate, statementParameters);
+        return statementListeners.isEmpty() ? result : measure(result, statementTemplate, Values.value(statementParameters.asMap()));
     }
 
     @Override
     public Result run(String statementTemplate) {
-        return decoratedElement.run(statementTemplate);
+        return measure(decoratedElement.run(statementTemplate), statementTemplate, null);
     }
 
     @Override
     public Result run(Query statement) {
-        return decoratedElement.run(statement);
+        return measure(decoratedElement.run(statement), statement.text(), statement.parameters());
+    }
+
+    private Result measure(Result result, String statement, Value parameters) {
+        if (statementListeners.isEmpty()) {
+            return result;
+        }
+        MeasuredResult measuredResult = new MeasuredResult(this, result, statement, parameters);
+        pendingResults.add(measuredResult);
+        return measuredResult;
+    }
+
+    /**
+     * Reports the results that were not read completely to the listeners. Must be called before the decorated
+     * transaction is committed or closed.
+     *
+     * @param consume true if the results should be consumed to get their summary
+     */
+    protected void finishResults(boolean consume) {
+        for (MeasuredResult result : new ArrayList<>(pendingResults)) {
+            if (consume) {
+                result.consume();
+            } else {
+                result.finish(null);
+            }
+        }
+    }
+
+    void statementFinished(MeasuredResult result, ResultSummary summary) {
+        pendingResults.remove(result);
+        long nanos = System.nanoTime() - result.start;
+        for (StatementListener listener : statementListeners) {
+            try {
+                listener.statementExecuted(result.statement, result.parameters, result.rows, nanos, summary);
+            } catch (RuntimeException e) {
+                logger.warn("Statement listener failed", e);
+            }
+        }
     }
 
     @Override
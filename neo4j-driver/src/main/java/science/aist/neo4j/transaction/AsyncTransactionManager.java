@@ -0,0 +1,99 @@
+package science.aist.neo4j.transaction;
+
+import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Bookmark;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.async.AsyncTransaction;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.function.Function;
+
+/**
+ * <p>Interface for non blocking transaction management. Every call gets its own session and transaction,
+ * there are no inner transactions, as the work is not bound to a thread.</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public interface AsyncTransactionManager {
+
+    /**
+     * Executes a function in a new transaction. The transaction is committed once the stage returned by the function
+     * completes and rolled back if it fails.
+     *
+     * @param function   the function that is executed in the transaction
+     * @param accessMode the access mode
+     * @param <T>        the type of the return value
+     * @return stage that completes with the result of the function after the commit
+     */
+    <T> CompletionStage<T> executeAsync(Function<AsyncTransaction, CompletionStage<T>> function, AccessMode accessMode);
+
+    /**
+     * {@link AsyncTransactionManager#executeAsync(Function, AccessMode)} with access mode {@link AccessMode#READ}
+     *
+     * @param function the function that is executed in the transaction
+     * @param <T>      the type of the return value
+     * @return stage that completes with the result of the function after the commit
+     */
+    default <T> CompletionStage<T> executeReadAsync(Function<AsyncTransaction, CompletionStage<T>> function) {
+        return executeAsync(function, AccessMode.READ);
+    }
+
+    /**
+     * {@link AsyncTransactionManager#executeAsync(Function, AccessMode)} with access mode {@link AccessMode#WRITE}
+     *
+     * @param function the function that is executed in the transaction
+     * @param <T>      the type of the return value
+     * @return stage that completes with the result of the function after the commit
+     */
+    default <T> CompletionStage<T> executeWriteAsync(Function<AsyncTransaction, CompletionStage<T>> function) {
+        return executeAsync(function, AccessMode.WRITE);
+    }
+
+    /**
+     * Publishes the records of a query in a new transaction. Records are only fetched from the database as the
+     * subscriber requests them. The query is executed again for every subscriber.
+     *
+     * @param query      the query text
+     * @param parameters the query parameters
+     * @param accessMode the access mode
+     * @param mapper     maps a record to the published element
+     * @param <T>        the type of the published elements
+     * @return publisher of the mapped records
+     */
+    <T> Flow.Publisher<T> publish(String query, Value parameters, AccessMode accessMode, Function<Record, T> mapper);
+
+    /**
+     * {@link AsyncTransactionManager#publish(String, Value, AccessMode, Function)} with access mode {@link AccessMode#READ}
+     *
+     * @param query      the query text
+     * @param parameters the query parameters
+     * @param mapper     maps a record to the published element
+     * @param <T>        the type of the published elements
+     * @return publisher of the mapped records
+     */
+    default <T> Flow.Publisher<T> publishRead(String query, Value parameters, Function<Record, T> mapper) {
+        return publish(query, parameters, AccessMode.READ, mapper);
+    }
+
+    /**
+     * Returns the bookmark of the last committed transaction, e.g. to continue the causal chain in a session of
+     * another manager
+     *
+     * @return the bookmark, null if there is none or the manager does not chain its transactions
+     */
+    default Bookmark getLastBookmark() {
+        return null;
+    }
+
+    /**
+     * Continues a causal chain, so transactions started afterwards read the writes of the transaction the bookmark
+     * belongs to
+     *
+     * @param bookmark the bookmark to wait for
+     */
+    default void useBookmark(Bookmark bookmark) {
+    }
+}
@@ -0,0 +1,177 @@
+package science.aist.neo4j.transaction;
+
+import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Bookmark;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.SessionConfig;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.async.AsyncSession;
+import org.neo4j.driver.async.AsyncTransaction;
+import org.springframework.beans.factory.annotation.Required;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * <p>Transaction manager on the async session of the driver. No thread waits while the queries are running,
+ * so the number of concurrent transactions is only limited by the connection pool of the driver.</p>
+ * <p>The bookmark of the last committed transaction is passed to every new session, so work started after a
+ * transaction completed reads its writes.</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class AsyncTransactionManagerImpl implements AsyncTransactionManager {
+    /**
+     * Reference to the neo4j driver
+     */
+    private Driver driver;
+
+    /**
+     * Number of records fetched at once from the database, the driver default is used if not set
+     */
+    private long fetchSize;
+
+    /**
+     * The bookmark of the last committed transaction, merged with the bookmarks of transactions that committed
+     * concurrently
+     */
+    private final AtomicReference<Bookmark> lastBookmark = new AtomicReference<>();
+
+    @Override
+    public <T> CompletionStage<T> executeAsync(Function<AsyncTransaction, CompletionStage<T>> function, AccessMode accessMode) {
+        Bookmark started = lastBookmark.get();
+        AsyncSession session = driver.asyncSession(sessionConfig(accessMode, started));
+        CompletionStage<T> work = session.beginTransactionAsync().thenCompose(transaction -> {
+            CompletionStage<T> result;
+            try {
+                result = function.apply(transaction);
+            } catch (RuntimeException e) {
+                result = CompletableFuture.failedFuture(e);
+            }
+            return result.handle((value, error) -> {
+                if (error == null) {
+                    return transaction.commitAsync().thenApply(ignored -> value);
+                }
+                return transaction.rollbackAsync().<T>handle((ignored, rollbackError) -> {
+                    throw completionException(error);
+                });
+            }).thenCompose(Function.identity());
+        });
+        return work.handle((value, error) -> session.closeAsync().<T>handle((ignored, closeError) -> {
+            if (error != null) {
+                throw completionException(error);
+            }
+            Bookmark bookmark = session.lastBookmark();
+            if (bookmark != null && !bookmark.isEmpty()) {
+                // the new bookmark only covers the transactions the session waited for, not those that committed meanwhile
+                lastBookmark.accumulateAndGet(bookmark, (current, committed) -> current == started ? committed : merge(current, committed));
+            }
+            return value;
+        })).thenCompose(Function.identity());
+    }
+
+    @Override
+    public <T> Flow.Publisher<T> publish(String query, Value parameters, AccessMode accessMode, Function<Record, T> mapper) {
+        return new RecordPublisher<>(() -> driver.rxSession(sessionConfig(accessMode, lastBookmark.get())), accessMode,
+            transaction -> transaction.run(query, parameters).records(), mapper);
+    }
+
+    /**
+     * Builds the configuration of a new session with the settings of the manager
+     *
+     * @param accessMode the access mode
+     * @param bookmark   the bookmark the session waits for, null if there is none
+     * @return the session configuration
+     */
+    protected SessionConfig sessionConfig(AccessMode accessMode, Bookmark bookmark) {
+        SessionConfig.Builder builder = SessionConfig.builder().withDefaultAccessMode(accessMode);
+        if (bookmark != null) {
+            builder.withBookmarks(bookmark);
+        }
+        if (fetchSize > 0) {
+            builder.withFetchSize(fetchSize);
+        }
+        return builder.build();
+    }
+
+    private static CompletionException completionException(Throwable error) {
+        return error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+    }
+
+    /**
+     * Merges two bookmarks, so a session waits for the transactions of both
+     *
+     * @param first  a bookmark, may be null
+     * @param second a bookmark, may be null
+     * @return the merged bookmark
+     */
+    static Bookmark merge(Bookmark first, Bookmark second) {
+        if (first == null || first.isEmpty()) {
+            return second;
+        }
+        if (second == null || second.isEmpty()) {
+            return first;
+        }
+        Set<String> values = new HashSet<>(first.values());
+        values.addAll(second.values());
+        return Bookmark.from(values);
+    }
+
+    /**
+     * @return the bookmark of the last committed transaction, null if there is none
+     */
+    @Override
+    public Bookmark getLastBookmark() {
+        return lastBookmark.get();
+    }
+
+    /**
+     * Continues the causal chain of another manager, e.g. after a blocking save. The bookmark is merged with the one of
+     * the last committed transaction, so new sessions wait for both.
+     *
+     * @param bookmark the bookmark to wait for
+     */
+    @Override
+    public void useBookmark(Bookmark bookmark) {
+        lastBookmark.accumulateAndGet(bookmark, AsyncTransactionManagerImpl::merge);
+    }
+
+    /**
+     * gets value of field {@link AsyncTransactionManagerImpl#driver}
+     *
+     * @return value of field driver
+     * @see AsyncTransactionManagerImpl#driver
+     */
+    protected Driver getDriver() {
+        return driver;
+    }
+
+    /**
+     * sets value of field {@link AsyncTransactionManagerImpl#driver}
+     *
+     * @param driver value of field driver
+     * @see AsyncTransactionManagerImpl#driver
+     */
+    @Required
+    public void setDriver(Driver driver) {
+        this.driver = driver;
+    }
+
+    /**
+     * sets value of field {@link AsyncTransactionManagerImpl#fetchSize}
+     *
+     * @param fetchSize value of field fetchSize
+     * @see AsyncTransactionManagerImpl#fetchSize
+     */
+    public void setFetchSize(long fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+}
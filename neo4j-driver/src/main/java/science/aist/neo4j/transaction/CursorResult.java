@@ -0,0 +1,167 @@
+package science.aist.neo4j.transaction;
+
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Transaction;
+import org.neo4j.driver.exceptions.NoSuchRecordException;
+import org.neo4j.driver.summary.ResultSummary;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <p>Result that keeps its transaction open and pulls the records lazily from the database,
+ * instead of copying them like {@link ResultClone}.</p>
+ * <p>The transaction is committed and closed as soon as all records were read or the result is closed.
+ * If reading a record fails, the transaction is closed without commit. A cursor result MUST be closed
+ * (e.g. with try-with-resources) if it is not read until the end, otherwise the transaction stays active
+ * for the thread that started it.</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class CursorResult implements Result, AutoCloseable {
+
+    /**
+     * The transaction the result was created in
+     */
+    private final Transaction transaction;
+
+    /**
+     * The lazily loaded result
+     */
+    private final Result result;
+
+    /**
+     * True once the transaction was closed
+     */
+    private boolean closed;
+
+    /**
+     * @param transaction the transaction the result was created in, it is closed together with the result
+     * @param result      the lazily loaded result
+     */
+    public CursorResult(Transaction transaction, Result result) {
+        this.transaction = transaction;
+        this.result = result;
+    }
+
+    @Override
+    public List<String> keys() {
+        return result.keys();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        boolean hasNext = read(result::hasNext);
+        if (!hasNext) {
+            close();
+        }
+        return hasNext;
+    }
+
+    @Override
+    public Record next() {
+        if (closed) {
+            throw new NoSuchRecordException("Cursor result is already closed");
+        }
+        return read(result::next);
+    }
+
+    @Override
+    public Record single() throws NoSuchRecordException {
+        try {
+            return read(result::single);
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public Record peek() {
+        return read(result::peek);
+    }
+
+    @Override
+    public Stream<Record> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(this::close);
+    }
+
+    /**
+     * Maps every record lazily. Closing the stream closes the result.
+     *
+     * @param function the mapping of a record
+     * @param <T>      the type of the mapped records
+     * @return stream of mapped records
+     */
+    public <T> Stream<T> stream(Function<Record, T> function) {
+        return stream().map(function);
+    }
+
+    @Override
+    public List<Record> list() {
+        return list(Function.identity());
+    }
+
+    @Override
+    public <T> List<T> list(Function<Record, T> function) {
+        List<T> list = new ArrayList<>();
+        while (hasNext()) {
+            list.add(function.apply(next()));
+        }
+        return list;
+    }
+
+    @Override
+    public ResultSummary consume() {
+        try {
+            return read(result::consume);
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Commits and closes the transaction, if not already done
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            transaction.commit();
+        } finally {
+            transaction.close();
+        }
+    }
+
+    /**
+     * @return true if the transaction was already closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private <T> T read(Supplier<T> reader) {
+        try {
+            return reader.get();
+        } catch (RuntimeException e) {
+            if (!closed) {
+                closed = true;
+                transaction.close();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package science.aist.neo4j.transaction;
+
+import science.aist.neo4j.util.LongObjectMap;
+
+import java.util.Map;
+
+/**
+ * <p>The objects loaded in an outer transaction by database id, so every node is cast into exactly one object per
+ * transaction, no matter how many records or repository calls load it. Relationship entities are stored with the
+ * negative ids used by the mapping.</p>
+ * <p>Objects that were loaded as a root, together with their relationships, are complete and can be returned by
+ * {@code findById} without a query. Objects that were only loaded as a related node are completed when they are
+ * loaded as a root later.</p>
+ * <p>Like the transaction it belongs to, an identity map is only used by one thread.</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class IdentityMap {
+
+    /**
+     * The loaded objects by id
+     */
+    private final LongObjectMap<Object> objects = new LongObjectMap<>();
+
+    /**
+     * Ids of the objects that were loaded with their relationships
+     */
+    private final LongObjectMap<Boolean> complete = new LongObjectMap<>();
+
+    /**
+     * @return the loaded objects by id, objects cast with this map are added to it
+     */
+    public Map<Long, Object> getObjects() {
+        return objects;
+    }
+
+    /**
+     * @param id id of a node
+     * @return the object of the node, null if it was not loaded
+     */
+    public Object get(long id) {
+        return objects.get(id);
+    }
+
+    /**
+     * @param id id of a node
+     * @return the object of the node, null if it was not loaded together with its relationships
+     */
+    public Object getComplete(long id) {
+        return complete.containsKey(id) ? objects.get(id) : null;
+    }
+
+    /**
+     * @param id id of a node
+     * @return true if the node was loaded together with its relationships
+     */
+    public boolean isComplete(long id) {
+        return complete.containsKey(id);
+    }
+
+    /**
+     * @param id id of a node that was loaded together with its relationships
+     */
+    public void markComplete(long id) {
+        complete.put(id, Boolean.TRUE);
+    }
+
+    /**
+     * @param id id of a node that was deleted or must be loaded again
+     */
+    public void remove(long id) {
+        objects.remove(id);
+        complete.remove(id);
+    }
+
+    /**
+     * Forgets all objects
+     */
+    public void clear() {
+        objects.clear();
+        complete.clear();
+    }
+
+    /**
+     * @return number of loaded objects
+     */
+    public int size() {
+        return objects.size();
+    }
+}
@@ -0,0 +1,69 @@
+package science.aist.neo4j.transaction;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Lock free histogram of latencies with a fixed memory footprint. Every power of two of microseconds is split into
+ * four buckets, so percentiles are accurate to about 12%.</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+class LatencyHistogram {
+
+    /**
+     * Number of buckets per power of two
+     */
+    private static final int SUB_BUCKETS = 4;
+
+    /**
+     * Number of recorded latencies per bucket
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+
+    void record(long nanos) {
+        buckets.incrementAndGet(index(Math.max(0, nanos / 1000)));
+    }
+
+    /**
+     * @param quantile the quantile between 0 and 1
+     * @return the latency in nanoseconds below which the given quantile of the recorded latencies are, 0 if none was recorded
+     */
+    long percentile(double quantile) {
+        long count = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            count += buckets.get(i);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return midpoint(i) * 1000;
+            }
+        }
+        return midpoint(buckets.length() - 1) * 1000;
+    }
+
+    private static int index(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+        return (exponent - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long midpoint(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + 1;
+        int subBucket = index % SUB_BUCKETS;
+        long width = 1L << (exponent - 2);
+        return (SUB_BUCKETS + subBucket) * width + width / 2;
+    }
+}
@@ -0,0 +1,140 @@
+package science.aist.neo4j.transaction;
+
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.summary.ResultSummary;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <p>Result that counts the records read from it and reports the statement to its transaction,
+ * once the result was read completely or consumed.</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+class MeasuredResult implements Result {
+
+    /**
+     * The transaction the statement was run in
+     */
+    private final AbstractTransaction transaction;
+
+    /**
+     * The decorated result
+     */
+    private final Result result;
+
+    /**
+     * The statement text
+     */
+    final String statement;
+
+    /**
+     * The statement parameters
+     */
+    final Value parameters;
+
+    /**
+     * Time the statement was run at
+     */
+    final long start = System.nanoTime();
+
+    /**
+     * Number of records read
+     */
+    long rows;
+
+    /**
+     * True once the statement was reported
+     */
+    private boolean finished;
+
+    MeasuredResult(AbstractTransaction transaction, Result result, String statement, Value parameters) {
+        this.transaction = transaction;
+        this.result = result;
+        this.statement = statement;
+        this.parameters = parameters;
+    }
+
+    @Override
+    public List<String> keys() {
+        return result.keys();
+    }
+
+    @Override
+    public boolean hasNext() {
+        boolean hasNext = result.hasNext();
+        if (!hasNext && !finished) {
+            finish(result.consume());
+        }
+        return hasNext;
+    }
+
+    @Override
+    public Record next() {
+        Record record = result.next();
+        rows++;
+        return record;
+    }
+
+    @Override
+    public Record single() {
+        Record record = result.single();
+        rows++;
+        finish(result.consume());
+        return record;
+    }
+
+    @Override
+    public Record peek() {
+        return result.peek();
+    }
+
+    @Override
+    public Stream<Record> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.IMMUTABLE), false);
+    }
+
+    @Override
+    public List<Record> list() {
+        List<Record> records = result.list();
+        rows += records.size();
+        finish(result.consume());
+        return records;
+    }
+
+    @Override
+    public <T> List<T> list(Function<Record, T> mapFunction) {
+        List<T> records = result.list(mapFunction);
+        rows += records.size();
+        finish(result.consume());
+        return records;
+    }
+
+    @Override
+    public ResultSummary consume() {
+        ResultSummary summary = result.consume();
+        finish(summary);
+        return summary;
+    }
+
+    /**
+     * Reports the statement to the transaction, only the first call has an effect
+     *
+     * @param summary the summary of the result, null if it is not available
+     */
+    void finish(ResultSummary summary) {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        transaction.statementFinished(this, summary);
+    }
+}
@@ -0,0 +1,223 @@
+package science.aist.neo4j.transaction;
+
+import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.reactive.RxSession;
+import org.neo4j.driver.reactive.RxTransactionWork;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * <p>Publishes the records of a query, mapped by a function. Every subscriber gets its own reactive session and
+ * transaction, records are only pulled from the database as the subscriber requests them.</p>
+ * <p>The transaction is committed once all records are published and rolled back if the subscription is cancelled
+ * or fails. The session is closed before the subscriber is completed or failed.</p>
+ * <p>Transient failures are only retried until the first record is published, as a retry would publish the records
+ * of the failed attempt again. Later failures are passed to the subscriber.</p>
+ *
+ * @param <T> type of the published elements
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class RecordPublisher<T> implements Flow.Publisher<T> {
+
+    /**
+     * Opens a new session for every subscriber
+     */
+    private final Supplier<RxSession> sessionFactory;
+
+    /**
+     * Access mode of the transaction
+     */
+    private final AccessMode accessMode;
+
+    /**
+     * Runs the query in the transaction
+     */
+    private final RxTransactionWork<Publisher<Record>> work;
+
+    /**
+     * Maps a record to the published element
+     */
+    private final Function<Record, T> mapper;
+
+    /**
+     * @param sessionFactory opens a new session for every subscriber
+     * @param accessMode     access mode of the transaction
+     * @param work           runs the query in the transaction
+     * @param mapper         maps a record to the published element
+     */
+    public RecordPublisher(Supplier<RxSession> sessionFactory, AccessMode accessMode, RxTransactionWork<Publisher<Record>> work, Function<Record, T> mapper) {
+        this.sessionFactory = sessionFactory;
+        this.accessMode = accessMode;
+        this.work = work;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        RxSession session = sessionFactory.get();
+        AtomicBoolean published = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        RxTransactionWork<Publisher<Record>> attempt = transaction -> {
+            if (published.get()) {
+                // not retryable, so the session passes it on instead of running the work again
+                return failed(new IllegalStateException("Transaction failed after records were published", failure.get()));
+            }
+            return recordingFailure(work.execute(transaction), failure);
+        };
+        Publisher<Record> records = accessMode == AccessMode.READ ? session.readTransaction(attempt) : session.writeTransaction(attempt);
+        records.subscribe(new MappingSubscriber<>(session, mapper, subscriber, published));
+    }
+
+    /**
+     * @param error the error
+     * @return publisher that fails with the error
+     */
+    private static Publisher<Record> failed(Throwable error) {
+        return subscriber -> {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                    // fails right away
+                }
+
+                @Override
+                public void cancel() {
+                    // nothing to cancel
+                }
+            });
+            subscriber.onError(error);
+        };
+    }
+
+    /**
+     * @param records the records of an attempt
+     * @param failure set to the error the records fail with
+     * @return the records
+     */
+    private static Publisher<Record> recordingFailure(Publisher<Record> records, AtomicReference<Throwable> failure) {
+        return subscriber -> records.subscribe(new Subscriber<Record>() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscriber.onSubscribe(subscription);
+            }
+
+            @Override
+            public void onNext(Record record) {
+                subscriber.onNext(record);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                failure.set(error);
+                subscriber.onError(error);
+            }
+
+            @Override
+            public void onComplete() {
+                subscriber.onComplete();
+            }
+        });
+    }
+
+    /**
+     * Passes the requests of the subscriber to the records and the mapped records back to the subscriber.
+     *
+     * @param <T> type of the published elements
+     */
+    private static class MappingSubscriber<T> implements Subscriber<Record>, Flow.Subscription {
+
+        private final RxSession session;
+        private final Function<Record, T> mapper;
+        private final Flow.Subscriber<? super T> subscriber;
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final AtomicBoolean published;
+        private Subscription subscription;
+
+        private MappingSubscriber(RxSession session, Function<Record, T> mapper, Flow.Subscriber<? super T> subscriber, AtomicBoolean published) {
+            this.session = session;
+            this.mapper = mapper;
+            this.subscriber = subscriber;
+            this.published = published;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            subscriber.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(Record record) {
+            if (closed.get()) {
+                return;
+            }
+            T element;
+            try {
+                element = mapper.apply(record);
+            } catch (RuntimeException e) {
+                subscription.cancel();
+                closeSession(() -> subscriber.onError(e));
+                return;
+            }
+            published.set(true);
+            subscriber.onNext(element);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            closeSession(() -> subscriber.onError(error));
+        }
+
+        @Override
+        public void onComplete() {
+            closeSession(subscriber::onComplete);
+        }
+
+        @Override
+        public void request(long n) {
+            subscription.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            subscription.cancel();
+            closeSession(() -> { });
+        }
+
+        private void closeSession(Runnable then) {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            session.close().subscribe(new Subscriber<Object>() {
+                @Override
+                public void onSubscribe(Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(Object ignored) {
+                    // close publishes no elements
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    then.run();
+                }
+
+                @Override
+                public void onComplete() {
+                    then.run();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package science.aist.neo4j.transaction;
+
+import org.neo4j.driver.exceptions.ServiceUnavailableException;
+import org.neo4j.driver.exceptions.SessionExpiredException;
+import org.neo4j.driver.exceptions.TransientException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * <p>Retries work that failed with a transient error, like a deadlock or a switch of the cluster leader.
+ * The delay between two attempts grows exponentially and is randomized by the jitter factor,
+ * so competing transactions do not retry in lockstep. Once the maximum retry time passed the last error is thrown.</p>
+ * <p>Work is retried as a whole, it must not have side effects outside of the database, that can't be repeated.</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class RetryPolicy {
+    /**
+     * Logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(RetryPolicy.class);
+
+    /**
+     * Maximum time in milliseconds from the first attempt, after which no further attempt is started
+     */
+    private long maxRetryTimeMillis = 30_000;
+
+    /**
+     * Delay in milliseconds before the first retry
+     */
+    private long initialDelayMillis = 100;
+
+    /**
+     * Factor the delay grows by with every retry
+     */
+    private double multiplier = 2.0;
+
+    /**
+     * Fraction of the delay that is randomly added or removed
+     */
+    private double jitterFactor = 0.2;
+
+    /**
+     * Checks if an error is transient, so the work that caused it might succeed when retried
+     *
+     * @param error the error
+     * @return true if the work should be retried
+     */
+    public boolean isRetryable(Throwable error) {
+        if (error instanceof ServiceUnavailableException || error instanceof SessionExpiredException) {
+            return true;
+        }
+        if (error instanceof TransientException) {
+            String code = ((TransientException) error).code();
+            // terminated transactions were stopped on purpose
+            return !"Neo.TransientError.Transaction.Terminated".equals(code)
+                && !"Neo.TransientError.Transaction.LockClientStopped".equals(code);
+        }
+        return false;
+    }
+
+    /**
+     * Executes the work until it succeeds, fails with a non transient error or the maximum retry time passed.
+     *
+     * @param work       the work to be executed
+     * @param operation  name of the operation the retries are recorded for, only evaluated if a retry happens
+     * @param statistics where the retries are recorded
+     * @param <T>        the type of the result
+     * @return the result of the work
+     */
+    public <T> T execute(Supplier<T> work, Supplier<String> operation, RetryStatistics statistics) {
+        long start = System.nanoTime();
+        long delay = initialDelayMillis;
+        int retries = 0;
+        long waitedMillis = 0;
+        String operationName = null;
+        while (true) {
+            try {
+                T result = work.get();
+                if (retries > 0) {
+                    statistics.recordRecovered(operationName, retries, waitedMillis);
+                }
+                return result;
+            } catch (RuntimeException e) {
+                if (!isRetryable(e)) {
+                    if (retries > 0) {
+                        statistics.recordFailed(operationName, retries, waitedMillis);
+                    }
+                    throw e;
+                }
+                if (operationName == null) {
+                    operationName = operation.get();
+                }
+                long remaining = maxRetryTimeMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                if (remaining <= 0) {
+                    statistics.recordFailed(operationName, retries, waitedMillis);
+                    throw e;
+                }
+                long wait = Math.min(remaining, jitter(delay));
+                logger.debug("Retrying {} in {} ms after transient error: {}", operationName, wait, e.getMessage());
+                try {
+                    Thread.sleep(wait);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    statistics.recordFailed(operationName, retries, waitedMillis);
+                    e.addSuppressed(interrupted);
+                    throw e;
+                }
+                waitedMillis += wait;
+                retries++;
+                delay = (long) (delay * multiplier);
+            }
+        }
+    }
+
+    private long jitter(long delay) {
+        double jitter = delay * jitterFactor;
+        return Math.max(0, (long) (delay - jitter + ThreadLocalRandom.current().nextDouble() * 2 * jitter));
+    }
+
+    /**
+     * sets value of field {@link RetryPolicy#maxRetryTimeMillis}
+     *
+     * @param maxRetryTimeMillis value of field maxRetryTimeMillis
+     * @see RetryPolicy#maxRetryTimeMillis
+     */
+    public void setMaxRetryTimeMillis(long maxRetryTimeMillis) {
+        this.maxRetryTimeMillis = maxRetryTimeMillis;
+    }
+
+    /**
+     * sets value of field {@link RetryPolicy#initialDelayMillis}
+     *
+     * @param initialDelayMillis value of field initialDelayMillis
+     * @see RetryPolicy#initialDelayMillis
+     */
+    public void setInitialDelayMillis(long initialDelayMillis) {
+        this.initialDelayMillis = initialDelayMillis;
+    }
+
+    /**
+     * sets value of field {@link RetryPolicy#multiplier}
+     *
+     * @param multiplier value of field multiplier
+     * @see RetryPolicy#multiplier
+     */
+    public void setMultiplier(double multiplier) {
+        this.multiplier = multiplier;
+    }
+
+    /**
+     * sets value of field {@link RetryPolicy#jitterFactor}
+     *
+     * @param jitterFactor value of field jitterFactor
+     * @see RetryPolicy#jitterFactor
+     */
+    public void setJitterFactor(double jitterFactor) {
+        this.jitterFactor = jitterFactor;
+    }
+}
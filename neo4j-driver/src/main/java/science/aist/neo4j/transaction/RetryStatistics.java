@@ -0,0 +1,124 @@
+package science.aist.neo4j.transaction;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Counters on the retries of a {@link RetryPolicy}, grouped by the operation that was retried.
+ * Only operations that needed at least one retry are recorded.</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class RetryStatistics {
+
+    /**
+     * Statistics per operation
+     */
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+
+    void recordRecovered(String operation, int retries, long waitedMillis) {
+        Operation statistics = operations.computeIfAbsent(operation, x -> new Operation());
+        statistics.recovered.increment();
+        statistics.retries.add(retries);
+        statistics.waitedMillis.add(waitedMillis);
+    }
+
+    void recordFailed(String operation, int retries, long waitedMillis) {
+        Operation statistics = operations.computeIfAbsent(operation, x -> new Operation());
+        statistics.failed.increment();
+        statistics.retries.add(retries);
+        statistics.waitedMillis.add(waitedMillis);
+    }
+
+    /**
+     * @return statistics per operation
+     */
+    public Map<String, Operation> getOperations() {
+        return Collections.unmodifiableMap(operations);
+    }
+
+    /**
+     * @param operation name of the operation
+     * @return statistics of the operation, null if it was never retried
+     */
+    public Operation getOperation(String operation) {
+        return operations.get(operation);
+    }
+
+    /**
+     * Resets all counters
+     */
+    public void reset() {
+        operations.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "RetryStatistics" + operations;
+    }
+
+    /**
+     * Retry counters of a single operation
+     */
+    public static class Operation {
+        /**
+         * Number of executions that succeeded after a retry
+         */
+        private final LongAdder recovered = new LongAdder();
+
+        /**
+         * Number of executions that failed after a transient error
+         */
+        private final LongAdder failed = new LongAdder();
+
+        /**
+         * Number of retries
+         */
+        private final LongAdder retries = new LongAdder();
+
+        /**
+         * Milliseconds waited between attempts
+         */
+        private final LongAdder waitedMillis = new LongAdder();
+
+        /**
+         * @return number of executions that succeeded after a retry
+         */
+        public long getRecovered() {
+            return recovered.sum();
+        }
+
+        /**
+         * @return number of executions that failed after a transient error
+         */
+        public long getFailed() {
+            return failed.sum();
+        }
+
+        /**
+         * @return number of retries
+         */
+        public long getRetries() {
+            return retries.sum();
+        }
+
+        /**
+         * @return milliseconds waited between attempts
+         */
+        public long getWaitedMillis() {
+            return waitedMillis.sum();
+        }
+
+        @Override
+        public String toString() {
+            return "{recovered=" + getRecovered() +
+                ", failed=" + getFailed() +
+                ", retries=" + getRetries() +
+                ", waitedMillis=" + getWaitedMillis() +
+                '}';
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package science.aist.neo4j.transaction;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Counters on how sessions were used by a {@link TransactionManagerImpl}.
+ * Latencies are measured from requesting a session until the transaction on it was started.</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class SessionStatistics {
+
+    /**
+     * Number of sessions that were opened
+     */
+    private final LongAdder opened = new LongAdder();
+
+    /**
+     * Number of transactions that were started on an already open session
+     */
+    private final LongAdder reused = new LongAdder();
+
+    /**
+     * Number of sessions that were closed
+     */
+    private final LongAdder closed = new LongAdder();
+
+    /**
+     * Summed up nanoseconds for starting a transaction on a new session
+     */
+    private final LongAdder openNanos = new LongAdder();
+
+    /**
+     * Summed up nanoseconds for starting a transaction on a reused session
+     */
+    private final LongAdder reuseNanos = new LongAdder();
+
+    void recordOpened(long nanos) {
+        opened.increment();
+        openNanos.add(nanos);
+    }
+
+    void recordReused(long nanos) {
+        reused.increment();
+        reuseNanos.add(nanos);
+    }
+
+    void recordClosed() {
+        closed.increment();
+    }
+
+    /**
+     * @return number of sessions that were opened
+     */
+    public long getOpened() {
+        return opened.sum();
+    }
+
+    /**
+     * @return number of transactions that were started on an already open session
+     */
+    public long getReused() {
+        return reused.sum();
+    }
+
+    /**
+     * @return number of sessions that were closed
+     */
+    public long getClosed() {
+        return closed.sum();
+    }
+
+    /**
+     * @return number of sessions that are currently open
+     */
+    public long getOpen() {
+        return getOpened() - getClosed();
+    }
+
+    /**
+     * @return average nanoseconds to start a transaction on a new session
+     */
+    public double getAverageOpenNanos() {
+        long count = opened.sum();
+        return count == 0 ? 0 : (double) openNanos.sum() / count;
+    }
+
+    /**
+     * @return average nanoseconds to start a transaction on a reused session
+     */
+    public double getAverageReuseNanos() {
+        long count = reused.sum();
+        return count == 0 ? 0 : (double) reuseNanos.sum() / count;
+    }
+
+    /**
+     * Resets all counters
+     */
+    public void reset() {
+        opened.reset();
+        reused.reset();
+        closed.reset();
+        openNanos.reset();
+        reuseNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "SessionStatistics{" +
+            "opened=" + getOpened() +
+            ", reused=" + getReused() +
+            ", closed=" + getClosed() +
+            ", averageOpenNanos=" + getAverageOpenNanos() +
+            ", averageReuseNanos=" + getAverageReuseNanos() +
+            '}';
+    }
+}
@@ -0,0 +1,381 @@
+package science.aist.neo4j.transaction;
+
+import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.SessionConfig;
+import org.neo4j.driver.Transaction;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.summary.Plan;
+import org.neo4j.driver.summary.ProfiledPlan;
+import org.neo4j.driver.summary.ResultSummary;
+import org.neo4j.driver.types.TypeSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import science.aist.neo4j.util.CypherClassifier;
+import science.aist.neo4j.util.DaemonExecutors;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.neo4j.driver.internal.types.InternalTypeSystem.TYPE_SYSTEM;
+
+/**
+ * <p>Logs statements that took longer than a threshold. Register it as {@link StatementListener} of a
+ * {@link TransactionManagerImpl}. Only the shapes of the parameters are logged, never their values.</p>
+ * <p>If a driver and a {@link PlanMode} are set, the plan of every slow statement is captured once, in a separate
+ * transaction that is rolled back, on the executor. Statements that write are only explained, as profiling
+ * executes them again.</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class SlowQueryLog implements StatementListener {
+
+    /**
+     * Logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(SlowQueryLog.class);
+
+    /**
+     * Depth up to which the elements of lists and maps are described
+     */
+    private static final int MAX_SHAPE_DEPTH = 4;
+
+    /**
+     * How the plan of a slow statement is captured
+     */
+    public enum PlanMode {
+        /**
+         * No plan is captured
+         */
+        NONE,
+        /**
+         * The statement is planned but not executed
+         */
+        EXPLAIN,
+        /**
+         * Read statements are executed again and profiled, write statements are explained
+         */
+        PROFILE
+    }
+
+    /**
+     * Statements that took at least this many milliseconds are logged
+     */
+    private long thresholdMillis = 1000;
+
+    /**
+     * How the plan of a slow statement is captured
+     */
+    private PlanMode planMode = PlanMode.NONE;
+
+    /**
+     * Driver the plans are captured with
+     */
+    private Driver driver;
+
+    /**
+     * Executor the plans are captured on
+     */
+    private Executor executor = DaemonExecutors.newCachedPool("neo4j-slow-query-log");
+
+    /**
+     * Maximum number of slow queries and plans that are kept
+     */
+    private int maxEntries = 100;
+
+    /**
+     * The last slow queries, the newest last
+     */
+    private final Deque<SlowQuery> slowQueries = new ArrayDeque<>();
+
+    /**
+     * Captured plans per statement
+     */
+    private final Map<String, String> plans = new ConcurrentHashMap<>();
+
+    @Override
+    public void statementExecuted(String statement, Value parameters, long rows, long nanos, ResultSummary summary) {
+        if (nanos < TimeUnit.MILLISECONDS.toNanos(thresholdMillis)) {
+            return;
+        }
+        SlowQuery slowQuery = new SlowQuery(StatementStatistics.normalize(statement), parameterShapes(parameters), rows, nanos,
+            summary == null ? -1 : summary.resultAvailableAfter(TimeUnit.MILLISECONDS),
+            summary == null ? -1 : summary.resultConsumedAfter(TimeUnit.MILLISECONDS));
+        logger.warn("Slow statement: {}", slowQuery);
+        synchronized (slowQueries) {
+            slowQueries.addLast(slowQuery);
+            while (slowQueries.size() > maxEntries) {
+                slowQueries.removeFirst();
+            }
+        }
+        if (planMode != PlanMode.NONE && driver != null && plans.size() < maxEntries && plans.putIfAbsent(slowQuery.statement, "") == null) {
+            executor.execute(() -> capturePlan(statement, parameters, slowQuery.statement));
+        }
+    }
+
+    private void capturePlan(String statement, Value parameters, String key) {
+        boolean readOnly = CypherClassifier.isReadOnly(statement);
+        boolean profile = planMode == PlanMode.PROFILE && readOnly;
+        try (Session session = driver.session(SessionConfig.builder().withDefaultAccessMode(readOnly ? AccessMode.READ : AccessMode.WRITE).build());
+             Transaction transaction = session.beginTransaction()) {
+            ResultSummary summary = transaction.run((profile ? "PROFILE " : "EXPLAIN ") + statement, parameters).consume();
+            String plan = summary.hasProfile() ? render(summary.profile()) : summary.hasPlan() ? render(summary.plan()) : "no plan";
+            plans.put(key, plan);
+            logger.warn("Plan of slow statement: {}\n{}", key, plan);
+            transaction.rollback();
+        } catch (RuntimeException e) {
+            plans.remove(key);
+            logger.warn("Could not capture plan of slow statement: {}", key, e);
+        }
+    }
+
+    /**
+     * Describes the types of parameters, the sizes of lists and the keys of maps, but no values
+     *
+     * @param parameters the parameters
+     * @return the shape of the parameters
+     */
+    public static String parameterShapes(Value parameters) {
+        return parameters == null ? "{}" : shape(parameters, 0);
+    }
+
+    private static String shape(Value value, int depth) {
+        TypeSystem types = TYPE_SYSTEM;
+        if (value.hasType(types.LIST())) {
+            return "LIST(" + value.size() + ")" + (value.size() > 0 && depth < MAX_SHAPE_DEPTH ? " OF " + shape(value.get(0), depth + 1) : "");
+        }
+        if (value.hasType(types.MAP()) && !value.hasType(types.NODE()) && !value.hasType(types.RELATIONSHIP())) {
+            if (depth >= MAX_SHAPE_DEPTH) {
+                return "MAP(" + value.size() + ")";
+            }
+            List<String> entries = new ArrayList<>();
+            for (String key : value.keys()) {
+                entries.add(key + ": " + shape(value.get(key), depth + 1));
+            }
+            return "{" + String.join(", ", entries) + "}";
+        }
+        return value.type().name();
+    }
+
+    /**
+     * Renders a plan as indented tree of operators
+     *
+     * @param plan the plan
+     * @return the rendered plan
+     */
+    public static String render(Plan plan) {
+        StringBuilder builder = new StringBuilder();
+        render(plan, 0, builder);
+        return builder.toString();
+    }
+
+    private static void render(Plan plan, int depth, StringBuilder builder) {
+        builder.append("  ".repeat(depth)).append(plan.operatorType());
+        if (!plan.identifiers().isEmpty()) {
+            builder.append(' ').append(plan.identifiers());
+        }
+        if (plan instanceof ProfiledPlan) {
+            ProfiledPlan profiledPlan = (ProfiledPlan) plan;
+            builder.append(" rows=").append(profiledPlan.records()).append(" dbHits=").append(profiledPlan.dbHits());
+        } else if (plan.arguments().containsKey("EstimatedRows")) {
+            builder.append(" estimatedRows=").append(plan.arguments().get("EstimatedRows").asDouble());
+        }
+        builder.append('\n');
+        for (Plan child : plan.children()) {
+            render(child, depth + 1, builder);
+        }
+    }
+
+    /**
+     * @return the last slow queries, the oldest first
+     */
+    public List<SlowQuery> getSlowQueries() {
+        synchronized (slowQueries) {
+            return new ArrayList<>(slowQueries);
+        }
+    }
+
+    /**
+     * @return the captured plans per normalized statement
+     */
+    public Map<String, String> getPlans() {
+        return plans.entrySet().stream()
+            .filter(x -> !x.getValue().isEmpty())
+            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+
+    /**
+     * @param statement the statement text
+     * @return the captured plan of the statement, null if there is none (yet)
+     */
+    public String getPlan(String statement) {
+        String plan = plans.get(StatementStatistics.normalize(statement));
+        return plan == null || plan.isEmpty() ? null : plan;
+    }
+
+    /**
+     * Removes all slow queries and plans
+     */
+    public void reset() {
+        synchronized (slowQueries) {
+            slowQueries.clear();
+        }
+        plans.clear();
+    }
+
+    /**
+     * sets value of field {@link SlowQueryLog#thresholdMillis}
+     *
+     * @param thresholdMillis value of field thresholdMillis
+     * @see SlowQueryLog#thresholdMillis
+     */
+    public void setThresholdMillis(long thresholdMillis) {
+        this.thresholdMillis = thresholdMillis;
+    }
+
+    /**
+     * sets value of field {@link SlowQueryLog#planMode}
+     *
+     * @param planMode value of field planMode
+     * @see SlowQueryLog#planMode
+     */
+    public void setPlanMode(PlanMode planMode) {
+        this.planMode = planMode;
+    }
+
+    /**
+     * sets value of field {@link SlowQueryLog#driver}
+     *
+     * @param driver value of field driver
+     * @see SlowQueryLog#driver
+     */
+    public void setDriver(Driver driver) {
+        this.driver = driver;
+    }
+
+    /**
+     * sets value of field {@link SlowQueryLog#executor}
+     *
+     * @param executor value of field executor
+     * @see SlowQueryLog#executor
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * sets value of field {@link SlowQueryLog#maxEntries}
+     *
+     * @param maxEntries value of field maxEntries
+     * @see SlowQueryLog#maxEntries
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * A statement that took longer than the threshold
+     */
+    public static class SlowQuery {
+        /**
+         * The normalized statement text
+         */
+        private final String statement;
+
+        /**
+         * The shape of the parameters
+         */
+        private final String parameterShapes;
+
+        /**
+         * Number of records read
+         */
+        private final long rows;
+
+        /**
+         * Nanoseconds from running the statement until its result was read
+         */
+        private final long nanos;
+
+        /**
+         * Milliseconds until the server had the first record available, -1 if unknown
+         */
+        private final long availableAfterMillis;
+
+        /**
+         * Milliseconds until the server had sent all records, -1 if unknown
+         */
+        private final long consumedAfterMillis;
+
+        SlowQuery(String statement, String parameterShapes, long rows, long nanos, long availableAfterMillis, long consumedAfterMillis) {
+            this.statement = statement;
+            this.parameterShapes = parameterShapes;
+            this.rows = rows;
+            this.nanos = nanos;
+            this.availableAfterMillis = availableAfterMillis;
+            this.consumedAfterMillis = consumedAfterMillis;
+        }
+
+        /**
+         * @return the normalized statement text
+         */
+        public String getStatement() {
+            return statement;
+        }
+
+        /**
+         * @return the shape of the parameters
+         */
+        public String getParameterShapes() {
+            return parameterShapes;
+        }
+
+        /**
+         * @return number of records read
+         */
+        public long getRows() {
+            return rows;
+        }
+
+        /**
+         * @return nanoseconds from running the statement until its result was read
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return milliseconds until the server had the first record available, -1 if unknown
+         */
+        public long getAvailableAfterMillis() {
+            return availableAfterMillis;
+        }
+
+        /**
+         * @return milliseconds until the server had sent all records, -1 if unknown
+         */
+        public long getConsumedAfterMillis() {
+            return consumedAfterMillis;
+        }
+
+        @Override
+        public String toString() {
+            return statement +
+                " {parameters=" + parameterShapes +
+                ", rows=" + rows +
+                ", millis=" + TimeUnit.NANOSECONDS.toMillis(nanos) +
+                ", availableAfterMillis=" + availableAfterMillis +
+                ", consumedAfterMillis=" + consumedAfterMillis +
+                '}';
+        }
+    }
+}
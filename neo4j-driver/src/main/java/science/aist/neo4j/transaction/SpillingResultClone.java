@@ -0,0 +1,349 @@
+package science.aist.neo4j.transaction;
+
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.exceptions.NoSuchRecordException;
+import org.neo4j.driver.internal.InternalRecord;
+import org.neo4j.driver.summary.ResultSummary;
+import science.aist.neo4j.util.ValueCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <p>Copy of a result like {@link ResultClone}, that only keeps records in memory up to a byte budget.</p>
+ * <p>Records are stored as plain value arrays that share the keys. Once the estimated size of the buffered records
+ * exceeds the budget, the following records are written to a temporary file and read back through a memory mapping
+ * while iterating. The file is deleted when all records were read, when the result is closed or, at the latest,
+ * when the result is garbage collected.</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class SpillingResultClone implements Result, AutoCloseable {
+
+    /**
+     * Deletes the spill files of results that were not closed
+     */
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    /**
+     * Size of the region of the spill file that is mapped at once
+     */
+    private static final int MAPPING_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Keys of result
+     */
+    private final List<String> keys;
+
+    /**
+     * Records that are kept in memory
+     */
+    private final List<Value[]> records = new ArrayList<>();
+
+    /**
+     * Estimated size of the records kept in memory
+     */
+    private long bufferedBytes;
+
+    /**
+     * Records that were written to the spill file
+     */
+    private int spilledRecords;
+
+    /**
+     * The spill file, null if all records fit into the budget
+     */
+    private SpillFile spillFile;
+
+    /**
+     * Cleanup registration of the spill file
+     */
+    private Cleaner.Cleanable cleanable;
+
+    /**
+     * Number of records that can be read
+     */
+    private int size;
+
+    /**
+     * Index of the next record
+     */
+    private int position;
+
+    /**
+     * Record that was already read by {@link SpillingResultClone#peek()}
+     */
+    private Record peeked;
+
+    /**
+     * First record of the result for {@link SpillingResultClone#single()}
+     */
+    private Record first;
+
+    /**
+     * Summary of the copied result
+     */
+    private final ResultSummary summary;
+
+    /**
+     * @param result           the result to be copied
+     * @param maxBufferedBytes number of bytes the records may occupy in memory
+     * @param spillDirectory   directory for the spill file, null for the default temporary directory
+     */
+    public SpillingResultClone(Result result, long maxBufferedBytes, Path spillDirectory) {
+        keys = result.keys();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        while (result.hasNext()) {
+            Value[] values = result.next().values().toArray(new Value[0]);
+            long recordSize = 16L + 8L * values.length;
+            for (Value value : values) {
+                recordSize += ValueCodec.estimateSize(value);
+            }
+            if (spillFile == null && bufferedBytes + recordSize <= maxBufferedBytes) {
+                records.add(values);
+                bufferedBytes += recordSize;
+            } else {
+                spill(values, spillDirectory, bytes, out);
+            }
+        }
+        size = records.size() + spilledRecords;
+        if (!records.isEmpty()) {
+            first = new InternalRecord(keys, records.get(0));
+        }
+        // all records were read, so this only fetches the summary
+        summary = result.consume();
+    }
+
+    private void spill(Value[] values, Path spillDirectory, ByteArrayOutputStream bytes, DataOutputStream out) {
+        try {
+            if (spillFile == null) {
+                Path path = spillDirectory == null
+                    ? Files.createTempFile("neo4j-result", ".spill")
+                    : Files.createTempFile(spillDirectory, "neo4j-result", ".spill");
+                spillFile = new SpillFile(path);
+                cleanable = CLEANER.register(this, spillFile);
+            }
+            bytes.reset();
+            out.writeInt(0);
+            for (Value value : values) {
+                ValueCodec.write(value, out);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            buffer.putInt(0, buffer.capacity() - Integer.BYTES);
+            spillFile.write(buffer);
+            spilledRecords++;
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException("Could not spill result to disk", e);
+        }
+    }
+
+    /**
+     * @return estimated size in bytes of the records kept in memory
+     */
+    public long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    /**
+     * @return number of records that were written to disk
+     */
+    public int getSpilledRecords() {
+        return spilledRecords;
+    }
+
+    @Override
+    public List<String> keys() {
+        return keys;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return peeked != null || position < size;
+    }
+
+    @Override
+    public Record next() {
+        if (peeked != null) {
+            Record record = peeked;
+            peeked = null;
+            return record;
+        }
+        if (!hasNext()) {
+            throw new NoSuchRecordException("no more records");
+        }
+        int index = position++;
+        if (index < records.size()) {
+            return new InternalRecord(keys, records.get(index));
+        }
+        Value[] values = spillFile.read(keys.size());
+        if (position == size) {
+            close();
+        }
+        Record record = new InternalRecord(keys, values);
+        if (index == 0) {
+            first = record;
+        }
+        return record;
+    }
+
+    @Override
+    public Record single() throws NoSuchRecordException {
+        if (first == null && position == 0 && hasNext()) {
+            peek();
+        }
+        if (first == null) {
+            throw new NoSuchRecordException("no record");
+        }
+        return first;
+    }
+
+    @Override
+    public Record peek() {
+        if (peeked == null) {
+            peeked = next();
+        }
+        return peeked;
+    }
+
+    @Override
+    public Stream<Record> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(this::close);
+    }
+
+    /**
+     * Returns the remaining records. All of them are loaded into memory.
+     *
+     * @return the remaining records
+     */
+    @Override
+    public List<Record> list() {
+        return list(Function.identity());
+    }
+
+    @Override
+    public <T> List<T> list(Function<Record, T> function) {
+        List<T> list = new ArrayList<>();
+        while (hasNext()) {
+            list.add(function.apply(next()));
+        }
+        return list;
+    }
+
+    /**
+     * Discards the remaining records and deletes the spill file
+     *
+     * @return the summary of the copied result
+     */
+    @Override
+    public ResultSummary consume() {
+        close();
+        peeked = null;
+        position = size;
+        return summary;
+    }
+
+    /**
+     * Deletes the spill file. Spilled records that were not read yet are not available anymore.
+     */
+    @Override
+    public void close() {
+        if (cleanable != null) {
+            cleanable.clean();
+            cleanable = null;
+            size = Math.max(position, records.size());
+        }
+    }
+
+    /**
+     * Temporary file holding the spilled records, each of them prefixed with its length.
+     * Does not reference the result, so it can be cleaned up when the result becomes unreachable.
+     */
+    private static class SpillFile implements Runnable {
+
+        private final Path path;
+
+        private final FileChannel channel;
+
+        /**
+         * Mapped region of the file
+         */
+        private MappedByteBuffer mapping;
+
+        /**
+         * Position of the mapped region in the file
+         */
+        private long mappingStart;
+
+        SpillFile(Path path) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        }
+
+        void write(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        Value[] read(int size) {
+            try {
+                ensureMapped(Integer.BYTES);
+                int length = mapping.getInt();
+                ensureMapped(length);
+                Value[] values = new Value[size];
+                for (int i = 0; i < size; i++) {
+                    values[i] = ValueCodec.read(mapping);
+                }
+                return values;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read spilled result", e);
+            }
+        }
+
+        /**
+         * Maps the region starting at the current read position, if less than the given bytes are left in the mapping
+         */
+        private void ensureMapped(int bytes) throws IOException {
+            if (mapping != null && mapping.remaining() >= bytes) {
+                return;
+            }
+            long position = mapping == null ? 0 : mappingStart + mapping.position();
+            long size = Math.min(Math.max(MAPPING_SIZE, bytes), channel.size() - position);
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            mappingStart = position;
+        }
+
+        @Override
+        public void run() {
+            mapping = null;
+            try {
+                channel.close();
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                // the file is removed on exit of the jvm at the latest
+                path.toFile().deleteOnExit();
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package science.aist.neo4j.transaction;
+
+import org.neo4j.driver.Value;
+import org.neo4j.driver.summary.ResultSummary;
+
+/**
+ * <p>Gets notified about every statement that was run in an outer transaction of a {@link TransactionManagerImpl}.</p>
+ * <p>Listeners are called on the thread that read the result, they must be thread safe and should return quickly.</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+@FunctionalInterface
+public interface StatementListener {
+
+    /**
+     * Called once the result of a statement was read completely, consumed, or its transaction ended
+     *
+     * @param statement  the statement text
+     * @param parameters the statement parameters, null if there are none
+     * @param rows       number of records read from the result
+     * @param nanos      nanoseconds from running the statement until its result was read
+     * @param summary    summary of the result, null if the transaction was closed before the result was read
+     */
+    void statementExecuted(String statement, Value parameters, long rows, long nanos, ResultSummary summary);
+}
@@ -0,0 +1,288 @@
+package science.aist.neo4j.transaction;
+
+import org.neo4j.driver.Value;
+import org.neo4j.driver.summary.ResultSummary;
+import org.neo4j.driver.summary.SummaryCounters;
+import science.aist.neo4j.util.ValueCodec;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * <p>Aggregates the execution of statements by their normalized text, so the statements that dominate the
+ * database time can be found at runtime. Register it as {@link StatementListener} of a {@link TransactionManagerImpl}.</p>
+ * <p>The generated statements of the repositories only differ in their parameters, so they are aggregated per
+ * statement. Statements with inlined values (e.g. the depth of a subtree) are aggregated per value. Once
+ * {@link StatementStatistics#maxStatements} different statements were recorded, all further ones are aggregated
+ * as {@link StatementStatistics#OTHER}.</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class StatementStatistics implements StatementListener {
+
+    /**
+     * Key of the statements that were recorded after the maximum number of statements was reached
+     */
+    public static final String OTHER = "<other>";
+
+    /**
+     * Any sequence of whitespace
+     */
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    /**
+     * Statistics per normalized statement
+     */
+    private final Map<String, Statement> statements = new ConcurrentHashMap<>();
+
+    /**
+     * Maximum number of different statements that are recorded
+     */
+    private int maxStatements = 1000;
+
+    @Override
+    public void statementExecuted(String statement, Value parameters, long rows, long nanos, ResultSummary summary) {
+        String key = normalize(statement);
+        Statement statistics = statements.get(key);
+        if (statistics == null) {
+            statistics = statements.computeIfAbsent(statements.size() < maxStatements ? key : OTHER, x -> new Statement());
+        }
+        statistics.record(parameters, rows, nanos, summary);
+    }
+
+    /**
+     * Collapses all whitespace of a statement
+     *
+     * @param statement the statement text
+     * @return the normalized statement text
+     */
+    public static String normalize(String statement) {
+        return WHITESPACE.matcher(statement).replaceAll(" ").trim();
+    }
+
+    /**
+     * @return statistics per normalized statement
+     */
+    public Map<String, Statement> getStatements() {
+        return Collections.unmodifiableMap(statements);
+    }
+
+    /**
+     * @param statement the statement text, it is normalized before the lookup
+     * @return statistics of the statement, null if it was never recorded
+     */
+    public Statement getStatement(String statement) {
+        return statements.get(normalize(statement));
+    }
+
+    /**
+     * @param limit maximum number of statements
+     * @return the normalized statements that took the most time in total, the most expensive first
+     */
+    public List<Map.Entry<String, Statement>> getTopStatements(int limit) {
+        return statements.entrySet().stream()
+            .sorted(Comparator.comparingLong((Map.Entry<String, Statement> x) -> x.getValue().getTotalNanos()).reversed())
+            .limit(limit)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Removes all recorded statements
+     */
+    public void reset() {
+        statements.clear();
+    }
+
+    /**
+     * sets value of field {@link StatementStatistics#maxStatements}
+     *
+     * @param maxStatements value of field maxStatements
+     * @see StatementStatistics#maxStatements
+     */
+    public void setMaxStatements(int maxStatements) {
+        this.maxStatements = maxStatements;
+    }
+
+    @Override
+    public String toString() {
+        return "StatementStatistics" + statements;
+    }
+
+    /**
+     * Execution counters of a single statement
+     */
+    public static class Statement {
+        /**
+         * Number of executions
+         */
+        private final LongAdder calls = new LongAdder();
+
+        /**
+         * Summed up nanoseconds of all executions
+         */
+        private final LongAdder totalNanos = new LongAdder();
+
+        /**
+         * Latencies of the executions
+         */
+        private final LatencyHistogram latencies = new LatencyHistogram();
+
+        /**
+         * Number of records returned
+         */
+        private final LongAdder rows = new LongAdder();
+
+        /**
+         * Estimated bytes of the parameters sent
+         */
+        private final LongAdder parameterBytes = new LongAdder();
+
+        /**
+         * Number of nodes created
+         */
+        private final LongAdder nodesCreated = new LongAdder();
+
+        /**
+         * Number of nodes deleted
+         */
+        private final LongAdder nodesDeleted = new LongAdder();
+
+        /**
+         * Number of relationships created
+         */
+        private final LongAdder relationshipsCreated = new LongAdder();
+
+        /**
+         * Number of relationships deleted
+         */
+        private final LongAdder relationshipsDeleted = new LongAdder();
+
+        /**
+         * Number of properties set
+         */
+        private final LongAdder propertiesSet = new LongAdder();
+
+        void record(Value parameters, long rows, long nanos, ResultSummary summary) {
+            calls.increment();
+            totalNanos.add(nanos);
+            latencies.record(nanos);
+            this.rows.add(rows);
+            if (parameters != null) {
+                parameterBytes.add(ValueCodec.estimateSize(parameters));
+            }
+            if (summary != null && summary.counters() != null) {
+                SummaryCounters counters = summary.counters();
+                nodesCreated.add(counters.nodesCreated());
+                nodesDeleted.add(counters.nodesDeleted());
+                relationshipsCreated.add(counters.relationshipsCreated());
+                relationshipsDeleted.add(counters.relationshipsDeleted());
+                propertiesSet.add(counters.propertiesSet());
+            }
+        }
+
+        /**
+         * @return number of executions
+         */
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        /**
+         * @return summed up nanoseconds of all executions
+         */
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        /**
+         * @return average nanoseconds of an execution
+         */
+        public double getAverageNanos() {
+            long count = calls.sum();
+            return count == 0 ? 0 : (double) totalNanos.sum() / count;
+        }
+
+        /**
+         * @return median nanoseconds of an execution
+         */
+        public long getP50Nanos() {
+            return latencies.percentile(0.5);
+        }
+
+        /**
+         * @return nanoseconds 99% of the executions were faster than
+         */
+        public long getP99Nanos() {
+            return latencies.percentile(0.99);
+        }
+
+        /**
+         * @return number of records returned
+         */
+        public long getRows() {
+            return rows.sum();
+        }
+
+        /**
+         * @return estimated bytes of the parameters sent
+         */
+        public long getParameterBytes() {
+            return parameterBytes.sum();
+        }
+
+        /**
+         * @return number of nodes created
+         */
+        public long getNodesCreated() {
+            return nodesCreated.sum();
+        }
+
+        /**
+         * @return number of nodes deleted
+         */
+        public long getNodesDeleted() {
+            return nodesDeleted.sum();
+        }
+
+        /**
+         * @return number of relationships created
+         */
+        public long getRelationshipsCreated() {
+            return relationshipsCreated.sum();
+        }
+
+        /**
+         * @return number of relationships deleted
+         */
+        public long getRelationshipsDeleted() {
+            return relationshipsDeleted.sum();
+        }
+
+        /**
+         * @return number of properties set
+         */
+        public long getPropertiesSet() {
+            return propertiesSet.sum();
+        }
+
+        @Override
+        public String toString() {
+            return "{calls=" + getCalls() +
+                ", totalNanos=" + getTotalNanos() +
+                ", p50Nanos=" + getP50Nanos() +
+                ", p99Nanos=" + getP99Nanos() +
+                ", rows=" + getRows() +
+                ", parameterBytes=" + getParameterBytes() +
+                ", nodesCreated=" + getNodesCreated() +
+                ", relationshipsCreated=" + getRelationshipsCreated() +
+                '}';
+        }
+    }
+}
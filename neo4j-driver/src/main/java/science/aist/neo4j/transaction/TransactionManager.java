@@ -1,6 +1,7 @@
 package science.aist.neo4j.transaction;
 
 import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Bookmark;
 import org.neo4j.driver.Result;
 import org.neo4j.driver.Transaction;
 
@@ -65,13 +66,129 @@ public interface TransactionManager {
 
             if (apply instanceof Result) {
                 // copy over results that otherwise become unavailable after the transaction closes
-                apply = (T) new ResultClone((Result)apply);
+                apply = (T) cloneResult((Result) apply);
             }
             transaction.commit();
             return apply;
         }
     }
 
+    /**
+     * Checks if the current thread has an active transaction, that new transactions would join
+     *
+     * @return true if there is an active transaction
+     */
+    default boolean isTransactionActive() {
+        return false;
+    }
+
+    /**
+     * Registers an action that is executed if the active transaction is closed without a successful commit.
+     * Used to take back changes to objects (like assigned ids), that are only valid if the transaction succeeds,
+     * so retried work starts from the same state.
+     *
+     * @param action the action to be executed on rollback
+     */
+    default void onRollback(Runnable action) {
+    }
+
+    /**
+     * Registers an action that is executed once the active transaction is committed successfully. Within nested
+     * transactions that is the commit of the outermost one. Used for work that must only happen once the changes are
+     * visible to other transactions, like invalidating caches. Without an active transaction the action is executed
+     * right away.
+     *
+     * @param action the action to be executed after the commit
+     */
+    default void onCommit(Runnable action) {
+        action.run();
+    }
+
+    /**
+     * Returns the bookmark of the last transaction committed by the current thread, e.g. to continue its causal chain
+     * in a session of another manager
+     *
+     * @return the bookmark, null if there is none or the manager does not chain its transactions
+     */
+    default Bookmark getLastBookmark() {
+        return null;
+    }
+
+    /**
+     * Continues a causal chain on the current thread, so its next transaction reads the writes of the transaction
+     * the bookmark belongs to
+     *
+     * @param bookmark the bookmark to wait for
+     */
+    default void useBookmark(Bookmark bookmark) {
+    }
+
+    /**
+     * Returns the unit of work saves should be recorded in instead of being written immediately
+     *
+     * @return the unit of work of the active transaction, null if saves are written immediately
+     */
+    default UnitOfWork getUnitOfWork() {
+        return null;
+    }
+
+    /**
+     * Executes a function in a write transaction, in which saves are recorded and written in batches right before
+     * the commit. Ids are only assigned to new objects once they are written. If a write transaction is already active,
+     * the function joins it. If the active transaction is a unit of work, the saves are written before its commit,
+     * otherwise they are written in batches as soon as the function returns, still within the active transaction.
+     *
+     * @param function the function that is executed in the transaction
+     * @param <T>      the type of the return value
+     * @return the result of the function
+     */
+    default <T> T executeUnitOfWork(Function<Transaction, T> function) {
+        return executeWrite(function);
+    }
+
+    /**
+     * Returns the identity map loaded nodes are shared in
+     *
+     * @return the identity map of the active transaction, null if every load creates new objects
+     */
+    default IdentityMap getIdentityMap() {
+        return null;
+    }
+
+    /**
+     * Executes a function in a transaction with an identity map, so every node loaded in it is cast into exactly one
+     * object, and nodes already loaded with their relationships are found by id without a query. If a transaction is
+     * already active, the function joins it and nodes are only shared if it has an identity map as well.
+     *
+     * @param function   the function that is executed in the transaction
+     * @param accessMode the access mode of the transaction
+     * @param <T>        the type of the return value
+     * @return the result of the function
+     */
+    default <T> T executeWithIdentityMap(Function<Transaction, T> function, AccessMode accessMode) {
+        return execute(function, accessMode);
+    }
+
+    /**
+     * Writes the recorded saves of the active unit of work immediately, e.g. before a query that has to find them
+     */
+    default void flush() {
+        UnitOfWork unitOfWork = getUnitOfWork();
+        if (unitOfWork != null) {
+            unitOfWork.flush();
+        }
+    }
+
+    /**
+     * Copies a result, so it stays available after the transaction is closed
+     *
+     * @param result the result to be copied
+     * @return the copy
+     */
+    default Result cloneResult(Result result) {
+        return new ResultClone(result);
+    }
+
     /**
      * {@link TransactionManager#run(Consumer, AccessMode)} with access mode {@link AccessMode#READ}
      *
@@ -115,4 +232,46 @@ public interface TransactionManager {
         return execute(function, AccessMode.WRITE);
 
     }
+
+    /**
+     * Runs a query in a transaction and returns its result without copying it.
+     * The records are pulled lazily and the transaction stays open until the result is read completely or closed.
+     * If there is already an active transaction the result is read in it, and must be read before it is closed.
+     *
+     * @param function   the function that runs the query in the transaction
+     * @param accessMode the access mode
+     * @return lazy result, that must be closed if not read until the end
+     * @see CursorResult
+     */
+    default CursorResult stream(Function<Transaction, Result> function, AccessMode accessMode) {
+        Transaction transaction = beginTransaction(accessMode);
+        try {
+            return new CursorResult(transaction, function.apply(transaction));
+        } catch (RuntimeException e) {
+            transaction.close();
+            throw e;
+        }
+    }
+
+    /**
+     * {@link TransactionManager#stream(Function, AccessMode)} with access mode {@link AccessMode#READ}
+     *
+     * @param function the function that runs the query in the transaction
+     * @return lazy result, that must be closed if not read until the end
+     * @see TransactionManager#stream(Function, AccessMode)
+     */
+    default CursorResult streamRead(Function<Transaction, Result> function) {
+        return stream(function, AccessMode.READ);
+    }
+
+    /**
+     * {@link TransactionManager#stream(Function, AccessMode)} with access mode {@link AccessMode#WRITE}
+     *
+     * @param function the function that runs the query in the transaction
+     * @return lazy result, that must be closed if not read until the end
+     * @see TransactionManager#stream(Function, AccessMode)
+     */
+    default CursorResult streamWrite(Function<Transaction, Result> function) {
+        return stream(function, AccessMode.WRITE);
+    }
 }
@@ -1,34 +1,118 @@
 package science.aist.neo4j.transaction;
 
 import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Bookmark;
 import org.neo4j.driver.Driver;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Session;
 import org.neo4j.driver.SessionConfig;
 import org.neo4j.driver.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Required;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
 /**
  * <p>Transaction manager, that will return an inner transaction if there is already an active transaciton
  * Once the most outer transaction is closed, a new transaction can be created.</p>
+ * <p>The active transaction is confined to the thread that started it. Multiple threads can share one manager,
+ * each of them gets its own outer transaction and only joins transactions that it started itself.</p>
+ * <p>Sessions are kept open per thread and access mode and are reused by the following outer transactions of the
+ * same thread. The bookmark of the last committed transaction is passed on to every new session of the thread, so
+ * chained transactions read their own writes. Sessions are closed by {@link TransactionManagerImpl#closeSession()},
+ * when their thread terminated or when the manager is closed.</p>
  *
  * @author Andreas Pointner
  * @author Christoph Praschl
  * @since 1.0
  */
-public class TransactionManagerImpl implements TransactionManager {
+public class TransactionManagerImpl implements TransactionManager, AutoCloseable {
+    /**
+     * Logger
+     */
+    private static final Logger logger = LoggerFactory.getLogger(TransactionManagerImpl.class);
+
     /**
      * Reference to the neo4j driver
      */
     private Driver driver;
 
     /**
-     * The current active transaction
+     * Driver for read transactions, like a pool of read replicas, the driver is used if not set
      */
-    private OuterTransaction currentActiveTransaction = null;
+    private Driver readDriver;
 
     /**
-     * the current active access mode
+     * True if the read driver takes part in the causal chain of the driver, like the read replicas of a cluster.
+     * Otherwise read transactions on the read driver neither wait for nor produce bookmarks.
      */
-    private AccessMode currentAccessMode = null;
+    private boolean readDriverCausal = true;
+
+    /**
+     * Number of records fetched at once from the database, the driver default is used if not set
+     */
+    private long fetchSize;
+
+    /**
+     * Number of bytes a copied result may keep in memory before it spills to disk, unlimited if not set
+     */
+    private long resultBufferBytes;
+
+    /**
+     * Directory the copied results spill to, the default temporary directory if not set
+     */
+    private Path spillDirectory;
+
+    /**
+     * Policy to retry outer transactions that failed with a transient error, no retries if not set
+     */
+    private RetryPolicy retryPolicy;
+
+    /**
+     * Retries of this manager
+     */
+    private final RetryStatistics retryStatistics = new RetryStatistics();
+
+    /**
+     * All contexts that hold open sessions
+     */
+    private final Set<TransactionContext> contexts = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The transaction context of the current thread
+     */
+    private final ThreadLocal<TransactionContext> context = ThreadLocal.withInitial(TransactionContext::new);
+
+    /**
+     * True if every outer write transaction is a unit of work, see {@link TransactionManager#executeUnitOfWork(Function)}
+     */
+    private boolean unitOfWork;
+
+    /**
+     * True if every outer transaction has an identity map, see {@link TransactionManager#executeWithIdentityMap(Function, AccessMode)}
+     */
+    private boolean identityMap;
+
+    /**
+     * Listeners that are notified about every statement run in an outer transaction
+     */
+    private List<StatementListener> statementListeners = Collections.emptyList();
+
+    /**
+     * Session usage of this manager
+     */
+    private final SessionStatistics sessionStatistics = new SessionStatistics();
 
     @Override
     public Transaction beginTransaction() {
@@ -37,19 +121,316 @@ public class TransactionManagerImpl implements TransactionManager {
 
     @Override
     public Transaction beginTransaction(AccessMode accessMode) {
+        TransactionContext transactionContext = context.get();
+        OuterTransaction currentActiveTransaction = transactionContext.currentActiveTransaction;
         if (currentActiveTransaction == null) {
-            currentAccessMode = accessMode;
-            return currentActiveTransaction = new OuterTransaction(driver.session(SessionConfig.builder().withDefaultAccessMode(accessMode).build()).beginTransaction());
+            return transactionContext.currentActiveTransaction = beginOuterTransaction(transactionContext, accessMode);
         }
-        if (currentAccessMode == AccessMode.READ && accessMode == AccessMode.WRITE) {
+        if (currentActiveTransaction.accessMode == AccessMode.READ && accessMode == AccessMode.WRITE) {
             throw new IllegalStateException("Cannot open a inner write transaction, when the outer transaction is readonly");
         }
         return new InnerTransaction(currentActiveTransaction);
     }
 
+    /**
+     * Executes the function like {@link TransactionManager#execute(Function, AccessMode)}.
+     * If a retry policy is set and the function starts the outer transaction, it is retried on transient errors.
+     */
+    @Override
+    public <T> T execute(Function<Transaction, T> function, AccessMode accessMode) {
+        if (retryPolicy == null || isTransactionActive()) {
+            return TransactionManager.super.execute(function, accessMode);
+        }
+        return retryPolicy.execute(() -> TransactionManager.super.execute(function, accessMode), TransactionManagerImpl::operationName, retryStatistics);
+    }
+
+    /**
+     * Runs the consumer like {@link TransactionManager#run(Consumer, AccessMode)}.
+     * If a retry policy is set and the consumer starts the outer transaction, it is retried on transient errors.
+     */
+    @Override
+    public void run(Consumer<Transaction> consumer, AccessMode accessMode) {
+        if (retryPolicy == null || isTransactionActive()) {
+            TransactionManager.super.run(consumer, accessMode);
+            return;
+        }
+        retryPolicy.execute(() -> {
+            TransactionManager.super.run(consumer, accessMode);
+            return null;
+        }, TransactionManagerImpl::operationName, retryStatistics);
+    }
+
+    /**
+     * @return the class and method that called the manager
+     */
+    private static String operationName() {
+        return StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE).walk(frames -> frames
+            .filter(frame -> !TransactionManager.class.isAssignableFrom(frame.getDeclaringClass()) && frame.getDeclaringClass() != RetryPolicy.class)
+            .findFirst()
+            .map(frame -> frame.getDeclaringClass().getSimpleName() + "." + frame.getMethodName())
+            .orElse("unknown"));
+    }
+
+    @Override
+    public <T> T executeUnitOfWork(Function<Transaction, T> function) {
+        TransactionContext transactionContext = context.get();
+        OuterTransaction currentActiveTransaction = transactionContext.currentActiveTransaction;
+        if (currentActiveTransaction != null) {
+            if (currentActiveTransaction.unitOfWork != null || currentActiveTransaction.accessMode == AccessMode.READ) {
+                return executeWrite(function);
+            }
+            // the saves are written when the function returns, so later statements of the active transaction see them
+            UnitOfWork unitOfWork = new UnitOfWork();
+            currentActiveTransaction.unitOfWork = unitOfWork;
+            try {
+                T result = executeWrite(function);
+                unitOfWork.flush();
+                return result;
+            } finally {
+                currentActiveTransaction.unitOfWork = null;
+            }
+        }
+        transactionContext.unitOfWorkRequested = true;
+        try {
+            return executeWrite(function);
+        } finally {
+            transactionContext.unitOfWorkRequested = false;
+        }
+    }
+
+    @Override
+    public <T> T executeWithIdentityMap(Function<Transaction, T> function, AccessMode accessMode) {
+        TransactionContext transactionContext = context.get();
+        if (transactionContext.currentActiveTransaction != null) {
+            return execute(function, accessMode);
+        }
+        transactionContext.identityMapRequested = true;
+        try {
+            return execute(function, accessMode);
+        } finally {
+            transactionContext.identityMapRequested = false;
+        }
+    }
+
+    @Override
+    public IdentityMap getIdentityMap() {
+        OuterTransaction currentActiveTransaction = context.get().currentActiveTransaction;
+        return currentActiveTransaction == null ? null : currentActiveTransaction.identityMap;
+    }
+
+    @Override
+    public UnitOfWork getUnitOfWork() {
+        OuterTransaction currentActiveTransaction = context.get().currentActiveTransaction;
+        if (currentActiveTransaction == null || currentActiveTransaction.unitOfWork == null || !currentActiveTransaction.unitOfWork.isRecording()) {
+            return null;
+        }
+        return currentActiveTransaction.unitOfWork;
+    }
+
+    @Override
+    public boolean isTransactionActive() {
+        return context.get().currentActiveTransaction != null;
+    }
+
+    @Override
+    public void onRollback(Runnable action) {
+        OuterTransaction currentActiveTransaction = context.get().currentActiveTransaction;
+        if (currentActiveTransaction != null) {
+            currentActiveTransaction.rollbackActions.add(action);
+        }
+    }
+
+    @Override
+    public void onCommit(Runnable action) {
+        OuterTransaction currentActiveTransaction = context.get().currentActiveTransaction;
+        if (currentActiveTransaction != null) {
+            currentActiveTransaction.commitActions.add(action);
+        } else {
+            action.run();
+        }
+    }
+
+    private OuterTransaction beginOuterTransaction(TransactionContext transactionContext, AccessMode accessMode) {
+        long start = System.nanoTime();
+        Session session = transactionContext.sessions.get(accessMode);
+        boolean causal = isCausal(accessMode);
+        if (session != null && causal && transactionContext.lastBookmark != null && !Objects.equals(session.lastBookmark(), transactionContext.lastBookmark)) {
+            // another session of this thread committed in the meantime, the bookmark of a session is only applied when it is opened
+            closeSession(transactionContext, accessMode);
+            session = null;
+        }
+        boolean reused = session != null;
+        if (!reused) {
+            session = openSession(transactionContext, accessMode);
+        }
+        Transaction transaction;
+        try {
+            transaction = session.beginTransaction();
+        } catch (RuntimeException e) {
+            closeSession(transactionContext, accessMode);
+            throw e;
+        }
+        if (reused) {
+            sessionStatistics.recordReused(System.nanoTime() - start);
+        } else {
+            sessionStatistics.recordOpened(System.nanoTime() - start);
+        }
+        OuterTransaction outerTransaction = new OuterTransaction(transaction, accessMode, transactionContext, session, causal, statementListeners);
+        if (accessMode == AccessMode.WRITE && (unitOfWork || transactionContext.unitOfWorkRequested)) {
+            outerTransaction.unitOfWork = new UnitOfWork();
+        }
+        if (identityMap || transactionContext.identityMapRequested) {
+            outerTransaction.identityMap = new IdentityMap();
+        }
+        return outerTransaction;
+    }
+
+    /**
+     * @param accessMode the access mode
+     * @return the driver sessions with the given access mode are opened on
+     */
+    private Driver driverFor(AccessMode accessMode) {
+        return accessMode == AccessMode.READ && readDriver != null ? readDriver : driver;
+    }
+
+    /**
+     * @param accessMode the access mode
+     * @return true if sessions with the given access mode take part in the causal chain of the thread
+     */
+    private boolean isCausal(AccessMode accessMode) {
+        return accessMode == AccessMode.WRITE || readDriver == null || readDriverCausal;
+    }
+
+    private Session openSession(TransactionContext transactionContext, AccessMode accessMode) {
+        closeTerminatedThreadSessions();
+        SessionConfig.Builder builder = SessionConfig.builder().withDefaultAccessMode(accessMode);
+        if (transactionContext.lastBookmark != null && isCausal(accessMode)) {
+            builder.withBookmarks(transactionContext.lastBookmark);
+        }
+        if (fetchSize > 0) {
+            builder.withFetchSize(fetchSize);
+        }
+        Session session = driverFor(accessMode).session(builder.build());
+        synchronized (transactionContext) {
+            transactionContext.sessions.put(accessMode, session);
+        }
+        contexts.add(transactionContext);
+        return session;
+    }
+
+    private void closeSession(TransactionContext transactionContext, AccessMode accessMode) {
+        Session session;
+        synchronized (transactionContext) {
+            session = transactionContext.sessions.remove(accessMode);
+        }
+        if (session != null) {
+            try {
+                session.close();
+            } catch (RuntimeException e) {
+                logger.warn("Could not close session", e);
+            }
+            sessionStatistics.recordClosed();
+        }
+    }
+
+    private void closeSessions(TransactionContext transactionContext) {
+        for (AccessMode accessMode : AccessMode.values()) {
+            closeSession(transactionContext, accessMode);
+        }
+        contexts.remove(transactionContext);
+    }
+
+    /**
+     * Copies the result into a {@link SpillingResultClone} if a buffer size is set, into a {@link ResultClone} otherwise
+     *
+     * @param result the result to be copied
+     * @return the copy
+     */
+    @Override
+    public Result cloneResult(Result result) {
+        if (resultBufferBytes > 0) {
+            return new SpillingResultClone(result, resultBufferBytes, spillDirectory);
+        }
+        return new ResultClone(result);
+    }
+
+    /**
+     * Closes the sessions of threads that terminated without closing them.
+     */
+    private void closeTerminatedThreadSessions() {
+        for (TransactionContext transactionContext : contexts) {
+            if (!transactionContext.owner.isAlive()) {
+                closeSessions(transactionContext);
+            }
+        }
+    }
+
+    /**
+     * Closes the sessions of the current thread. The bookmark of the thread is kept,
+     * so sessions opened later on still read the writes of the closed ones.
+     */
     @Override
     public void closeSession() {
-        driver.session().close();
+        TransactionContext transactionContext = context.get();
+        if (transactionContext.currentActiveTransaction != null) {
+            throw new IllegalStateException("Cannot close the session, while a transaction is active");
+        }
+        closeSessions(transactionContext);
+    }
+
+    /**
+     * Closes the sessions of all threads. Must only be called when no thread uses the manager anymore.
+     */
+    @Override
+    public void close() {
+        for (TransactionContext transactionContext : new ArrayList<>(contexts)) {
+            closeSessions(transactionContext);
+        }
+    }
+
+    /**
+     * Establishes a connection to the database, so the first transaction does not have to pay for it.
+     * A unreachable database is only logged, as it may become available later on.
+     */
+    public void warmUp() {
+        warmUp(driver);
+        if (readDriver != null) {
+            warmUp(readDriver);
+        }
+    }
+
+    private static void warmUp(Driver driver) {
+        try {
+            driver.verifyConnectivity();
+        } catch (RuntimeException e) {
+            logger.warn("Could not connect to the database during warm up", e);
+        }
+    }
+
+    /**
+     * @return the bookmark of the last transaction committed by the current thread, null if there is none
+     */
+    @Override
+    public Bookmark getLastBookmark() {
+        return context.get().lastBookmark;
+    }
+
+    /**
+     * Continues the causal chain of another thread or process on the current thread.
+     * The next session of the current thread will wait for the given bookmark.
+     *
+     * @param bookmark the bookmark to wait for
+     */
+    @Override
+    public void useBookmark(Bookmark bookmark) {
+        context.get().lastBookmark = bookmark;
+    }
+
+    /**
+     * @return session usage of this manager
+     */
+    public SessionStatistics getSessionStatistics() {
+        return sessionStatistics;
     }
 
     /**
@@ -63,29 +444,251 @@ public class TransactionManagerImpl implements TransactionManager {
         this.driver = driver;
     }
 
-    private class OuterTransaction extends AbstractTransaction {
+    /**
+     * sets value of field {@link TransactionManagerImpl#readDriver}
+     *
+     * @param readDriver value of field readDriver
+     * @see TransactionManagerImpl#readDriver
+     */
+    public void setReadDriver(Driver readDriver) {
+        this.readDriver = readDriver;
+    }
+
+    /**
+     * sets value of field {@link TransactionManagerImpl#readDriverCausal}
+     *
+     * @param readDriverCausal value of field readDriverCausal
+     * @see TransactionManagerImpl#readDriverCausal
+     */
+    public void setReadDriverCausal(boolean readDriverCausal) {
+        this.readDriverCausal = readDriverCausal;
+    }
 
-        public OuterTransaction(Transaction decoratedElement) {
-            super(decoratedElement);
+    /**
+     * sets value of field {@link TransactionManagerImpl#unitOfWork}
+     *
+     * @param unitOfWork value of field unitOfWork
+     * @see TransactionManagerImpl#unitOfWork
+     */
+    public void setUnitOfWork(boolean unitOfWork) {
+        this.unitOfWork = unitOfWork;
+    }
+
+    /**
+     * sets value of field {@link TransactionManagerImpl#identityMap}
+     *
+     * @param identityMap value of field identityMap
+     * @see TransactionManagerImpl#identityMap
+     */
+    public void setIdentityMap(boolean identityMap) {
+        this.identityMap = identityMap;
+    }
+
+    /**
+     * sets value of field {@link TransactionManagerImpl#statementListeners}
+     *
+     * @param statementListeners value of field statementListeners
+     * @see TransactionManagerImpl#statementListeners
+     */
+    public void setStatementListeners(List<StatementListener> statementListeners) {
+        this.statementListeners = List.copyOf(statementListeners);
+    }
+
+    /**
+     * sets value of field {@link TransactionManagerImpl#fetchSize}
+     *
+     * @param fetchSize value of field fetchSize
+     * @see TransactionManagerImpl#fetchSize
+     */
+    public void setFetchSize(long fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * @return retries of this manager
+     */
+    public RetryStatistics getRetryStatistics() {
+        return retryStatistics;
+    }
+
+    /**
+     * sets value of field {@link TransactionManagerImpl#retryPolicy}
+     *
+     * @param retryPolicy value of field retryPolicy
+     * @see TransactionManagerImpl#retryPolicy
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * sets value of field {@link TransactionManagerImpl#resultBufferBytes}
+     *
+     * @param resultBufferBytes value of field resultBufferBytes
+     * @see TransactionManagerImpl#resultBufferBytes
+     */
+    public void setResultBufferBytes(long resultBufferBytes) {
+        this.resultBufferBytes = resultBufferBytes;
+    }
+
+    /**
+     * sets value of field {@link TransactionManagerImpl#spillDirectory}
+     *
+     * @param spillDirectory value of field spillDirectory
+     * @see TransactionManagerImpl#spillDirectory
+     */
+    public void setSpillDirectory(Path spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Holds the transaction state of a single thread.
+     * The outer transaction keeps a reference to its context, so it can release it even when closed from another thread.
+     */
+    private static class TransactionContext {
+        /**
+         * The thread this context belongs to
+         */
+        private final Thread owner = Thread.currentThread();
+
+        /**
+         * The open sessions of the thread, modified while holding the lock of the context
+         */
+        private final Map<AccessMode, Session> sessions = new EnumMap<>(AccessMode.class);
+
+        /**
+         * The current active transaction
+         */
+        private volatile OuterTransaction currentActiveTransaction;
+
+        /**
+         * The bookmark of the last transaction committed by the thread
+         */
+        private volatile Bookmark lastBookmark;
+
+        /**
+         * True if the next outer transaction of the thread should be a unit of work
+         */
+        private boolean unitOfWorkRequested;
+
+        /**
+         * True if the next outer transaction of the thread should have an identity map
+         */
+        private boolean identityMapRequested;
+    }
+
+    private static class OuterTransaction extends AbstractTransaction {
+
+        /**
+         * the access mode the transaction was started with
+         */
+        private final AccessMode accessMode;
+
+        /**
+         * the context this transaction is active in
+         */
+        private final TransactionContext transactionContext;
+
+        /**
+         * the session the transaction was started in
+         */
+        private final Session session;
+
+        /**
+         * actions to be executed if the transaction is closed without commit
+         */
+        private final List<Runnable> rollbackActions = new ArrayList<>();
+
+        /**
+         * actions to be executed once the transaction was committed
+         */
+        private final List<Runnable> commitActions = new ArrayList<>();
+
+        /**
+         * true once the transaction was committed successfully
+         */
+        private boolean committed;
+
+        /**
+         * true if the bookmark of the session continues the causal chain of the context
+         */
+        private final boolean causal;
+
+        /**
+         * the saves to be written before the commit, null if saves are written immediately
+         */
+        private UnitOfWork unitOfWork;
+
+        /**
+         * the objects loaded in the transaction, null if loaded nodes are not shared
+         */
+        private IdentityMap identityMap;
+
+        public OuterTransaction(Transaction decoratedElement, AccessMode accessMode, TransactionContext transactionContext, Session session, boolean causal,
+                                List<StatementListener> statementListeners) {
+            super(decoratedElement, statementListeners);
+            this.causal = causal;
+            this.accessMode = accessMode;
+            this.transactionContext = transactionContext;
+            this.session = session;
             logger.debug("Outer transaction ({}) started", getTransactionId());
         }
 
         @Override
         public void commit() {
             logger.debug("Outer transaction ({}) success", getTransactionId());
+            if (unitOfWork != null) {
+                unitOfWork.flush();
+            }
+            finishResults(true);
             getDecoratedElement().commit();
+            committed = true;
+        }
+
+        @Override
+        public void rollback() {
+            logger.debug("Outer transaction ({}) rollback", getTransactionId());
+            finishResults(false);
+            getDecoratedElement().rollback();
+            runRollbackActions();
+        }
+
+        private void runRollbackActions() {
+            for (int i = rollbackActions.size() - 1; i >= 0; i--) {
+                rollbackActions.get(i).run();
+            }
+            rollbackActions.clear();
         }
 
         @Override
         public void close() {
-            currentActiveTransaction = null;
+            if (transactionContext.currentActiveTransaction == this) {
+                transactionContext.currentActiveTransaction = null;
+            }
             logger.debug("Outer transaction ({}) close", getTransactionId());
-            getDecoratedElement().close();
+            try {
+                finishResults(false);
+                getDecoratedElement().close();
+            } finally {
+                if (!committed) {
+                    runRollbackActions();
+                }
+                if (causal) {
+                    Bookmark bookmark = session.lastBookmark();
+                    if (bookmark != null && !bookmark.isEmpty()) {
+                        transactionContext.lastBookmark = bookmark;
+                    }
+                }
+                if (committed) {
+                    commitActions.forEach(Runnable::run);
+                }
+                commitActions.clear();
+            }
         }
 
     }
 
-    private class InnerTransaction extends AbstractTransaction {
+    private static class InnerTransaction extends AbstractTransaction {
         private OuterTransaction outerTransaction;
 
         public InnerTransaction(OuterTransaction decoratedElement) {
@@ -0,0 +1,106 @@
+package science.aist.neo4j.transaction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * <p>Collects the saves of an outer transaction, so they can be written in batches right before the commit,
+ * instead of one statement per save. Entities are grouped by a key (e.g. repository and class), every group is
+ * flushed with a single call of its flush function, in the order the groups were first used.</p>
+ * <p>Entities saved while the unit of work is flushed are written immediately.</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class UnitOfWork {
+
+    /**
+     * The recorded entities per group
+     */
+    private final Map<Object, Group<?>> groups = new LinkedHashMap<>();
+
+    /**
+     * True while the recorded entities are written
+     */
+    private boolean flushing;
+
+    /**
+     * Records an entity to be saved with the other entities of its group on flush. An entity that is already
+     * recorded in the group is only saved once.
+     *
+     * @param key     the key of the group
+     * @param entity  the entity to be saved
+     * @param flusher saves all entities of the group
+     * @param <T>     the type of the entities in the group
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void register(Object key, T entity, Consumer<List<T>> flusher) {
+        ((Group<T>) groups.computeIfAbsent(key, x -> new Group<>(flusher))).add(entity);
+    }
+
+    /**
+     * @return true if entities are recorded, false while the unit of work is flushed
+     */
+    public boolean isRecording() {
+        return !flushing;
+    }
+
+    /**
+     * @return number of recorded entities
+     */
+    public int size() {
+        return groups.values().stream().mapToInt(x -> x.entities.size()).sum();
+    }
+
+    /**
+     * Saves all recorded entities, group by group
+     */
+    public void flush() {
+        if (flushing) {
+            return;
+        }
+        flushing = true;
+        try {
+            while (!groups.isEmpty()) {
+                List<Group<?>> current = new ArrayList<>(groups.values());
+                groups.clear();
+                current.forEach(Group::flush);
+            }
+        } finally {
+            flushing = false;
+        }
+    }
+
+    /**
+     * Drops all recorded entities without saving them
+     */
+    public void clear() {
+        groups.clear();
+    }
+
+    private static class Group<T> {
+        private final Consumer<List<T>> flusher;
+        private final List<T> entities = new ArrayList<>();
+        private final Set<T> recorded = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        private Group(Consumer<List<T>> flusher) {
+            this.flusher = flusher;
+        }
+
+        private void add(T entity) {
+            if (recorded.add(entity)) {
+                entities.add(entity);
+            }
+        }
+
+        private void flush() {
+            flusher.accept(entities);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package science.aist.neo4j.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * <p>Collects single loads that arrive from any thread within a short window and loads them with one call of the
+ * batch function. A batch is loaded once {@link BatchLoader#windowMillis} passed since its first key, or at once when
+ * it reached {@link BatchLoader#maxBatchSize} keys. Keys that are requested several times within a batch are only
+ * loaded once, and all callers get the same value, so the values should be immutable.</p>
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the values
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class BatchLoader<K, V> {
+
+    /**
+     * Triggers the batches once their window passed, shared by all loaders
+     */
+    private static ScheduledExecutorService scheduler;
+
+    /**
+     * Loads the values of a batch of keys, keys without value are missing in the result
+     */
+    private final Function<List<K>, Map<K, V>> batchFunction;
+
+    /**
+     * Milliseconds a batch waits for further keys
+     */
+    private long windowMillis = 2;
+
+    /**
+     * Maximum number of keys in a batch
+     */
+    private int maxBatchSize = 100;
+
+    /**
+     * Executor the batches are loaded on, by default daemon threads of its own, so batches that wait for the
+     * database do not block the common pool
+     */
+    private Executor executor = DaemonExecutors.newCachedPool("neo4j-batch-loader");
+
+    /**
+     * Keys of the current batch and the futures of their callers
+     */
+    private Map<K, CompletableFuture<V>> pending = new LinkedHashMap<>();
+
+    /**
+     * Trigger of the current batch, null if there is no batch
+     */
+    private ScheduledFuture<?> trigger;
+
+    /**
+     * @param batchFunction loads the values of a batch of keys, keys without value are missing in the result
+     */
+    public BatchLoader(Function<List<K>, Map<K, V>> batchFunction) {
+        this.batchFunction = batchFunction;
+    }
+
+    private static synchronized ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "batch-loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            scheduler = executor;
+        }
+        return scheduler;
+    }
+
+    /**
+     * Adds a key to the current batch
+     *
+     * @param key the key
+     * @return completes with the value of the key, or null if there is none, once the batch was loaded
+     */
+    public CompletableFuture<V> load(K key) {
+        Map<K, CompletableFuture<V>> batch = null;
+        CompletableFuture<V> future;
+        synchronized (this) {
+            future = pending.computeIfAbsent(key, x -> new CompletableFuture<>());
+            if (pending.size() >= maxBatchSize) {
+                batch = takeBatch();
+            } else if (trigger == null) {
+                trigger = scheduler().schedule(this::dispatchTriggered, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (batch != null) {
+            Map<K, CompletableFuture<V>> full = batch;
+            executor.execute(() -> dispatch(full));
+        }
+        return future;
+    }
+
+    /**
+     * Adds a key to the current batch and waits until it was loaded
+     *
+     * @param key the key
+     * @return the value of the key, null if there is none
+     */
+    public V get(K key) {
+        try {
+            return load(key).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Loads the current batch without waiting for the rest of its window
+     */
+    public void dispatchNow() {
+        Map<K, CompletableFuture<V>> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = takeBatch();
+        }
+        dispatch(batch);
+    }
+
+    private Map<K, CompletableFuture<V>> takeBatch() {
+        Map<K, CompletableFuture<V>> batch = pending;
+        pending = new LinkedHashMap<>();
+        if (trigger != null) {
+            trigger.cancel(false);
+            trigger = null;
+        }
+        return batch;
+    }
+
+    private void dispatchTriggered() {
+        Map<K, CompletableFuture<V>> batch;
+        synchronized (this) {
+            trigger = null;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = takeBatch();
+        }
+        executor.execute(() -> dispatch(batch));
+    }
+
+    private void dispatch(Map<K, CompletableFuture<V>> batch) {
+        try {
+            Map<K, V> values = batchFunction.apply(new ArrayList<>(batch.keySet()));
+            batch.forEach((key, future) -> future.complete(values.get(key)));
+        } catch (RuntimeException e) {
+            batch.values().forEach(x -> x.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * @return milliseconds a batch waits for further keys
+     */
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * sets value of field {@link BatchLoader#windowMillis}
+     *
+     * @param windowMillis value of field windowMillis
+     * @see BatchLoader#windowMillis
+     */
+    public void setWindowMillis(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * sets value of field {@link BatchLoader#maxBatchSize}
+     *
+     * @param maxBatchSize value of field maxBatchSize
+     * @see BatchLoader#maxBatchSize
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * sets value of field {@link BatchLoader#executor}
+     *
+     * @param executor value of field executor
+     * @see BatchLoader#executor
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+}
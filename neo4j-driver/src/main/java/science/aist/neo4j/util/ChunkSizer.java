@@ -0,0 +1,130 @@
+package science.aist.neo4j.util;
+
+/**
+ * <p>Adapts the number of nodes written per chunk (and transaction) of a large import. The size grows while chunks are
+ * written faster than {@link ChunkSizer#targetMillis} and shrinks when they are slower, by at most a factor of two
+ * per chunk. Independently of the latency a chunk is kept below {@link ChunkSizer#maxChunkBytes}, estimated from
+ * the payload of the previous chunks.</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class ChunkSizer {
+
+    /**
+     * Weight of the last chunk in the estimated bytes per node
+     */
+    private static final double WEIGHT = 0.3;
+
+    /**
+     * Number of nodes of the next chunk, before the memory budget is applied
+     */
+    private int chunkSize = 1000;
+
+    /**
+     * Smallest chunk
+     */
+    private int minChunkSize = 100;
+
+    /**
+     * Largest chunk
+     */
+    private int maxChunkSize = 50_000;
+
+    /**
+     * Milliseconds a chunk should take to be written
+     */
+    private long targetMillis = 500;
+
+    /**
+     * Memory budget of the parameters of a chunk in bytes
+     */
+    private long maxChunkBytes = 16L * 1024 * 1024;
+
+    /**
+     * Estimated payload per node, 0 until the first chunk was written
+     */
+    private double bytesPerNode;
+
+    /**
+     * @return number of nodes of the next chunk
+     */
+    public synchronized int next() {
+        long size = chunkSize;
+        if (bytesPerNode > 0) {
+            size = Math.min(size, (long) (maxChunkBytes / bytesPerNode));
+        }
+        return (int) Math.max(minChunkSize, Math.min(maxChunkSize, size));
+    }
+
+    /**
+     * Adapts the chunk size to a written chunk
+     *
+     * @param nodes number of nodes in the chunk
+     * @param bytes estimated payload of the chunk
+     * @param nanos time it took to write the chunk
+     */
+    public synchronized void record(int nodes, long bytes, long nanos) {
+        if (nodes <= 0) {
+            return;
+        }
+        double perNode = (double) bytes / nodes;
+        bytesPerNode = bytesPerNode == 0 ? perNode : bytesPerNode * (1 - WEIGHT) + perNode * WEIGHT;
+        double factor = Math.max(0.5, Math.min(2, targetMillis / Math.max(nanos / 1_000_000.0, 1)));
+        if (nodes < next() && factor > 1) {
+            // a partial chunk, e.g. the last one, says nothing about how large a chunk could be
+            return;
+        }
+        chunkSize = (int) Math.max(minChunkSize, Math.min(maxChunkSize, nodes * factor));
+    }
+
+    /**
+     * sets value of field {@link ChunkSizer#chunkSize}
+     *
+     * @param chunkSize value of field chunkSize
+     * @see ChunkSizer#chunkSize
+     */
+    public synchronized void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * sets value of field {@link ChunkSizer#minChunkSize}
+     *
+     * @param minChunkSize value of field minChunkSize
+     * @see ChunkSizer#minChunkSize
+     */
+    public synchronized void setMinChunkSize(int minChunkSize) {
+        this.minChunkSize = minChunkSize;
+    }
+
+    /**
+     * sets value of field {@link ChunkSizer#maxChunkSize}
+     *
+     * @param maxChunkSize value of field maxChunkSize
+     * @see ChunkSizer#maxChunkSize
+     */
+    public synchronized void setMaxChunkSize(int maxChunkSize) {
+        this.maxChunkSize = maxChunkSize;
+    }
+
+    /**
+     * sets value of field {@link ChunkSizer#targetMillis}
+     *
+     * @param targetMillis value of field targetMillis
+     * @see ChunkSizer#targetMillis
+     */
+    public synchronized void setTargetMillis(long targetMillis) {
+        this.targetMillis = targetMillis;
+    }
+
+    /**
+     * sets value of field {@link ChunkSizer#maxChunkBytes}
+     *
+     * @param maxChunkBytes value of field maxChunkBytes
+     * @see ChunkSizer#maxChunkBytes
+     */
+    public synchronized void setMaxChunkBytes(long maxChunkBytes) {
+        this.maxChunkBytes = maxChunkBytes;
+    }
+}
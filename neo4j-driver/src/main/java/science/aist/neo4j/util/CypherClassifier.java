@@ -0,0 +1,108 @@
+package science.aist.neo4j.util;
+
+import org.neo4j.driver.AccessMode;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * <p>Util class to decide if a cypher query only reads or also writes.</p>
+ * <p>A query is classified as write query if it contains a updating clause outside of string literals, comments and
+ * quoted names. Procedure calls are classified as write queries, as their side effects are unknown.</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class CypherClassifier {
+
+    /**
+     * Clauses that modify the graph or the schema
+     */
+    private static final Set<String> WRITE_CLAUSES = Set.of("CREATE", "MERGE", "DELETE", "DETACH", "SET", "REMOVE", "DROP", "FOREACH");
+
+    private CypherClassifier() {
+
+    }
+
+    /**
+     * Classifies a query
+     *
+     * @param query the query text
+     * @return {@link AccessMode#READ} if the query only reads, {@link AccessMode#WRITE} otherwise
+     */
+    public static AccessMode classify(String query) {
+        return isReadOnly(query) ? AccessMode.READ : AccessMode.WRITE;
+    }
+
+    /**
+     * Checks if a query only reads
+     *
+     * @param query the query text
+     * @return true if the query contains no updating clause and no procedure call
+     */
+    public static boolean isReadOnly(String query) {
+        int length = query.length();
+        int i = 0;
+        char previous = ' ';
+        while (i < length) {
+            char c = query.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                i = skipQuoted(query, i, c);
+                previous = c;
+            } else if (c == '/' && i + 1 < length && query.charAt(i + 1) == '/') {
+                int end = query.indexOf('\n', i);
+                i = end < 0 ? length : end;
+            } else if (c == '/' && i + 1 < length && query.charAt(i + 1) == '*') {
+                int end = query.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+            } else if (Character.isLetter(c) || c == '_') {
+                int start = i;
+                while (i < length && (Character.isLetterOrDigit(query.charAt(i)) || query.charAt(i) == '_')) {
+                    i++;
+                }
+                // properties, labels, types and parameters may be named like clauses
+                if (previous != '.' && previous != ':' && previous != '$' && isWrite(query.substring(start, i), query, i)) {
+                    return false;
+                }
+                previous = 'a';
+            } else {
+                if (!Character.isWhitespace(c)) {
+                    previous = c;
+                }
+                i++;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWrite(String word, String query, int end) {
+        String keyword = word.toUpperCase(Locale.ROOT);
+        if (WRITE_CLAUSES.contains(keyword)) {
+            return true;
+        }
+        if (keyword.equals("CALL")) {
+            // a sub query is classified by its own clauses
+            int next = end;
+            while (next < query.length() && Character.isWhitespace(query.charAt(next))) {
+                next++;
+            }
+            return next >= query.length() || query.charAt(next) != '{';
+        }
+        return false;
+    }
+
+    private static int skipQuoted(String query, int start, char quote) {
+        int i = start + 1;
+        while (i < query.length()) {
+            char c = query.charAt(i);
+            if (c == '\\' && quote != '`') {
+                i += 2;
+            } else if (c == quote) {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return i;
+    }
+}
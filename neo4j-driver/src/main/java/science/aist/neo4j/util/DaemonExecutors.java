@@ -0,0 +1,34 @@
+package science.aist.neo4j.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Executors for work that blocks on the database. Such work must not run on the common fork join pool, where it
+ * would starve parallel streams and other completion stages of the application. The threads are daemons, so an
+ * executor that is not shut down does not keep the application alive.</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public final class DaemonExecutors {
+
+    private DaemonExecutors() {
+    }
+
+    /**
+     * Executor that starts a thread per concurrent task and stops threads that were idle for a minute
+     *
+     * @param name prefix of the thread names
+     * @return the executor
+     */
+    public static ExecutorService newCachedPool(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,376 @@
+package science.aist.neo4j.util;
+
+import org.neo4j.driver.Value;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * <p>Cache of entries by node id that is bounded by the number and the weight of its entries, e.g. the estimated bytes
+ * of a loaded node. Entries are kept in two least recently used segments: new entries start in the probation segment
+ * and are moved to the protected segment when they are requested again, so entries that are requested once don't
+ * replace entries that are requested often. Once the cache is full, a new entry is only added if it was requested
+ * more often recently than the entry it would replace. The recent frequencies are counted in a small sketch that is
+ * halved periodically, so entries that are no longer requested lose their advantage.</p>
+ * <p>A reader that loads a node while it is written could add the state from before the write after the node was
+ * invalidated. Readers therefore take the {@link EntityCache#generation(long)} of the id before they load the node and
+ * add it with {@link EntityCache#put(long, Object, long)}, which skips the entry if the id was invalidated in between.
+ * The generations are counted per stripe of ids, so an unrelated invalidation may skip an entry, but never keeps a
+ * stale one.</p>
+ * <p>Hits, misses and evictions are counted to size the cache. Thread safe.</p>
+ *
+ * @param <V> type of the entries
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class EntityCache<V> {
+
+    /**
+     * Share of the size and weight that the protected segment may use
+     */
+    private static final double PROTECTED_SHARE = 0.8;
+
+    /**
+     * Number of stripes the invalidations are counted in
+     */
+    private static final int GENERATION_STRIPES = 1024;
+
+    /**
+     * Maximum number of entries
+     */
+    private final int maxSize;
+
+    /**
+     * Maximum total weight of the entries
+     */
+    private final long maxWeight;
+
+    /**
+     * Weight of an entry
+     */
+    private final ToLongFunction<? super V> weigher;
+
+    /**
+     * Entries that were requested once since they were added, least recently used first
+     */
+    private final LinkedHashMap<Long, Cached<V>> probation = new LinkedHashMap<>();
+
+    /**
+     * Entries that were requested again, least recently used first
+     */
+    private final LinkedHashMap<Long, Cached<V>> protectedEntries = new LinkedHashMap<>();
+
+    /**
+     * Recent request frequency per id
+     */
+    private final FrequencySketch sketch;
+
+    /**
+     * Number of invalidations per stripe of ids
+     */
+    private final long[] generations = new long[GENERATION_STRIPES];
+
+    private long weight;
+
+    private long protectedWeight;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    /**
+     * @param maxSize   maximum number of entries
+     * @param maxWeight maximum total weight of the entries
+     * @param weigher   weight of an entry, e.g. its estimated size in bytes
+     */
+    public EntityCache(int maxSize, long maxWeight, ToLongFunction<? super V> weigher) {
+        if (maxSize <= 0 || maxWeight <= 0) {
+            throw new IllegalArgumentException("maxSize and maxWeight must be positive");
+        }
+        this.maxSize = maxSize;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.sketch = new FrequencySketch(maxSize);
+    }
+
+    /**
+     * Cache of loaded values, weighted by their estimated size on the heap (see {@link ValueCodec#estimateSize(Value)})
+     *
+     * @param maxSize  maximum number of entries
+     * @param maxBytes maximum estimated bytes of all entries
+     * @return the cache
+     */
+    public static EntityCache<Value> ofValues(int maxSize, long maxBytes) {
+        return new EntityCache<>(maxSize, maxBytes, ValueCodec::estimateSize);
+    }
+
+    /**
+     * @param id id of a node
+     * @return the entry of the node, null if it is not cached
+     */
+    public synchronized V get(long id) {
+        sketch.increment(id);
+        Cached<V> entry = protectedEntries.remove(id);
+        if (entry != null) {
+            protectedEntries.put(id, entry);
+            hits++;
+            return entry.value;
+        }
+        entry = probation.remove(id);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        protectedEntries.put(id, entry);
+        protectedWeight += entry.weight;
+        demote();
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * @param id id of a node
+     * @return the generation of the id, to be passed to {@link EntityCache#put(long, Object, long)} with the entry
+     * that is loaded afterwards
+     */
+    public synchronized long generation(long id) {
+        return generations[stripe(id)];
+    }
+
+    /**
+     * Adds or replaces the entry of a node, unless the node was invalidated since the entry was loaded
+     *
+     * @param id         id of the node
+     * @param value      the entry
+     * @param generation the generation of the id before the entry was loaded
+     * @return false if the entry was skipped because the node was invalidated in the meantime
+     */
+    public synchronized boolean put(long id, V value, long generation) {
+        if (generations[stripe(id)] != generation) {
+            return false;
+        }
+        put(id, value);
+        return true;
+    }
+
+    /**
+     * Adds or replaces the entry of a node. A new entry is not added if the cache is full and the entries it would
+     * replace were requested more often.
+     *
+     * @param id    id of the node
+     * @param value the entry
+     */
+    public synchronized void put(long id, V value) {
+        long entryWeight = weigher.applyAsLong(value);
+        if (entryWeight > maxWeight) {
+            invalidate(id);
+            return;
+        }
+        Cached<V> entry = protectedEntries.get(id);
+        if (entry != null) {
+            weight += entryWeight - entry.weight;
+            protectedWeight += entryWeight - entry.weight;
+            protectedEntries.put(id, new Cached<>(value, entryWeight));
+            demote();
+            evict();
+            return;
+        }
+        entry = probation.get(id);
+        if (entry != null) {
+            weight += entryWeight - entry.weight;
+            probation.put(id, new Cached<>(value, entryWeight));
+            evict();
+            return;
+        }
+        int frequency = sketch.frequency(id);
+        while (size() + 1 > maxSize || weight + entryWeight > maxWeight) {
+            long victim = eldest();
+            if (frequency <= sketch.frequency(victim)) {
+                evictions++;
+                return;
+            }
+            remove(victim);
+            evictions++;
+        }
+        probation.put(id, new Cached<>(value, entryWeight));
+        weight += entryWeight;
+    }
+
+    /**
+     * @param id id of a node that was written or deleted
+     */
+    public synchronized void invalidate(long id) {
+        generations[stripe(id)]++;
+        remove(id);
+    }
+
+    /**
+     * Removes all entries, the statistics are kept
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < generations.length; i++) {
+            generations[i]++;
+        }
+        probation.clear();
+        protectedEntries.clear();
+        weight = 0;
+        protectedWeight = 0;
+    }
+
+    /**
+     * @return number of entries
+     */
+    public synchronized int size() {
+        return probation.size() + protectedEntries.size();
+    }
+
+    /**
+     * @return total weight of the entries
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return number of requests that found an entry
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of requests that found no entry
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of entries that were removed or not added because the cache was full
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return share of the requests that found an entry, 0 if there were none
+     */
+    public synchronized double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    private static int stripe(long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & (GENERATION_STRIPES - 1);
+    }
+
+    private void remove(long id) {
+        Cached<V> entry = probation.remove(id);
+        if (entry == null) {
+            entry = protectedEntries.remove(id);
+            if (entry != null) {
+                protectedWeight -= entry.weight;
+            }
+        }
+        if (entry != null) {
+            weight -= entry.weight;
+        }
+    }
+
+    /**
+     * Moves the least recently used protected entries back to probation while the protected segment is too large
+     */
+    private void demote() {
+        while (protectedEntries.size() > 1 && (protectedEntries.size() > maxSize * PROTECTED_SHARE || protectedWeight > maxWeight * PROTECTED_SHARE)) {
+            Iterator<Map.Entry<Long, Cached<V>>> eldest = protectedEntries.entrySet().iterator();
+            Map.Entry<Long, Cached<V>> entry = eldest.next();
+            eldest.remove();
+            protectedWeight -= entry.getValue().weight;
+            probation.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Removes the least recently used entries until the entries fit, without comparing their frequency
+     */
+    private void evict() {
+        while (size() > maxSize || weight > maxWeight) {
+            remove(eldest());
+            evictions++;
+        }
+    }
+
+    /**
+     * @return id of the entry to be evicted next, the least recently used in probation if there is one
+     */
+    private long eldest() {
+        return (probation.isEmpty() ? protectedEntries : probation).keySet().iterator().next();
+    }
+
+    private static class Cached<V> {
+        private final V value;
+        private final long weight;
+
+        private Cached(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Count-min sketch of counters up to 15, halved after ten times as many increments as the cache has entries
+     */
+    private static class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L};
+        private static final int MAX_COUNT = 15;
+
+        private final byte[][] counters;
+        private final int mask;
+        private final int resetAfter;
+        private int increments;
+
+        private FrequencySketch(int maxSize) {
+            // four counters per entry in each row, so ids that are not cached rarely share the counters of cached ones
+            int width = Integer.highestOneBit(Math.max(64, 4 * Math.min(maxSize, 1 << 22)) - 1) << 1;
+            counters = new byte[DEPTH][width];
+            mask = width - 1;
+            resetAfter = 10 * Math.min(maxSize, 1 << 22);
+        }
+
+        private int index(long id, int row) {
+            long hash = (id + row) * SEEDS[row];
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+
+        private void increment(long id) {
+            for (int row = 0; row < DEPTH; row++) {
+                int index = index(id, row);
+                if (counters[row][index] < MAX_COUNT) {
+                    counters[row][index]++;
+                }
+            }
+            if (++increments >= resetAfter) {
+                for (byte[] row : counters) {
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] >>= 1;
+                    }
+                }
+                increments /= 2;
+            }
+        }
+
+        private int frequency(long id) {
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < DEPTH; row++) {
+                frequency = Math.min(frequency, counters[row][index(id, row)]);
+            }
+            return frequency;
+        }
+    }
+}
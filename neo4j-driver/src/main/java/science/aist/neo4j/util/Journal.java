@@ -0,0 +1,323 @@
+package science.aist.neo4j.util;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * <p>Append only journal in a memory mapped file of fixed size. Entries are appended by any number of threads and
+ * taken by a single consumer, that acknowledges them once they are processed. Entries that were not acknowledged
+ * are taken again after a restart.</p>
+ * <p>Layout: a header with the offset of the first entry that was not acknowledged, followed by the entries
+ * {@code [int length][int crc][long timestamp][payload]}. The length of an entry is written last and the int behind
+ * the last entry is always 0, so a partially written entry is never read. The entries form a ring: an entry that does
+ * not fit before the end of the file is written to the start, if the entries there are acknowledged, and a wrap
+ * marker is left behind the previous entry. So the space of acknowledged entries is reused while the consumer lags
+ * behind. If the journal is full, appending blocks until the consumer caught up.</p>
+ * <p>The mapping is written to disk by the operating system, so entries survive a crash of the process. Set
+ * {@code force} to write every entry to the disk before it is acknowledged, to survive a crash of the system.</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class Journal implements AutoCloseable {
+
+    /**
+     * Identifies a journal file
+     */
+    private static final int MAGIC = 0x4E344A4C;
+
+    /**
+     * Size of the header
+     */
+    private static final int HEADER = 16;
+
+    /**
+     * Position of the offset of the first entry that was not acknowledged in the header
+     */
+    private static final int ACKNOWLEDGED_POSITION = 8;
+
+    /**
+     * Length of a wrap marker, the next entry is at the start of the ring
+     */
+    private static final int WRAP = -1;
+
+    /**
+     * Size of the fields before the payload
+     */
+    private static final int ENTRY_HEADER = Integer.BYTES + Integer.BYTES + Long.BYTES;
+
+    /**
+     * The file channel
+     */
+    private final FileChannel channel;
+
+    /**
+     * The mapped file
+     */
+    private final MappedByteBuffer mapping;
+
+    /**
+     * True if every entry is written to disk before append returns
+     */
+    private final boolean force;
+
+    /**
+     * Offset of the first entry that was not acknowledged
+     */
+    private int acknowledgedOffset;
+
+    /**
+     * Offset of the first entry that was not taken yet
+     */
+    private int takenOffset;
+
+    /**
+     * Offset the next entry is written to
+     */
+    private int writeOffset;
+
+    /**
+     * Number of entries that were not acknowledged
+     */
+    private int pendingEntries;
+
+    /**
+     * @param file     the journal file, created if it does not exist
+     * @param capacity size of the journal file in bytes
+     * @param force    true if every entry should be written to disk before append returns
+     * @throws IOException if the file can't be opened or is no journal
+     */
+    public Journal(Path file, int capacity, boolean force) throws IOException {
+        this.force = force;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int size = (int) Math.max(capacity, channel.size());
+        mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (mapping.getInt(0) == 0) {
+            mapping.putInt(0, MAGIC);
+            mapping.putInt(ACKNOWLEDGED_POSITION, HEADER);
+        } else if (mapping.getInt(0) != MAGIC) {
+            channel.close();
+            throw new IOException(file + " is not a journal");
+        }
+        acknowledgedOffset = mapping.getInt(ACKNOWLEDGED_POSITION);
+        takenOffset = acknowledgedOffset;
+        writeOffset = acknowledgedOffset;
+        // recover the entries that were appended but not acknowledged before the restart, wrapping at most once
+        boolean wrapped = false;
+        while (true) {
+            if (!wrapped && writeOffset + Integer.BYTES <= mapping.capacity() && mapping.getInt(writeOffset) == WRAP) {
+                wrapped = true;
+                writeOffset = HEADER;
+                continue;
+            }
+            int length = entryLength(writeOffset);
+            if (length <= 0 || (wrapped && writeOffset + ENTRY_HEADER + length + Integer.BYTES > acknowledgedOffset)) {
+                break;
+            }
+            writeOffset += ENTRY_HEADER + length;
+            pendingEntries++;
+        }
+        if (pendingEntries == 0) {
+            mapping.putInt(ACKNOWLEDGED_POSITION, HEADER);
+            acknowledgedOffset = takenOffset = writeOffset = HEADER;
+        }
+        mapping.putInt(writeOffset, 0);
+    }
+
+    /**
+     * @return the length of the payload of the valid entry at the offset, 0 if there is none
+     */
+    private int entryLength(int offset) {
+        if (offset + ENTRY_HEADER > mapping.capacity()) {
+            return 0;
+        }
+        int length = mapping.getInt(offset);
+        if (length <= 0 || offset + ENTRY_HEADER + length + Integer.BYTES > mapping.capacity()) {
+            return 0;
+        }
+        return mapping.getInt(offset + Integer.BYTES) == crc(offset + Integer.BYTES + Integer.BYTES, length + Long.BYTES) ? length : 0;
+    }
+
+    private int crc(int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(mapping.duplicate().position(offset).limit(offset + length));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Appends an entry, blocks while the journal is full
+     *
+     * @param payload       the entry
+     * @param timeoutMillis maximum time to wait for free space
+     * @return true if the entry was appended, false if there was no space within the timeout
+     * @throws InterruptedException if interrupted while waiting for free space
+     */
+    public synchronized boolean append(byte[] payload, long timeoutMillis) throws InterruptedException {
+        int size = ENTRY_HEADER + payload.length;
+        if (HEADER + size + Integer.BYTES > mapping.capacity()) {
+            throw new IllegalArgumentException("Entry of " + payload.length + " bytes does not fit into the journal");
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        int offset;
+        while ((offset = freeOffset(size)) < 0) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        mapping.putLong(offset + ENTRY_HEADER - Long.BYTES, System.currentTimeMillis());
+        mapping.duplicate().position(offset + ENTRY_HEADER).put(payload);
+        mapping.putInt(offset + Integer.BYTES, crc(offset + Integer.BYTES + Integer.BYTES, payload.length + Long.BYTES));
+        mapping.putInt(offset + size, 0);
+        mapping.putInt(offset, payload.length);
+        if (offset != writeOffset) {
+            // the marker is written after the entry, so the entry is only read once it is complete
+            mapping.putInt(writeOffset, WRAP);
+        }
+        if (force) {
+            mapping.force();
+        }
+        writeOffset = offset + size;
+        pendingEntries++;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Finds space for an entry, behind the last entry or at the start of the ring, without overwriting entries that
+     * were not acknowledged. One int is kept free behind the entry for the 0 that ends the entries.
+     *
+     * @param size size of the entry including its header
+     * @return the offset the entry can be written to, -1 if the journal is full
+     */
+    private int freeOffset(int size) {
+        if (writeOffset < acknowledgedOffset) {
+            return writeOffset + size + Integer.BYTES <= acknowledgedOffset ? writeOffset : -1;
+        }
+        if (writeOffset + size + Integer.BYTES <= mapping.capacity()) {
+            return writeOffset;
+        }
+        return HEADER + size + Integer.BYTES <= acknowledgedOffset ? HEADER : -1;
+    }
+
+    /**
+     * @param offset offset of an entry or a wrap marker
+     * @return offset of the entry, the start of the ring if there is a wrap marker
+     */
+    private int entryAt(int offset) {
+        return offset != writeOffset && mapping.getInt(offset) == WRAP ? HEADER : offset;
+    }
+
+    /**
+     * Takes the entries that were appended since the last call, without acknowledging them
+     *
+     * @param maxEntries    maximum number of entries
+     * @param timeoutMillis maximum time to wait for an entry
+     * @return the entries, empty if none was appended within the timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized List<byte[]> take(int maxEntries, long timeoutMillis) throws InterruptedException {
+        if (takenOffset == writeOffset && timeoutMillis > 0) {
+            wait(timeoutMillis);
+        }
+        List<byte[]> entries = new ArrayList<>();
+        while (takenOffset != writeOffset && entries.size() < maxEntries) {
+            takenOffset = entryAt(takenOffset);
+            int length = mapping.getInt(takenOffset);
+            byte[] payload = new byte[length];
+            mapping.duplicate().position(takenOffset + ENTRY_HEADER).get(payload);
+            entries.add(payload);
+            takenOffset += ENTRY_HEADER + length;
+        }
+        return entries;
+    }
+
+    /**
+     * Acknowledges all taken entries, so they are not taken again after a restart
+     */
+    public synchronized void acknowledge() {
+        int acknowledged = 0;
+        for (int offset = acknowledgedOffset; offset != takenOffset; ) {
+            offset = entryAt(offset);
+            if (offset == takenOffset) {
+                break;
+            }
+            offset += ENTRY_HEADER + mapping.getInt(offset);
+            acknowledged++;
+        }
+        pendingEntries -= acknowledged;
+        if (takenOffset == writeOffset) {
+            // everything was processed, start from the beginning again
+            mapping.putInt(HEADER, 0);
+            mapping.putInt(ACKNOWLEDGED_POSITION, HEADER);
+            acknowledgedOffset = takenOffset = writeOffset = HEADER;
+        } else {
+            mapping.putInt(ACKNOWLEDGED_POSITION, takenOffset);
+            acknowledgedOffset = takenOffset;
+        }
+        if (force) {
+            mapping.force();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Takes the entries that were taken but not acknowledged again, e.g. after processing them failed
+     */
+    public synchronized void retry() {
+        takenOffset = acknowledgedOffset;
+    }
+
+    /**
+     * @return number of entries that were not acknowledged
+     */
+    public synchronized int getPendingEntries() {
+        return pendingEntries;
+    }
+
+    /**
+     * @return number of bytes used by entries that were not acknowledged, including the end of the file that is
+     * skipped by a wrap until the entries before it are acknowledged
+     */
+    public synchronized int getPendingBytes() {
+        if (writeOffset < acknowledgedOffset) {
+            return mapping.capacity() - acknowledgedOffset + writeOffset - HEADER;
+        }
+        return writeOffset - acknowledgedOffset;
+    }
+
+    /**
+     * @return the time in milliseconds the oldest entry that was not acknowledged was appended at, -1 if there is none
+     */
+    public synchronized long getOldestPendingTimestamp() {
+        return acknowledgedOffset == writeOffset ? -1 : mapping.getLong(entryAt(acknowledgedOffset) + ENTRY_HEADER - Long.BYTES);
+    }
+
+    /**
+     * @return size of the journal in bytes
+     */
+    public int getCapacity() {
+        return mapping.capacity();
+    }
+
+    /**
+     * @return number of bytes available for entries, the size of the journal without its header
+     */
+    public int getEntryCapacity() {
+        return mapping.capacity() - HEADER;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        mapping.force();
+        channel.close();
+    }
+}
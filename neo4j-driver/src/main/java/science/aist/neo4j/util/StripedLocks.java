@@ -0,0 +1,78 @@
+package science.aist.neo4j.util;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Fixed number of locks, that node ids are mapped to. Locks of several ids are always taken in the order of their
+ * stripes, so two threads locking overlapping sets of ids can't deadlock. Share one instance between all repositories
+ * that write the same nodes.</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class StripedLocks {
+
+    /**
+     * The locks
+     */
+    private final ReentrantLock[] stripes;
+
+    /**
+     * @param stripes number of locks, more locks mean fewer unrelated ids block each other
+     */
+    public StripedLocks(int stripes) {
+        this.stripes = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * @param id a node id
+     * @return index of the lock of the id
+     */
+    public int stripe(long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return (int) Math.floorMod(hash ^ (hash >>> 32), (long) stripes.length);
+    }
+
+    /**
+     * Locks all ids, in the order of their stripes. Release them in a finally block with {@link Locked#unlock()}.
+     *
+     * @param ids the ids to be locked
+     * @return unlocks the ids
+     */
+    public Locked lock(long... ids) {
+        int[] indices = Arrays.stream(ids).mapToInt(this::stripe).sorted().distinct().toArray();
+        int locked = 0;
+        try {
+            for (int index : indices) {
+                stripes[index].lock();
+                locked++;
+            }
+        } finally {
+            if (locked < indices.length) {
+                unlock(indices, locked);
+            }
+        }
+        return () -> unlock(indices, indices.length);
+    }
+
+    private void unlock(int[] indices, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            stripes[indices[i]].unlock();
+        }
+    }
+
+    /**
+     * Locks held by a thread
+     */
+    @FunctionalInterface
+    public interface Locked {
+        /**
+         * Releases the locks, must be called by the thread that took them
+         */
+        void unlock();
+    }
+}
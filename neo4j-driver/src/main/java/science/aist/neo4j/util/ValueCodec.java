@@ -0,0 +1,379 @@
+package science.aist.neo4j.util;
+
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
+import org.neo4j.driver.internal.InternalNode;
+import org.neo4j.driver.internal.InternalPath;
+import org.neo4j.driver.internal.InternalRelationship;
+import org.neo4j.driver.internal.value.ListValue;
+import org.neo4j.driver.internal.value.MapValue;
+import org.neo4j.driver.internal.value.NodeValue;
+import org.neo4j.driver.internal.value.PathValue;
+import org.neo4j.driver.internal.value.RelationshipValue;
+import org.neo4j.driver.types.Entity;
+import org.neo4j.driver.types.IsoDuration;
+import org.neo4j.driver.types.Node;
+import org.neo4j.driver.types.Path;
+import org.neo4j.driver.types.Point;
+import org.neo4j.driver.types.Relationship;
+import org.neo4j.driver.types.TypeSystem;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.neo4j.driver.internal.types.InternalTypeSystem.TYPE_SYSTEM;
+
+/**
+ * <p>Util class that writes driver {@link Value}s into a compact binary format and reads them back,
+ * so values can be kept outside of the java heap. Also estimates how much heap a value occupies.</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class ValueCodec {
+
+    private static final byte NULL = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte INTEGER = 3;
+    private static final byte FLOAT = 4;
+    private static final byte STRING = 5;
+    private static final byte BYTES = 6;
+    private static final byte LIST = 7;
+    private static final byte MAP = 8;
+    private static final byte NODE = 9;
+    private static final byte RELATIONSHIP = 10;
+    private static final byte PATH = 11;
+    private static final byte POINT_2D = 12;
+    private static final byte POINT_3D = 13;
+    private static final byte DATE = 14;
+    private static final byte TIME = 15;
+    private static final byte LOCAL_TIME = 16;
+    private static final byte LOCAL_DATE_TIME = 17;
+    private static final byte DATE_TIME = 18;
+    private static final byte DURATION = 19;
+
+    /**
+     * Heap size of an object header plus reference, used for estimating
+     */
+    private static final int OBJECT_OVERHEAD = 24;
+
+    private ValueCodec() {
+
+    }
+
+    /**
+     * Writes a value
+     *
+     * @param value the value to be written
+     * @param out   the output to write to
+     * @throws IOException if writing to the output fails
+     */
+    public static void write(Value value, DataOutput out) throws IOException {
+        TypeSystem types = TYPE_SYSTEM;
+        if (value == null || value.isNull()) {
+            out.writeByte(NULL);
+        } else if (value.hasType(types.BOOLEAN())) {
+            out.writeByte(value.asBoolean() ? TRUE : FALSE);
+        } else if (value.hasType(types.INTEGER())) {
+            out.writeByte(INTEGER);
+            out.writeLong(value.asLong());
+        } else if (value.hasType(types.FLOAT())) {
+            out.writeByte(FLOAT);
+            out.writeDouble(value.asDouble());
+        } else if (value.hasType(types.STRING())) {
+            out.writeByte(STRING);
+            writeString(value.asString(), out);
+        } else if (value.hasType(types.BYTES())) {
+            byte[] bytes = value.asByteArray();
+            out.writeByte(BYTES);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (value.hasType(types.LIST())) {
+            out.writeByte(LIST);
+            out.writeInt(value.size());
+            for (Value element : value.values()) {
+                write(element, out);
+            }
+        } else if (value.hasType(types.NODE())) {
+            out.writeByte(NODE);
+            writeNode(value.asNode(), out);
+        } else if (value.hasType(types.RELATIONSHIP())) {
+            out.writeByte(RELATIONSHIP);
+            writeRelationship(value.asRelationship(), out);
+        } else if (value.hasType(types.PATH())) {
+            Path path = value.asPath();
+            out.writeByte(PATH);
+            out.writeInt(path.length());
+            for (Node node : path.nodes()) {
+                writeNode(node, out);
+            }
+            for (Relationship relationship : path.relationships()) {
+                writeRelationship(relationship, out);
+            }
+        } else if (value.hasType(types.MAP())) {
+            // nodes and relationships are maps as well, so they must be checked first
+            out.writeByte(MAP);
+            writeProperties(value.asMap(v -> v), out);
+        } else if (value.hasType(types.POINT())) {
+            Point point = value.asPoint();
+            boolean threeDimensional = !Double.isNaN(point.z());
+            out.writeByte(threeDimensional ? POINT_3D : POINT_2D);
+            out.writeInt(point.srid());
+            out.writeDouble(point.x());
+            out.writeDouble(point.y());
+            if (threeDimensional) {
+                out.writeDouble(point.z());
+            }
+        } else if (value.hasType(types.DATE())) {
+            out.writeByte(DATE);
+            out.writeLong(value.asLocalDate().toEpochDay());
+        } else if (value.hasType(types.TIME())) {
+            OffsetTime time = value.asOffsetTime();
+            out.writeByte(TIME);
+            out.writeLong(time.toLocalTime().toNanoOfDay());
+            out.writeInt(time.getOffset().getTotalSeconds());
+        } else if (value.hasType(types.LOCAL_TIME())) {
+            out.writeByte(LOCAL_TIME);
+            out.writeLong(value.asLocalTime().toNanoOfDay());
+        } else if (value.hasType(types.LOCAL_DATE_TIME())) {
+            LocalDateTime dateTime = value.asLocalDateTime();
+            out.writeByte(LOCAL_DATE_TIME);
+            out.writeLong(dateTime.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(dateTime.getNano());
+        } else if (value.hasType(types.DATE_TIME())) {
+            ZonedDateTime dateTime = value.asZonedDateTime();
+            out.writeByte(DATE_TIME);
+            out.writeLong(dateTime.toEpochSecond());
+            out.writeInt(dateTime.getNano());
+            writeString(dateTime.getZone().getId(), out);
+        } else if (value.hasType(types.DURATION())) {
+            IsoDuration duration = value.asIsoDuration();
+            out.writeByte(DURATION);
+            out.writeLong(duration.months());
+            out.writeLong(duration.days());
+            out.writeLong(duration.seconds());
+            out.writeInt(duration.nanoseconds());
+        } else {
+            throw new IllegalArgumentException("Values of type " + value.type().name() + " can't be written");
+        }
+    }
+
+    /**
+     * Reads a value that was written with {@link ValueCodec#write(Value, DataOutput)}
+     *
+     * @param in the buffer positioned at the start of the value
+     * @return the value
+     */
+    public static Value read(ByteBuffer in) {
+        byte type = in.get();
+        switch (type) {
+            case NULL:
+                return Values.NULL;
+            case FALSE:
+                return Values.value(false);
+            case TRUE:
+                return Values.value(true);
+            case INTEGER:
+                return Values.value(in.getLong());
+            case FLOAT:
+                return Values.value(in.getDouble());
+            case STRING:
+                return Values.value(readString(in));
+            case BYTES:
+                byte[] bytes = new byte[in.getInt()];
+                in.get(bytes);
+                return Values.value(bytes);
+            case LIST:
+                int size = in.getInt();
+                Value[] list = new Value[size];
+                for (int i = 0; i < size; i++) {
+                    list[i] = read(in);
+                }
+                return new ListValue(list);
+            case MAP:
+                return new MapValue(readProperties(in));
+            case NODE:
+                return new NodeValue(readNode(in));
+            case RELATIONSHIP:
+                return new RelationshipValue(readRelationship(in));
+            case PATH:
+                int length = in.getInt();
+                Node[] nodes = new Node[length + 1];
+                for (int i = 0; i <= length; i++) {
+                    nodes[i] = readNode(in);
+                }
+                List<Entity> entities = new ArrayList<>(2 * length + 1);
+                entities.add(nodes[0]);
+                for (int i = 0; i < length; i++) {
+                    entities.add(readRelationship(in));
+                    entities.add(nodes[i + 1]);
+                }
+                return new PathValue(new InternalPath(entities));
+            case POINT_2D:
+                return Values.point(in.getInt(), in.getDouble(), in.getDouble());
+            case POINT_3D:
+                return Values.point(in.getInt(), in.getDouble(), in.getDouble(), in.getDouble());
+            case DATE:
+                return Values.value(LocalDate.ofEpochDay(in.getLong()));
+            case TIME:
+                LocalTime localTime = LocalTime.ofNanoOfDay(in.getLong());
+                return Values.value(OffsetTime.of(localTime, ZoneOffset.ofTotalSeconds(in.getInt())));
+            case LOCAL_TIME:
+                return Values.value(LocalTime.ofNanoOfDay(in.getLong()));
+            case LOCAL_DATE_TIME:
+                return Values.value(LocalDateTime.ofEpochSecond(in.getLong(), in.getInt(), ZoneOffset.UTC));
+            case DATE_TIME:
+                long epochSecond = in.getLong();
+                int nano = in.getInt();
+                ZoneId zone = ZoneId.of(readString(in));
+                return Values.value(ZonedDateTime.ofInstant(Instant.ofEpochSecond(epochSecond, nano), zone));
+            case DURATION:
+                return Values.isoDuration(in.getLong(), in.getLong(), in.getLong(), in.getInt());
+            default:
+                throw new IllegalStateException("Unknown value type " + type);
+        }
+    }
+
+    /**
+     * Estimates the bytes a value occupies on the java heap
+     *
+     * @param value the value
+     * @return estimated size in bytes
+     */
+    public static long estimateSize(Value value) {
+        TypeSystem types = TYPE_SYSTEM;
+        if (value == null || value.isNull() || value.hasType(types.BOOLEAN())) {
+            return 8;
+        } else if (value.hasType(types.INTEGER()) || value.hasType(types.FLOAT())) {
+            return OBJECT_OVERHEAD;
+        } else if (value.hasType(types.STRING())) {
+            return estimateSize(value.asString());
+        } else if (value.hasType(types.BYTES())) {
+            return OBJECT_OVERHEAD + value.size();
+        } else if (value.hasType(types.LIST())) {
+            long size = OBJECT_OVERHEAD + 8L * value.size();
+            for (Value element : value.values()) {
+                size += estimateSize(element);
+            }
+            return size;
+        } else if (value.hasType(types.NODE())) {
+            return estimateSize(value.asNode());
+        } else if (value.hasType(types.RELATIONSHIP())) {
+            return estimateSize(value.asRelationship());
+        } else if (value.hasType(types.PATH())) {
+            long size = OBJECT_OVERHEAD * 2;
+            for (Node node : value.asPath().nodes()) {
+                size += estimateSize(node);
+            }
+            for (Relationship relationship : value.asPath().relationships()) {
+                size += estimateSize(relationship);
+            }
+            return size;
+        } else if (value.hasType(types.MAP())) {
+            return estimateSize(value.asMap(v -> v));
+        }
+        // points, temporal values and durations
+        return OBJECT_OVERHEAD * 2;
+    }
+
+    private static long estimateSize(String string) {
+        return OBJECT_OVERHEAD * 2 + string.length();
+    }
+
+    private static long estimateSize(Map<String, Value> properties) {
+        long size = OBJECT_OVERHEAD * 2;
+        for (Map.Entry<String, Value> entry : properties.entrySet()) {
+            size += OBJECT_OVERHEAD + estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+        }
+        return size;
+    }
+
+    private static long estimateSize(Node node) {
+        long size = OBJECT_OVERHEAD * 2 + estimateSize(node.asMap(v -> v));
+        for (String label : node.labels()) {
+            size += 8 + estimateSize(label);
+        }
+        return size;
+    }
+
+    private static long estimateSize(Relationship relationship) {
+        return OBJECT_OVERHEAD * 3 + estimateSize(relationship.type()) + estimateSize(relationship.asMap(v -> v));
+    }
+
+    private static void writeString(String string, DataOutput out) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeProperties(Map<String, Value> properties, DataOutput out) throws IOException {
+        out.writeInt(properties.size());
+        for (Map.Entry<String, Value> entry : properties.entrySet()) {
+            writeString(entry.getKey(), out);
+            write(entry.getValue(), out);
+        }
+    }
+
+    private static Map<String, Value> readProperties(ByteBuffer in) {
+        int size = in.getInt();
+        Map<String, Value> properties = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            properties.put(readString(in), read(in));
+        }
+        return properties;
+    }
+
+    private static void writeNode(Node node, DataOutput out) throws IOException {
+        out.writeLong(node.id());
+        List<String> labels = new ArrayList<>();
+        node.labels().forEach(labels::add);
+        out.writeInt(labels.size());
+        for (String label : labels) {
+            writeString(label, out);
+        }
+        writeProperties(node.asMap(v -> v), out);
+    }
+
+    private static Node readNode(ByteBuffer in) {
+        long id = in.getLong();
+        int size = in.getInt();
+        List<String> labels = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            labels.add(readString(in));
+        }
+        return new InternalNode(id, labels, readProperties(in));
+    }
+
+    private static void writeRelationship(Relationship relationship, DataOutput out) throws IOException {
+        out.writeLong(relationship.id());
+        out.writeLong(relationship.startNodeId());
+        out.writeLong(relationship.endNodeId());
+        writeString(relationship.type(), out);
+        writeProperties(relationship.asMap(v -> v), out);
+    }
+
+    private static Relationship readRelationship(ByteBuffer in) {
+        return new InternalRelationship(in.getLong(), in.getLong(), in.getLong(), readString(in), readProperties(in));
+    }
+}
@@ -0,0 +1,94 @@
+package science.aist.neo4j.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Map from objects to values, that compares the keys by identity and does not keep them alive. Entries are
+ * removed once their key was garbage collected. Used to remember information about domain objects, whose equals and
+ * hashCode may depend on their state. Thread safe.</p>
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the values
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class WeakIdentityMap<K, V> {
+
+    private final Map<Key<K>, V> entries = new HashMap<>();
+
+    /**
+     * Keys that were garbage collected
+     */
+    private final ReferenceQueue<K> collected = new ReferenceQueue<>();
+
+    /**
+     * @param key the object
+     * @return the value of the object, null if there is none
+     */
+    public synchronized V get(K key) {
+        expunge();
+        return entries.get(new Key<>(key, null));
+    }
+
+    /**
+     * @param key   the object
+     * @param value the value of the object
+     */
+    public synchronized void put(K key, V value) {
+        expunge();
+        entries.put(new Key<>(key, collected), value);
+    }
+
+    /**
+     * @param key the object
+     */
+    public synchronized void remove(K key) {
+        expunge();
+        entries.remove(new Key<>(key, null));
+    }
+
+    /**
+     * @return number of entries whose key was not collected yet
+     */
+    public synchronized int size() {
+        expunge();
+        return entries.size();
+    }
+
+    private void expunge() {
+        Reference<? extends K> key;
+        while ((key = collected.poll()) != null) {
+            entries.remove(key);
+        }
+    }
+
+    private static final class Key<K> extends WeakReference<K> {
+        private final int hash;
+
+        private Key(K referent, ReferenceQueue<? super K> queue) {
+            super(referent, queue);
+            hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Object referent = get();
+            return referent != null && referent == ((Key<?>) o).get();
+        }
+    }
+}
@@ -1,16 +1,43 @@
 package science.aist.neo4j.repository;
 
 import science.aist.neo4j.it.dummy.A;
+import science.aist.neo4j.it.dummy.AA;
 import science.aist.neo4j.it.dummy.B;
 import science.aist.neo4j.it.dynamic.domain.C;
 import science.aist.neo4j.reflective.ReflectiveNeo4JNodeRepositoryImpl;
+import science.aist.neo4j.transaction.AsyncTransactionManager;
+import science.aist.neo4j.transaction.IdentityMap;
+import science.aist.neo4j.transaction.TransactionManager;
+import science.aist.neo4j.util.ChunkSizer;
+import science.aist.neo4j.util.EntityCache;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Bookmark;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Transaction;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
+import org.neo4j.driver.async.AsyncTransaction;
+import org.neo4j.driver.async.ResultCursor;
+import org.neo4j.driver.internal.InternalNode;
+import org.neo4j.driver.internal.value.NodeValue;
+import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 /**
@@ -49,7 +76,7 @@ public class ReflectiveNeo4JNodeRepositoryImplTest {
     public void testQueryWithExecute() {
         // given
         AbstractNeo4JNodeRepositoyImpl<A> spy = Mockito.spy(aRepository);
-        Mockito.doReturn(new A()).when(spy).queryTyped(Mockito.any(), Mockito.any());
+        Mockito.doReturn(new A()).when(spy).queryTyped(Mockito.any(), Mockito.any(), Mockito.any());
         repositoyMap.put(A.class, spy);
 
         // when
@@ -57,8 +84,9 @@ public class ReflectiveNeo4JNodeRepositoryImplTest {
 
         // then
         Mockito.verify(spy, Mockito.times(1)).queryNormalOrTyped("test", null, A.class, repositoyMap);
+        Mockito.verify(spy, Mockito.times(1)).queryNormalOrTyped("test", null, A.class, AccessMode.READ, repositoyMap);
         Mockito.verify(spy, Mockito.times(1)).query("test", null, A.class);
-        Mockito.verify(spy, Mockito.times(1)).queryTyped("test", null);
+        Mockito.verify(spy, Mockito.times(1)).queryTyped("test", null, AccessMode.READ);
         Mockito.verifyNoMoreInteractions(spy);
     }
 
@@ -69,15 +97,16 @@ public class ReflectiveNeo4JNodeRepositoryImplTest {
     public void testQueryWithQueryHelp() {
         // given
         AbstractNeo4JNodeRepositoyImpl<A> spy = Mockito.spy(aRepository);
-        Mockito.doReturn(new Object()).when(spy).queryHelp(Mockito.any(), Mockito.any(), Mockito.any());
+        Mockito.doReturn(new Object()).when(spy).queryHelp(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
 
         // when
         spy.query("test", null, Object.class);
 
         // then
         Mockito.verify(spy, Mockito.times(1)).queryNormalOrTyped("test", null, Object.class, repositoyMap);
+        Mockito.verify(spy, Mockito.times(1)).queryNormalOrTyped("test", null, Object.class, AccessMode.READ, repositoyMap);
         Mockito.verify(spy, Mockito.times(1)).query("test", null, Object.class);
-        Mockito.verify(spy, Mockito.times(1)).queryHelp("test", null, Object.class);
+        Mockito.verify(spy, Mockito.times(1)).queryHelp("test", null, Object.class, AccessMode.READ);
         Mockito.verifyNoMoreInteractions(spy);
     }
 
@@ -88,7 +117,7 @@ public class ReflectiveNeo4JNodeRepositoryImplTest {
     public void testQueryAllWithExecuteAll() {
         // given
         AbstractNeo4JNodeRepositoyImpl<A> spy = Mockito.spy(aRepository);
-        Mockito.doReturn(Arrays.asList(new A())).when(spy).queryAllTyped(Mockito.any(), Mockito.any());
+        Mockito.doReturn(Arrays.asList(new A())).when(spy).queryAllTyped(Mockito.any(), Mockito.any(), Mockito.any());
         repositoyMap.put(A.class, spy);
 
         // when
@@ -96,8 +125,9 @@ public class ReflectiveNeo4JNodeRepositoryImplTest {
 
         // then
         Mockito.verify(spy, Mockito.times(1)).queryAllNormalOrTyped("test", null, A.class, repositoyMap);
+        Mockito.verify(spy, Mockito.times(1)).queryAllNormalOrTyped("test", null, A.class, AccessMode.READ, repositoyMap);
         Mockito.verify(spy, Mockito.times(1)).queryAll("test", null, A.class);
-        Mockito.verify(spy, Mockito.times(1)).queryAllTyped("test", null);
+        Mockito.verify(spy, Mockito.times(1)).queryAllTyped("test", null, AccessMode.READ);
         Mockito.verifyNoMoreInteractions(spy);
     }
 
@@ -108,15 +138,472 @@ public class ReflectiveNeo4JNodeRepositoryImplTest {
     public void testQueryAllWithQueryHelpAll() {
         // given
         AbstractNeo4JNodeRepositoyImpl<A> spy = Mockito.spy(aRepository);
-        Mockito.doReturn(Stream.of(new Object())).when(spy).queryAllHelp(Mockito.any(), Mockito.any(), Mockito.any());
+        Mockito.doReturn(Stream.of(new Object())).when(spy).queryAllHelp(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
 
         // when
         spy.queryAll("test", null, Object.class);
 
         // then
         Mockito.verify(spy, Mockito.times(1)).queryAllNormalOrTyped("test", null, Object.class, repositoyMap);
+        Mockito.verify(spy, Mockito.times(1)).queryAllNormalOrTyped("test", null, Object.class, AccessMode.READ, repositoyMap);
         Mockito.verify(spy, Mockito.times(1)).queryAll("test", null, Object.class);
-        Mockito.verify(spy, Mockito.times(1)).queryAllHelp("test", null, Object.class);
+        Mockito.verify(spy, Mockito.times(1)).queryAllHelp("test", null, Object.class, AccessMode.READ);
         Mockito.verifyNoMoreInteractions(spy);
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests that typed queries and streams that write run in a write transaction
+     */
+    @Test
+    public void testTypedQueryAccessMode() {
+        // given
+        TransactionManager manager = Mockito.mock(TransactionManager.class, Mockito.RETURNS_DEEP_STUBS);
+        Mockito.when(manager.execute(Mockito.any(), Mockito.any())).thenReturn(List.of());
+        ReflectiveNeo4JNodeRepositoryImpl<A> repository = new ReflectiveNeo4JNodeRepositoryImpl<>(manager, A.class);
+        repository.setRepositories(repositoyMap);
+        repositoyMap.put(A.class, repository);
+        String write = "MATCH (n:A) SET n.seen = true RETURN n";
+
+        // when
+        repository.query(write, null, A.class);
+        repository.queryAll(write, null, A.class);
+        repository.streamAll(write, null, Long.class);
+        repository.queryTyped("MATCH (n:A) RETURN n", null);
+
+        // then
+        Mockito.verify(manager, Mockito.times(2)).execute(Mockito.any(), Mockito.eq(AccessMode.WRITE));
+        Mockito.verify(manager).stream(Mockito.any(), Mockito.eq(AccessMode.WRITE));
+        Mockito.verify(manager).execute(Mockito.any(), Mockito.eq(AccessMode.READ));
+    }
+
+    /**
+     * Tests that UNWIND parameters are sorted by the ids they lock
+     */
+    @Test
+    public void testSortById() {
+        // given
+        List<Value> tuples = List.of(
+            Values.parameters("source", 5L, "target", 1L),
+            Values.parameters("source", 2L, "target", 9L),
+            Values.parameters("source", 5L, "target", 0L));
+
+        // when
+        List<Value> sorted = AbstractNeo4JNodeRepositoyImpl.sortById(tuples, x -> x.get("source"), x -> x.get("target"));
+
+        // then
+        Assert.assertEquals(sorted, List.of(tuples.get(1), tuples.get(2), tuples.get(0)));
+    }
+
+    /**
+     * Tests that the relationship statements are built once per relationship type
+     */
+    @Test
+    public void testRelationshipStatements() {
+        // given
+        String type = "ELEMENTS";
+
+        // when
+        AbstractNeo4JNodeRepositoyImpl<A>.RelationshipStatements statements = aRepository.relationshipStatements(type);
+
+        // then
+        Assert.assertSame(aRepository.relationshipStatements(type), statements);
+        Assert.assertEquals(statements.relationship, "MATCH (a), (b) WHERE id(a) = $id1 and id(b) = $id2 MERGE (a)-[r:" + type + "]->(b)");
+    }
+
+    /**
+     * Tests that a node whose relationship targets are saved is written with a single statement
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSaveWithRelationshipsInOneStatement() {
+        // given
+        TransactionManager manager = Mockito.mock(TransactionManager.class);
+        Transaction transaction = Mockito.mock(Transaction.class, Mockito.RETURNS_DEEP_STUBS);
+        Mockito.when(manager.executeWrite(Mockito.any())).thenAnswer(invocation -> invocation.getArgument(0, Function.class).apply(transaction));
+        Mockito.when(transaction.run(Mockito.anyString(), Mockito.anyMap()).single().get(0).asLong()).thenReturn(11L);
+        Mockito.clearInvocations(transaction);
+        ReflectiveNeo4JNodeRepositoryImpl<A> repository = new ReflectiveNeo4JNodeRepositoryImpl<>(manager, A.class);
+        A node = new A();
+        B first = new B();
+        first.id = 2L;
+        B second = new B();
+        second.id = 1L;
+        node.elements.add(first);
+        node.elements.add(second);
+        node.singleElement = first;
+        ArgumentCaptor<String> statement = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Map<String, Object>> parameters = ArgumentCaptor.forClass(Map.class);
+
+        // when
+        repository.save(node);
+
+        // then
+        Mockito.verify(transaction, Mockito.times(1)).run(statement.capture(), parameters.capture());
+        Assert.assertEquals(node.id, Long.valueOf(11));
+        Assert.assertTrue(statement.getValue().startsWith("CREATE (n:`A` $properties)"));
+        Assert.assertEquals(statement.getValue().split("MERGE").length - 1, 2);
+        Assert.assertTrue(parameters.getValue().values().stream().anyMatch(x -> x instanceof long[] && Arrays.equals((long[]) x, new long[]{1L, 2L})));
+    }
+
+    /**
+     * Tests that saveAll writes the labels natively with one statement per label set
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSaveAllGroupedByLabels() {
+        // given
+        TransactionManager manager = Mockito.mock(TransactionManager.class);
+        Transaction transaction = Mockito.mock(Transaction.class, Mockito.RETURNS_DEEP_STUBS);
+        Mockito.when(manager.executeWrite(Mockito.any())).thenAnswer(invocation -> invocation.getArgument(0, Function.class).apply(transaction));
+        ReflectiveNeo4JNodeRepositoryImpl<A> repository = new ReflectiveNeo4JNodeRepositoryImpl<>(manager, A.class);
+        List<A> nodes = List.of(new A(), new AA(), new A());
+        ArgumentCaptor<String> statement = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Value> parameters = ArgumentCaptor.forClass(Value.class);
+
+        // when
+        repository.saveAll(nodes);
+
+        // then
+        Mockito.verify(transaction, Mockito.times(2)).run(statement.capture(), parameters.capture());
+        Assert.assertEquals(statement.getAllValues(), List.of(
+            "UNWIND $nodes as node CREATE (n:`A`) SET n = node.properties RETURN id(n)",
+            "UNWIND $nodes as node CREATE (n:`AA`:`A`) SET n = node.properties RETURN id(n)"));
+        Assert.assertEquals(parameters.getAllValues().get(0).get("nodes").size(), 2);
+        Assert.assertFalse(parameters.getAllValues().get(1).get("nodes").get(0).containsKey("classNames"));
+    }
+
+    /**
+     * Tests that an overridden statement that still adds the labels from classNames is run once with the labels in the rows
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSaveAllWithClassNamesStatement() {
+        // given
+        TransactionManager manager = Mockito.mock(TransactionManager.class);
+        Transaction transaction = Mockito.mock(Transaction.class, Mockito.RETURNS_DEEP_STUBS);
+        Mockito.when(manager.executeWrite(Mockito.any())).thenAnswer(invocation -> invocation.getArgument(0, Function.class).apply(transaction));
+        ReflectiveNeo4JNodeRepositoryImpl<A> repository = new ReflectiveNeo4JNodeRepositoryImpl<>(manager, A.class);
+        repository.CREATE_BULK_STATEMENT = "UNWIND $nodes as node CREATE (n) SET n = node.properties WITH n, node.classNames as labels CALL apoc.create.addLabels(n, labels) YIELD node RETURN id(n)";
+        ArgumentCaptor<String> statement = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Value> parameters = ArgumentCaptor.forClass(Value.class);
+
+        // when
+        repository.saveAll(List.of(new A(), new AA()));
+
+        // then
+        Mockito.verify(transaction, Mockito.times(1)).run(statement.capture(), parameters.capture());
+        Assert.assertEquals(statement.getValue(), repository.CREATE_BULK_STATEMENT);
+        Assert.assertEquals(parameters.getValue().get("nodes").size(), 2);
+        Assert.assertTrue(parameters.getValue().get("nodes").get(1).containsKey("classNames"));
+    }
+
+    /**
+     * Tests that a stream is saved in chunks and the progress is reported per chunk
+     */
+    @Test
+    public void testSaveStreamInChunks() {
+        // given
+        AbstractNeo4JNodeRepositoyImpl<A> spy = Mockito.spy(aRepository);
+        List<Integer> chunks = new ArrayList<>();
+        Mockito.doAnswer(invocation -> invocation.getArgument(0)).when(spy).saveAll(Mockito.<A>anyIterable());
+        ChunkSizer sizer = new ChunkSizer();
+        sizer.setChunkSize(100);
+        spy.setChunkSizer(sizer);
+        spy.setSaveProgressListener((savedNodes, chunkSize, nodesPerSecond, elapsedMillis) -> chunks.add(chunkSize));
+
+        // when
+        long saved = spy.saveAllChunked(Stream.generate(A::new).limit(250));
+
+        // then
+        Assert.assertEquals(saved, 250);
+        Assert.assertEquals(chunks.stream().mapToInt(Integer::intValue).sum(), 250);
+        Mockito.verify(spy, Mockito.times(chunks.size())).saveAll(Mockito.<A>anyIterable());
+    }
+
+    /**
+     * Tests that a graph of unsaved nodes is written with one statement per label set and relationship type
+     */
+    @Test
+    public void testSaveGraph() {
+        // given
+        TransactionManager manager = Mockito.mock(TransactionManager.class);
+        Transaction transaction = Mockito.mock(Transaction.class, Mockito.RETURNS_DEEP_STUBS);
+        Mockito.when(manager.executeWrite(Mockito.any())).thenAnswer(invocation -> invocation.getArgument(0, Function.class).apply(transaction));
+        Mockito.when(transaction.run(Mockito.anyString(), Mockito.any(Value.class)).next().get(0).asLong()).thenReturn(7L);
+        Mockito.clearInvocations(transaction);
+        ReflectiveNeo4JNodeRepositoryImpl<A> repository = new ReflectiveNeo4JNodeRepositoryImpl<>(manager, A.class);
+        repository.setRepositories(repositoyMap);
+        A node = new A();
+        B created = new B();
+        B saved = new B();
+        saved.id = 5L;
+        node.elements.add(created);
+        node.elements.add(saved);
+        node.singleElement = created;
+        ArgumentCaptor<String> statement = ArgumentCaptor.forClass(String.class);
+
+        // when
+        repository.save(node);
+
+        // then
+        Mockito.verify(transaction, Mockito.times(4)).run(statement.capture(), Mockito.any(Value.class));
+        Assert.assertTrue(statement.getAllValues().get(0).contains("CREATE (n:`A`)"));
+        Assert.assertTrue(statement.getAllValues().get(1).contains("CREATE (n:`B`)"));
+        Assert.assertTrue(statement.getAllValues().subList(2, 4).stream().allMatch(x -> x.startsWith("UNWIND $tuples")));
+        Assert.assertEquals(node.id, Long.valueOf(7));
+        Assert.assertEquals(created.id, Long.valueOf(7));
+        Assert.assertEquals(saved.id, Long.valueOf(5));
+    }
+
+    /**
+     * Tests that the async repository saves a graph with the planned statements on the async session, and assigns the
+     * ids only after the commit
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSaveGraphAsync() {
+        // given
+        TransactionManager manager = Mockito.mock(TransactionManager.class);
+        AsyncTransactionManager asyncManager = Mockito.mock(AsyncTransactionManager.class);
+        AsyncTransaction transaction = Mockito.mock(AsyncTransaction.class);
+        ResultCursor cursor = Mockito.mock(ResultCursor.class);
+        CompletableFuture<Object> commit = new CompletableFuture<>();
+        Mockito.when(asyncManager.executeWriteAsync(Mockito.any())).thenAnswer(invocation ->
+            ((CompletionStage<?>) invocation.getArgument(0, Function.class).apply(transaction)).thenCompose(result -> commit));
+        Mockito.when(transaction.runAsync(Mockito.anyString(), Mockito.any(Value.class))).thenReturn(CompletableFuture.completedFuture(cursor));
+        Mockito.when(cursor.listAsync(Mockito.any(Function.class))).thenReturn(CompletableFuture.completedFuture(List.of(7L)));
+        Mockito.when(cursor.consumeAsync()).thenReturn(CompletableFuture.completedFuture(null));
+        ReflectiveNeo4JNodeRepositoryImpl<A> repository = new ReflectiveNeo4JNodeRepositoryImpl<>(manager, A.class);
+        repository.setRepositories(repositoyMap);
+        A node = new A();
+        B created = new B();
+        node.elements.add(created);
+        node.singleElement = created;
+        ArgumentCaptor<String> statement = ArgumentCaptor.forClass(String.class);
+
+        // when
+        CompletableFuture<A> saved = new AsyncNeo4JNodeRepositoryImpl<>(asyncManager, repository).save(node).toCompletableFuture();
+
+        // then
+        Mockito.verify(transaction, Mockito.times(4)).runAsync(statement.capture(), Mockito.any(Value.class));
+        Assert.assertTrue(statement.getAllValues().get(0).contains("CREATE (n:`A`)"));
+        Assert.assertTrue(statement.getAllValues().get(1).contains("CREATE (n:`B`)"));
+        Assert.assertTrue(statement.getAllValues().subList(2, 4).stream().allMatch(x -> x.startsWith("UNWIND $tuples")));
+        Assert.assertNull(node.id);
+        Mockito.verifyNoInteractions(manager);
+
+        // when
+        commit.complete(null);
+
+        // then
+        Assert.assertSame(saved.join(), node);
+        Assert.assertEquals(node.id, Long.valueOf(7));
+        Assert.assertEquals(created.id, Long.valueOf(7));
+    }
+
+    /**
+     * Tests that a tracked node is only written if it changed, and then only with the changed properties
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDirtyTracking() {
+        // given
+        TransactionManager manager = Mockito.mock(TransactionManager.class);
+        Transaction transaction = Mockito.mock(Transaction.class, Mockito.RETURNS_DEEP_STUBS);
+        Mockito.when(manager.executeWrite(Mockito.any())).thenAnswer(invocation -> invocation.getArgument(0, Function.class).apply(transaction));
+        Mockito.when(transaction.run(Mockito.anyString(), Mockito.anyMap()).single().get(0).asLong()).thenReturn(11L);
+        Mockito.doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(manager).onCommit(Mockito.any());
+        ReflectiveNeo4JNodeRepositoryImpl<B> repository = new ReflectiveNeo4JNodeRepositoryImpl<>(manager, B.class);
+        repository.setMaxSnapshots(10);
+        B node = new B();
+        repository.save(node);
+        Mockito.clearInvocations(transaction);
+        ArgumentCaptor<String> statement = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Map<String, Object>> parameters = ArgumentCaptor.forClass(Map.class);
+
+        // when
+        repository.save(node);
+        node.x = 3;
+        repository.save(node);
+
+        // then
+        Mockito.verify(transaction, Mockito.times(1)).run(statement.capture(), parameters.capture());
+        Assert.assertTrue(statement.getValue().startsWith("MATCH (n) WHERE ID(n) = $id SET n += $properties"));
+        Assert.assertEquals(parameters.getValue().get("id"), 11L);
+        Assert.assertEquals(parameters.getValue().get("properties"), Map.of("x", Values.value(3)));
+    }
+
+    /**
+     * Tests that the snapshot of a saved node is only used once the transaction committed, and no longer once the
+     * node was written by another path
+     */
+    @Test
+    public void testDirtyTrackingSnapshotsAfterCommit() {
+        // given
+        TransactionManager manager = Mockito.mock(TransactionManager.class);
+        Transaction transaction = Mockito.mock(Transaction.class, Mockito.RETURNS_DEEP_STUBS);
+        Mockito.when(manager.executeWrite(Mockito.any())).thenAnswer(invocation -> invocation.getArgument(0, Function.class).apply(transaction));
+        Mockito.when(transaction.run(Mockito.anyString(), Mockito.anyMap()).single().get(0).asLong()).thenReturn(11L);
+        List<Runnable> commitActions = new ArrayList<>();
+        Mockito.doAnswer(invocation -> commitActions.add(invocation.getArgument(0))).when(manager).onCommit(Mockito.any());
+        ReflectiveNeo4JNodeRepositoryImpl<B> repository = new ReflectiveNeo4JNodeRepositoryImpl<>(manager, B.class);
+        repository.setMaxSnapshots(10);
+        B node = new B();
+        repository.save(node);
+        Mockito.clearInvocations(transaction);
+
+        // when
+        repository.save(node);
+        int beforeCommit = Mockito.mockingDetails(transaction).getInvocations().size();
+        commitActions.forEach(Runnable::run);
+        commitActions.clear();
+        Mockito.clearInvocations(transaction);
+        repository.save(node);
+        commitActions.forEach(Runnable::run);
+        int afterCommit = Mockito.mockingDetails(transaction).getInvocations().size();
+        repository.invalidateCached(List.of(11L));
+        repository.save(node);
+        int afterInvalidation = Mockito.mockingDetails(transaction).getInvocations().size();
+
+        // then
+        Assert.assertTrue(beforeCommit > 0);
+        Assert.assertEquals(afterCommit, 0);
+        Assert.assertTrue(afterInvalidation > 0);
+    }
+
+    /**
+     * Tests that a node loaded several times in a transaction with an identity map is one object, and is found by id
+     * without a query once it was loaded with its relationships
+     */
+    @Test
+    public void testIdentityMap() {
+        // given
+        TransactionManager manager = Mockito.mock(TransactionManager.class);
+        IdentityMap identityMap = new IdentityMap();
+        Mockito.when(manager.getIdentityMap()).thenReturn(identityMap);
+        AbstractNeo4JNodeRepositoyImpl<B> repository = new ReflectiveNeo4JNodeRepositoryImpl<>(manager, B.class);
+        Value node = new NodeValue(new InternalNode(5, List.of("B"), Map.of("x", Values.value(1))));
+
+        // when
+        B first = repository.cast(node, null, null);
+        B second = repository.cast(node, Values.value(List.of()), null);
+
+        // then
+        Assert.assertSame(second, first);
+        Assert.assertSame(repository.findById(5L), first);
+        Mockito.verify(manager, Mockito.never()).executeRead(Mockito.any());
+    }
+
+    @Test
+    public void testEntityCache() {
+        // given
+        TransactionManager manager = Mockito.mock(TransactionManager.class);
+        Transaction transaction = Mockito.mock(Transaction.class);
+        Mockito.when(manager.execute(Mockito.any(), Mockito.eq(AccessMode.READ))).thenAnswer(invocation -> invocation.getArgument(0, Function.class).apply(transaction));
+        Value node = new NodeValue(new InternalNode(5, List.of("B"), Map.of("x", Values.value(1))));
+        Result result = Mockito.mock(Result.class, Mockito.RETURNS_DEEP_STUBS);
+        Mockito.when(result.hasNext()).thenReturn(true);
+        Mockito.when(result.next().get(0)).thenReturn(Values.value(Map.of("root", node, "relationships", List.of(), "nodes", List.of())));
+        Mockito.when(transaction.run(Mockito.anyString(), Mockito.any(Value.class))).thenReturn(result);
+        AbstractNeo4JNodeRepositoyImpl<B> repository = new ReflectiveNeo4JNodeRepositoryImpl<>(manager, B.class);
+        EntityCache<Value> cache = EntityCache.ofValues(100, 1 << 20);
+        repository.setEntityCache(cache);
+
+        // when
+        B first = repository.findById(5L);
+        first.x = 2;
+        B second = repository.findById(5L);
+        repository.deleteAll();
+        repository.findById(5L);
+
+        // then
+        Assert.assertNotSame(second, first);
+        Assert.assertEquals(second.x, 1);
+        Assert.assertEquals(cache.getHits(), 1);
+        Assert.assertEquals(cache.getMisses(), 2);
+        Mockito.verify(transaction, Mockito.times(2)).run(Mockito.anyString(), Mockito.any(Value.class));
+    }
+
+    /**
+     * Tests that concurrent findById calls are loaded with one query that waits for the bookmarks of all callers, and
+     * every caller gets its own object
+     */
+    @Test
+    public void testFindByIdBatch() throws Exception {
+        // given
+        TransactionManager manager = Mockito.mock(TransactionManager.class);
+        Transaction transaction = Mockito.mock(Transaction.class);
+        Mockito.when(manager.execute(Mockito.any(), Mockito.eq(AccessMode.READ))).thenAnswer(invocation -> invocation.getArgument(0, Function.class).apply(transaction));
+        Mockito.when(manager.getLastBookmark()).thenReturn(Bookmark.from(Set.of("first")), Bookmark.from(Set.of("second")));
+        Value node = new NodeValue(new InternalNode(5, List.of("B"), Map.of("x", Values.value(1))));
+        Record record = Mockito.mock(Record.class);
+        Mockito.when(record.get(0)).thenReturn(Values.value(Map.of("root", node, "relationships", List.of(), "nodes", List.of())));
+        Result result = Mockito.mock(Result.class);
+        Mockito.when(result.hasNext()).thenReturn(true, false);
+        Mockito.when(result.next()).thenReturn(record);
+        Mockito.when(transaction.run(Mockito.anyString(), Mockito.any(Value.class))).thenReturn(result);
+        AbstractNeo4JNodeRepositoyImpl<B> repository = new ReflectiveNeo4JNodeRepositoryImpl<>(manager, B.class);
+        repository.setFindByIdBatchWindowMillis(200);
+        List<B> nodes = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+
+        // when
+        for (int i = 0; i < 2; i++) {
+            Thread thread = new Thread(() -> nodes.add(repository.findById(5L)));
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // then
+        Assert.assertEquals(nodes.size(), 2);
+        Assert.assertNotSame(nodes.get(0), nodes.get(1));
+        Assert.assertEquals(nodes.get(0).x, 1);
+        Assert.assertEquals(nodes.get(1).x, 1);
+        ArgumentCaptor<Value> parameters = ArgumentCaptor.forClass(Value.class);
+        Mockito.verify(transaction, Mockito.times(1)).run(Mockito.anyString(), parameters.capture());
+        Assert.assertEquals(parameters.getValue().get("ids").asList(Value::asLong), List.of(5L));
+        Mockito.verify(manager).useBookmark(Bookmark.from(Set.of("first", "second")));
+    }
+
+    @Test
+    public void testDeleteAllById() {
+        // given
+        TransactionManager manager = Mockito.mock(TransactionManager.class);
+        Transaction transaction = Mockito.mock(Transaction.class, Mockito.RETURNS_DEEP_STUBS);
+        Mockito.doAnswer(invocation -> {
+            invocation.<Consumer<Transaction>>getArgument(0).accept(transaction);
+            return null;
+        }).when(manager).runWrite(Mockito.any());
+        Mockito.when(manager.executeRead(Mockito.any())).thenAnswer(invocation -> invocation.getArgument(0, Function.class).apply(transaction));
+        Mockito.when(transaction.run(Mockito.anyString(), Mockito.any(Value.class)).single().get(0).asBoolean()).thenReturn(true);
+        Mockito.clearInvocations(transaction);
+        AbstractNeo4JNodeRepositoyImpl<B> repository = new ReflectiveNeo4JNodeRepositoryImpl<>(manager, B.class);
+        EntityCache<Value> cache = EntityCache.ofValues(100, 1 << 20);
+        cache.put(3, Values.value(1));
+        repository.setEntityCache(cache);
+        B first = new B();
+        first.id = 9L;
+        B second = new B();
+        second.id = 3L;
+
+        // when
+        repository.deleteAll(List.of(first, second, new B(), second));
+        boolean exists = repository.existsById(3L);
+
+        // then
+        ArgumentCaptor<String> statements = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Value> parameters = ArgumentCaptor.forClass(Value.class);
+        Mockito.verify(transaction, Mockito.times(2)).run(statements.capture(), parameters.capture());
+        Assert.assertEquals(statements.getAllValues().get(0), "UNWIND $ids as id MATCH (n:B) WHERE ID(n) = id DETACH DELETE n");
+        Assert.assertEquals(parameters.getAllValues().get(0).get("ids").asList(Value::asLong), List.of(3L, 9L));
+        Assert.assertEquals(statements.getAllValues().get(1), "MATCH (n:B) WHERE ID(n) = $id RETURN count(n) > 0");
+        Assert.assertTrue(exists);
+        Assert.assertEquals(cache.size(), 0);
+    }
+}
@@ -0,0 +1,230 @@
+package science.aist.neo4j.repository;
+
+import org.mockito.Mockito;
+import org.neo4j.driver.Bookmark;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import science.aist.neo4j.it.dummy.A;
+import science.aist.neo4j.it.dummy.B;
+import science.aist.neo4j.reflective.ReflectiveNeo4JNodeRepositoryImpl;
+import science.aist.neo4j.transaction.TransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>Test class for {@link ShardedNodeRepositoryImpl}</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class ShardedNodeRepositoryImplTest {
+
+    private TransactionManager manager0;
+    private TransactionManager manager1;
+    private ReflectiveNeo4JNodeRepositoryImpl<A> shard0;
+    private ReflectiveNeo4JNodeRepositoryImpl<A> shard1;
+    private ShardedNodeRepositoryImpl<A> repository;
+
+    @BeforeMethod
+    public void before() {
+        manager0 = Mockito.mock(TransactionManager.class);
+        manager1 = Mockito.mock(TransactionManager.class);
+        shard0 = Mockito.spy(new ReflectiveNeo4JNodeRepositoryImpl<>(manager0, A.class));
+        shard1 = Mockito.spy(new ReflectiveNeo4JNodeRepositoryImpl<>(manager1, A.class));
+        // nodes without elements go to shard 0, the others to shard 1
+        repository = new ShardedNodeRepositoryImpl<>(List.of(shard0, shard1), (node, shards) -> node.elements.isEmpty() ? 0 : 1);
+    }
+
+    /**
+     * Tests that new nodes are stored in the shard of the partition function and get global ids that contain the shard
+     */
+    @Test
+    public void testSaveNewNodes() {
+        // given
+        A first = new A();
+        A second = new A();
+        A third = new A();
+        third.elements.add(new B());
+        assignIds(shard0, 7L);
+        assignIds(shard1, 7L);
+
+        // when
+        repository.saveAll(List.of(first, second, third));
+
+        // then
+        Assert.assertEquals(first.id, Long.valueOf(7));
+        Assert.assertEquals(repository.getGlobalId(first), Long.valueOf(ShardedNodeRepositoryImpl.globalId(7, 0)));
+        Assert.assertEquals(repository.getGlobalId(second), Long.valueOf(ShardedNodeRepositoryImpl.globalId(7, 0)));
+        Assert.assertEquals(repository.getGlobalId(third), Long.valueOf(ShardedNodeRepositoryImpl.globalId(7, 1)));
+        Mockito.verify(shard0, Mockito.times(1)).saveAll(List.of(first, second));
+        Mockito.verify(shard1, Mockito.times(1)).saveAll(List.of(third));
+    }
+
+    /**
+     * Tests that loaded nodes are saved in their shard with the id of the shard
+     */
+    @Test
+    public void testSaveExistingNode() {
+        // given
+        Mockito.doReturn(node(42L)).when(shard1).findById(42L);
+        A node = repository.findById(ShardedNodeRepositoryImpl.globalId(42, 1));
+        List<Long> idsDuringSave = new ArrayList<>();
+        Mockito.doAnswer(invocation -> {
+            invocation.<Iterable<A>>getArgument(0).forEach(x -> idsDuringSave.add(x.id));
+            return invocation.getArgument(0);
+        }).when(shard1).saveAll(Mockito.any());
+
+        // when
+        repository.save(node);
+
+        // then
+        Assert.assertEquals(idsDuringSave, List.of(42L));
+        Assert.assertEquals(repository.getGlobalId(node), Long.valueOf(ShardedNodeRepositoryImpl.globalId(42, 1)));
+        Mockito.verify(shard0, Mockito.never()).saveAll(Mockito.any());
+    }
+
+    /**
+     * Tests that a node with an id that was not loaded by the repository is rejected instead of saved to any shard
+     */
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testSaveUnknownNode() {
+        // given
+        A node = node(42L);
+
+        // when
+        repository.save(node);
+    }
+
+    /**
+     * Tests that a new node with a relationship to a loaded node is stored in the shard of the loaded node, which keeps
+     * its id within that shard
+     */
+    @Test
+    public void testSaveLoadedNodeAsRelationshipTarget() {
+        // given
+        A loaded = node(3L);
+        loaded.singleElement = new B();
+        loaded.singleElement.id = 5L;
+        Mockito.doReturn(loaded).when(shard1).findById(3L);
+        B target = repository.findById(ShardedNodeRepositoryImpl.globalId(3, 1)).singleElement;
+        A node = new A();
+        node.singleElement = target;
+        List<Long> targetIdsDuringSave = new ArrayList<>();
+        Mockito.doAnswer(invocation -> {
+            invocation.<Iterable<A>>getArgument(0).forEach(x -> targetIdsDuringSave.add(x.singleElement.id));
+            return invocation.getArgument(0);
+        }).when(shard1).saveAll(Mockito.any());
+
+        // when
+        repository.save(node);
+
+        // then
+        Assert.assertEquals(targetIdsDuringSave, List.of(5L));
+        Assert.assertEquals(target.id, Long.valueOf(5));
+        Assert.assertEquals(loaded.id, Long.valueOf(3));
+        Mockito.verify(shard0, Mockito.never()).saveAll(Mockito.any());
+    }
+
+    /**
+     * Tests that findAll merges the nodes of all shards
+     */
+    @Test
+    public void testFindAll() {
+        // given
+        Mockito.doReturn(List.of(node(1L), node(2L))).when(shard0).findAll();
+        Mockito.doReturn(List.of(node(1L))).when(shard1).findAll();
+
+        // when
+        List<Long> ids = new ArrayList<>();
+        repository.findAll().forEach(x -> ids.add(repository.getGlobalId(x)));
+
+        // then
+        Assert.assertEquals(ids, List.of(ShardedNodeRepositoryImpl.globalId(1, 0), ShardedNodeRepositoryImpl.globalId(2, 0), ShardedNodeRepositoryImpl.globalId(1, 1)));
+    }
+
+    /**
+     * Tests that a shard with an active transaction is queried on the calling thread, and the other shards on the
+     * executor with the bookmark of the calling thread
+     */
+    @Test
+    public void testFindAllWithinTransaction() {
+        // given
+        Bookmark bookmark = Bookmark.from(Set.of("bookmark"));
+        Mockito.when(manager0.isTransactionActive()).thenReturn(true);
+        Mockito.when(manager1.getLastBookmark()).thenReturn(bookmark);
+        Thread caller = Thread.currentThread();
+        List<Thread> threads = new ArrayList<>();
+        Mockito.doAnswer(invocation -> {
+            threads.add(Thread.currentThread());
+            return List.of(node(1L));
+        }).when(shard0).findAll();
+        Mockito.doAnswer(invocation -> {
+            threads.add(Thread.currentThread());
+            return List.of(node(2L));
+        }).when(shard1).findAll();
+
+        // when
+        List<Long> ids = new ArrayList<>();
+        repository.findAll().forEach(x -> ids.add(repository.getGlobalId(x)));
+
+        // then
+        Assert.assertEquals(ids, List.of(ShardedNodeRepositoryImpl.globalId(1, 0), ShardedNodeRepositoryImpl.globalId(2, 1)));
+        Assert.assertTrue(threads.contains(caller));
+        Assert.assertEquals(threads.stream().filter(x -> x != caller).count(), 1);
+        Mockito.verify(manager0, Mockito.never()).useBookmark(Mockito.any());
+        Mockito.verify(manager1, Mockito.times(1)).useBookmark(bookmark);
+    }
+
+    /**
+     * Tests that findById only queries the shard of the id
+     */
+    @Test
+    public void testFindById() {
+        // given
+        Mockito.doReturn(node(3L)).when(shard1).findById(3L);
+
+        // when
+        A node = repository.findById(ShardedNodeRepositoryImpl.globalId(3, 1));
+
+        // then
+        Assert.assertEquals(node.id, Long.valueOf(3));
+        Assert.assertEquals(repository.getGlobalId(node), Long.valueOf(ShardedNodeRepositoryImpl.globalId(3, 1)));
+        Mockito.verify(shard0, Mockito.never()).findById(Mockito.any());
+    }
+
+    /**
+     * Tests that findAllById queries every shard once with the ids within the shard
+     */
+    @Test
+    public void testFindAllById() {
+        // given
+        Mockito.doReturn(List.of(node(5L))).when(shard0).findAllById(List.of(5L));
+        Mockito.doReturn(List.of(node(3L), node(9L))).when(shard1).findAllById(List.of(3L, 9L));
+
+        // when
+        List<Long> ids = new ArrayList<>();
+        repository.findAllById(List.of(ShardedNodeRepositoryImpl.globalId(3, 1), ShardedNodeRepositoryImpl.globalId(5, 0),
+            ShardedNodeRepositoryImpl.globalId(9, 1))).forEach(x -> ids.add(repository.getGlobalId(x)));
+
+        // then
+        Assert.assertEquals(ids, List.of(ShardedNodeRepositoryImpl.globalId(5, 0), ShardedNodeRepositoryImpl.globalId(3, 1), ShardedNodeRepositoryImpl.globalId(9, 1)));
+        Mockito.verify(shard0, Mockito.times(1)).findAllById(Mockito.any());
+        Mockito.verify(shard1, Mockito.times(1)).findAllById(Mockito.any());
+    }
+
+    private static void assignIds(ReflectiveNeo4JNodeRepositoryImpl<A> shard, long id) {
+        Mockito.doAnswer(invocation -> {
+            invocation.<Iterable<A>>getArgument(0).forEach(x -> x.id = id);
+            return invocation.getArgument(0);
+        }).when(shard).saveAll(Mockito.any());
+    }
+
+    private static A node(Long id) {
+        A node = new A();
+        node.id = id;
+        return node;
+    }
+}
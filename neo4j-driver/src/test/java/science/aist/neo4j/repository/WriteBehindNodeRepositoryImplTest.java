@@ -0,0 +1,101 @@
+package science.aist.neo4j.repository;
+
+import org.mockito.Mockito;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Transaction;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.exceptions.ClientException;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import science.aist.neo4j.it.dummy.B;
+import science.aist.neo4j.reflective.ReflectiveNeo4JNodeRepositoryImpl;
+import science.aist.neo4j.transaction.TransactionManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * <p>Test class for {@link WriteBehindNodeRepositoryImpl}</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class WriteBehindNodeRepositoryImplTest {
+
+    private Path directory;
+
+    @BeforeMethod
+    public void before() throws IOException {
+        directory = Files.createTempDirectory("write-behind-test");
+    }
+
+    @AfterMethod
+    public void after() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Tests that an entry that always fails is moved to the dead letter file, while the other entries are written
+     *
+     * @throws Exception if the journal can't be used
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFailingEntryMovedToDeadLetters() throws Exception {
+        // given
+        TransactionManager manager = Mockito.mock(TransactionManager.class);
+        Transaction transaction = Mockito.mock(Transaction.class, Mockito.RETURNS_DEEP_STUBS);
+        List<Long> written = new ArrayList<>();
+        Mockito.when(transaction.run(Mockito.anyString(), Mockito.any(Value.class))).thenAnswer(invocation -> {
+            Value nodes = invocation.getArgument(1, Value.class).get("nodes");
+            List<Long> ids = new ArrayList<>();
+            nodes.values().forEach(x -> ids.add(x.get("id").asLong()));
+            if (ids.contains(13L)) {
+                throw new ClientException("Neo.ClientError.Schema.ConstraintValidationFailed", "constraint violated");
+            }
+            written.addAll(ids);
+            return Mockito.mock(Result.class);
+        });
+        Mockito.doAnswer(invocation -> {
+            invocation.<Consumer<Transaction>>getArgument(0).accept(transaction);
+            return null;
+        }).when(manager).runWrite(Mockito.any());
+        WriteBehindNodeRepositoryImpl<B> repository = new WriteBehindNodeRepositoryImpl<>(new ReflectiveNeo4JNodeRepositoryImpl<>(manager, B.class));
+        repository.setJournalFile(directory.resolve("journal"));
+        repository.setJournalBytes(1024 * 1024);
+        repository.setRetryDelayMillis(0);
+        repository.setMaxAttempts(2);
+        List<B> nodes = new ArrayList<>();
+        for (long id = 10; id < 18; id++) {
+            B node = new B();
+            node.id = id;
+            nodes.add(node);
+        }
+
+        // when
+        repository.start();
+        repository.saveAll(nodes);
+        boolean flushed = repository.awaitFlushed(10_000);
+        repository.close();
+
+        // then
+        Assert.assertTrue(flushed);
+        Assert.assertEquals(repository.getDeadLetters(), 1);
+        Assert.assertEquals(repository.getFlushedNodes(), 7);
+        Assert.assertFalse(written.contains(13L));
+        Assert.assertEquals(written.size(), 7);
+        Assert.assertTrue(Files.size(directory.resolve("journal.dead")) > 0);
+    }
+}
@@ -0,0 +1,209 @@
+package science.aist.neo4j.transaction;
+
+import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Bookmark;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
+import org.neo4j.driver.internal.InternalRecord;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Test class for {@link AsyncTransactionManagerImpl}</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class AsyncTransactionManagerImplTest {
+
+    private StandInDriver standInDriver;
+
+    private AsyncTransactionManagerImpl transactionManager;
+
+    @BeforeMethod
+    public void before() {
+        standInDriver = new StandInDriver();
+        transactionManager = new AsyncTransactionManagerImpl();
+        transactionManager.setDriver(standInDriver.getDriver());
+    }
+
+    /**
+     * Tests that successful work is committed and its session closed
+     *
+     * @throws Exception if the work fails
+     */
+    @Test
+    public void testCommitOnSuccess() throws Exception {
+        // when
+        String result = transactionManager.executeWriteAsync(transaction -> transaction.runAsync("CREATE ()").thenApply(cursor -> "done"))
+            .toCompletableFuture().get(10, TimeUnit.SECONDS);
+
+        // then
+        Assert.assertEquals(result, "done");
+        Assert.assertEquals(standInDriver.transactionsCommitted.get(), 1);
+        Assert.assertEquals(standInDriver.transactionsRolledBack.get(), 0);
+        Assert.assertEquals(standInDriver.sessionsClosed.get(), 1);
+        Assert.assertNotNull(transactionManager.getLastBookmark());
+    }
+
+    /**
+     * Tests that failed work is rolled back, its session closed and the error passed on
+     */
+    @Test
+    public void testRollbackOnFailure() {
+        // given
+        IllegalStateException error = new IllegalStateException("failed");
+
+        // when
+        CompletableFuture<Object> result = transactionManager.executeAsync(transaction -> CompletableFuture.failedFuture(error), AccessMode.WRITE)
+            .toCompletableFuture();
+
+        // then
+        try {
+            result.join();
+            Assert.fail("work should have failed");
+        } catch (CompletionException e) {
+            Assert.assertSame(e.getCause(), error);
+        }
+        Assert.assertEquals(standInDriver.transactionsCommitted.get(), 0);
+        Assert.assertEquals(standInDriver.transactionsRolledBack.get(), 1);
+        Assert.assertEquals(standInDriver.sessionsClosed.get(), 1);
+    }
+
+    /**
+     * Tests that a new session waits for the bookmark of the last committed transaction
+     */
+    @Test
+    public void testBookmarkPassedToNewSession() {
+        // given
+        transactionManager.executeWriteAsync(transaction -> transaction.runAsync("CREATE ()")).toCompletableFuture().join();
+        Bookmark bookmark = transactionManager.getLastBookmark();
+
+        // when
+        transactionManager.executeReadAsync(transaction -> transaction.runAsync("MATCH (n) RETURN n")).toCompletableFuture().join();
+
+        // then
+        Assert.assertEquals(standInDriver.sessionConfigs.get(1).bookmarks().iterator().next(), bookmark);
+    }
+
+    /**
+     * Tests that the bookmarks of transactions that committed concurrently are merged, so a new session waits for both
+     */
+    @Test
+    public void testConcurrentBookmarksMerged() {
+        // given
+        CompletableFuture<Object> slow = new CompletableFuture<>();
+        CompletableFuture<Object> first = transactionManager.executeWriteAsync(transaction -> slow).toCompletableFuture();
+        transactionManager.executeWriteAsync(transaction -> transaction.runAsync("CREATE ()")).toCompletableFuture().join();
+        Bookmark second = transactionManager.getLastBookmark();
+
+        // when
+        slow.complete(null);
+        first.join();
+
+        // then
+        Assert.assertEquals(transactionManager.getLastBookmark().values().size(), 2);
+        Assert.assertTrue(transactionManager.getLastBookmark().values().containsAll(second.values()));
+    }
+
+    /**
+     * Tests that a bookmark of another manager is merged with the last bookmark
+     */
+    @Test
+    public void testUseBookmark() {
+        // given
+        transactionManager.executeWriteAsync(transaction -> transaction.runAsync("CREATE ()")).toCompletableFuture().join();
+
+        // when
+        transactionManager.useBookmark(Bookmark.from(Collections.singleton("other")));
+
+        // then
+        Assert.assertEquals(transactionManager.getLastBookmark().values(), Set.of("bookmark-1", "other"));
+    }
+
+    /**
+     * Tests that records are only fetched as the subscriber requests them and the transaction is committed at the end
+     */
+    @Test
+    public void testPublishRequestedRecords() {
+        // given
+        for (int i = 0; i < 10; i++) {
+            standInDriver.records.add(new InternalRecord(Collections.singletonList("n"), new Value[]{Values.value(i)}));
+        }
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        transactionManager.publishRead("MATCH (n) RETURN n", null, record -> record.get(0).asInt()).subscribe(subscriber);
+
+        // when
+        subscriber.subscription.request(3);
+
+        // then
+        Assert.assertEquals(subscriber.elements, List.of(0, 1, 2));
+        Assert.assertEquals(standInDriver.recordsRequested.get(), 3);
+        Assert.assertEquals(standInDriver.sessionsClosed.get(), 0);
+
+        // when
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        // then
+        Assert.assertEquals(subscriber.elements.size(), 10);
+        Assert.assertTrue(subscriber.completed);
+        Assert.assertEquals(standInDriver.transactionsCommitted.get(), 1);
+        Assert.assertEquals(standInDriver.sessionsClosed.get(), 1);
+    }
+
+    /**
+     * Tests that cancelling a subscription rolls back the transaction and closes the session
+     */
+    @Test
+    public void testPublishCancel() {
+        // given
+        standInDriver.records.add(new InternalRecord(Collections.singletonList("n"), new Value[]{Values.value(1)}));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        transactionManager.publishRead("MATCH (n) RETURN n", null, record -> record.get(0).asInt()).subscribe(subscriber);
+
+        // when
+        subscriber.subscription.cancel();
+
+        // then
+        Assert.assertTrue(subscriber.elements.isEmpty());
+        Assert.assertEquals(standInDriver.transactionsCommitted.get(), 0);
+        Assert.assertEquals(standInDriver.transactionsRolledBack.get(), 1);
+        Assert.assertEquals(standInDriver.sessionsClosed.get(), 1);
+    }
+
+    private static class RecordingSubscriber implements Flow.Subscriber<Integer> {
+        private final List<Integer> elements = new ArrayList<>();
+        private Flow.Subscription subscription;
+        private boolean completed;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Integer item) {
+            elements.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            Assert.fail("unexpected error", throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
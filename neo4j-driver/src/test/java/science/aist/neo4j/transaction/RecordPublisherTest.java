@@ -0,0 +1,176 @@
+package science.aist.neo4j.transaction;
+
+import org.mockito.Mockito;
+import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.exceptions.TransientException;
+import org.neo4j.driver.reactive.RxSession;
+import org.neo4j.driver.reactive.RxTransaction;
+import org.neo4j.driver.reactive.RxTransactionWork;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>Test class for {@link RecordPublisher}</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class RecordPublisherTest {
+
+    private static final TransientException TRANSIENT = new TransientException("Neo.TransientError.Transaction.DeadlockDetected", "deadlock");
+
+    /**
+     * Tests that a transient failure before the first record is retried and the records are published once
+     */
+    @Test
+    public void testRetryBeforeFirstRecord() {
+        // given
+        Record record = Mockito.mock(Record.class);
+        AtomicInteger attempts = new AtomicInteger();
+        RecordPublisher<Record> publisher = new RecordPublisher<>(() -> session(), AccessMode.READ,
+            transaction -> attempts.incrementAndGet() == 1 ? records(List.of(), TRANSIENT) : records(List.of(record), null), x -> x);
+        List<Record> received = new ArrayList<>();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+
+        // when
+        publisher.subscribe(subscriber(received, error));
+
+        // then
+        Assert.assertEquals(attempts.get(), 2);
+        Assert.assertEquals(received, List.of(record));
+        Assert.assertNull(error.get());
+    }
+
+    /**
+     * Tests that a transient failure after the first record fails the subscriber instead of publishing the records again
+     */
+    @Test
+    public void testNoRetryAfterFirstRecord() {
+        // given
+        Record record = Mockito.mock(Record.class);
+        AtomicInteger attempts = new AtomicInteger();
+        RecordPublisher<Record> publisher = new RecordPublisher<>(() -> session(), AccessMode.READ, transaction -> {
+            attempts.incrementAndGet();
+            return records(List.of(record), TRANSIENT);
+        }, x -> x);
+        List<Record> received = new ArrayList<>();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+
+        // when
+        publisher.subscribe(subscriber(received, error));
+
+        // then
+        Assert.assertEquals(attempts.get(), 1);
+        Assert.assertEquals(received, List.of(record));
+        Assert.assertTrue(error.get() instanceof IllegalStateException);
+        Assert.assertSame(error.get().getCause(), TRANSIENT);
+    }
+
+    /**
+     * Session whose read transaction retries the work on transient failures, like the driver does
+     */
+    @SuppressWarnings("unchecked")
+    private static RxSession session() {
+        RxSession session = Mockito.mock(RxSession.class);
+        Mockito.when(session.readTransaction(Mockito.any())).thenAnswer(invocation -> {
+            RxTransactionWork<Publisher<Record>> work = invocation.getArgument(0);
+            return (Publisher<Record>) subscriber -> attempt(work, subscriber, 3);
+        });
+        Mockito.when(session.close()).thenReturn(records(List.of(), null));
+        return session;
+    }
+
+    private static void attempt(RxTransactionWork<Publisher<Record>> work, Subscriber<? super Record> subscriber, int remaining) {
+        work.execute(Mockito.mock(RxTransaction.class)).subscribe(new Subscriber<Record>() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                if (remaining == 3) {
+                    subscriber.onSubscribe(subscription);
+                } else {
+                    subscription.request(Long.MAX_VALUE);
+                }
+            }
+
+            @Override
+            public void onNext(Record record) {
+                subscriber.onNext(record);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                if (error instanceof TransientException && remaining > 1) {
+                    attempt(work, subscriber, remaining - 1);
+                } else {
+                    subscriber.onError(error);
+                }
+            }
+
+            @Override
+            public void onComplete() {
+                subscriber.onComplete();
+            }
+        });
+    }
+
+    /**
+     * @return publisher of the records that fails with the error afterwards or completes if it is null
+     */
+    private static <T> Publisher<T> records(List<T> records, Throwable error) {
+        return subscriber -> subscriber.onSubscribe(new Subscription() {
+            private boolean done;
+
+            @Override
+            public void request(long n) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                records.forEach(subscriber::onNext);
+                if (error == null) {
+                    subscriber.onComplete();
+                } else {
+                    subscriber.onError(error);
+                }
+            }
+
+            @Override
+            public void cancel() {
+                done = true;
+            }
+        });
+    }
+
+    private static Flow.Subscriber<Record> subscriber(List<Record> received, AtomicReference<Throwable> error) {
+        return new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(Record item) {
+                received.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                error.set(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                // nothing to do
+            }
+        };
+    }
+}
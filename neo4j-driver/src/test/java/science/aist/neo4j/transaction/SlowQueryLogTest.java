@@ -0,0 +1,72 @@
+package science.aist.neo4j.transaction;
+
+import org.neo4j.driver.Values;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Test class for {@link SlowQueryLog}</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class SlowQueryLogTest {
+
+    private SlowQueryLog slowQueryLog;
+
+    @BeforeMethod
+    public void before() {
+        slowQueryLog = new SlowQueryLog();
+        slowQueryLog.setThresholdMillis(100);
+    }
+
+    /**
+     * Tests that only statements above the threshold are kept, with the shapes of their parameters
+     */
+    @Test
+    public void testOnlySlowStatementsKept() {
+        // given
+        String statement = "UNWIND $nodes AS node CREATE (n) SET n = node.properties";
+
+        // when
+        slowQueryLog.statementExecuted("MATCH (n) RETURN n", null, 5, TimeUnit.MILLISECONDS.toNanos(10), null);
+        slowQueryLog.statementExecuted(statement, Values.parameters("nodes", List.of(Map.of("properties", Map.of("name", "secret")))),
+            0, TimeUnit.MILLISECONDS.toNanos(200), null);
+
+        // then
+        List<SlowQueryLog.SlowQuery> slowQueries = slowQueryLog.getSlowQueries();
+        Assert.assertEquals(slowQueries.size(), 1);
+        Assert.assertEquals(slowQueries.get(0).getStatement(), statement);
+        Assert.assertEquals(slowQueries.get(0).getParameterShapes(), "{nodes: LIST(1) OF {properties: {name: STRING}}}");
+        Assert.assertFalse(slowQueries.get(0).toString().contains("secret"));
+    }
+
+    /**
+     * Tests that slow statements of a transaction manager are recorded and only the newest are kept
+     */
+    @Test
+    public void testMaxEntries() {
+        // given
+        slowQueryLog.setThresholdMillis(0);
+        slowQueryLog.setMaxEntries(2);
+        TransactionManagerImpl transactionManager = new TransactionManagerImpl();
+        transactionManager.setDriver(new StandInDriver().getDriver());
+        transactionManager.setStatementListeners(List.of(slowQueryLog));
+
+        // when
+        transactionManager.runRead(transaction -> transaction.run("RETURN 1").list());
+        transactionManager.runRead(transaction -> transaction.run("RETURN 2").list());
+        transactionManager.runRead(transaction -> transaction.run("RETURN 3").list());
+
+        // then
+        List<SlowQueryLog.SlowQuery> slowQueries = slowQueryLog.getSlowQueries();
+        Assert.assertEquals(slowQueries.size(), 2);
+        Assert.assertEquals(slowQueries.get(0).getStatement(), "RETURN 2");
+        Assert.assertEquals(slowQueries.get(1).getStatement(), "RETURN 3");
+    }
+}
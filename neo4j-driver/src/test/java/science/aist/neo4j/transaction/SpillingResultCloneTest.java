@@ -0,0 +1,178 @@
+package science.aist.neo4j.transaction;
+
+import org.mockito.Mockito;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
+import org.neo4j.driver.internal.InternalNode;
+import org.neo4j.driver.internal.InternalRecord;
+import org.neo4j.driver.internal.InternalRelationship;
+import org.neo4j.driver.internal.value.NodeValue;
+import org.neo4j.driver.internal.value.RelationshipValue;
+import org.neo4j.driver.summary.ResultSummary;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * <p>Test class for {@link SpillingResultClone}</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class SpillingResultCloneTest {
+
+    private static final List<String> KEYS = Arrays.asList("n", "name", "values");
+
+    private Path spillDirectory;
+
+    @BeforeMethod
+    public void before() throws IOException {
+        spillDirectory = Files.createTempDirectory("spill-test");
+    }
+
+    @AfterMethod
+    public void after() throws IOException {
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(spillDirectory);
+    }
+
+    /**
+     * Tests that records that do not fit into the budget are written to disk and read back unchanged
+     *
+     * @throws IOException if the spill directory can't be listed
+     */
+    @Test
+    public void testSpilledRecordsReadBack() throws IOException {
+        // given
+        List<Record> records = records(100);
+
+        // when
+        SpillingResultClone clone = new SpillingResultClone(result(records), 2048, spillDirectory);
+        List<Record> read = clone.list();
+
+        // then
+        Assert.assertTrue(clone.getSpilledRecords() > 0);
+        Assert.assertTrue(clone.getBufferedBytes() <= 2048);
+        Assert.assertEquals(read, records);
+        Assert.assertEquals(countFiles(), 0);
+    }
+
+    /**
+     * Tests that nothing is written to disk if all records fit into the budget
+     *
+     * @throws IOException if the spill directory can't be listed
+     */
+    @Test
+    public void testNoSpillWithinBudget() throws IOException {
+        // given
+        List<Record> records = records(10);
+
+        // when
+        SpillingResultClone clone = new SpillingResultClone(result(records), Long.MAX_VALUE, spillDirectory);
+
+        // then
+        Assert.assertEquals(clone.getSpilledRecords(), 0);
+        Assert.assertEquals(countFiles(), 0);
+        Assert.assertEquals(clone.single(), records.get(0));
+        Assert.assertEquals(clone.peek(), records.get(0));
+        Assert.assertEquals(clone.list(), records);
+    }
+
+    /**
+     * Tests that closing the result removes the spill file
+     *
+     * @throws IOException if the spill directory can't be listed
+     */
+    @Test
+    public void testCloseRemovesSpillFile() throws IOException {
+        // given
+        SpillingResultClone clone = new SpillingResultClone(result(records(10)), 0, spillDirectory);
+        Record first = clone.next();
+
+        // when
+        clone.close();
+
+        // then
+        Assert.assertEquals(clone.single(), first);
+        Assert.assertFalse(clone.hasNext());
+        Assert.assertEquals(countFiles(), 0);
+    }
+
+    /**
+     * Tests that consume discards the remaining records, removes the spill file and returns the summary
+     *
+     * @throws IOException if the spill directory can't be listed
+     */
+    @Test
+    public void testConsume() throws IOException {
+        // given
+        Result result = result(records(10));
+        ResultSummary summary = Mockito.mock(ResultSummary.class);
+        Mockito.when(result.consume()).thenReturn(summary);
+        SpillingResultClone clone = new SpillingResultClone(result, 0, spillDirectory);
+        clone.next();
+
+        // when
+        ResultSummary consumed = clone.consume();
+
+        // then
+        Assert.assertSame(consumed, summary);
+        Assert.assertFalse(clone.hasNext());
+        Assert.assertEquals(countFiles(), 0);
+    }
+
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            return files.count();
+        }
+    }
+
+    private static List<Record> records(int count) {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, Value> properties = Map.of(
+                "name", Values.value("node " + i),
+                "created", Values.value(ZonedDateTime.of(2020, 1, 1, 0, 0, 0, i, ZoneId.of("Europe/Vienna"))),
+                "location", Values.point(7203, i, -i));
+            NodeValue node = new NodeValue(new InternalNode(i, Arrays.asList("A", "B"), properties));
+            RelationshipValue relationship = new RelationshipValue(new InternalRelationship(i, i, i + 1, "NEXT", Collections.singletonMap("day", Values.value(LocalDate.ofEpochDay(i)))));
+            records.add(new InternalRecord(KEYS, new Value[]{
+                node,
+                i % 2 == 0 ? Values.value("name " + i) : Values.NULL,
+                Values.value(Values.value(i), Values.value(i * 0.5), relationship, Values.value(Map.of("bytes", new byte[]{(byte) i})))
+            }));
+        }
+        return records;
+    }
+
+    private static Result result(List<Record> records) {
+        Iterator<Record> iterator = records.iterator();
+        Result result = Mockito.mock(Result.class);
+        Mockito.when(result.keys()).thenReturn(KEYS);
+        Mockito.when(result.hasNext()).then(invocation -> iterator.hasNext());
+        Mockito.when(result.next()).then(invocation -> iterator.next());
+        return result;
+    }
+}
@@ -0,0 +1,377 @@
+package science.aist.neo4j.transaction;
+
+import org.neo4j.driver.Bookmark;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.SessionConfig;
+import org.neo4j.driver.Transaction;
+import org.neo4j.driver.async.AsyncSession;
+import org.neo4j.driver.async.AsyncTransaction;
+import org.neo4j.driver.async.ResultCursor;
+import org.neo4j.driver.exceptions.TransientException;
+import org.neo4j.driver.reactive.RxResult;
+import org.neo4j.driver.reactive.RxSession;
+import org.neo4j.driver.reactive.RxTransaction;
+import org.neo4j.driver.reactive.RxTransactionWork;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>Local stand-in for a neo4j {@link Driver} that does not need a database.
+ * Every session and transaction is a dynamic proxy that only counts what happened to it.
+ * Transactions verify that they are only used by the thread that started them.</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class StandInDriver {
+
+    /**
+     * Number of sessions opened with {@link Driver#session(SessionConfig)} or {@link Driver#session()}
+     */
+    final AtomicInteger sessionsOpened = new AtomicInteger();
+
+    /**
+     * Number of closed sessions
+     */
+    final AtomicInteger sessionsClosed = new AtomicInteger();
+
+    /**
+     * Number of transactions that were started
+     */
+    final AtomicInteger transactionsStarted = new AtomicInteger();
+
+    /**
+     * Number of committed transactions
+     */
+    final AtomicInteger transactionsCommitted = new AtomicInteger();
+
+    /**
+     * Number of closed transactions
+     */
+    final AtomicInteger transactionsClosed = new AtomicInteger();
+
+    /**
+     * Number of transactions that were rolled back
+     */
+    final AtomicInteger transactionsRolledBack = new AtomicInteger();
+
+    /**
+     * Number of statements that were run
+     */
+    final AtomicInteger statementsRun = new AtomicInteger();
+
+    /**
+     * Number of times a transaction was used by a thread that did not start it
+     */
+    final AtomicInteger foreignThreadAccesses = new AtomicInteger();
+
+    /**
+     * Number of times the connectivity was verified
+     */
+    final AtomicInteger connectivityVerifications = new AtomicInteger();
+
+    /**
+     * Number of following commits that fail with a transient error
+     */
+    final AtomicInteger transientCommitFailures = new AtomicInteger();
+
+    /**
+     * The configurations sessions were opened with
+     */
+    final List<SessionConfig> sessionConfigs = new CopyOnWriteArrayList<>();
+
+    /**
+     * Number of records requested from reactive results
+     */
+    final AtomicLong recordsRequested = new AtomicLong();
+
+    /**
+     * The records published by reactive results
+     */
+    final List<Record> records = new ArrayList<>();
+
+    /**
+     * The proxied driver
+     */
+    private final Driver driver = proxy(Driver.class, (proxy, method, args) -> {
+        switch (method.getName()) {
+            case "session":
+                sessionsOpened.incrementAndGet();
+                SessionConfig config = args == null ? SessionConfig.defaultConfig() : (SessionConfig) args[0];
+                sessionConfigs.add(config);
+                return session(config);
+            case "asyncSession":
+                sessionsOpened.incrementAndGet();
+                SessionConfig asyncConfig = args == null ? SessionConfig.defaultConfig() : (SessionConfig) args[0];
+                sessionConfigs.add(asyncConfig);
+                return asyncSession();
+            case "rxSession":
+                sessionsOpened.incrementAndGet();
+                SessionConfig rxConfig = args == null ? SessionConfig.defaultConfig() : (SessionConfig) args[0];
+                sessionConfigs.add(rxConfig);
+                return rxSession();
+            case "verifyConnectivity":
+                connectivityVerifications.incrementAndGet();
+                return null;
+            case "close":
+                return null;
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    });
+
+    public Driver getDriver() {
+        return driver;
+    }
+
+    private Session session(SessionConfig config) {
+        AtomicReference<Bookmark> lastBookmark = new AtomicReference<>();
+        if (config.bookmarks() != null) {
+            config.bookmarks().forEach(lastBookmark::set);
+        }
+        return proxy(Session.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "beginTransaction":
+                    transactionsStarted.incrementAndGet();
+                    return transaction(Thread.currentThread(), lastBookmark);
+                case "close":
+                    sessionsClosed.incrementAndGet();
+                    return null;
+                case "lastBookmark":
+                    return lastBookmark.get();
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private Transaction transaction(Thread owner, AtomicReference<Bookmark> lastBookmark) {
+        return proxy(Transaction.class, (proxy, method, args) -> {
+            if (Thread.currentThread() != owner) {
+                foreignThreadAccesses.incrementAndGet();
+            }
+            switch (method.getName()) {
+                case "commit":
+                    if (transientCommitFailures.getAndUpdate(failures -> Math.max(0, failures - 1)) > 0) {
+                        throw new TransientException("Neo.TransientError.Transaction.DeadlockDetected", "deadlock");
+                    }
+                    lastBookmark.set(Bookmark.from(Collections.singleton("bookmark-" + transactionsCommitted.incrementAndGet())));
+                    return null;
+                case "rollback":
+                    return null;
+                case "close":
+                    transactionsClosed.incrementAndGet();
+                    return null;
+                case "isOpen":
+                    return true;
+                case "run":
+                    statementsRun.incrementAndGet();
+                    return result();
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private AsyncSession asyncSession() {
+        AtomicReference<Bookmark> lastBookmark = new AtomicReference<>();
+        return proxy(AsyncSession.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "beginTransactionAsync":
+                    transactionsStarted.incrementAndGet();
+                    return CompletableFuture.completedFuture(asyncTransaction(lastBookmark));
+                case "closeAsync":
+                    sessionsClosed.incrementAndGet();
+                    return CompletableFuture.completedFuture(null);
+                case "lastBookmark":
+                    return lastBookmark.get();
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private AsyncTransaction asyncTransaction(AtomicReference<Bookmark> lastBookmark) {
+        return proxy(AsyncTransaction.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "commitAsync":
+                    lastBookmark.set(Bookmark.from(Collections.singleton("bookmark-" + transactionsCommitted.incrementAndGet())));
+                    transactionsClosed.incrementAndGet();
+                    return CompletableFuture.completedFuture(null);
+                case "rollbackAsync":
+                    transactionsRolledBack.incrementAndGet();
+                    transactionsClosed.incrementAndGet();
+                    return CompletableFuture.completedFuture(null);
+                case "runAsync":
+                    statementsRun.incrementAndGet();
+                    return CompletableFuture.completedFuture(resultCursor());
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private ResultCursor resultCursor() {
+        return proxy(ResultCursor.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "keys":
+                    return Collections.emptyList();
+                case "nextAsync":
+                case "peekAsync":
+                case "consumeAsync":
+                    return CompletableFuture.completedFuture(null);
+                case "listAsync":
+                    return CompletableFuture.completedFuture(Collections.emptyList());
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private RxSession rxSession() {
+        return proxy(RxSession.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "readTransaction":
+                case "writeTransaction":
+                    transactionsStarted.incrementAndGet();
+                    Publisher<Record> work = (Publisher<Record>) ((RxTransactionWork<?>) args[0]).execute(rxTransaction());
+                    return (Publisher<Record>) subscriber -> work.subscribe(new Subscriber<>() {
+                        @Override
+                        public void onSubscribe(Subscription subscription) {
+                            subscriber.onSubscribe(new Subscription() {
+                                @Override
+                                public void request(long n) {
+                                    subscription.request(n);
+                                }
+
+                                @Override
+                                public void cancel() {
+                                    transactionsRolledBack.incrementAndGet();
+                                    subscription.cancel();
+                                }
+                            });
+                        }
+
+                        @Override
+                        public void onNext(Record record) {
+                            subscriber.onNext(record);
+                        }
+
+                        @Override
+                        public void onError(Throwable error) {
+                            transactionsRolledBack.incrementAndGet();
+                            subscriber.onError(error);
+                        }
+
+                        @Override
+                        public void onComplete() {
+                            transactionsCommitted.incrementAndGet();
+                            subscriber.onComplete();
+                        }
+                    });
+                case "close":
+                    return (Publisher<Object>) subscriber -> subscriber.onSubscribe(new Subscription() {
+                        @Override
+                        public void request(long n) {
+                            sessionsClosed.incrementAndGet();
+                            subscriber.onComplete();
+                        }
+
+                        @Override
+                        public void cancel() {
+                        }
+                    });
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private RxTransaction rxTransaction() {
+        return proxy(RxTransaction.class, (proxy, method, args) -> {
+            if ("run".equals(method.getName())) {
+                statementsRun.incrementAndGet();
+                return proxy(RxResult.class, (resultProxy, resultMethod, resultArgs) -> {
+                    if ("records".equals(resultMethod.getName())) {
+                        return recordPublisher();
+                    }
+                    throw new UnsupportedOperationException(resultMethod.getName());
+                });
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    private Publisher<Record> recordPublisher() {
+        return subscriber -> subscriber.onSubscribe(new Subscription() {
+            private int index;
+            private boolean done;
+
+            @Override
+            public void request(long n) {
+                recordsRequested.addAndGet(n);
+                for (long i = 0; i < n && !done && index < records.size(); i++) {
+                    subscriber.onNext(records.get(index++));
+                }
+                if (!done && index == records.size()) {
+                    done = true;
+                    subscriber.onComplete();
+                }
+            }
+
+            @Override
+            public void cancel() {
+                done = true;
+            }
+        });
+    }
+
+    private Result result() {
+        return proxy(Result.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "hasNext":
+                    return false;
+                case "keys":
+                case "list":
+                    return Collections.emptyList();
+                case "consume":
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> clazz, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(StandInDriver.class.getClassLoader(), new Class[]{clazz}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return clazz.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+                }
+            }
+            return handler.invoke(proxy, method, args);
+        });
+    }
+}
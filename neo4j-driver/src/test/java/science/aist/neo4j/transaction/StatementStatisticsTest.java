@@ -0,0 +1,91 @@
+package science.aist.neo4j.transaction;
+
+import org.neo4j.driver.Values;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Test class for {@link StatementStatistics}</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class StatementStatisticsTest {
+
+    private StatementStatistics statementStatistics;
+
+    private TransactionManagerImpl transactionManager;
+
+    @BeforeMethod
+    public void before() {
+        statementStatistics = new StatementStatistics();
+        transactionManager = new TransactionManagerImpl();
+        transactionManager.setDriver(new StandInDriver().getDriver());
+        transactionManager.setStatementListeners(List.of(statementStatistics));
+    }
+
+    /**
+     * Tests that statements are aggregated by their normalized text, no matter if their result is read
+     */
+    @Test
+    public void testStatementsAggregated() {
+        // when
+        transactionManager.runWrite(transaction -> transaction.run("CREATE (n {id: $id})", Values.parameters("id", 1)).consume());
+        transactionManager.runWrite(transaction -> transaction.run("CREATE  (n {id: $id})\n", Values.parameters("id", 2)));
+        transactionManager.executeRead(transaction -> transaction.run("MATCH (n) RETURN n").list());
+
+        // then
+        StatementStatistics.Statement create = statementStatistics.getStatement("CREATE (n {id: $id})");
+        Assert.assertEquals(create.getCalls(), 2);
+        Assert.assertTrue(create.getParameterBytes() > 0);
+        Assert.assertEquals(statementStatistics.getStatement("MATCH (n) RETURN n").getCalls(), 1);
+        Assert.assertEquals(statementStatistics.getTopStatements(1).size(), 1);
+
+        // when
+        statementStatistics.reset();
+
+        // then
+        Assert.assertTrue(statementStatistics.getStatements().isEmpty());
+    }
+
+    /**
+     * Tests that new statements are aggregated as other statement, once the maximum was reached
+     */
+    @Test
+    public void testMaxStatements() {
+        // given
+        statementStatistics.setMaxStatements(1);
+
+        // when
+        statementStatistics.statementExecuted("RETURN 1", null, 1, 10, null);
+        statementStatistics.statementExecuted("RETURN 2", null, 1, 10, null);
+        statementStatistics.statementExecuted("RETURN 1", null, 1, 10, null);
+
+        // then
+        Assert.assertEquals(statementStatistics.getStatement("RETURN 1").getCalls(), 2);
+        Assert.assertEquals(statementStatistics.getStatement(StatementStatistics.OTHER).getCalls(), 1);
+    }
+
+    /**
+     * Tests that the percentiles are within the accuracy of the histogram
+     */
+    @Test
+    public void testPercentiles() {
+        // given
+        StatementStatistics.Statement statement = new StatementStatistics.Statement();
+
+        // when
+        for (int i = 1; i <= 100; i++) {
+            statement.record(null, 0, TimeUnit.MILLISECONDS.toNanos(i), null);
+        }
+
+        // then
+        Assert.assertEquals(statement.getP50Nanos(), TimeUnit.MILLISECONDS.toNanos(50), TimeUnit.MILLISECONDS.toNanos(7));
+        Assert.assertEquals(statement.getP99Nanos(), TimeUnit.MILLISECONDS.toNanos(99), TimeUnit.MILLISECONDS.toNanos(13));
+        Assert.assertEquals(statement.getCalls(), 100);
+    }
+}
@@ -0,0 +1,526 @@
+package science.aist.neo4j.transaction;
+
+import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Bookmark;
+import org.neo4j.driver.SessionConfig;
+import org.neo4j.driver.Transaction;
+import org.neo4j.driver.exceptions.TransientException;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Test class for {@link TransactionManagerImpl}</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class TransactionManagerImplTest {
+
+    private static final int THREADS = 64;
+
+    private static final int ITERATIONS = 200;
+
+    private StandInDriver standInDriver;
+
+    private TransactionManagerImpl transactionManager;
+
+    @BeforeMethod
+    public void before() {
+        standInDriver = new StandInDriver();
+        transactionManager = new TransactionManagerImpl();
+        transactionManager.setDriver(standInDriver.getDriver());
+    }
+
+    /**
+     * Tests that nested transactions only start one driver transaction
+     */
+    @Test
+    public void testInnerTransactionJoinsOuter() {
+        // given
+        try (Transaction outer = transactionManager.beginTransaction()) {
+            // when
+            try (Transaction inner = transactionManager.beginTransaction(AccessMode.READ)) {
+                inner.run("RETURN 1");
+                inner.commit();
+            }
+            outer.commit();
+        }
+
+        // then
+        Assert.assertEquals(standInDriver.transactionsStarted.get(), 1);
+        Assert.assertEquals(standInDriver.transactionsCommitted.get(), 1);
+        Assert.assertEquals(standInDriver.transactionsClosed.get(), 1);
+        Assert.assertEquals(standInDriver.statementsRun.get(), 1);
+    }
+
+    /**
+     * Tests that a write transaction can't be nested into a read transaction
+     */
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testInnerWriteInReadTransaction() {
+        // given
+        Transaction outer = transactionManager.beginTransaction(AccessMode.READ);
+        try {
+            // when
+            transactionManager.beginTransaction(AccessMode.WRITE);
+        } finally {
+            outer.close();
+        }
+    }
+
+    /**
+     * Tests that a closed outer transaction allows a new outer transaction
+     */
+    @Test
+    public void testNewOuterTransactionAfterClose() {
+        // given
+        transactionManager.runWrite(transaction -> transaction.run("RETURN 1"));
+
+        // when
+        transactionManager.runRead(transaction -> transaction.run("RETURN 1"));
+
+        // then
+        Assert.assertEquals(standInDriver.transactionsStarted.get(), 2);
+        Assert.assertEquals(standInDriver.transactionsClosed.get(), 2);
+    }
+
+    /**
+     * Tests that following outer transactions of a thread reuse its session
+     */
+    @Test
+    public void testSessionReused() {
+        // given
+        transactionManager.runWrite(transaction -> transaction.run("RETURN 1"));
+
+        // when
+        transactionManager.runWrite(transaction -> transaction.run("RETURN 1"));
+
+        // then
+        Assert.assertEquals(standInDriver.sessionsOpened.get(), 1);
+        Assert.assertEquals(standInDriver.sessionsClosed.get(), 0);
+        Assert.assertEquals(transactionManager.getSessionStatistics().getOpened(), 1);
+        Assert.assertEquals(transactionManager.getSessionStatistics().getReused(), 1);
+    }
+
+    /**
+     * Tests that a new session waits for the bookmark of the last committed transaction
+     */
+    @Test
+    public void testBookmarkPassedToNewSession() {
+        // given
+        transactionManager.runWrite(transaction -> transaction.run("CREATE ()"));
+        Bookmark bookmark = transactionManager.getLastBookmark();
+
+        // when
+        transactionManager.runRead(transaction -> transaction.run("MATCH (n) RETURN n"));
+
+        // then
+        Assert.assertNotNull(bookmark);
+        SessionConfig readConfig = standInDriver.sessionConfigs.get(1);
+        Assert.assertEquals(readConfig.defaultAccessMode(), AccessMode.READ);
+        Assert.assertEquals(readConfig.bookmarks().iterator().next(), bookmark);
+    }
+
+    /**
+     * Tests that read transactions are routed to the read driver and write transactions to the driver
+     */
+    @Test
+    public void testReadDriverServesReads() {
+        // given
+        StandInDriver readDriver = new StandInDriver();
+        transactionManager.setReadDriver(readDriver.getDriver());
+
+        transactionManager.runWrite(transaction -> transaction.run("CREATE ()"));
+        Bookmark bookmark = transactionManager.getLastBookmark();
+
+        // when
+        transactionManager.runRead(transaction -> transaction.run("MATCH (n) RETURN n"));
+        transactionManager.runRead(transaction -> transaction.run("MATCH (n) RETURN n"));
+
+        // then
+        Assert.assertEquals(standInDriver.transactionsStarted.get(), 1);
+        Assert.assertEquals(readDriver.transactionsStarted.get(), 2);
+        Assert.assertEquals(readDriver.sessionConfigs.get(0).bookmarks().iterator().next(), bookmark);
+    }
+
+    /**
+     * Tests that a read driver outside of the causal chain neither gets nor changes the bookmark
+     */
+    @Test
+    public void testIndependentReadDriverIgnoresBookmarks() {
+        // given
+        StandInDriver readDriver = new StandInDriver();
+        transactionManager.setReadDriver(readDriver.getDriver());
+        transactionManager.setReadDriverCausal(false);
+        transactionManager.runWrite(transaction -> transaction.run("CREATE ()"));
+        Bookmark bookmark = transactionManager.getLastBookmark();
+
+        // when
+        transactionManager.runRead(transaction -> transaction.run("MATCH (n) RETURN n"));
+        transactionManager.runRead(transaction -> transaction.run("MATCH (n) RETURN n"));
+
+        // then
+        Assert.assertTrue(readDriver.sessionConfigs.get(0).bookmarks() == null || !readDriver.sessionConfigs.get(0).bookmarks().iterator().hasNext());
+        Assert.assertEquals(readDriver.sessionsOpened.get(), 1);
+        Assert.assertEquals(transactionManager.getLastBookmark(), bookmark);
+    }
+
+    /**
+     * Tests that closing the session closes the session of the thread and keeps the bookmark
+     */
+    @Test
+    public void testCloseSession() {
+        // given
+        transactionManager.runWrite(transaction -> transaction.run("CREATE ()"));
+        Bookmark bookmark = transactionManager.getLastBookmark();
+
+        // when
+        transactionManager.closeSession();
+        transactionManager.runWrite(transaction -> transaction.run("CREATE ()"));
+
+        // then
+        Assert.assertEquals(standInDriver.sessionsOpened.get(), 2);
+        Assert.assertEquals(standInDriver.sessionsClosed.get(), 1);
+        Assert.assertEquals(standInDriver.sessionConfigs.get(1).bookmarks().iterator().next(), bookmark);
+    }
+
+    /**
+     * Tests that closing the manager closes the sessions of all threads
+     *
+     * @throws Exception if the worker fails
+     */
+    @Test
+    public void testCloseAllSessions() throws Exception {
+        // given
+        transactionManager.runWrite(transaction -> transaction.run("RETURN 1"));
+        Thread thread = new Thread(() -> transactionManager.runRead(transaction -> transaction.run("RETURN 1")));
+        thread.start();
+        thread.join();
+
+        // when
+        transactionManager.close();
+
+        // then
+        Assert.assertEquals(standInDriver.sessionsOpened.get(), 2);
+        Assert.assertEquals(standInDriver.sessionsClosed.get(), 2);
+        Assert.assertEquals(transactionManager.getSessionStatistics().getOpen(), 0);
+    }
+
+    /**
+     * Tests that warm up verifies the connectivity
+     */
+    @Test
+    public void testWarmUp() {
+        // when
+        transactionManager.warmUp();
+
+        // then
+        Assert.assertEquals(standInDriver.connectivityVerifications.get(), 1);
+    }
+
+    /**
+     * Tests that a streamed result keeps its transaction open until it is closed
+     */
+    @Test
+    public void testStreamKeepsTransactionOpen() {
+        // given
+        CursorResult result = transactionManager.streamRead(transaction -> transaction.run("MATCH (n) RETURN n"));
+
+        // when
+        transactionManager.runRead(transaction -> transaction.run("RETURN 1"));
+        int closedBeforeClose = standInDriver.transactionsClosed.get();
+        result.close();
+
+        // then
+        Assert.assertEquals(standInDriver.transactionsStarted.get(), 1);
+        Assert.assertEquals(closedBeforeClose, 0);
+        Assert.assertEquals(standInDriver.transactionsCommitted.get(), 1);
+        Assert.assertEquals(standInDriver.transactionsClosed.get(), 1);
+    }
+
+    /**
+     * Tests that a streamed result closes its transaction once all records were read
+     */
+    @Test
+    public void testStreamClosedWhenExhausted() {
+        // given
+        CursorResult result = transactionManager.streamRead(transaction -> transaction.run("MATCH (n) RETURN n"));
+
+        // when
+        long count = result.stream().count();
+
+        // then
+        Assert.assertEquals(count, 0);
+        Assert.assertTrue(result.isClosed());
+        Assert.assertEquals(standInDriver.transactionsCommitted.get(), 1);
+        Assert.assertEquals(standInDriver.transactionsClosed.get(), 1);
+    }
+
+    /**
+     * Tests that the fetch size is passed on to the sessions
+     */
+    @Test
+    public void testFetchSize() {
+        // given
+        transactionManager.setFetchSize(100);
+
+        // when
+        transactionManager.runRead(transaction -> transaction.run("RETURN 1"));
+
+        // then
+        Assert.assertEquals(standInDriver.sessionConfigs.get(0).fetchSize().orElse(0L).longValue(), 100L);
+    }
+
+    /**
+     * Tests that an outer transaction that failed with a transient error is retried and the retries are recorded
+     */
+    @Test
+    public void testRetryTransientFailure() {
+        // given
+        RetryPolicy retryPolicy = new RetryPolicy();
+        retryPolicy.setInitialDelayMillis(1);
+        transactionManager.setRetryPolicy(retryPolicy);
+        standInDriver.transientCommitFailures.set(2);
+
+        // when
+        String result = transactionManager.executeWrite(transaction -> {
+            transaction.run("CREATE ()");
+            return "done";
+        });
+
+        // then
+        Assert.assertEquals(result, "done");
+        Assert.assertEquals(standInDriver.transactionsStarted.get(), 3);
+        Assert.assertEquals(standInDriver.transactionsClosed.get(), 3);
+        RetryStatistics.Operation operation = transactionManager.getRetryStatistics().getOperation("TransactionManagerImplTest.testRetryTransientFailure");
+        Assert.assertNotNull(operation);
+        Assert.assertEquals(operation.getRetries(), 2);
+        Assert.assertEquals(operation.getRecovered(), 1);
+        Assert.assertEquals(operation.getFailed(), 0);
+    }
+
+    /**
+     * Tests that retrying stops once the maximum retry time passed
+     */
+    @Test(expectedExceptions = TransientException.class)
+    public void testRetryGivesUp() {
+        // given
+        RetryPolicy retryPolicy = new RetryPolicy();
+        retryPolicy.setInitialDelayMillis(1);
+        retryPolicy.setMaxRetryTimeMillis(20);
+        transactionManager.setRetryPolicy(retryPolicy);
+        standInDriver.transientCommitFailures.set(Integer.MAX_VALUE);
+
+        // when
+        transactionManager.runWrite(transaction -> transaction.run("CREATE ()"));
+    }
+
+    /**
+     * Tests that inner transactions are not retried on their own
+     */
+    @Test
+    public void testNoRetryOfInnerTransaction() {
+        // given
+        RetryPolicy retryPolicy = new RetryPolicy();
+        retryPolicy.setInitialDelayMillis(1);
+        transactionManager.setRetryPolicy(retryPolicy);
+        AtomicInteger innerAttempts = new AtomicInteger();
+
+        // when
+        try {
+            transactionManager.runWrite(outer -> transactionManager.runWrite(inner -> {
+                if (innerAttempts.incrementAndGet() == 1) {
+                    throw new TransientException("Neo.TransientError.Transaction.DeadlockDetected", "deadlock");
+                }
+            }));
+        } catch (TransientException e) {
+            Assert.fail("outer transaction should have been retried");
+        }
+
+        // then
+        Assert.assertEquals(innerAttempts.get(), 2);
+        Assert.assertEquals(standInDriver.transactionsStarted.get(), 2);
+    }
+
+    /**
+     * Tests that rollback actions are executed if the commit fails and not executed after a successful commit
+     */
+    @Test
+    public void testRollbackActions() {
+        // given
+        AtomicInteger rollbacks = new AtomicInteger();
+        standInDriver.transientCommitFailures.set(1);
+
+        // when
+        try {
+            transactionManager.runWrite(transaction -> transactionManager.onRollback(rollbacks::incrementAndGet));
+            Assert.fail("commit should have failed");
+        } catch (TransientException e) {
+            // expected
+        }
+        transactionManager.runWrite(transaction -> transactionManager.onRollback(rollbacks::incrementAndGet));
+
+        // then
+        Assert.assertEquals(rollbacks.get(), 1);
+        Assert.assertFalse(transactionManager.isTransactionActive());
+    }
+
+    /**
+     * Tests that commit actions are executed after the commit of the outermost transaction and not at all if the
+     * commit fails
+     */
+    @Test
+    public void testCommitActions() {
+        // given
+        List<String> events = new ArrayList<>();
+        standInDriver.transientCommitFailures.set(1);
+
+        // when
+        try {
+            transactionManager.runWrite(transaction -> transactionManager.onCommit(() -> events.add("failed commit")));
+            Assert.fail("commit should have failed");
+        } catch (TransientException e) {
+            // expected
+        }
+        transactionManager.runWrite(outer -> {
+            transactionManager.runWrite(inner -> transactionManager.onCommit(() -> events.add("committed")));
+            events.add("inner finished");
+        });
+        transactionManager.onCommit(() -> events.add("no transaction"));
+
+        // then
+        Assert.assertEquals(events, List.of("inner finished", "committed", "no transaction"));
+    }
+
+    /**
+     * Tests that saves recorded in a unit of work are written group by group right before the commit
+     */
+    @Test
+    public void testUnitOfWorkFlushedOnCommit() {
+        // given
+        List<List<String>> flushed = new ArrayList<>();
+
+        // when
+        transactionManager.executeUnitOfWork(transaction -> {
+            UnitOfWork unitOfWork = transactionManager.getUnitOfWork();
+            unitOfWork.register("a", "a1", flushed::add);
+            unitOfWork.register("b", "b1", flushed::add);
+            unitOfWork.register("a", "a2", flushed::add);
+            transactionManager.runWrite(inner -> transactionManager.getUnitOfWork().register("a", "a1", flushed::add));
+            Assert.assertTrue(flushed.isEmpty());
+            return null;
+        });
+
+        // then
+        Assert.assertEquals(flushed, List.of(List.of("a1", "a2"), List.of("b1")));
+        Assert.assertEquals(standInDriver.transactionsStarted.get(), 1);
+        Assert.assertNull(transactionManager.getUnitOfWork());
+    }
+
+    /**
+     * Tests that a unit of work nested in a transaction that is no unit of work records its saves and writes them once
+     * it returns, within the outer transaction
+     */
+    @Test
+    public void testUnitOfWorkInOuterTransaction() {
+        // given
+        List<List<String>> flushed = new ArrayList<>();
+
+        // when
+        transactionManager.runWrite(outer -> {
+            Assert.assertNull(transactionManager.getUnitOfWork());
+            transactionManager.executeUnitOfWork(transaction -> {
+                transactionManager.getUnitOfWork().register("a", "a1", flushed::add);
+                transactionManager.getUnitOfWork().register("a", "a2", flushed::add);
+                Assert.assertTrue(flushed.isEmpty());
+                return null;
+            });
+            Assert.assertEquals(flushed, List.of(List.of("a1", "a2")));
+            Assert.assertNull(transactionManager.getUnitOfWork());
+        });
+
+        // then
+        Assert.assertEquals(standInDriver.transactionsStarted.get(), 1);
+    }
+
+    /**
+     * Tests that saves are only recorded in a unit of work and not while it is flushed, or after it failed
+     */
+    @Test
+    public void testUnitOfWorkOnlyRecordsInUnitOfWork() {
+        // given
+        List<Boolean> recordingWhileFlushed = new ArrayList<>();
+
+        // when
+        transactionManager.runWrite(transaction -> Assert.assertNull(transactionManager.getUnitOfWork()));
+        try {
+            transactionManager.executeUnitOfWork(transaction -> {
+                transactionManager.getUnitOfWork().register("a", "a1", nodes -> Assert.fail("must not be flushed"));
+                throw new IllegalStateException("failed");
+            });
+            Assert.fail("work should have failed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        transactionManager.executeUnitOfWork(transaction -> {
+            transactionManager.getUnitOfWork().register("a", "a1", nodes -> recordingWhileFlushed.add(transactionManager.getUnitOfWork() != null));
+            return null;
+        });
+
+        // then
+        Assert.assertEquals(recordingWhileFlushed, List.of(false));
+        Assert.assertFalse(transactionManager.isTransactionActive());
+    }
+
+    /**
+     * Stress test with many threads sharing one manager. Every thread must get its own outer transaction,
+     * nested calls must join the transaction of the own thread and a transaction must never be used by a foreign thread.
+     *
+     * @throws Exception if a worker fails
+     */
+    @Test
+    public void testConcurrentOuterTransactions() throws Exception {
+        // given
+        ExecutorService executorService = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        // when
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executorService.submit(() -> {
+                start.await();
+                for (int j = 0; j < ITERATIONS; j++) {
+                    transactionManager.runWrite(outer -> {
+                        outer.run("RETURN 1");
+                        transactionManager.runRead(inner -> inner.run("RETURN 2"));
+                        transactionManager.executeWrite(inner -> inner.run("RETURN 3"));
+                    });
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        executorService.shutdown();
+
+        // then
+        Assert.assertEquals(standInDriver.transactionsStarted.get(), THREADS * ITERATIONS);
+        Assert.assertEquals(standInDriver.transactionsCommitted.get(), THREADS * ITERATIONS);
+        Assert.assertEquals(standInDriver.transactionsClosed.get(), THREADS * ITERATIONS);
+        Assert.assertEquals(standInDriver.statementsRun.get(), THREADS * ITERATIONS * 3);
+        Assert.assertEquals(standInDriver.foreignThreadAccesses.get(), 0);
+        Assert.assertEquals(standInDriver.sessionsOpened.get(), THREADS);
+    }
+}
@@ -0,0 +1,110 @@
+package science.aist.neo4j.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * <p>Test class for {@link BatchLoader}</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class BatchLoaderTest {
+
+    /**
+     * Tests that loads from several threads within the window are loaded in one batch
+     */
+    @Test
+    public void testConcurrentLoadsAreBatched() throws Exception {
+        // given
+        List<List<Long>> batches = new CopyOnWriteArrayList<>();
+        BatchLoader<Long, String> loader = new BatchLoader<>(keys -> {
+            batches.add(keys);
+            return keys.stream().filter(x -> x != 3).collect(Collectors.toMap(x -> x, x -> "node" + x));
+        });
+        loader.setWindowMillis(200);
+        List<Thread> threads = new ArrayList<>();
+        List<String> values = new CopyOnWriteArrayList<>();
+
+        // when
+        for (long i = 1; i <= 4; i++) {
+            long id = i;
+            Thread thread = new Thread(() -> values.add(String.valueOf(loader.get(id))));
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // then
+        Assert.assertEquals(batches.size(), 1);
+        Assert.assertEquals(batches.get(0).size(), 4);
+        Assert.assertTrue(values.containsAll(List.of("node1", "node2", "null", "node4")));
+    }
+
+    /**
+     * Tests that a full batch is loaded without waiting for the window and duplicate keys are loaded once
+     */
+    @Test
+    public void testFullBatchIsLoadedAtOnce() {
+        // given
+        List<List<Long>> batches = new CopyOnWriteArrayList<>();
+        BatchLoader<Long, Long> loader = new BatchLoader<>(keys -> {
+            batches.add(keys);
+            return keys.stream().collect(Collectors.toMap(x -> x, x -> x * 10));
+        });
+        loader.setWindowMillis(60_000);
+        loader.setMaxBatchSize(2);
+
+        // when
+        CompletableFuture<Long> first = loader.load(1L);
+        CompletableFuture<Long> duplicate = loader.load(1L);
+        CompletableFuture<Long> second = loader.load(2L);
+
+        // then
+        Assert.assertEquals(first.join(), Long.valueOf(10));
+        Assert.assertSame(first, duplicate);
+        Assert.assertEquals(second.join(), Long.valueOf(20));
+        Assert.assertEquals(batches, List.of(List.of(1L, 2L)));
+    }
+
+    /**
+     * Tests that a failing batch fails every caller
+     */
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testFailingBatch() {
+        // given
+        BatchLoader<Long, String> loader = new BatchLoader<>(keys -> {
+            throw new IllegalStateException("database unavailable");
+        });
+
+        // when
+        loader.get(1L);
+    }
+
+    /**
+     * Tests that the current batch can be loaded without waiting for its window
+     */
+    @Test
+    public void testDispatchNow() {
+        // given
+        BatchLoader<Long, String> loader = new BatchLoader<>(keys -> Map.of(1L, "one"));
+        loader.setWindowMillis(60_000);
+        CompletableFuture<String> future = loader.load(1L);
+
+        // when
+        loader.dispatchNow();
+
+        // then
+        Assert.assertTrue(future.isDone());
+        Assert.assertEquals(future.join(), "one");
+    }
+}
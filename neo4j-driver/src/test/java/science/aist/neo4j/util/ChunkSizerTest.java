@@ -0,0 +1,51 @@
+package science.aist.neo4j.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Test class for {@link ChunkSizer}</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class ChunkSizerTest {
+
+    /**
+     * Tests that the chunk size grows for fast chunks and shrinks for slow ones
+     */
+    @Test
+    public void testAdaptsToLatency() {
+        // given
+        ChunkSizer sizer = new ChunkSizer();
+        sizer.setTargetMillis(100);
+
+        // when
+        sizer.record(1000, 1000, TimeUnit.MILLISECONDS.toNanos(10));
+        int grown = sizer.next();
+        sizer.record(grown, grown, TimeUnit.MILLISECONDS.toNanos(400));
+        int shrunk = sizer.next();
+
+        // then
+        Assert.assertEquals(grown, 2000);
+        Assert.assertEquals(shrunk, 1000);
+    }
+
+    /**
+     * Tests that a chunk stays within the memory budget
+     */
+    @Test
+    public void testMemoryBudget() {
+        // given
+        ChunkSizer sizer = new ChunkSizer();
+        sizer.setMaxChunkBytes(1000 * 1024);
+
+        // when
+        sizer.record(1000, 1000 * 4096, TimeUnit.MILLISECONDS.toNanos(1));
+
+        // then
+        Assert.assertEquals(sizer.next(), 250);
+    }
+}
@@ -0,0 +1,45 @@
+package science.aist.neo4j.util;
+
+import org.neo4j.driver.AccessMode;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * <p>Test class for {@link CypherClassifier}</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class CypherClassifierTest {
+
+    @DataProvider
+    public Object[][] queries() {
+        return new Object[][]{
+            {"MATCH (n) RETURN n", AccessMode.READ},
+            {"match (n:LineNode) detach delete n", AccessMode.WRITE},
+            {"MERGE (n {id: $id})", AccessMode.WRITE},
+            {"MATCH (n) WHERE id(n) = $id SET n += $properties", AccessMode.WRITE},
+            {"MATCH (n) WHERE n.name = 'CREATE' RETURN n", AccessMode.READ},
+            {"MATCH (n:`DELETE`) RETURN n.set, $remove // CREATE", AccessMode.READ},
+            {"MATCH (n:Create) /* MERGE */ RETURN count(n)", AccessMode.READ},
+            {"CALL db.labels()", AccessMode.WRITE},
+            {"CALL { MATCH (n) RETURN n } RETURN n", AccessMode.READ},
+        };
+    }
+
+    /**
+     * Tests the classification of queries
+     *
+     * @param query    the query
+     * @param expected the expected access mode
+     */
+    @Test(dataProvider = "queries")
+    public void testClassify(String query, AccessMode expected) {
+        // when
+        AccessMode accessMode = CypherClassifier.classify(query);
+
+        // then
+        Assert.assertEquals(accessMode, expected);
+    }
+}
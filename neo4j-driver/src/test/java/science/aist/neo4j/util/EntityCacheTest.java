@@ -0,0 +1,143 @@
+package science.aist.neo4j.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Test class for {@link EntityCache}</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class EntityCacheTest {
+
+    /**
+     * Tests that a full cache keeps frequently requested entries instead of entries requested once
+     */
+    @Test
+    public void testFrequentEntriesAreKept() {
+        // given
+        EntityCache<String> cache = new EntityCache<>(10, Long.MAX_VALUE, x -> 1);
+        for (long id = 0; id < 10; id++) {
+            cache.get(id);
+            cache.put(id, "hot" + id);
+            cache.get(id);
+            cache.get(id);
+        }
+
+        // when
+        for (long id = 100; id < 200; id++) {
+            cache.get(id);
+            cache.put(id, "cold" + id);
+        }
+
+        // then
+        Assert.assertEquals(cache.size(), 10);
+        for (long id = 0; id < 10; id++) {
+            Assert.assertEquals(cache.get(id), "hot" + id);
+        }
+        Assert.assertEquals(cache.getEvictions(), 100);
+        Assert.assertEquals(cache.getHits(), 30);
+        Assert.assertEquals(cache.getMisses(), 110);
+    }
+
+    /**
+     * Tests the weight bound and the invalidation of entries
+     */
+    @Test
+    public void testWeightAndInvalidate() {
+        // given
+        EntityCache<String> cache = new EntityCache<>(100, 10, String::length);
+
+        // when
+        cache.put(1, "aaaa");
+        cache.put(2, "bbbb");
+        cache.put(3, "this is too heavy");
+        cache.invalidate(1);
+
+        // then
+        Assert.assertNull(cache.get(1));
+        Assert.assertEquals(cache.get(2), "bbbb");
+        Assert.assertNull(cache.get(3));
+        Assert.assertEquals(cache.getWeight(), 4);
+        Assert.assertEquals(cache.getHitRate(), 1.0 / 3);
+    }
+
+    /**
+     * Tests that an entry loaded before its node was invalidated is not added
+     */
+    @Test
+    public void testStalePutSkipped() {
+        // given
+        EntityCache<String> cache = new EntityCache<>(100, Long.MAX_VALUE, x -> 1);
+        long generation = cache.generation(1);
+        long otherGeneration = cache.generation(2);
+
+        // when
+        cache.invalidate(1);
+        boolean stale = cache.put(1, "before write", generation);
+        boolean fresh = cache.put(2, "unchanged", otherGeneration);
+
+        // then
+        Assert.assertFalse(stale);
+        Assert.assertTrue(fresh);
+        Assert.assertNull(cache.get(1));
+        Assert.assertEquals(cache.get(2), "unchanged");
+    }
+
+    /**
+     * Tests that readers loading a node while it is written repeatedly never leave an outdated entry in the cache
+     */
+    @Test
+    public void testConcurrentInvalidation() throws Exception {
+        // given
+        EntityCache<Long> cache = new EntityCache<>(100, Long.MAX_VALUE, x -> 1);
+        AtomicLong database = new AtomicLong();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            readers.add(new Thread(() -> {
+                awaitQuietly(start);
+                while (writing.get()) {
+                    if (cache.get(1) == null) {
+                        long generation = cache.generation(1);
+                        long loaded = database.get();
+                        Thread.yield();
+                        cache.put(1, loaded, generation);
+                    }
+                }
+            }));
+        }
+        readers.forEach(Thread::start);
+
+        // when
+        start.countDown();
+        for (int i = 0; i < 20000; i++) {
+            database.incrementAndGet();
+            cache.invalidate(1);
+        }
+        writing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        // then
+        Long cached = cache.get(1);
+        Assert.assertTrue(cached == null || cached == database.get(), "cached " + cached + " but the database has " + database.get());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
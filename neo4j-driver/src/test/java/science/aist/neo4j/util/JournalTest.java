@@ -0,0 +1,168 @@
+package science.aist.neo4j.util;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * <p>Test class for {@link Journal}</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class JournalTest {
+
+    private Path file;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        file = Files.createTempFile("journal", ".bin");
+        Files.delete(file);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testAppendTakeAcknowledge() throws Exception {
+        // given
+        try (Journal journal = new Journal(file, 4096, false)) {
+            journal.append(bytes("a"), 0);
+            journal.append(bytes("b"), 0);
+            journal.append(bytes("c"), 0);
+
+            // when
+            List<byte[]> first = journal.take(2, 0);
+            journal.acknowledge();
+            List<byte[]> second = journal.take(2, 0);
+            journal.acknowledge();
+
+            // then
+            Assert.assertEquals(first.size(), 2);
+            Assert.assertEquals(new String(first.get(1), StandardCharsets.UTF_8), "b");
+            Assert.assertEquals(second.size(), 1);
+            Assert.assertEquals(new String(second.get(0), StandardCharsets.UTF_8), "c");
+            Assert.assertEquals(journal.getPendingEntries(), 0);
+            Assert.assertEquals(journal.getPendingBytes(), 0);
+            Assert.assertEquals(journal.getOldestPendingTimestamp(), -1);
+        }
+    }
+
+    @Test
+    public void testRecoverAfterReopen() throws Exception {
+        // given
+        try (Journal journal = new Journal(file, 4096, false)) {
+            journal.append(bytes("acknowledged"), 0);
+            journal.take(1, 0);
+            journal.acknowledge();
+            journal.append(bytes("taken"), 0);
+            journal.append(bytes("appended"), 0);
+            journal.take(1, 0);
+        }
+
+        // when
+        try (Journal journal = new Journal(file, 4096, false)) {
+            List<byte[]> entries = journal.take(10, 0);
+
+            // then
+            Assert.assertEquals(entries.size(), 2);
+            Assert.assertEquals(new String(entries.get(0), StandardCharsets.UTF_8), "taken");
+            Assert.assertEquals(new String(entries.get(1), StandardCharsets.UTF_8), "appended");
+        }
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        // given
+        try (Journal journal = new Journal(file, 4096, false)) {
+            journal.append(bytes("a"), 0);
+            journal.take(1, 0);
+
+            // when
+            journal.retry();
+            List<byte[]> entries = journal.take(1, 0);
+
+            // then
+            Assert.assertEquals(entries.size(), 1);
+            Assert.assertEquals(journal.getPendingEntries(), 1);
+        }
+    }
+
+    @Test
+    public void testFullJournalBlocksUntilAcknowledged() throws Exception {
+        // given
+        try (Journal journal = new Journal(file, 128, false)) {
+            Assert.assertTrue(journal.append(new byte[60], 0));
+
+            // when
+            boolean appendedWhileFull = journal.append(new byte[60], 10);
+            Thread consumer = new Thread(() -> {
+                try {
+                    journal.take(1, 0);
+                    Thread.sleep(50);
+                    journal.acknowledge();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            consumer.start();
+            boolean appendedAfterAcknowledge = journal.append(new byte[60], 5000);
+            consumer.join();
+
+            // then
+            Assert.assertFalse(appendedWhileFull);
+            Assert.assertTrue(appendedAfterAcknowledge);
+            Assert.assertEquals(journal.getPendingEntries(), 1);
+        }
+    }
+
+    @Test
+    public void testWrapAround() throws Exception {
+        // given
+        try (Journal journal = new Journal(file, 128, false)) {
+            journal.append(padded("a"), 0);
+            journal.append(padded("b"), 0);
+            journal.append(padded("c"), 0);
+            journal.take(2, 0);
+            journal.acknowledge();
+
+            // when
+            boolean appended = journal.append(padded("d"), 0);
+
+            // then
+            Assert.assertTrue(appended);
+            Assert.assertEquals(journal.getPendingEntries(), 2);
+            Assert.assertEquals(journal.getPendingBytes(), 76);
+        }
+
+        // when
+        try (Journal journal = new Journal(file, 128, false)) {
+            List<String> entries = journal.take(10, 0).stream().map(x -> new String(x, StandardCharsets.UTF_8).trim()).collect(Collectors.toList());
+            journal.acknowledge();
+
+            // then
+            Assert.assertEquals(entries, List.of("c", "d"));
+            Assert.assertEquals(journal.getPendingEntries(), 0);
+            Assert.assertEquals(journal.getPendingBytes(), 0);
+        }
+    }
+
+    private static byte[] padded(String value) {
+        return Arrays.copyOf(bytes(value), 20);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,62 @@
+package science.aist.neo4j.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * <p>Test class for {@link LongObjectMap}</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class LongObjectMapTest {
+
+    /**
+     * Tests random puts and removes, including negative keys and resizes, against a {@link HashMap}
+     */
+    @Test
+    public void testAgainstHashMap() {
+        // given
+        LongObjectMap<String> map = new LongObjectMap<>(4);
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        // when
+        for (int i = 0; i < 20_000; i++) {
+            long key = random.nextInt(2000) - 1000;
+            if (random.nextInt(3) == 0) {
+                Assert.assertEquals(map.remove(key), expected.remove(key));
+            } else {
+                Assert.assertEquals(map.put(key, "v" + i), expected.put(key, "v" + i));
+            }
+        }
+
+        // then
+        Assert.assertEquals(map.size(), expected.size());
+        Assert.assertEquals(map, expected);
+        for (long key = -1000; key < 1000; key++) {
+            Assert.assertEquals(map.get(key), expected.get(key));
+        }
+    }
+
+    /**
+     * Tests that putting null removes the key
+     */
+    @Test
+    public void testPutNullRemoves() {
+        // given
+        LongObjectMap<String> map = new LongObjectMap<>();
+        map.put(7L, "seven");
+
+        // when
+        map.put(7L, null);
+
+        // then
+        Assert.assertFalse(map.containsKey(7L));
+        Assert.assertTrue(map.isEmpty());
+    }
+}
@@ -0,0 +1,88 @@
+package science.aist.neo4j.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Test class for {@link StripedLocks}</p>
+ *
+ * @author Andreas Pointner
+ * @since 1.0
+ */
+public class StripedLocksTest {
+
+    /**
+     * Tests that threads locking the same ids in opposite order neither deadlock nor run at the same time
+     */
+    @Test(timeOut = 10_000)
+    public void testOverlappingIdsInOppositeOrder() throws Exception {
+        // given
+        StripedLocks locks = new StripedLocks(16);
+        AtomicInteger inside = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Runnable forward = () -> work(locks, start, inside, overlaps, 1, 2, 3);
+        Runnable backward = () -> work(locks, start, inside, overlaps, 3, 2, 1);
+        Thread first = new Thread(forward);
+        Thread second = new Thread(backward);
+
+        // when
+        first.start();
+        second.start();
+        start.countDown();
+        first.join();
+        second.join();
+
+        // then
+        Assert.assertEquals(overlaps.get(), 0);
+    }
+
+    /**
+     * Tests that the locks are released when unlocked
+     */
+    @Test
+    public void testRelease() throws Exception {
+        // given
+        StripedLocks locks = new StripedLocks(4);
+        locks.lock(1, 2).unlock();
+        CountDownLatch locked = new CountDownLatch(1);
+
+        // when
+        Thread thread = new Thread(() -> {
+            StripedLocks.Locked held = locks.lock(2, 1);
+            try {
+                locked.countDown();
+            } finally {
+                held.unlock();
+            }
+        });
+        thread.start();
+
+        // then
+        Assert.assertTrue(locked.await(5, TimeUnit.SECONDS));
+    }
+
+    private static void work(StripedLocks locks, CountDownLatch start, AtomicInteger inside, AtomicInteger overlaps, long... ids) {
+        try {
+            start.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        for (int i = 0; i < 1000; i++) {
+            StripedLocks.Locked locked = locks.lock(ids);
+            try {
+                if (inside.incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                }
+                inside.decrementAndGet();
+            } finally {
+                locked.unlock();
+            }
+        }
+    }
+}